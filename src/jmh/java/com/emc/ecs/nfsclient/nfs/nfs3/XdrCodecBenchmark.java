@@ -0,0 +1,212 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.nfs3;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.emc.ecs.nfsclient.nfs.NfsDirectoryPlusCursor;
+import com.emc.ecs.nfsclient.nfs.NfsDirectoryPlusEntry;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrResponse;
+import com.emc.ecs.nfsclient.nfs.NfsReaddirplusResponse;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.Entryplus3;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.Fattr3;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.GETATTR3args;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.GETATTR3res;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.Nfs3Xdr;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.READDIRPLUS3res;
+import com.emc.ecs.nfsclient.rpc.Credential;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+/**
+ * Compares the codecs generated from <code>src/main/xdr/nfs3.x</code> with the
+ * hand-written request and response classes, on GETATTR, the most frequent
+ * call, and on a READDIRPLUS reply of 100 entries, the largest reply to
+ * decode. Run with <code>./gradlew jmh</code>, and add
+ * <code>-Pjmh.profilers=gc</code> to compare allocations as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class XdrCodecBenchmark {
+
+    /**
+     * The size of an accepted reply header with an empty verifier.
+     */
+    private static final int REPLY_HEADER_SIZE = 24;
+
+    /**
+     * The number of entries in the READDIRPLUS reply.
+     */
+    private static final int ENTRIES = 100;
+
+    private final Credential _credential = new CredentialUnix(1000, 1000, null);
+
+    private final byte[] _fileHandle = new byte[32];
+
+    private NfsGetAttrRequest _getAttrRequest;
+
+    private final GETATTR3args _getAttrArgs = new GETATTR3args();
+
+    private Xdr _getAttrReply;
+
+    private final GETATTR3res _getAttrRes = new GETATTR3res();
+
+    private Xdr _readdirplusReply;
+
+    private final READDIRPLUS3res _readdirplusRes = new READDIRPLUS3res();
+
+    @Setup
+    public void setup() throws Exception {
+        _getAttrRequest = new NfsGetAttrRequest(_fileHandle, _credential, 3);
+        _getAttrArgs.object.setData(_fileHandle);
+
+        GETATTR3res getAttrRes = new GETATTR3res();
+        getAttrRes.status = Nfs3Xdr.NFS3_OK;
+        fillAttributes(getAttrRes.resok.objAttributes, 1);
+        _getAttrReply = makeReply(getAttrRes.encodedSize(), getAttrRes::encode);
+
+        READDIRPLUS3res readdirplusRes = new READDIRPLUS3res();
+        readdirplusRes.status = Nfs3Xdr.NFS3_OK;
+        readdirplusRes.resok.dirAttributes.attributesFollow = true;
+        fillAttributes(readdirplusRes.resok.dirAttributes.attributes, 2);
+        readdirplusRes.resok.reply.hasEntries = true;
+        readdirplusRes.resok.reply.entries = new Entryplus3();
+        readdirplusRes.resok.reply.eof = true;
+        Entryplus3 entry = readdirplusRes.resok.reply.entries;
+        for (int i = 0; i < ENTRIES; ++i) {
+            entry.fileid = 100 + i;
+            entry.setName("file-" + i);
+            entry.cookie = i + 1;
+            entry.nameAttributes.attributesFollow = true;
+            fillAttributes(entry.nameAttributes.attributes, 100 + i);
+            entry.nameHandle.handleFollows = true;
+            entry.nameHandle.handle.setData(new byte[32]);
+            if (i + 1 < ENTRIES) {
+                entry.hasNextentry = true;
+                entry.nextentry = new Entryplus3();
+                entry = entry.nextentry;
+            }
+        }
+        _readdirplusReply = makeReply(readdirplusRes.encodedSize(), readdirplusRes::encode);
+    }
+
+    @Benchmark
+    public void encodeGetAttrHandWritten(Blackhole blackhole) {
+        Xdr xdr = Xdr.allocate(_getAttrRequest.getMarshalledSize());
+        _getAttrRequest.marshalling(xdr);
+        blackhole.consume(xdr.getOffset());
+        xdr.release();
+    }
+
+    @Benchmark
+    public void encodeGetAttrGenerated(Blackhole blackhole) {
+        Xdr xdr = Xdr.allocate(_credential.getMarshalledSize() + 24 + _getAttrArgs.encodedSize());
+        _credential.marshallingCallHeader(xdr, Nfs3Xdr.NFS_PROGRAM, Nfs3Xdr.NFS_V3, Nfs3Xdr.NFSPROC3_GETATTR);
+        _getAttrArgs.encode(xdr);
+        blackhole.consume(xdr.getOffset());
+        xdr.release();
+    }
+
+    @Benchmark
+    public NfsGetAttrResponse decodeGetAttrHandWritten() throws Exception {
+        NfsGetAttrResponse response = new NfsGetAttrResponse(3);
+        response.unmarshalling(_getAttrReply);
+        return response;
+    }
+
+    @Benchmark
+    public GETATTR3res decodeGetAttrGenerated() {
+        _getAttrReply.setOffset(REPLY_HEADER_SIZE);
+        _getAttrRes.decode(_getAttrReply);
+        return _getAttrRes;
+    }
+
+    @Benchmark
+    public NfsReaddirplusResponse decodeReaddirplusHandWritten() throws Exception {
+        NfsReaddirplusResponse response = new NfsReaddirplusResponse(new ArrayList<NfsDirectoryPlusEntry>(), 3);
+        response.unmarshalling(_readdirplusReply);
+        return response;
+    }
+
+    @Benchmark
+    public void decodeReaddirplusCursor(Blackhole blackhole) throws Exception {
+        NfsReaddirplusResponse response = new NfsReaddirplusResponse(3);
+        response.unmarshalling(_readdirplusReply);
+        NfsDirectoryPlusCursor cursor = response.getCursor();
+        while (cursor.next()) {
+            blackhole.consume(cursor.getFileName());
+        }
+    }
+
+    @Benchmark
+    public void decodeReaddirplusGenerated(Blackhole blackhole) {
+        _readdirplusReply.setOffset(REPLY_HEADER_SIZE);
+        _readdirplusRes.decode(_readdirplusReply);
+        for (Entryplus3 entry = _readdirplusRes.resok.reply.entries; entry != null; entry = entry.hasNextentry
+                ? entry.nextentry : null) {
+            blackhole.consume(entry.nameLength);
+        }
+    }
+
+    /**
+     * @param attributes
+     * @param fileId
+     */
+    private static void fillAttributes(Fattr3 attributes, long fileId) {
+        attributes.type = Nfs3Xdr.NF3REG;
+        attributes.mode = 0644;
+        attributes.nlink = 1;
+        attributes.size = 4096;
+        attributes.used = 4096;
+        attributes.fileid = fileId;
+    }
+
+    /**
+     * The encoding of a reply body.
+     */
+    private interface Body {
+        void encode(Xdr xdr);
+    }
+
+    /**
+     * @param bodySize
+     * @param body
+     * @return An accepted reply with the body.
+     */
+    private static Xdr makeReply(int bodySize, Body body) {
+        Xdr xdr = new Xdr(REPLY_HEADER_SIZE + bodySize);
+        xdr.putInt(1); // xid
+        xdr.putInt(1); // REPLY
+        xdr.putInt(0); // MSG_ACCEPTED
+        xdr.putInt(0); // AUTH_NONE verifier
+        xdr.putInt(0);
+        xdr.putInt(0); // SUCCESS
+        body.encode(xdr);
+        return new Xdr(xdr.getBuffer(), 0, xdr.getOffset());
+    }
+
+}
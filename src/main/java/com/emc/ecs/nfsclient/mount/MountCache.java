@@ -0,0 +1,423 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.mount;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Singleton cache of what it takes to start using an export: the NFS port
+ * and the root file handle, keyed by server, export and credential flavor. A
+ * warm start skips the portmap and mount calls entirely.
+ *
+ * <p>
+ * Entries expire after the time to live. They can also be kept in a local
+ * file, so that they survive a restart. The file is read and written outside
+ * the lock of the cache, so lookups never wait for the disk. The cache does
+ * not check the entries itself: the client validates the root handle lazily,
+ * with a GETATTR, and removes the entry if the handle or port no longer work.
+ * </p>
+ */
+public class MountCache {
+
+    /**
+     * The usual logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(MountCache.class);
+
+    /**
+     * The default time to live of an entry in milliseconds.
+     */
+    private static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * The single instance.
+     */
+    private static final MountCache _instance = new MountCache();
+
+    /**
+     * @return The instance.
+     */
+    public static MountCache getInstance() {
+        return _instance;
+    }
+
+    /**
+     * The entries, by key.
+     */
+    private final Map<String, Entry> _entries = new HashMap<String, Entry>();
+
+    /**
+     * The time to live of an entry in milliseconds, or 0 if nothing is
+     * cached.
+     */
+    private long _ttlMillis = DEFAULT_TTL_MILLIS;
+
+    /**
+     * The file holding the entries, or <code>null</code> if they are only
+     * kept in memory.
+     */
+    private Path _file;
+
+    /**
+     * The number of changes made to the entries, which orders the snapshots
+     * written to the file.
+     */
+    private long _version;
+
+    /**
+     * Held while the file is written, so that only one snapshot is written at
+     * a time.
+     */
+    private final Object _saveLock = new Object();
+
+    /**
+     * The version of the last snapshot written to the file. Guarded by
+     * <code>_saveLock</code>.
+     */
+    private long _savedVersion;
+
+    /**
+     * Construct an instance. Only tests need any other than the shared one.
+     */
+    MountCache() {
+        super();
+    }
+
+    /**
+     * Set the time to live of the entries.
+     *
+     * @param ttlMillis
+     *            The time to live in milliseconds, or 0 to disable the cache.
+     */
+    public synchronized void setTtl(long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException(String.format("invalid mount cache ttl: %s", ttlMillis));
+        }
+        _ttlMillis = ttlMillis;
+        if (ttlMillis == 0) {
+            _entries.clear();
+        }
+    }
+
+    /**
+     * Keep the entries in a local file, loading the entries it already holds.
+     * The file is rewritten whenever an entry is added or removed.
+     *
+     * @param file
+     *            The file, or <code>null</code> to keep the entries in memory
+     *            only.
+     * @throws IOException
+     *             If the file exists but cannot be read.
+     */
+    public void setFile(Path file) throws IOException {
+        Map<String, Entry> loaded = new HashMap<String, Entry>();
+        if (file != null && Files.exists(file)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            } catch (IllegalArgumentException e) {
+                // a malformed escape, so nothing in the file can be trusted
+                LOG.warn("ignoring corrupt mount cache file " + file, e);
+                properties.clear();
+            }
+            for (String key : properties.stringPropertyNames()) {
+                Entry entry = isKey(key) ? Entry.parse(properties.getProperty(key)) : null;
+                if (entry != null) {
+                    loaded.put(key, entry);
+                } else {
+                    LOG.warn("ignoring invalid mount cache entry: {}={}", key, properties.getProperty(key));
+                }
+            }
+        }
+
+        synchronized (this) {
+            _file = file;
+            _entries.putAll(loaded);
+        }
+    }
+
+    /**
+     * @param server
+     *            The server name.
+     * @param exportedPath
+     *            The exported path.
+     * @param credentialFlavor
+     *            The flavor of the credential used to mount.
+     * @return The entry, or <code>null</code> if there is none or it has
+     *         expired.
+     */
+    public synchronized Entry get(String server, String exportedPath, int credentialFlavor) {
+        String key = toKey(server, exportedPath, credentialFlavor);
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry._createdMillis >= _ttlMillis) {
+            _entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Add or replace an entry.
+     *
+     * @param server
+     *            The server name.
+     * @param exportedPath
+     *            The exported path.
+     * @param credentialFlavor
+     *            The flavor of the credential used to mount.
+     * @param nfsPort
+     *            The NFS port.
+     * @param rootFileHandle
+     *            The root file handle.
+     */
+    public void put(String server, String exportedPath, int credentialFlavor, int nfsPort,
+            byte[] rootFileHandle) {
+        Snapshot snapshot;
+        synchronized (this) {
+            if (_ttlMillis == 0) {
+                return;
+            }
+            _entries.put(toKey(server, exportedPath, credentialFlavor),
+                    new Entry(nfsPort, rootFileHandle.clone(), System.currentTimeMillis()));
+            snapshot = takeSnapshot();
+        }
+        save(snapshot);
+    }
+
+    /**
+     * Remove an entry that did not work.
+     *
+     * @param server
+     *            The server name.
+     * @param exportedPath
+     *            The exported path.
+     * @param credentialFlavor
+     *            The flavor of the credential used to mount.
+     */
+    public void remove(String server, String exportedPath, int credentialFlavor) {
+        Snapshot snapshot;
+        synchronized (this) {
+            if (_entries.remove(toKey(server, exportedPath, credentialFlavor)) == null) {
+                return;
+            }
+            snapshot = takeSnapshot();
+        }
+        save(snapshot);
+    }
+
+    /**
+     * Copy the entries for the file. Must be called while holding the lock of
+     * the cache.
+     *
+     * @return The snapshot, or <code>null</code> if there is no file.
+     */
+    private Snapshot takeSnapshot() {
+        ++_version;
+        if (_file == null) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().format());
+        }
+        return new Snapshot(_file, properties, _version);
+    }
+
+    /**
+     * Write a snapshot of the entries to its file, unless a later one has
+     * already been written. A failure is logged, as the cache still works in
+     * memory.
+     *
+     * @param snapshot
+     *            The snapshot, or <code>null</code> if there is no file.
+     */
+    private void save(Snapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+
+        synchronized (_saveLock) {
+            if (snapshot._version <= _savedVersion) {
+                return;
+            }
+            try {
+                // replace the file in one step, so that readers never see half of it
+                Path temp = Files.createTempFile(snapshot._file.toAbsolutePath().getParent(), "mount", ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    snapshot._properties.store(out, "nfs client mount cache");
+                }
+                Files.move(temp, snapshot._file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                _savedVersion = snapshot._version;
+            } catch (IOException e) {
+                LOG.warn("cannot save the mount cache to " + snapshot._file, e);
+            }
+        }
+    }
+
+    /**
+     * @param server
+     * @param exportedPath
+     * @param credentialFlavor
+     * @return The key of the entry.
+     */
+    private static String toKey(String server, String exportedPath, int credentialFlavor) {
+        return server + ":" + exportedPath + "#" + credentialFlavor;
+    }
+
+    /**
+     * @param key
+     *            A key read from the file.
+     * @return <code>true</code> if it has the form
+     *         <code>server:exportedPath#credentialFlavor</code>,
+     *         <code>false</code> otherwise.
+     */
+    private static boolean isKey(String key) {
+        int colon = key.indexOf(':');
+        int hash = key.lastIndexOf('#');
+        if (colon <= 0 || hash <= colon) {
+            return false;
+        }
+        try {
+            Integer.parseInt(key.substring(hash + 1));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The entries as they were after one change, to be written to the file.
+     */
+    private static final class Snapshot {
+
+        /**
+         * The file to write.
+         */
+        private final Path _file;
+
+        /**
+         * The entries, formatted.
+         */
+        private final Properties _properties;
+
+        /**
+         * The version of the entries.
+         */
+        private final long _version;
+
+        /**
+         * @param file
+         * @param properties
+         * @param version
+         */
+        private Snapshot(Path file, Properties properties, long version) {
+            _file = file;
+            _properties = properties;
+            _version = version;
+        }
+
+    }
+
+    /**
+     * What it takes to start using an export.
+     */
+    public static class Entry {
+
+        /**
+         * The NFS port.
+         */
+        private final int _nfsPort;
+
+        /**
+         * The root file handle.
+         */
+        private final byte[] _rootFileHandle;
+
+        /**
+         * When the entry was created, in milliseconds since the epoch.
+         */
+        private final long _createdMillis;
+
+        /**
+         * @param nfsPort
+         * @param rootFileHandle
+         * @param createdMillis
+         */
+        private Entry(int nfsPort, byte[] rootFileHandle, long createdMillis) {
+            _nfsPort = nfsPort;
+            _rootFileHandle = rootFileHandle;
+            _createdMillis = createdMillis;
+        }
+
+        /**
+         * @return The NFS port.
+         */
+        public int getNfsPort() {
+            return _nfsPort;
+        }
+
+        /**
+         * @return The root file handle.
+         */
+        public byte[] getRootFileHandle() {
+            return _rootFileHandle.clone();
+        }
+
+        /**
+         * @return The entry as a line of the file.
+         */
+        private String format() {
+            return _nfsPort + "," + _createdMillis + ","
+                    + Base64.getEncoder().encodeToString(_rootFileHandle);
+        }
+
+        /**
+         * @param value
+         *            A line of the file.
+         * @return The entry, or <code>null</code> if the line is not valid.
+         */
+        private static Entry parse(String value) {
+            String[] fields = value.split(",");
+            if (fields.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(Integer.parseInt(fields[0]), Base64.getDecoder().decode(fields[2]),
+                        Long.parseLong(fields[1]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.emc.ecs.nfsclient.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the coalesced writes and the records and bytes they carry, so that
+ * the average and maximum batch sizes can be checked.
+ */
+public class BatchMetric {
+    private final AtomicLong batches = new AtomicLong(0);
+    private final AtomicLong records = new AtomicLong(0);
+    private final AtomicLong bytes = new AtomicLong(0);
+    private final AtomicLong maxRecords = new AtomicLong(0);
+
+    public void add(int batchRecords, long batchBytes) {
+        batches.incrementAndGet();
+        records.addAndGet(batchRecords);
+        bytes.addAndGet(batchBytes);
+        maxRecords.accumulateAndGet(batchRecords, Math::max);
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getRecords() {
+        return records.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getMaxRecords() {
+        return maxRecords.get();
+    }
+
+    /**
+     * @return the average number of records per batch since the last reset,
+     *         and start counting again.
+     */
+    public double getAndReset() {
+        long count = batches.getAndSet(0);
+        long total = records.getAndSet(0);
+        bytes.set(0);
+        maxRecords.set(0);
+
+        return (count == 0) ? 0 : (double) total / count;
+    }
+}
@@ -12,7 +12,8 @@ public class CallMetric {
     }
 
     public long getAndReset() {
-        long avg = latency.get() / count.get();
+        long calls = count.get();
+        long avg = (calls == 0) ? 0 : latency.get() / calls;
         latency.set(0);
         count.set(0);
 
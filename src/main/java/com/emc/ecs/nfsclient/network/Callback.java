@@ -4,4 +4,14 @@ import com.emc.ecs.nfsclient.rpc.RpcException;
 
 public interface Callback<T> {
     void invoke(T t) throws RpcException;
+
+    /**
+     * Called instead of <code>invoke</code> if the call fails. The default
+     * does nothing.
+     * 
+     * @param cause
+     *            The failure.
+     */
+    default void fail(Throwable cause) {
+    }
 }
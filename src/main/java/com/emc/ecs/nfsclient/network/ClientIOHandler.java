@@ -17,6 +17,8 @@ package com.emc.ecs.nfsclient.network;
 import com.emc.ecs.nfsclient.rpc.Xdr;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
@@ -95,7 +97,7 @@ public class ClientIOHandler extends SimpleChannelHandler {
      * org.jboss.netty.channel.ChannelStateEvent)
      */
     public void channelDisconnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-        closeConnection("Channel disconnected");
+        closeConnection("Channel disconnected", ctx.getChannel());
     }
 
     /*
@@ -107,13 +109,14 @@ public class ClientIOHandler extends SimpleChannelHandler {
      * org.jboss.netty.channel.ChannelStateEvent)
      */
     public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-        closeConnection("Channel closed");
+        closeConnection("Channel closed", ctx.getChannel());
     }
 
     /**
-     * Convenience method to standardize connection closing.We never try to
-     * reconnect the tcp connections. the new connection will be launched when
-     * new request is received. Reasons:
+     * Convenience method to standardize connection closing. Idle tcp
+     * connections are not reconnected: the new connection will be launched
+     * when new request is received. Connections are only re-established to
+     * replay pending idempotent requests, and only a few times. Reasons:
      * <ol>
      * <li>Portmap service will disconnect a tcp connection once it has been
      * idle for a few seconds.</li>
@@ -124,10 +127,12 @@ public class ClientIOHandler extends SimpleChannelHandler {
      * 
      * @param messageStart
      *            A string used to start the log message.
+     * @param channel
+     *            The channel that was closed.
      */
-    private void closeConnection(String messageStart) {
+    private void closeConnection(String messageStart, Channel channel) {
         LOG.warn(messageStart + ": {}", getRemoteAddress());
-        _connection.close();
+        _connection.close(channel);
     }
 
     /*
@@ -139,12 +144,12 @@ public class ClientIOHandler extends SimpleChannelHandler {
      * org.jboss.netty.channel.MessageEvent)
      */
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-        byte[] rpcResponse = (byte[]) e.getMessage();
-        // remove marking
-        Xdr x = RecordMarkingUtil.removeRecordMarking(rpcResponse);
+        // the record marking was removed by RPCRecordDecoder
+        ChannelBuffer rpcResponse = (ChannelBuffer) e.getMessage();
+        Xdr x = RecordMarkingUtil.toXdr(rpcResponse);
         // remove the request from timeout manager map
         int xid = x.getXid();
-        _connection.notifySender(Integer.valueOf(xid), x);
+        _connection.notifySender(xid, x);
     }
 
     /*
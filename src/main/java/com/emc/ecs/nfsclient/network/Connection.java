@@ -16,6 +16,7 @@ package com.emc.ecs.nfsclient.network;
 
 import com.emc.ecs.nfsclient.rpc.RpcException;
 import com.emc.ecs.nfsclient.rpc.RpcStatus;
+import com.emc.ecs.nfsclient.rpc.RpcTimeoutException;
 import com.emc.ecs.nfsclient.rpc.Xdr;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
@@ -27,12 +28,21 @@ import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.socket.nio.NioSocketChannelConfig;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Each Connection instance manages a tcp connection. The class is used to send
@@ -63,15 +73,46 @@ public class Connection {
     private static final int CONNECT_TIMEOUT = 10000; // 10 seconds
 
     /**
-     * internal sending queue (not tcp sending buffer) the rename/lookup/readdir
-     * has size between 256-516bytes, 5M can hold 10000 pending requests for
-     * data writing, each request is 512K and maximum 40 pending requests are
-     * allowed. (512k is the preferred size in a single request. For object >
-     * 512K, it should be split to 512K-size chunks.) the queue size need be
-     * 20M.
+     * The number of times a dropped connection is re-established, without a
+     * response in between, before its pending requests are failed.
      */
-    private static final int MAX_SENDING_QUEUE_SIZE = 1 * 1024 * 1024 * 1024;// bytes - total
-                                                                // 1G
+    private static final int MAX_RECONNECT_ATTEMPTS = 3;
+
+    /**
+     * The delay before the first reconnection attempt in milliseconds. Later
+     * attempts wait proportionally longer.
+     */
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+
+    /**
+     * Runs the reconnections. Binding to a privileged port may try many ports
+     * and blocks on each, so it must not run on the timer thread.
+     */
+    private static final ExecutorService RECONNECT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nfs-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    });
+
+    /**
+     * The default maximum number of requests in flight per connection. Further
+     * requests wait for credits rather than failing.
+     */
+    static final int DEFAULT_MAX_PENDING_REQUESTS = 1024;
+
+    /**
+     * The default maximum number of bytes in flight per connection. The
+     * rename/lookup/readdir requests have sizes between 256-516bytes, and data
+     * writing requests are 512K at most (512k is the preferred size in a single
+     * request. For object > 512K, it should be split to 512K-size chunks.), so
+     * this allows 64 pending writes.
+     */
+    static final long DEFAULT_MAX_PENDING_BYTES = 32 * 1024 * 1024;
 
     /**
      * Netty helper instance.
@@ -108,14 +149,60 @@ public class Connection {
     private final boolean _usePrivilegedPort;
 
     /**
-     * Store the ChannelFuture instances while they are in progress. The map is final, but the content will change.
+     * The calls in progress, keyed by xid. The table also allocates the xids.
      */
-    private final ConcurrentHashMap<Integer, ChannelFuture> _futureMap = new ConcurrentHashMap<Integer, ChannelFuture>();
+    private final PendingCallTable _pendingCalls = new PendingCallTable();
 
     /**
-     * Store the Xdr response instances while they are in progress. The map is final, but the content will change.
+     * The number of reconnection attempts since the last response.
      */
-    private final ConcurrentHashMap<Integer, Xdr> _responseMap = new ConcurrentHashMap<Integer, Xdr>();
+    private volatile int _reconnectAttempts;
+
+    /**
+     * The last channel whose closing has been handled, so that the
+     * disconnected and closed events of a channel are handled only once.
+     */
+    private Channel _closedChannel;
+
+    /**
+     * <code>true</code> once the connection has been shut down on purpose, so
+     * that it is not re-established.
+     */
+    private volatile boolean _shutdown;
+
+    /**
+     * The number of requests sent or waiting to be sent on this connection,
+     * for which no response has been received yet.
+     */
+    private final AtomicInteger _pendingRequests = new AtomicInteger();
+
+    /**
+     * The request and byte credits of this connection, whose parent is the
+     * global credits.
+     */
+    private final SendCredits _credits;
+
+    /**
+     * Coalesces small writes, or <code>null</code> if every request is written
+     * on its own.
+     */
+    private final WriteBatcher _batcher;
+
+    /**
+     * The total size in bytes of the pending requests.
+     */
+    private final AtomicLong _pendingBytes = new AtomicLong();
+
+    /**
+     * The time of the last request or response on this connection, from
+     * <code>System.nanoTime()</code>.
+     */
+    private volatile long _lastUsed = System.nanoTime();
+
+    /**
+     * The pool owning this connection, or <code>null</code> if there is none.
+     */
+    private final ConnectionPool _pool;
 
     /**
      * Simple enums for communicating connection states.
@@ -143,6 +230,25 @@ public class Connection {
      *            </ul>
      */
     public Connection(String remoteHost, int port, boolean usePrivilegedPort) {
+        this(remoteHost, port, usePrivilegedPort, null);
+    }
+
+    /**
+     * @param remoteHost A unique name for the host to which the connection is being made.
+     * @param port The remote host port being used for the connection.
+     * @param usePrivilegedPort
+     *            <ul>
+     *            <li>If <code>true</code>, use a privileged port (below 1024)
+     *            for RPC communication.</li>
+     *            <li>If <code>false</code>, use any non-privileged port for RPC
+     *            communication.</li>
+     *            </ul>
+     * @param pool The pool owning this connection, which is told when the connection is closed.
+     */
+    Connection(String remoteHost, int port, boolean usePrivilegedPort, ConnectionPool pool) {
+        _pool = pool;
+        _credits = NetMgr.getInstance().newConnectionCredits();
+        _batcher = NetMgr.getInstance().newWriteBatcher();
         _remoteHost = remoteHost;
         _port = port;
         _usePrivilegedPort = true;
@@ -195,6 +301,36 @@ public class Connection {
         return _state;
     }
 
+    /**
+     * Convenience getter method.
+     * 
+     * @return The number of requests in flight on this connection, including
+     *         those waiting for the connection to be established.
+     */
+    public int getQueueDepth() {
+        return _pendingRequests.get();
+    }
+
+    /**
+     * Convenience getter method.
+     * 
+     * @return The total size in bytes of the requests in flight on this
+     *         connection.
+     */
+    public long getPendingBytes() {
+        return _pendingBytes.get();
+    }
+
+    /**
+     * Convenience getter method.
+     * 
+     * @return The time of the last request or response on this connection,
+     *         from <code>System.nanoTime()</code>.
+     */
+    long getLastUsed() {
+        return _lastUsed;
+    }
+
     /**
      * Send a RPC request and wait until a response is received or timeout. The
      * function will not retry. It is the responsibility of the application to
@@ -203,12 +339,14 @@ public class Connection {
      * timeout or network error occurs. (2). Once the connection is established,
      * sendAndWait can send data. b. If the tcp connection is established: (1).
      * the request is put in the internal queue of netty. Netty will send it
-     * asap. If there are already lots of pending requests in the queue,
-     * sendAndWait return error. (2). sendAndWait will wait until it gets a
+     * asap. If there are already too many pending requests or bytes, on this
+     * connection or overall, sendAndWait waits for some of them to complete
+     * first, within the timeout. (2). sendAndWait will wait until it gets a
      * response from NFS server or timeout. (3). If the tcp connection is
      * broken, the function return error with network error. c. If the tcp
      * connection is broken suddenly: (1) the old sendAndWait will get the
-     * network error or timeout (2) The new sendAndWait will follow (a).
+     * network error or timeout (2) The new sendAndWait will follow (a). A
+     * timeout is reported with an <code>RpcTimeoutException</code>.
      * 
      * @param timeout
      *            The timeout in seconds.
@@ -218,150 +356,303 @@ public class Connection {
      * @throws RpcException
      */
     public Xdr sendAndWait(int timeout, Xdr xdrRequest) throws RpcException {
-        // no lock is required here.
-        // The status may be changed after the checking,
-        // or there exists a small window that the status is not consistent to
-        // the actual tcp connection state.
-        // Both above cases will not cause any issues.
-        if (_state.equals(State.CONNECTED) == false) {
-            _channelFuture.awaitUninterruptibly();
-            if (_channelFuture.isSuccess() == false) {
-
-                String msg = String.format("waiting for connection to be established, but failed %s",
-                        getRemoteAddress());
-                LOG.error(msg);
+        return sendAndWait(timeout, TimeUnit.SECONDS, xdrRequest);
+    }
 
-                // return RpcException, the exact reason should already be
-                // logged in IOHandler::exceptionCaught()
-                throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
+    /**
+     * Send a RPC request and wait until a response is received or timeout,
+     * as <code>sendAndWait(int, Xdr)</code> does. The timeout covers the
+     * waits for the connection and for send credits as well as the response.
+     * 
+     * @param timeout
+     *            The timeout.
+     * @param unit
+     *            The unit of the timeout.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return The Xdr data for the response.
+     * @throws RpcException
+     */
+    public Xdr sendAndWait(long timeout, TimeUnit unit, Xdr xdrRequest) throws RpcException {
+        // the timeout is managed by the shared timer, so the caller simply
+        // waits for the future to be completed one way or the other. join()
+        // parks rather than waiting on a monitor, so a virtual thread gives
+        // up its carrier while it waits.
+        try {
+            return sendAsync(timeout, unit, xdrRequest).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
             }
+            throw e;
         }
+    }
+
+    /**
+     * Send a RPC request without blocking the caller. The behaviours match
+     * those of <code>sendAndWait</code>, except that the caller is never
+     * parked: if the tcp connection is not established yet, the request is
+     * sent once it is, and the returned future is completed when the response
+     * is received. Any failure is reported by completing the future
+     * exceptionally with an <code>RpcException</code>, or with an
+     * <code>RpcTimeoutException</code> if no response is received in time.
+     * Cancelling the future abandons the call.
+     * 
+     * @param timeout
+     *            The timeout in seconds.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> sendAsync(int timeout, Xdr xdrRequest) {
+        return sendAsync(timeout, TimeUnit.SECONDS, xdrRequest);
+    }
 
-        // check whether the internal queue of netty has enough spaces to hold
-        // the request
-        // False means that the too many pending requests are in the queue or
-        // the connection is closed.
-        if (_channel.isWritable() == false) {
-            String msg;
-            if (_channel.isConnected()) {
-                msg = String.format("too many pending requests for the connection: %s", getRemoteAddress());
+    /**
+     * Send a RPC request without blocking the caller, as
+     * <code>sendAsync(int, Xdr)</code> does. The timeout covers the waits for
+     * the connection and for send credits as well as the response.
+     * 
+     * @param timeout
+     *            The timeout.
+     * @param unit
+     *            The unit of the timeout.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> sendAsync(long timeout, TimeUnit unit, final Xdr xdrRequest) {
+        final CompletableFuture<Xdr> result = new CompletableFuture<Xdr>();
+        final long timeoutNanos = unit.toNanos(timeout);
+        final long expiryNanos = System.nanoTime() + timeoutNanos;
+
+        // track the load for the connection selection in ConnectionPool
+        final long bytes = xdrRequest.getOffset() + xdrRequest.getPayloadsSize();
+        _pendingRequests.incrementAndGet();
+        _pendingBytes.addAndGet(bytes);
+        _lastUsed = System.nanoTime();
+
+        // wait for credits, so that the data in flight stays bounded
+        final CompletableFuture<Void> admission = _credits.acquire(bytes, xdrRequest.getTrafficClass(),
+                timeoutNanos, String.valueOf(getRemoteAddress()));
+        result.whenComplete((response, cause) -> {
+            _pendingRequests.decrementAndGet();
+            _pendingBytes.addAndGet(-bytes);
+            _lastUsed = System.nanoTime();
+            if (admission.isDone()) {
+                if (!admission.isCompletedExceptionally()) {
+                    _credits.release(bytes);
+                }
             } else {
-                msg = String.format("the connection is broken: %s", getRemoteAddress());
+                // a cancelled call may still be waiting for its credits
+                admission.thenRun(() -> _credits.release(bytes));
             }
-
-            // too many pending request are in the queue, return error
-            throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
-        }
-
-        // put the request into a map for timeout management
-        ChannelFuture timeoutFuture = Channels.future(_channel);
-        Integer xid = Integer.valueOf(xdrRequest.getXid());
-        _futureMap.put(xid, timeoutFuture);
-
-        // put the request into the queue of the netty, netty will send data
-        // asynchronously
-        RecordMarkingUtil.putRecordMarkingAndSend(_channel, xdrRequest);
-
-        timeoutFuture.awaitUninterruptibly(timeout, TimeUnit.SECONDS);
-
-        // remove the response from timeout maps
-        Xdr response = _responseMap.remove(xid);
-        _futureMap.remove(xid);
-
-        if (timeoutFuture.isSuccess() == false) {
-
-            LOG.warn("cause:", timeoutFuture.getCause());
-
-            if (timeoutFuture.isDone()) {
-                String msg = String.format("tcp IO error on the connection: %s", getRemoteAddress());
-                throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
+        });
+        admission.whenComplete((admitted, cause) -> {
+            if (cause != null) {
+                result.completeExceptionally(cause);
             } else {
-                String msg = String.format("rpc request timeout on the connection: %s", getRemoteAddress());
-                throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
+                dispatch(expiryNanos, xdrRequest, result);
             }
-        }
+        });
 
-        return response;
+        return result;
     }
 
-    public void sendAsync(Xdr xdrRequest, Callback<Xdr> callback) throws RpcException {
+    /**
+     * Send the request now if the tcp connection is established, or once it
+     * is, unless the call expires first.
+     * 
+     * @param expiryNanos
+     *            The expiry of the call, from <code>System.nanoTime()</code>.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @param result
+     *            The future to complete.
+     */
+    private void dispatch(final long expiryNanos, final Xdr xdrRequest, final CompletableFuture<Xdr> result) {
         // no lock is required here.
         // The status may be changed after the checking,
         // or there exists a small window that the status is not consistent to
         // the actual tcp connection state.
         // Both above cases will not cause any issues.
-        if (_state.equals(State.CONNECTED) == false) {
-            _channelFuture.awaitUninterruptibly();
-            if (_channelFuture.isSuccess() == false) {
-
-                String msg = String.format("waiting for connection to be established, but failed %s",
-                        getRemoteAddress());
-                LOG.error(msg);
-
-                // return RpcException, the exact reason should already be
-                // logged in IOHandler::exceptionCaught()
-                throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
-            }
+        if (_state.equals(State.CONNECTED)) {
+            submit(expiryNanos, xdrRequest, result);
+        } else {
+            // the call may expire before the connection is established
+            final Timeout connectionWait = NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+                /* (non-Javadoc)
+                 * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+                 */
+                public void run(Timeout t) {
+                    String msg = String.format("timed out waiting for connection to be established: %s",
+                            getRemoteAddress());
+                    result.completeExceptionally(new RpcTimeoutException(msg));
+                }
+            }, Math.max(0, expiryNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            _channelFuture.addListener(new ChannelFutureListener() {
+                /* (non-Javadoc)
+                 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+                 */
+                public void operationComplete(ChannelFuture future) {
+                    connectionWait.cancel();
+                    if (future.isSuccess()) {
+                        submit(expiryNanos, xdrRequest, result);
+                    } else {
+                        String msg = String.format("waiting for connection to be established, but failed %s",
+                                getRemoteAddress());
+                        LOG.error(msg);
+
+                        // return RpcException, the exact reason should already be
+                        // logged in IOHandler::exceptionCaught()
+                        result.completeExceptionally(new RpcException(RpcStatus.NETWORK_ERROR, msg));
+                    }
+                }
+            });
         }
+    }
 
-        // check whether the internal queue of netty has enough spaces to hold
-        // the request
-        // False means that the too many pending requests are in the queue or
-        // the connection is closed.
-        if (_channel.isWritable() == false) {
-            String msg;
-            if (_channel.isConnected()) {
-                msg = String.format("too many pending requests for the connection: %s", getRemoteAddress());
-            } else {
-                msg = String.format("the connection is broken: %s", getRemoteAddress());
+    /**
+     * Hand the request to the event loop of the channel. Each channel belongs
+     * to one loop, whose task queue takes requests from any number of
+     * threads, so the xid allocation, the deadline and the write all happen
+     * on the loop, and the loop writes the request without handing it over
+     * again. The request is sent directly when already on the loop.
+     * 
+     * @param expiryNanos
+     *            The expiry of the call, from <code>System.nanoTime()</code>.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @param result
+     *            The future to complete.
+     */
+    private void submit(final long expiryNanos, final Xdr xdrRequest, final CompletableFuture<Xdr> result) {
+        _channel.getPipeline().execute(new Runnable() {
+            /* (non-Javadoc)
+             * @see java.lang.Runnable#run()
+             */
+            public void run() {
+                send(expiryNanos, xdrRequest, result);
             }
+        }).addListener(new ChannelFutureListener() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+             */
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess() && !result.isDone()) {
+                    String msg = String.format("the event loop did not take the request, connection: %s",
+                            getRemoteAddress());
+                    result.completeExceptionally(new RpcException(RpcStatus.NETWORK_ERROR, msg));
+                }
+            }
+        });
+    }
 
-            // too many pending request are in the queue, return error
-            throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
+    /**
+     * Put the request into the queue of netty, and complete the future when
+     * the response is received, the connection fails, or the call expires.
+     * 
+     * @param expiryNanos
+     *            The expiry of the call, from <code>System.nanoTime()</code>.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @param result
+     *            The future to complete.
+     */
+    private void send(long expiryNanos, Xdr xdrRequest, final CompletableFuture<Xdr> result) {
+        // a call cancelled while it waited is not sent
+        if (result.isDone()) {
+            return;
         }
 
-        // put the request into a map for timeout management
-        ChannelFuture timeoutFuture = Channels.future(_channel);
-        Integer xid = Integer.valueOf(xdrRequest.getXid());
-        _futureMap.put(xid, timeoutFuture);
-
+        // nor is a call whose time ran out while it waited
+        long remainingNanos = expiryNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            String msg = String.format("rpc request timeout on the connection: %s", getRemoteAddress());
+            result.completeExceptionally(new RpcTimeoutException(msg));
+            return;
+        }
 
-        timeoutFuture.addListener(new ChannelFutureListener() {
-            @Override
-            public void operationComplete(ChannelFuture channelFuture) throws Exception {
-//                System.out.println(String.format("call listener ..%s", channelFuture));
-                if (channelFuture.isSuccess()) {
-                    Xdr response = _responseMap.remove(xid);
-                    callback.invoke(response);
-                }
-                _futureMap.remove(xid);
+        try {
+            checkConnected();
+        } catch (RpcException e) {
+            result.completeExceptionally(e);
+            return;
+        }
 
+        // put the request into the table for timeout management, which gives
+        // it the xid of this connection, or keeps the xid of its earlier
+        // attempt
+        PendingCallTable.Call call = new PendingCallTable.Call(xdrRequest, result);
+        final int xid = xdrRequest.isXidReserved() ? _pendingCalls.add(call, xdrRequest.getXid())
+                : _pendingCalls.add(call);
+        xdrRequest.putXid(xid);
+        _pendingCalls.removeWhenCancelled(call);
+
+        // expire the request on the shared timer, rather than parking a thread
+        call.setDeadline(NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+             */
+            public void run(Timeout t) {
+                expire(xid);
             }
-        });
-
+        }, remainingNanos, TimeUnit.NANOSECONDS));
 
         // put the request into the queue of the netty, netty will send data
         // asynchronously
-        RecordMarkingUtil.putRecordMarkingAndSend(_channel, xdrRequest);
-
-        // remove the response from timeout maps
-//        Xdr response = _responseMap.remove(xid);
-//        _futureMap.remove(xid);
-//
-//        if (timeoutFuture.isSuccess() == false) {
-//
-//            LOG.warn("cause:", timeoutFuture.getCause());
-//
-//            if (timeoutFuture.isDone()) {
-//                String msg = String.format("tcp IO error on the connection: %s", getRemoteAddress());
-//                throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
-//            } else {
-//                String msg = String.format("rpc request timeout on the connection: %s", getRemoteAddress());
-//                throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
-//            }
-//        }
-//
-//        return response;
+        write(xdrRequest);
+    }
+
+    /**
+     * Put the request into the queue of netty, directly or through the write
+     * batcher.
+     * 
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     */
+    private void write(Xdr xdrRequest) {
+        // a request whose call has already completed is not sent, as its
+        // buffer may have gone back to the pool
+        if (!xdrRequest.retain()) {
+            return;
+        }
+        if (_batcher == null) {
+            RecordMarkingUtil.putRecordMarkingAndSend(_channel, xdrRequest);
+        } else {
+            _batcher.write(_channel, xdrRequest);
+        }
+    }
+
+    /**
+     * Fail a pending request whose timeout has expired, and remove it from
+     * the table. Do nothing if the response has already arrived.
+     * 
+     * @param xid
+     *            The xid of the request.
+     */
+    private void expire(int xid) {
+        PendingCallTable.Call call = _pendingCalls.remove(xid);
+
+        if (call != null) {
+            String msg = String.format("rpc request timeout on the connection: %s", getRemoteAddress());
+            call.fail(new RpcTimeoutException(msg));
+        }
+    }
+
+    /**
+     * Check whether the connection can take the request. The amount of
+     * pending data is bounded by the credits, so only a closed connection is
+     * refused.
+     * 
+     * @throws RpcException
+     *             If the request cannot be queued.
+     */
+    private void checkConnected() throws RpcException {
+        if (!_channel.isConnected()) {
+            String msg = String.format("the connection is broken: %s", getRemoteAddress());
+            throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
+        }
     }
 
     /**
@@ -373,7 +664,17 @@ public class Connection {
         if (_state.equals(State.CONNECTED)) {
             return;
         }
+        connect(_usePrivilegedPort ? bindToPrivilegedPort() : null);
+    }
 
+    /**
+     * Start a new tcp connection asynchronously.
+     * 
+     * @param boundChannel
+     *            A channel bound to a privileged port, or <code>null</code> if
+     *            any local port will do.
+     */
+    private void connect(Channel boundChannel) {
         final ChannelFuture oldChannelFuture = _channelFuture;
 
         if (LOG.isDebugEnabled()) {
@@ -382,8 +683,8 @@ public class Connection {
         }
         _state = State.CONNECTING;
 
-        if (_usePrivilegedPort) {
-            _channel = bindToPrivilegedPort();
+        if (boundChannel != null) {
+            _channel = boundChannel;
             _channelFuture = _channel.connect(getRemoteAddress());
         } else {
             _channelFuture = _clientBootstrap.connect();
@@ -391,7 +692,8 @@ public class Connection {
         }
 
         NioSocketChannelConfig cfg = (NioSocketChannelConfig) _channel.getConfig();
-        cfg.setWriteBufferHighWaterMark(MAX_SENDING_QUEUE_SIZE);
+        // the credits bound the queue, so netty need not flag it as full first
+        cfg.setWriteBufferHighWaterMark((int) Math.min(Integer.MAX_VALUE, 2 * _credits.getMaxBytes()));
 
         _channelFuture.addListener(new ChannelFutureListener() {
             /* (non-Javadoc)
@@ -400,6 +702,7 @@ public class Connection {
             public void operationComplete(ChannelFuture future) {
                 if (_channelFuture.isSuccess()) {
                     _state = State.CONNECTED;
+                    replayPendingRequests();
                     oldChannelFuture.setSuccess();
                 } else {
                     _state = State.DISCONNECTED;
@@ -412,42 +715,126 @@ public class Connection {
     }
 
     /**
-     * This is called when the application is shutdown or the channel is closed.
+     * This is called when the application is shutdown or the connection is no
+     * longer needed. The connection is not re-established afterwards.
      */
     protected void shutdown() {
+        _shutdown = true;
         if (_channel != null) {
             _channel.close();
         }
     }
 
     /**
-     * This is called when the connection should be closed.
+     * This is called when the channel is closed. If idempotent requests are
+     * pending, the connection is re-established and they are sent again under
+     * their original xids, while the other pending requests are failed so
+     * that the caller can decide whether to retry them. Once the reconnection
+     * budget is exhausted, or if nothing can be replayed, the connection is
+     * closed for good and all pending requests are failed.
+     * 
+     * @param channel
+     *            The channel that was closed.
      */
-    protected void close() {
+    protected synchronized void close(Channel channel) {
+        if (channel != _channel || channel == _closedChannel) {
+            // an earlier channel, or an event already handled
+            return;
+        }
+        _closedChannel = channel;
         _state = State.DISCONNECTED;
+        channel.close();
+
+        if (!_shutdown && !_pendingCalls.getIdempotent().isEmpty() && _reconnectAttempts < MAX_RECONNECT_ATTEMPTS) {
+            notifyPendingSenders("Channel closed, non-idempotent request cannot be replayed.", false);
+
+            // new requests wait for the reconnection
+            _channelFuture = Channels.future(null, true);
+            _reconnectAttempts++;
+            LOG.warn("reconnecting to {}, attempt {}", getRemoteAddress(), _reconnectAttempts);
+            NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+                /* (non-Javadoc)
+                 * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+                 */
+                public void run(Timeout timeout) {
+                    RECONNECT_EXECUTOR.execute(() -> reconnect());
+                }
+            }, RECONNECT_DELAY_MILLIS * _reconnectAttempts, TimeUnit.MILLISECONDS);
+            return;
+        }
 
-        shutdown();
-
-        // remove the connection from map
-        NetMgr.getInstance().dropConnection(InetSocketAddress.createUnresolved(_remoteHost, _port));
+        // remove the connection from its pool, or the pool from the map
+        if (_pool != null) {
+            _pool.remove(this);
+        } else {
+            NetMgr.getInstance().dropConnection(InetSocketAddress.createUnresolved(_remoteHost, _port));
+        }
 
         // notify all the pending requests in the timeout map
         notifyAllPendingSenders("Channel closed, connection closing.");
+        _channelFuture.cancel();
+    }
+
+    /**
+     * Start a new tcp connection for the pending requests, unless the
+     * connection has been shut down in the meantime. The bind to a privileged
+     * port blocks, so it is done before taking the lock, which only covers
+     * the change of state.
+     */
+    private void reconnect() {
+        Channel boundChannel = null;
+        try {
+            if (_usePrivilegedPort && !_shutdown) {
+                boundChannel = bindToPrivilegedPort();
+            }
+        } catch (RpcException e) {
+            LOG.error("reconnection failed: {}", getRemoteAddress(), e);
+            synchronized (this) {
+                if (_pool != null) {
+                    _pool.remove(this);
+                }
+                notifyAllPendingSenders("Reconnection failed, connection closing.");
+                _channelFuture.cancel();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (_shutdown) {
+                if (boundChannel != null) {
+                    boundChannel.close();
+                }
+                notifyAllPendingSenders("Connection shut down while reconnecting.");
+                _channelFuture.cancel();
+                return;
+            }
+            connect(boundChannel);
+        }
     }
 
     /**
-     * Update the response map with the response and notify the thread waiting for the
-     * response. Do nothing if the future has been removed.
+     * Send the pending idempotent requests again on the new channel, under
+     * their original xids.
+     */
+    private void replayPendingRequests() {
+        for (PendingCallTable.Call call : _pendingCalls.getIdempotent()) {
+            write(call.getRequest());
+        }
+    }
+
+    /**
+     * Complete the pending call with the response. Do nothing if the call has
+     * been removed, as late replies to expired requests are dropped.
      * 
      * @param xid
      * @param response
      */
-    protected void notifySender(Integer xid, Xdr response) {
-        ChannelFuture future = _futureMap.get(xid);
-        _responseMap.put(xid, response);
+    protected void notifySender(int xid, Xdr response) {
+        PendingCallTable.Call call = _pendingCalls.remove(xid);
 
-        if (future != null) {
-            future.setSuccess();
+        if (call != null) {
+            _reconnectAttempts = 0;
+            NetMgr.getInstance().complete(call, response);
         }
     }
 
@@ -455,8 +842,27 @@ public class Connection {
      * Notify all the senders of all pending requests
      */
     protected void notifyAllPendingSenders(String message) {
-        for (ChannelFuture future : _futureMap.values()) {
-            future.setFailure(new Error(message));
+        notifyPendingSenders(message, true);
+    }
+
+    /**
+     * Notify the senders of pending requests
+     * 
+     * @param message
+     * @param includeIdempotent
+     *            If <code>false</code>, the senders of idempotent requests are
+     *            not notified.
+     */
+    private void notifyPendingSenders(String message, boolean includeIdempotent) {
+        List<PendingCallTable.Call> calls = _pendingCalls.removeAll(includeIdempotent);
+        if (calls.isEmpty()) {
+            return;
+        }
+
+        LOG.warn("{}, failing {} pending requests", message, calls.size());
+        String msg = String.format("tcp IO error on the connection: %s", getRemoteAddress());
+        for (PendingCallTable.Call call : calls) {
+            call.fail(new RpcException(RpcStatus.NETWORK_ERROR, msg));
         }
     }
 
@@ -484,7 +890,7 @@ public class Connection {
                 ChannelPipeline pipeline = _clientBootstrap.getPipelineFactory().getPipeline();
                 Channel channel = _clientBootstrap.getFactory().newChannel(pipeline);
                 channel.getConfig().setOptions(_clientBootstrap.getOptions());
-                ChannelFuture bindFuture = channel.bind(new InetSocketAddress(port)).awaitUninterruptibly();
+                ChannelFuture bindFuture = awaitUninterruptibly(channel.bind(new InetSocketAddress(port)));
                 if (bindFuture.isSuccess()) {
                     System.out.println("Success! Bound to port " + port);
                     return bindFuture.getChannel();
@@ -499,4 +905,28 @@ public class Connection {
         throw new RpcException(RpcStatus.LOCAL_BINDING_ERROR, String.format("Cannot bind a port < 1024: %s", getRemoteAddress()));
     }
 
+    /**
+     * Wait for a netty future to complete. The <code>await</code> methods of
+     * netty wait on the monitor of the future, which pins a virtual thread to
+     * its carrier, so this waits on a <code>CompletableFuture</code>
+     * completed by a listener instead.
+     * 
+     * @param future
+     *            The netty future.
+     * @return The same future, now complete.
+     */
+    static ChannelFuture awaitUninterruptibly(ChannelFuture future) {
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        future.addListener(new ChannelFutureListener() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+             */
+            public void operationComplete(ChannelFuture f) {
+                done.complete(null);
+            }
+        });
+        done.join();
+        return future;
+    }
+
 }
@@ -2,29 +2,401 @@ package com.emc.ecs.nfsclient.network;
 
 import com.emc.ecs.nfsclient.rpc.RpcException;
 
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ConnectionPool {
 
-    private final ArrayList<Connection> pool;
+    /**
+     * The ways of choosing the connection for a request.
+     */
+    public enum Strategy {
+        /**
+         * Pick a connection at random.
+         */
+        RANDOM,
+        /**
+         * Cycle through the connections in order.
+         */
+        ROUND_ROBIN,
+        /**
+         * Pick the connection with the fewest requests in flight, breaking
+         * ties on the fewest bytes in flight.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Pick two connections at random, and use the less loaded one.
+         */
+        POWER_OF_TWO_CHOICES;
+    }
+
+    /**
+     * A new connection is added when the average number of requests in flight
+     * per connection reaches this value.
+     */
+    private static final int GROW_DEPTH = 8;
+
+    /**
+     * A new connection is added when the average number of bytes in flight
+     * per connection reaches this value.
+     */
+    private static final long GROW_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Connections above the minimum are closed after being idle for this long.
+     */
+    private static final long IDLE_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * The connections. Reads happen on every request and changes are rare, so
+     * the array is replaced on each change, under the pool lock, and requests
+     * choose a connection without locking.
+     */
+    private volatile Connection[] pool = new Connection[0];
+
+    private final String remoteHost;
+
+    private final int port;
+
+    private final boolean usePrivilegedPort;
+
+    private final Strategy strategy;
+
+    /**
+     * The minimum number of connections, once the first one has been opened.
+     */
+    private volatile int minSize;
+
+    /**
+     * The maximum number of connections.
+     */
+    private volatile int maxSize;
+
+    /**
+     * The next index to use for round-robin selection.
+     */
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * Guards the changes to the pool. Opening a connection may block, so this
+     * is a lock rather than a monitor, which would pin a virtual thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The pending task closing idle connections, or <code>null</code> if
+     * there is none.
+     */
+    private Timeout idleTimeout;
+
+    /**
+     * Create a pool of a fixed size.
+     *
+     * @param remoteHost
+     * @param port
+     * @param usePrivilegedPort
+     * @param n
+     *            The number of connections.
+     */
+    public ConnectionPool(String remoteHost, int port, boolean usePrivilegedPort, int n) {
+        this(remoteHost, port, usePrivilegedPort, n, n, Strategy.LEAST_OUTSTANDING);
+    }
+
+    /**
+     * Create a pool that grows from <code>minSize</code> to
+     * <code>maxSize</code> connections as the load requires, and shrinks back
+     * when connections are idle. No connection is opened until the first
+     * request.
+     *
+     * @param remoteHost
+     * @param port
+     * @param usePrivilegedPort
+     * @param minSize
+     *            The minimum number of connections.
+     * @param maxSize
+     *            The maximum number of connections.
+     * @param strategy
+     *            The way of choosing the connection for a request.
+     */
+    public ConnectionPool(String remoteHost, int port, boolean usePrivilegedPort, int minSize, int maxSize,
+            Strategy strategy) {
+        this.remoteHost = remoteHost;
+        this.port = port;
+        this.usePrivilegedPort = usePrivilegedPort;
+        this.strategy = strategy;
+        setSize(minSize, maxSize);
+    }
+
+    /**
+     * Change the bounds of the pool. Existing connections above the new
+     * maximum are closed when they become idle.
+     *
+     * @param minSize
+     *            The minimum number of connections.
+     * @param maxSize
+     *            The maximum number of connections, at least 1.
+     */
+    public void setSize(int minSize, int maxSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    String.format("invalid connection pool size, min: %s, max: %s", minSize, maxSize));
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    public Connection getConnection() throws RpcException {
+        Connection[] snapshot = pool;
+        int size = snapshot.length;
+        if (size < Math.max(minSize, 1)) {
+            return grow(size);
+        }
 
-    public ConnectionPool(String remoteHost, int port, boolean usePrivilegedPort, int n) throws RpcException {
-        this.pool = new ArrayList<>(n);
+        Connection connection;
+        if (size == 1) {
+            connection = snapshot[0];
+        } else {
+            switch (strategy) {
+            case ROUND_ROBIN:
+                connection = snapshot[Math.floorMod(nextIndex.getAndIncrement(), size)];
+                break;
+            case LEAST_OUTSTANDING:
+                connection = getLeastOutstanding(snapshot);
+                break;
+            case POWER_OF_TWO_CHOICES:
+                connection = getBestOfTwo(snapshot);
+                break;
+            default:
+                int randConnIdx = ThreadLocalRandom.current().nextInt(size);
+                connection = snapshot[randConnIdx];
+                break;
+            }
+        }
+
+        if (size < maxSize && isOverloaded(snapshot)) {
+            return grow(size);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Open a new connection, unless another thread has changed the size of the
+     * pool in the meantime, in which case the least loaded connection is used.
+     *
+     * @param expectedSize
+     *            The size of the pool seen by the caller.
+     * @return The connection to use.
+     * @throws RpcException
+     */
+    private Connection grow(int expectedSize) throws RpcException {
+        lock.lock();
+        try {
+            if (pool.length != expectedSize && pool.length > 0) {
+                return getLeastOutstanding(pool);
+            }
 
-        for (int i = 0; i < n; i++) {
-            final Connection conn = new Connection(remoteHost, port, usePrivilegedPort);
-            conn.connect();
-            this.pool.add(i, conn);
+            Connection connection = openConnection();
+            Connection[] connections = Arrays.copyOf(pool, pool.length + 1);
+            connections[pool.length] = connection;
+            pool = connections;
+
+            if (pool.length > minSize) {
+                scheduleIdleCheck();
+            }
+            return connection;
+        } finally {
+            lock.unlock();
         }
     }
 
-    public Connection getConnection() {
-        int randConnIdx = ThreadLocalRandom.current().nextInt(this.pool.size());
-        return pool.get(randConnIdx);
+    /**
+     * @return A new connection of this pool, being established.
+     * @throws RpcException
+     */
+    Connection openConnection() throws RpcException {
+        Connection connection = new Connection(remoteHost, port, usePrivilegedPort, this);
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * @param connections
+     * @return <code>true</code> if the average load of the connections is
+     *         above either growth threshold.
+     */
+    private static boolean isOverloaded(Connection[] connections) {
+        long depth = 0;
+        long bytes = 0;
+        for (Connection connection : connections) {
+            depth += connection.getQueueDepth();
+            bytes += connection.getPendingBytes();
+        }
+        int size = connections.length;
+        return depth >= (long) GROW_DEPTH * size || bytes >= GROW_BYTES * size;
+    }
+
+    /**
+     * Start the timer closing idle connections, if it is not running.
+     */
+    private void scheduleIdleCheck() {
+        lock.lock();
+        try {
+            if (idleTimeout == null) {
+                idleTimeout = NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+                    /* (non-Javadoc)
+                     * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+                     */
+                    public void run(Timeout timeout) {
+                        closeIdleConnections();
+                    }
+                }, IDLE_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the connections above the minimum size that have nothing in
+     * flight and have not been used for the idle timeout, and keep checking
+     * while the pool is above the minimum.
+     */
+    void closeIdleConnections() {
+        lock.lock();
+        try {
+            idleTimeout = null;
+        } finally {
+            lock.unlock();
+        }
+
+        long now = System.nanoTime();
+        for (Connection connection : pool) {
+            if (pool.length <= minSize) {
+                break;
+            }
+            if (connection.getQueueDepth() == 0
+                    && now - connection.getLastUsed() >= TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS)) {
+                remove(connection);
+                connection.shutdown();
+            }
+        }
+
+        if (pool.length > minSize) {
+            scheduleIdleCheck();
+        }
+    }
+
+    /**
+     * Called by a connection when its channel is closed, so that later
+     * requests open a new one instead.
+     *
+     * @param connection
+     */
+    void remove(Connection connection) {
+        lock.lock();
+        try {
+            List<Connection> connections = new ArrayList<>(Arrays.asList(pool));
+            if (connections.remove(connection)) {
+                pool = connections.toArray(new Connection[connections.size()]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param connections
+     * @return The connection with the fewest requests in flight. The scan
+     *         starts at a rotating index, so that idle connections share the
+     *         load instead of the first one taking everything.
+     */
+    private Connection getLeastOutstanding(Connection[] connections) {
+        int size = connections.length;
+        int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+        Connection best = connections[start];
+        for (int i = 1; i < size; i++) {
+            Connection candidate = connections[(start + i) % size];
+            if (isLessLoaded(candidate, best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param connections
+     * @return The less loaded of two distinct connections chosen at random.
+     */
+    private static Connection getBestOfTwo(Connection[] connections) {
+        int size = connections.length;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = (first + 1 + random.nextInt(size - 1)) % size;
+        Connection a = connections[first];
+        Connection b = connections[second];
+        return isLessLoaded(b, a) ? b : a;
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return <code>true</code> if <code>a</code> has fewer requests in
+     *         flight than <code>b</code>, or as many requests but fewer bytes.
+     */
+    private static boolean isLessLoaded(Connection a, Connection b) {
+        int depthA = a.getQueueDepth();
+        int depthB = b.getQueueDepth();
+        if (depthA != depthB) {
+            return depthA < depthB;
+        }
+        return a.getPendingBytes() < b.getPendingBytes();
+    }
+
+    /**
+     * @return The number of requests in flight on each connection of the pool.
+     */
+    public int[] getQueueDepths() {
+        Connection[] connections = pool;
+        int[] depths = new int[connections.length];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = connections[i].getQueueDepth();
+        }
+        return depths;
+    }
+
+    /**
+     * @return The number of bytes in flight on each connection of the pool.
+     */
+    public long[] getPendingBytes() {
+        Connection[] connections = pool;
+        long[] bytes = new long[connections.length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = connections[i].getPendingBytes();
+        }
+        return bytes;
     }
 
     public void shutdown() {
-        pool.forEach(connection -> connection.shutdown());
+        lock.lock();
+        try {
+            if (idleTimeout != null) {
+                idleTimeout.cancel();
+                idleTimeout = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Connection connection : pool) {
+            connection.shutdown();
+        }
     }
 }
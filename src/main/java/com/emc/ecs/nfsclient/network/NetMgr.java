@@ -18,14 +18,23 @@ import com.emc.ecs.nfsclient.rpc.RpcException;
 import com.emc.ecs.nfsclient.rpc.Xdr;
 
 import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Singleton class to manage all Connection instances
@@ -34,7 +43,112 @@ import java.util.concurrent.ThreadFactory;
  */
 public class NetMgr {
 
-    private int _channelsPerSocket;
+    /**
+     * The default minimum number of connections per server port.
+     */
+    private static final int DEFAULT_MIN_CONNECTIONS = 1;
+
+    /**
+     * The default maximum number of connections per server port.
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /**
+     * The minimum number of connections for new pools, unless set for the
+     * server port.
+     */
+    private volatile int _minConnections = DEFAULT_MIN_CONNECTIONS;
+
+    /**
+     * The maximum number of connections for new pools, unless set for the
+     * server port.
+     */
+    private volatile int _maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * The pool sizes set for specific server ports, as {min, max}.
+     */
+    private final ConcurrentHashMap<InetSocketAddress, int[]> _poolSizes = new ConcurrentHashMap<InetSocketAddress, int[]>();
+
+    /**
+     * The strategy used by new pools to choose a connection for each request.
+     */
+    private ConnectionPool.Strategy _selectionStrategy = ConnectionPool.Strategy.LEAST_OUTSTANDING;
+
+    /**
+     * The tick duration of the timeout timer in milliseconds.
+     */
+    private static final long TIMER_TICK_MILLIS = 100;
+
+    /**
+     * The default maximum number of requests in flight over all connections.
+     */
+    private static final int DEFAULT_MAX_GLOBAL_PENDING_REQUESTS = 8192;
+
+    /**
+     * The default maximum number of bytes in flight over all connections.
+     */
+    private static final long DEFAULT_MAX_GLOBAL_PENDING_BYTES = 256 * 1024 * 1024;
+
+    /**
+     * The credits shared by all connections, bounding the data in flight
+     * overall.
+     */
+    private final SendCredits _globalCredits = new SendCredits(null, DEFAULT_MAX_GLOBAL_PENDING_REQUESTS,
+            DEFAULT_MAX_GLOBAL_PENDING_BYTES);
+
+    /**
+     * The maximum number of requests in flight for new connections.
+     */
+    private volatile int _maxPendingRequests = Connection.DEFAULT_MAX_PENDING_REQUESTS;
+
+    /**
+     * The maximum number of bytes in flight for new connections.
+     */
+    private volatile long _maxPendingBytes = Connection.DEFAULT_MAX_PENDING_BYTES;
+
+    /**
+     * The window in microseconds during which small writes are coalesced, or
+     * 0 if they are not.
+     */
+    private volatile long _writeCoalescingMicros;
+
+    /**
+     * The byte threshold at which a coalesced write is sent immediately.
+     */
+    private volatile int _writeCoalescingBytes;
+
+    /**
+     * The batch sizes of the coalesced writes, for all connections.
+     */
+    private final BatchMetric _batchMetric = new BatchMetric();
+
+    /**
+     * Schedules the flushes of coalesced writes, created when first needed.
+     * The shared timer ticks too slowly for windows of a few hundred
+     * microseconds.
+     */
+    private ScheduledExecutorService _batchScheduler;
+
+    /**
+     * The largest request in bytes sent over UDP, or 0 if UDP is not used.
+     */
+    private volatile int _datagramCutoff;
+
+    /**
+     * Netty helper instance for UDP, created when first needed.
+     */
+    private DatagramChannelFactory _datagramFactory;
+
+    /**
+     * UDP channel tracking map
+     */
+    private final ConcurrentHashMap<InetSocketAddress, UdpConnection> _udpConnectionMap = new ConcurrentHashMap<InetSocketAddress, UdpConnection>();
+
+    /**
+     * Guards the creation of UDP channels.
+     */
+    private final ReentrantLock _udpConnectionLock = new ReentrantLock();
 
     /**
      * The single instance.
@@ -56,19 +170,57 @@ public class NetMgr {
     }
 
     /**
-     * connection tracking map
+     * connection tracking map, with one pool per traffic class for each
+     * server port
+     */
+    private ConcurrentHashMap<InetSocketAddress, ConnectionPool[]> _connectionMap = new ConcurrentHashMap<InetSocketAddress, ConnectionPool[]>();
+
+    /**
+     * privileged connection tracking map, with one pool per traffic class for
+     * each server port
+     */
+    private ConcurrentHashMap<InetSocketAddress, ConnectionPool[]> _privilegedConnectionMap = new ConcurrentHashMap<InetSocketAddress, ConnectionPool[]>();
+
+    /**
+     * Whether each traffic class has its own connections, or metadata has its
+     * own and the other classes share one pool, the default.
+     */
+    private volatile boolean _dedicatedLanes = false;
+
+    /**
+     * The latencies of the successful calls, per traffic class.
+     */
+    private final CallMetric[] _latencyMetrics = newLatencyMetrics();
+
+    /**
+     * The number of I/O event loops, one per core by default.
+     */
+    private int _eventLoops = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether responses complete their futures on the event loop, or on the
+     * completion executor, the default.
+     */
+    private volatile boolean _inlineCompletions = false;
+
+    /**
+     * Runs the completions when they are not inline, created when first
+     * needed.
      */
-    private ConcurrentHashMap<InetSocketAddress, ConnectionPool> _connectionMap = new ConcurrentHashMap<InetSocketAddress, ConnectionPool>();
+    private ExecutorService _completionExecutor;
 
     /**
-     * privileged connection tracking map
+     * Netty helper instance, created with the first connection. Each channel
+     * is pinned to one of its event loops for its whole life.
      */
-    private ConcurrentHashMap<InetSocketAddress, ConnectionPool> _privilegedConnectionMap = new ConcurrentHashMap<InetSocketAddress, ConnectionPool>();
+    private ChannelFactory _factory;
 
     /**
-     * Netty helper instance.
+     * Shared timer used to expire pending requests. A hashed wheel keeps the
+     * cost of scheduling and cancelling constant, however many requests are
+     * in flight.
      */
-    private ChannelFactory _factory = new NioClientSocketChannelFactory(newThreadPool(), newThreadPool());
+    private final Timer _timer = new HashedWheelTimer(getThreadFactory(), TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS);
 
     /**
      * @return a thread pool instance using the proper factory to create daemon threads
@@ -117,38 +269,268 @@ public class NetMgr {
      * @throws RpcException
      */
     public Xdr sendAndWait(String serverIP, int port, boolean usePrivilegedPort, Xdr xdrRequest, int timeout) throws RpcException {
-        ConnectionPool pool = getConnectionPool(serverIP, port, usePrivilegedPort);
-        Connection connection = pool.getConnection();
-//        if (connection == null) {	at com.emc.ecs.nfsclient.nfs.nfs3.Nfs3.prepareRootFhAndNfsPort(Nfs3.java:309)
+        return sendAndWait(serverIP, port, usePrivilegedPort, xdrRequest, timeout, TimeUnit.SECONDS);
+    }
 
-//            connection = new Connection(serverIP, port, usePrivilegedPort);
-//            connectionMap.put(key, connection);
-//            connection.connect();
-//        }
+    /**
+     * Basic RPC call functionality only, with a timeout of any unit. The
+     * timeout covers the waits for a connection and for send credits as well
+     * as the response.
+     * 
+     * @param serverIP
+     *            The endpoint of the server being called.
+     * @param port
+     *            The remote host port being called for this operation.
+     * @param usePrivilegedPort
+     *            Whether to use a privileged local port (below 1024).
+     * @param xdrRequest
+     *            The Xdr data for the request.
+     * @param timeout
+     *            The timeout.
+     * @param unit
+     *            The unit of the timeout.
+     * @return The Xdr data for the response.
+     * @throws RpcException
+     */
+    public Xdr sendAndWait(String serverIP, int port, boolean usePrivilegedPort, Xdr xdrRequest, long timeout,
+            TimeUnit unit) throws RpcException {
+        long startTimeNanos = System.nanoTime();
+        Xdr response;
+        if (isDatagramRequest(usePrivilegedPort, xdrRequest)) {
+            response = getUdpConnection(serverIP, port).sendAndWait(timeout, unit, xdrRequest);
+        } else {
+            ConnectionPool pool = getConnectionPool(serverIP, port, usePrivilegedPort, xdrRequest.getTrafficClass());
+            Connection connection = pool.getConnection();
 
-        return connection.sendAndWait(timeout, xdrRequest);
+            response = connection.sendAndWait(timeout, unit, xdrRequest);
+        }
+        _latencyMetrics[xdrRequest.getTrafficClass().ordinal()].add(System.nanoTime() - startTimeNanos);
+        return response;
     }
 
-    public void sendAsync(String serverIP, int port, boolean usePrivilegedPort, Xdr xdrRequest, Callback<Xdr> callback) throws RpcException {
-        ConnectionPool pool = getConnectionPool(serverIP, port, usePrivilegedPort);
-        Connection connection = pool.getConnection();
+    /**
+     * Basic RPC call functionality only. Send the request, creating a new
+     * connection as necessary, without waiting for the response.
+     * 
+     * @param serverIP
+     *            The endpoint of the server being called.
+     * @param port
+     *            The remote host port being called for this operation.
+     * @param usePrivilegedPort
+     *            <ul>
+     *            <li>If <code>true</code>, use a privileged local port (below
+     *            1024) for RPC communication.</li>
+     *            <li>If <code>false</code>, use any non-privileged local port
+     *            for RPC communication.</li>
+     *            </ul>
+     * @param xdrRequest
+     *            The Xdr data for the request.
+     * @param timeout
+     *            The timeout in seconds.
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> sendAsync(String serverIP, int port, boolean usePrivilegedPort, Xdr xdrRequest,
+            int timeout) {
+        return sendAsync(serverIP, port, usePrivilegedPort, xdrRequest, timeout, TimeUnit.SECONDS);
+    }
 
-        connection.sendAsync(xdrRequest, callback);
+    /**
+     * Basic RPC call functionality only, without waiting for the response,
+     * with a timeout of any unit. The timeout covers the waits for a
+     * connection and for send credits as well as the response.
+     * 
+     * @param serverIP
+     *            The endpoint of the server being called.
+     * @param port
+     *            The remote host port being called for this operation.
+     * @param usePrivilegedPort
+     *            Whether to use a privileged local port (below 1024).
+     * @param xdrRequest
+     *            The Xdr data for the request.
+     * @param timeout
+     *            The timeout.
+     * @param unit
+     *            The unit of the timeout.
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> sendAsync(String serverIP, int port, boolean usePrivilegedPort, Xdr xdrRequest,
+            long timeout, TimeUnit unit) {
+        final long startTimeNanos = System.nanoTime();
+        final CallMetric metric = _latencyMetrics[xdrRequest.getTrafficClass().ordinal()];
+        CompletableFuture<Xdr> result;
+        try {
+            if (isDatagramRequest(usePrivilegedPort, xdrRequest)) {
+                result = getUdpConnection(serverIP, port).sendAsync(timeout, unit, xdrRequest);
+            } else {
+                result = getConnectionPool(serverIP, port, usePrivilegedPort, xdrRequest.getTrafficClass())
+                        .getConnection().sendAsync(timeout, unit, xdrRequest);
+            }
+        } catch (RpcException e) {
+            result = new CompletableFuture<Xdr>();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        result.whenComplete((response, cause) -> {
+            if (cause == null) {
+                metric.add(System.nanoTime() - startTimeNanos);
+            }
+        });
+        return result;
     }
 
-    private ConnectionPool getConnectionPool(String serverIP, int port, boolean usePrivilegedPort) {
+    /**
+     * @param usePrivilegedPort
+     *            Whether the request needs a privileged local port.
+     * @param xdrRequest
+     *            The request.
+     * @return <code>true</code> if the request should be sent over UDP: UDP
+     *         is enabled, and the request is small, idempotent, as it may be
+     *         retransmitted, and not bulk, so that its reply fits a datagram.
+     */
+    boolean isDatagramRequest(boolean usePrivilegedPort, Xdr xdrRequest) {
+        int cutoff = _datagramCutoff;
+        return cutoff > 0 && !usePrivilegedPort && xdrRequest.isIdempotent() && !xdrRequest.isBulk()
+                && xdrRequest.getOffset() + xdrRequest.getPayloadsSize() <= cutoff;
+    }
+
+    /**
+     * @param serverIP
+     * @param port
+     * @return The UDP channel to the server port, bound when first needed.
+     * @throws RpcException
+     *             If the channel cannot be bound.
+     */
+    private UdpConnection getUdpConnection(String serverIP, int port) throws RpcException {
         InetSocketAddress key = InetSocketAddress.createUnresolved(serverIP, port);
+        UdpConnection connection = _udpConnectionMap.get(key);
+        if (connection == null) {
+            // binding blocks, so use a lock rather than a monitor
+            _udpConnectionLock.lock();
+            try {
+                connection = _udpConnectionMap.get(key);
+                if (connection == null) {
+                    connection = new UdpConnection(serverIP, port);
+                    _udpConnectionMap.put(key, connection);
+                }
+            } finally {
+                _udpConnectionLock.unlock();
+            }
+        }
+        return connection;
+    }
 
-        Map<InetSocketAddress, ConnectionPool> connectionMap = usePrivilegedPort ? _privilegedConnectionMap : _connectionMap;
+    /**
+     * @param serverIP
+     * @param port
+     * @param usePrivilegedPort
+     * @param trafficClass
+     *            The kind of traffic of the request.
+     * @return The pool of the traffic class for the server port.
+     */
+    ConnectionPool getConnectionPool(String serverIP, int port, boolean usePrivilegedPort,
+            TrafficClass trafficClass) {
+        InetSocketAddress key = InetSocketAddress.createUnresolved(serverIP, port);
 
-        ConnectionPool pool = connectionMap.computeIfAbsent(key, (InetSocketAddress addr) -> {
-            try {
-                return new ConnectionPool(serverIP, port, usePrivilegedPort, _channelsPerSocket);
-            } catch (RpcException e) {
-                throw new RuntimeException(e);
+        Map<InetSocketAddress, ConnectionPool[]> connectionMap = usePrivilegedPort ? _privilegedConnectionMap : _connectionMap;
+
+        // no connection is opened until a pool gets its first request, so the
+        // pools of all classes are created at once
+        ConnectionPool[] pools = connectionMap.computeIfAbsent(key, (InetSocketAddress addr) -> {
+            int[] size = _poolSizes.get(addr);
+            int minSize = (size == null) ? _minConnections : size[0];
+            int maxSize = (size == null) ? _maxConnections : size[1];
+            ConnectionPool[] lanes = new ConnectionPool[TrafficClass.values().length];
+            for (int i = 0; i < lanes.length; ++i) {
+                lanes[i] = new ConnectionPool(serverIP, port, usePrivilegedPort, minSize, maxSize, _selectionStrategy);
             }
+            return lanes;
         });
-        return pool;
+        return pools[getLane(trafficClass)];
+    }
+
+    /**
+     * @param trafficClass
+     *            The kind of traffic of a request.
+     * @return The index of the pool for the traffic class. Unless each class
+     *         has its own pool, the bulk classes all use the READ pool.
+     */
+    private int getLane(TrafficClass trafficClass) {
+        if (_dedicatedLanes || trafficClass == TrafficClass.METADATA) {
+            return trafficClass.ordinal();
+        }
+        return TrafficClass.READ.ordinal();
+    }
+
+    /**
+     * Send each traffic class on its own connections, or send metadata on its
+     * own and the rest on shared ones, the default. Either way, small metadata
+     * calls do not queue behind large reads and writes in the socket buffers
+     * and on the server. Separate READ, WRITE and COMMIT connections also keep
+     * the bulk classes apart, at the cost of more connections per server
+     * port.
+     * 
+     * @param dedicatedLanes
+     *            <code>true</code> to give each traffic class its own
+     *            connections, <code>false</code> to share them between the
+     *            bulk classes.
+     */
+    public void setDedicatedLanes(boolean dedicatedLanes) {
+        _dedicatedLanes = dedicatedLanes;
+    }
+
+    /**
+     * Getter method for the latencies of a traffic class, to check that
+     * metadata calls stay fast during bulk transfers.
+     * 
+     * @param trafficClass
+     *            The traffic class.
+     * @return The metric of the successful calls of that class, covering all
+     *         connections.
+     */
+    public CallMetric getLatencyMetric(TrafficClass trafficClass) {
+        return _latencyMetrics[trafficClass.ordinal()];
+    }
+
+    /**
+     * @return One latency metric per traffic class.
+     */
+    private static CallMetric[] newLatencyMetrics() {
+        CallMetric[] metrics = new CallMetric[TrafficClass.values().length];
+        for (int i = 0; i < metrics.length; ++i) {
+            metrics[i] = new CallMetric();
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the number of requests in flight on each connection to a server, to
+     * check how evenly the load is spread.
+     * 
+     * @param serverIP
+     *            The endpoint of the server.
+     * @param port
+     *            The remote host port.
+     * @param usePrivilegedPort
+     *            Whether the connections use a privileged local port.
+     * @return The queue depth of each connection, for all traffic classes,
+     *         or <code>null</code> if there are no connections to that server
+     *         yet.
+     */
+    public int[] getQueueDepths(String serverIP, int port, boolean usePrivilegedPort) {
+        InetSocketAddress key = InetSocketAddress.createUnresolved(serverIP, port);
+        ConnectionPool[] pools = (usePrivilegedPort ? _privilegedConnectionMap : _connectionMap).get(key);
+        if (pools == null) {
+            return null;
+        }
+        int[] depths = new int[0];
+        for (ConnectionPool pool : pools) {
+            int[] poolDepths = pool.getQueueDepths();
+            int length = depths.length;
+            depths = Arrays.copyOf(depths, length + poolDepths.length);
+            System.arraycopy(poolDepths, 0, depths, length, poolDepths.length);
+        }
+        return depths;
     }
 
     /**
@@ -166,15 +548,37 @@ public class NetMgr {
      * Called when the application is being shut down.
      */
     public void shutdown() {
-        for (ConnectionPool connection : _connectionMap.values()) {
-            connection.shutdown();
+        for (ConnectionPool[] pools : _connectionMap.values()) {
+            for (ConnectionPool pool : pools) {
+                pool.shutdown();
+            }
         }
 
-        for (ConnectionPool connection : _privilegedConnectionMap.values()) {
+        for (ConnectionPool[] pools : _privilegedConnectionMap.values()) {
+            for (ConnectionPool pool : pools) {
+                pool.shutdown();
+            }
+        }
+
+        for (UdpConnection connection : _udpConnectionMap.values()) {
             connection.shutdown();
         }
 
-        _factory.releaseExternalResources();
+        _timer.stop();
+        synchronized (this) {
+            if (_factory != null) {
+                _factory.releaseExternalResources();
+            }
+            if (_completionExecutor != null) {
+                _completionExecutor.shutdown();
+            }
+            if (_batchScheduler != null) {
+                _batchScheduler.shutdown();
+            }
+            if (_datagramFactory != null) {
+                _datagramFactory.releaseExternalResources();
+            }
+        }
     }
 
     /**
@@ -182,11 +586,290 @@ public class NetMgr {
      * 
      * @return The factory.
      */
-    public ChannelFactory getFactory() {
+    public synchronized ChannelFactory getFactory() {
+        if (_factory == null) {
+            _factory = new NioClientSocketChannelFactory(newThreadPool(), newThreadPool(), _eventLoops);
+        }
         return _factory;
     }
 
+    /**
+     * Set the number of I/O event loops, for tcp and for udp. Each connection
+     * is served by a single loop, so the loops bound the threads doing
+     * network work. It must be called before the first connection is made.
+     * 
+     * @param eventLoops
+     *            The number of event loops, by default the number of cores.
+     */
+    public synchronized void setEventLoops(int eventLoops) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException(String.format("invalid number of event loops: %s", eventLoops));
+        }
+        if (_factory != null || _datagramFactory != null) {
+            throw new IllegalStateException("the event loops are already running");
+        }
+        _eventLoops = eventLoops;
+    }
+
+    /**
+     * Choose where responses complete the futures of their callers. By
+     * default they complete on a separate executor, so that dependent actions
+     * of asynchronous callers that block or do heavy work do not hold up the
+     * event loop. Inline completion runs those actions on the event loop,
+     * which saves a thread hand-off, and suits callers whose callbacks are
+     * all cheap and never block.
+     * 
+     * @param inlineCompletions
+     *            <code>true</code> to complete on the event loop,
+     *            <code>false</code> to complete on a separate executor.
+     */
+    public void setInlineCompletions(boolean inlineCompletions) {
+        _inlineCompletions = inlineCompletions;
+    }
+
+    /**
+     * Complete a call with its response, inline or on the completion
+     * executor.
+     * 
+     * @param call
+     *            The call.
+     * @param response
+     *            The response.
+     */
+    void complete(final PendingCallTable.Call call, final Xdr response) {
+        if (_inlineCompletions) {
+            call.complete(response);
+        } else {
+            getCompletionExecutor().execute(() -> call.complete(response));
+        }
+    }
+
+    /**
+     * @return The executor for the completions that are not inline.
+     */
+    private synchronized ExecutorService getCompletionExecutor() {
+        if (_completionExecutor == null) {
+            _completionExecutor = newThreadPool();
+        }
+        return _completionExecutor;
+    }
+
+    /**
+     * @return The Netty helper instance for UDP.
+     */
+    synchronized DatagramChannelFactory getDatagramFactory() {
+        if (_datagramFactory == null) {
+            _datagramFactory = new NioDatagramChannelFactory(newThreadPool(), _eventLoops);
+        }
+        return _datagramFactory;
+    }
+
+    /**
+     * Send small metadata requests over UDP instead of TCP. A request goes
+     * over UDP if it is idempotent, as lost datagrams are retransmitted, if
+     * its reply cannot be large, which leaves READ, WRITE, READDIR and
+     * READDIRPLUS on TCP, and if it is no larger than the cutoff. Requests
+     * needing a privileged local port always use TCP. It is off by default.
+     * 
+     * @param cutoff
+     *            The largest request in bytes sent over UDP, or 0 to use TCP
+     *            only.
+     */
+    public void setDatagramCutoff(int cutoff) {
+        if (cutoff < 0) {
+            throw new IllegalArgumentException(String.format("invalid datagram cutoff: %s", cutoff));
+        }
+        _datagramCutoff = cutoff;
+    }
+
+    /**
+     * @return New credits for a connection, using the current per-connection
+     *         limits, whose parent is the global credits.
+     */
+    SendCredits newConnectionCredits() {
+        return new SendCredits(_globalCredits, _maxPendingRequests, _maxPendingBytes);
+    }
+
+    /**
+     * Set the limits on the requests and bytes in flight over all
+     * connections. Requests beyond them wait for earlier ones to complete,
+     * within their timeout, instead of failing.
+     * 
+     * @param maxRequests
+     *            The maximum number of requests in flight.
+     * @param maxBytes
+     *            The maximum number of bytes in flight.
+     */
+    public void setGlobalCredits(int maxRequests, long maxBytes) {
+        _globalCredits.setLimits(maxRequests, maxBytes);
+    }
+
+    /**
+     * Set the limits on the requests and bytes in flight per connection, for
+     * the connections created after the call.
+     * 
+     * @param maxRequests
+     *            The maximum number of requests in flight.
+     * @param maxBytes
+     *            The maximum number of bytes in flight.
+     */
+    public void setConnectionCredits(int maxRequests, long maxBytes) {
+        if (maxRequests < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException(
+                    String.format("invalid credits, requests: %s, bytes: %s", maxRequests, maxBytes));
+        }
+        _maxPendingRequests = maxRequests;
+        _maxPendingBytes = maxBytes;
+    }
+
+    /**
+     * Coalesce the small writes of the connections created after the call.
+     * Requests written within the window, or until the byte threshold is
+     * reached, are sent with a single gathering write. This trades a little
+     * latency for fewer system calls and segments when many small requests,
+     * such as LOOKUP or GETATTR, are sent at once. It is off by default.
+     * 
+     * @param windowMicros
+     *            The longest time a request waits for others, in
+     *            microseconds, or 0 to write each request on its own.
+     * @param maxBytes
+     *            The batch is written as soon as it holds this many bytes.
+     */
+    public void setWriteCoalescing(long windowMicros, int maxBytes) {
+        if (windowMicros < 0 || (windowMicros > 0 && maxBytes < 1)) {
+            throw new IllegalArgumentException(
+                    String.format("invalid write coalescing, window: %s, bytes: %s", windowMicros, maxBytes));
+        }
+        _writeCoalescingMicros = windowMicros;
+        _writeCoalescingBytes = maxBytes;
+    }
+
+    /**
+     * Getter method for the batch sizes of the coalesced writes.
+     * 
+     * @return The metric, covering all connections.
+     */
+    public BatchMetric getBatchMetric() {
+        return _batchMetric;
+    }
+
+    /**
+     * @return A write batcher for a new connection, or <code>null</code> if
+     *         writes are not coalesced.
+     */
+    WriteBatcher newWriteBatcher() {
+        long windowMicros = _writeCoalescingMicros;
+        if (windowMicros == 0) {
+            return null;
+        }
+        return new WriteBatcher(TimeUnit.MICROSECONDS.toNanos(windowMicros), _writeCoalescingBytes, _batchMetric);
+    }
+
+    /**
+     * @return The scheduler for the flushes of coalesced writes.
+     */
+    synchronized ScheduledExecutorService getBatchScheduler() {
+        if (_batchScheduler == null) {
+            _batchScheduler = Executors.newSingleThreadScheduledExecutor(getThreadFactory());
+        }
+        return _batchScheduler;
+    }
+
+    /**
+     * Getter method for Timer access.
+     * 
+     * @return The timer used to expire pending requests.
+     */
+    Timer getTimer() {
+        return _timer;
+    }
+
+    /**
+     * Use a fixed number of connections per server port for the pools created
+     * after the call.
+     * 
+     * @param channelsPerSocket
+     *            The number of connections.
+     */
     public void setChannelsPerSocket(int channelsPerSocket) {
-        this._channelsPerSocket = channelsPerSocket;
+        setPoolSize(channelsPerSocket, channelsPerSocket);
+    }
+
+    /**
+     * Set the bounds of the pools created after the call. Each pool opens
+     * connections as the load requires, up to the maximum, and closes idle
+     * connections above the minimum.
+     * 
+     * @param minConnections
+     *            The minimum number of connections per server port.
+     * @param maxConnections
+     *            The maximum number of connections per server port, at least 1.
+     */
+    public void setPoolSize(int minConnections, int maxConnections) {
+        checkPoolSize(minConnections, maxConnections);
+        _minConnections = minConnections;
+        _maxConnections = maxConnections;
+    }
+
+    /**
+     * Set the bounds of the pool for one server port, overriding the defaults.
+     * Services that see little traffic, such as portmap and mount, use
+     * <code>(0, 1)</code>: a single connection that is only opened when
+     * needed and closed when idle.
+     * 
+     * @param serverIP
+     *            The endpoint of the server.
+     * @param port
+     *            The remote host port.
+     * @param minConnections
+     *            The minimum number of connections.
+     * @param maxConnections
+     *            The maximum number of connections, at least 1.
+     */
+    public void setPoolSize(String serverIP, int port, int minConnections, int maxConnections) {
+        checkPoolSize(minConnections, maxConnections);
+        InetSocketAddress key = InetSocketAddress.createUnresolved(serverIP, port);
+        int[] size = new int[] { minConnections, maxConnections };
+        _poolSizes.put(key, size);
+        setSize(_connectionMap.get(key), minConnections, maxConnections);
+        setSize(_privilegedConnectionMap.get(key), minConnections, maxConnections);
+    }
+
+    /**
+     * @param pools
+     *            The pools of the traffic classes, or <code>null</code>.
+     * @param minConnections
+     * @param maxConnections
+     */
+    private static void setSize(ConnectionPool[] pools, int minConnections, int maxConnections) {
+        if (pools != null) {
+            for (ConnectionPool pool : pools) {
+                pool.setSize(minConnections, maxConnections);
+            }
+        }
+    }
+
+    /**
+     * Set the strategy used to choose a connection for each request. It
+     * applies to the pools created after the call.
+     * 
+     * @param selectionStrategy
+     *            The strategy.
+     */
+    public void setSelectionStrategy(ConnectionPool.Strategy selectionStrategy) {
+        this._selectionStrategy = selectionStrategy;
+    }
+
+    /**
+     * @param minConnections
+     * @param maxConnections
+     * @throws IllegalArgumentException
+     *             If the bounds do not make a valid pool size.
+     */
+    private static void checkPoolSize(int minConnections, int maxConnections) {
+        if (maxConnections < 1 || minConnections < 0 || minConnections > maxConnections) {
+            throw new IllegalArgumentException(String.format("invalid connection pool size, min: %s, max: %s",
+                    minConnections, maxConnections));
+        }
     }
 }
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+import org.jboss.netty.util.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The calls in progress on one connection, keyed by xid.
+ *
+ * <p>
+ * The table also allocates the xids, so it can make sure that each new xid
+ * maps to a free slot of its ring: the slot of a call is simply
+ * <code>xid &amp; mask</code>, lookups need no probing and no boxing, and
+ * there are never collisions. Xids are sequential, starting from a random
+ * value, and skip the few values whose slots are still held by slow calls.
+ * The ring doubles when it is half full, which keeps the slots distinct.
+ * </p>
+ *
+ * <p>
+ * A retry of a request keeps the xid of its earlier attempt, so that the
+ * server's duplicate request cache can recognise it. If the slot of that xid
+ * is held by another call, the ring grows until the two xids have distinct
+ * slots, up to a bound, past which the retry gets a new xid.
+ * </p>
+ */
+class PendingCallTable {
+
+    /**
+     * The initial number of slots, a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The largest number of slots that the ring grows to in order to keep the
+     * xid of a retry, a power of two.
+     */
+    private static final int MAXIMUM_RESERVED_CAPACITY = 1 << 16;
+
+    /**
+     * The slots, indexed by <code>xid &amp; _mask</code>.
+     */
+    private Call[] _slots = new Call[INITIAL_CAPACITY];
+
+    /**
+     * The mask giving the slot of an xid.
+     */
+    private int _mask = INITIAL_CAPACITY - 1;
+
+    /**
+     * The number of calls in the table.
+     */
+    private int _size;
+
+    /**
+     * The next xid to try. Starting at a random value avoids reusing the xids
+     * of an earlier connection that the server may still have cached.
+     */
+    private int _nextXid = ThreadLocalRandom.current().nextInt();
+
+    /**
+     * Allocate an xid for the call and add it to the table.
+     *
+     * @param call
+     *            The call.
+     * @return The xid allocated, also set on the call.
+     */
+    synchronized int add(Call call) {
+        if (_size >= _slots.length / 2) {
+            grow();
+        }
+
+        int xid = _nextXid++;
+        while (_slots[xid & _mask] != null) {
+            xid = _nextXid++;
+        }
+
+        put(call, xid);
+        return xid;
+    }
+
+    /**
+     * Add the call to the table under the xid of an earlier attempt of the
+     * same request, or under a new xid if that one cannot be used.
+     *
+     * @param call
+     *            The call.
+     * @param xid
+     *            The xid of the earlier attempt.
+     * @return The xid used, also set on the call.
+     */
+    synchronized int add(Call call, int xid) {
+        if (_size >= _slots.length / 2) {
+            grow();
+        }
+
+        Call held = _slots[xid & _mask];
+        while (held != null && held._xid != xid && _slots.length < MAXIMUM_RESERVED_CAPACITY) {
+            grow();
+            held = _slots[xid & _mask];
+        }
+
+        // the earlier attempt may even be in the table still, such as the
+        // losing attempt of a hedged call that has not been removed yet
+        if (held != null) {
+            return add(call);
+        }
+
+        put(call, xid);
+        return xid;
+    }
+
+    /**
+     * Put the call into the free slot of the xid.
+     *
+     * @param call
+     *            The call.
+     * @param xid
+     *            The xid.
+     */
+    private void put(Call call, int xid) {
+        call._xid = xid;
+        _slots[xid & _mask] = call;
+        ++_size;
+    }
+
+    /**
+     * Remove a call.
+     *
+     * @param xid
+     *            The xid of the call.
+     * @return The call, or <code>null</code> if there is no call with that
+     *         xid, as it has already completed or expired.
+     */
+    synchronized Call remove(int xid) {
+        int index = xid & _mask;
+        Call call = _slots[index];
+        if (call == null || call._xid != xid) {
+            return null;
+        }
+
+        _slots[index] = null;
+        --_size;
+        return call;
+    }
+
+    /**
+     * Remove a call as soon as its future is cancelled, such as the losing
+     * attempt of a hedged call, rather than when its deadline expires.
+     *
+     * @param call
+     *            A call in the table.
+     */
+    void removeWhenCancelled(final Call call) {
+        final int xid = call._xid;
+        call._result.whenComplete((response, cause) -> {
+            if (cause instanceof CancellationException && remove(xid) != null) {
+                call.cancelDeadline();
+            }
+        });
+    }
+
+    /**
+     * Remove the calls that cannot be sent again, or all of them.
+     *
+     * @param includeIdempotent
+     *            If <code>false</code>, the idempotent calls are kept.
+     * @return The calls removed.
+     */
+    synchronized List<Call> removeAll(boolean includeIdempotent) {
+        List<Call> removed = new ArrayList<Call>();
+        for (int i = 0; i < _slots.length; ++i) {
+            Call call = _slots[i];
+            if (call != null && (includeIdempotent || !call._request.isIdempotent())) {
+                _slots[i] = null;
+                removed.add(call);
+            }
+        }
+        _size -= removed.size();
+        return removed;
+    }
+
+    /**
+     * @return The idempotent calls, which can be sent again after a
+     *         reconnection.
+     */
+    synchronized List<Call> getIdempotent() {
+        List<Call> calls = new ArrayList<Call>();
+        for (Call call : _slots) {
+            if (call != null && call._request.isIdempotent()) {
+                calls.add(call);
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * Double the number of slots. Xids that had distinct slots before still
+     * do, as the new mask only adds a bit.
+     */
+    private void grow() {
+        Call[] slots = new Call[_slots.length * 2];
+        int mask = slots.length - 1;
+        for (Call call : _slots) {
+            if (call != null) {
+                slots[call._xid & mask] = call;
+            }
+        }
+        _slots = slots;
+        _mask = mask;
+    }
+
+    /**
+     * A call in progress: the request, its deadline and the future completed
+     * with the response.
+     */
+    static class Call {
+
+        /**
+         * The xid, allocated by the table or kept from an earlier attempt.
+         */
+        private int _xid;
+
+        /**
+         * The request, kept so that idempotent calls can be sent again.
+         */
+        private final Xdr _request;
+
+        /**
+         * Completed with the response, or the failure.
+         */
+        private final CompletableFuture<Xdr> _result;
+
+        /**
+         * The deadline timer.
+         */
+        private volatile Timeout _deadline;
+
+        /**
+         * @param request
+         *            The request.
+         * @param result
+         *            The future to complete with the response.
+         */
+        Call(Xdr request, CompletableFuture<Xdr> result) {
+            _request = request;
+            _result = result;
+        }
+
+        /**
+         * @return The request.
+         */
+        Xdr getRequest() {
+            return _request;
+        }
+
+        /**
+         * @param deadline
+         *            The deadline timer, cancelled when the call completes.
+         */
+        void setDeadline(Timeout deadline) {
+            _deadline = deadline;
+        }
+
+        /**
+         * Complete the call with the response.
+         *
+         * @param response
+         */
+        void complete(Xdr response) {
+            cancelDeadline();
+            _result.complete(response);
+        }
+
+        /**
+         * Complete the call with a failure.
+         *
+         * @param cause
+         */
+        void fail(Throwable cause) {
+            cancelDeadline();
+            _result.completeExceptionally(cause);
+        }
+
+        /**
+         * Cancel the deadline timer, if it is set.
+         */
+        private void cancelDeadline() {
+            Timeout deadline = _deadline;
+            if (deadline != null) {
+                deadline.cancel();
+            }
+        }
+
+    }
+
+}
@@ -20,6 +20,8 @@ import org.apache.commons.lang3.NotImplementedException;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,15 +69,66 @@ public class RecordMarkingUtil {
     private static final Logger LOG = LoggerFactory.getLogger(RecordMarkingUtil.class);
 
     /**
-     * Insert record marking into rpcRequest and then send to tcp stream.
+     * Insert record marking into rpcRequest and then send to tcp stream. The
+     * caller's reference to the request is released once the last fragment
+     * has been written.
      * 
      * @param channel The Channel to use for sending.
+     * @param rpcRequest The request to send, retained by the caller.
+     */
+    static void putRecordMarkingAndSend(Channel channel, final Xdr rpcRequest) {
+        List<ChannelBuffer> fragments = new ArrayList<>(1);
+        putRecordMarking(rpcRequest, fragments);
+
+        ChannelFuture lastWrite = null;
+        for (ChannelBuffer fragment : fragments) {
+            lastWrite = channel.write(fragment);
+        }
+        releaseOnCompletion(lastWrite, rpcRequest);
+    }
+
+    /**
+     * Release a reference to each request once the write has completed,
+     * successfully or not.
+     * 
+     * @param write The write future, or <code>null</code> if nothing was
+     *            written.
+     * @param rpcRequests The requests.
+     */
+    static void releaseOnCompletion(ChannelFuture write, final Xdr... rpcRequests) {
+        if (write == null) {
+            for (Xdr rpcRequest : rpcRequests) {
+                rpcRequest.release();
+            }
+            return;
+        }
+
+        write.addListener(new ChannelFutureListener() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+             */
+            public void operationComplete(ChannelFuture future) {
+                for (Xdr rpcRequest : rpcRequests) {
+                    rpcRequest.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Insert record marking into rpcRequest, without copying any data. The
+     * fragments wrap the request buffer, which must be kept until they have
+     * been written.
+     * 
      * @param rpcRequest The request to send.
+     * @param fragments The list to which the record fragments are added, each
+     *            with its fragment header, in sending order.
+     * @return The total size of the fragments in bytes.
      */
-    static void putRecordMarkingAndSend(Channel channel, Xdr rpcRequest) {
+    static int putRecordMarking(Xdr rpcRequest, List<ChannelBuffer> fragments) {
         // XDR header buffer
         List<ByteBuffer> buffers = new LinkedList<>();
-        buffers.add(ByteBuffer.wrap(rpcRequest.getBuffer(), 0, rpcRequest.getOffset()));
+        buffers.add(rpcRequest.wrapData());
 
         // payload buffer
         if (rpcRequest.getPayloads() != null) {
@@ -84,6 +137,7 @@ public class RecordMarkingUtil {
 
         List<ByteBuffer> outBuffers = new ArrayList<>();
 
+        int totalBytes = 0;
         int bytesToWrite = 0;
         int remainingBuffers = buffers.size();
         boolean isLast = false;
@@ -97,7 +151,8 @@ public class RecordMarkingUtil {
                             String.format("too big single byte buffer %d", buffer.remaining()));
                 } else {
 
-                    sendBuffers(channel, bytesToWrite, outBuffers, isLast);
+                    fragments.add(toFragment(bytesToWrite, outBuffers, isLast));
+                    totalBytes += bytesToWrite + 4;
 
                     bytesToWrite = 0;
                     outBuffers.clear();
@@ -112,54 +167,85 @@ public class RecordMarkingUtil {
 
         // send out remaining buffers
         if (!outBuffers.isEmpty()) {
-            sendBuffers(channel, bytesToWrite, outBuffers, true);
+            fragments.add(toFragment(bytesToWrite, outBuffers, true));
+            totalBytes += bytesToWrite + 4;
         }
+
+        return totalBytes;
     }
 
     /**
-     * Remove record marking from the byte array and convert to an Xdr.
+     * Remove record marking from a complete record without copying any data.
+     * The fragments are sliced out of the buffer, and a record made of
+     * several fragments is returned as a composite of those slices.
      * 
-     * @param bytes The byte array.
-     * @return The Xdr.
+     * @param buffer
+     *            The buffer, with the reader index at the start of the record.
+     *            The reader index is moved past the record.
+     * @param recordLength
+     *            The length of the record in bytes, including all fragment
+     *            headers.
+     * @return The record data, without the fragment headers.
      */
-    static Xdr removeRecordMarking(byte[] bytes) {
-        Xdr toReturn = new Xdr(bytes.length);
-        Xdr input = new Xdr(bytes);
-
-        long fragSize;
-        boolean lastFragment = false;
-
-        input.setOffset(0);
-        int inputOff = input.getOffset();
-
-        while (!lastFragment) {
+    static ChannelBuffer removeRecordMarking(ChannelBuffer buffer, int recordLength) {
+        int recordEnd = buffer.readerIndex() + recordLength;
+        ChannelBuffer firstFragment = null;
+        List<ChannelBuffer> fragments = null;
+
+        while (buffer.readerIndex() < recordEnd) {
+            long fragSize = maskFragmentSize(buffer.readUnsignedInt());
+            ChannelBuffer fragment = buffer.readSlice((int) fragSize);
+
+            if (firstFragment == null) {
+                firstFragment = fragment;
+            } else {
+                if (fragments == null) {
+                    fragments = new ArrayList<>();
+                    fragments.add(firstFragment);
+                }
+                fragments.add(fragment);
+            }
+        }
 
-            fragSize = input.getUnsignedInt();
-            lastFragment = isLastFragment(fragSize);
-            fragSize = maskFragmentSize(fragSize);
+        if (fragments == null) {
+            return firstFragment;
+        }
+        return ChannelBuffers.wrappedBuffer(fragments.toArray(new ChannelBuffer[fragments.size()]));
+    }
 
-            toReturn.putBytes(input.getBuffer(), input.getOffset(), (int) fragSize);
-            inputOff += fragSize;
-            input.setOffset(inputOff);
+    /**
+     * Convert record data (without record marking) to an Xdr. Array-backed
+     * buffers, the usual case for single-fragment records, are read in place;
+     * other buffers are copied once.
+     * 
+     * @param record
+     *            The record data.
+     * @return The Xdr.
+     */
+    static Xdr toXdr(ChannelBuffer record) {
+        Xdr xdr;
+        if (record.hasArray()) {
+            xdr = new Xdr(record.array(), record.arrayOffset() + record.readerIndex(), record.readableBytes());
+        } else {
+            byte[] bytes = new byte[record.readableBytes()];
+            record.getBytes(record.readerIndex(), bytes, 0, bytes.length);
+            xdr = new Xdr(bytes, 0, bytes.length);
         }
 
         // get xid
-        int off = toReturn.getOffset();
-        toReturn.setOffset(0);
-        int xid = toReturn.getInt();
-        toReturn.setXid(xid);
-        toReturn.setOffset(off);
+        xdr.setXid(xdr.getInt());
+        xdr.setOffset(0);
 
-        return toReturn;
+        return xdr;
     }
 
     /**
-     * @param channel
      * @param bytesToWrite
      * @param outBuffers
      * @param isLast
+     * @return The fragment, with its header.
      */
-    private static void sendBuffers(Channel channel, int bytesToWrite, List<ByteBuffer> outBuffers, boolean isLast) {
+    private static ChannelBuffer toFragment(int bytesToWrite, List<ByteBuffer> outBuffers, boolean isLast) {
         ByteBuffer recSizeBuf = ByteBuffer.allocate(4);
 
         if (isLast) {
@@ -171,8 +257,7 @@ public class RecordMarkingUtil {
         outBuffers.add(0, recSizeBuf);
 
         ByteBuffer[] outArray = outBuffers.toArray(new ByteBuffer[outBuffers.size()]);
-        ChannelBuffer channelBuffer = ChannelBuffers.wrappedBuffer(outArray);
-        channel.write(channelBuffer);
+        return ChannelBuffers.wrappedBuffer(outArray);
     }
 
     /**
@@ -0,0 +1,393 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import com.emc.ecs.nfsclient.rpc.RpcTimeoutException;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request and byte credits bounding the data in flight, with an admission
+ * queue for the callers that have to wait. The queue is FIFO within each
+ * traffic class, and the classes are admitted in order of priority, so that a
+ * metadata call does not wait behind bulk writes. A connection holds its own
+ * credits, whose parent is the global credits shared by all connections, and
+ * a request is only sent once it holds credits from both.
+ *
+ * <p>
+ * Waiting callers are given a future that is completed when the credits are
+ * granted, or failed with an <code>RpcTimeoutException</code> when the
+ * deadline expires, so no thread is parked here. Synchronous callers block on
+ * that future.
+ * </p>
+ */
+class SendCredits {
+
+    /**
+     * The parent credits, which must also be held, or <code>null</code> if
+     * there are none.
+     */
+    private final SendCredits _parent;
+
+    /**
+     * The maximum number of requests in flight.
+     */
+    private int _maxRequests;
+
+    /**
+     * The maximum number of bytes in flight. A single request larger than
+     * this is admitted when nothing else is in flight.
+     */
+    private long _maxBytes;
+
+    /**
+     * The number of requests holding credits.
+     */
+    private int _requests;
+
+    /**
+     * The number of bytes held by the requests.
+     */
+    private long _bytes;
+
+    /**
+     * The callers waiting for credits, one queue per traffic class in order
+     * of priority, each in order of arrival.
+     */
+    private final List<ArrayDeque<Admission>> _queues = new ArrayList<ArrayDeque<Admission>>();
+
+    /**
+     * The child credits with callers waiting for these credits. Only used
+     * for parent credits.
+     */
+    private final Set<SendCredits> _blockedChildren = new LinkedHashSet<SendCredits>();
+
+    /**
+     * @param parent
+     *            The parent credits, or <code>null</code> if there are none.
+     * @param maxRequests
+     *            The maximum number of requests in flight.
+     * @param maxBytes
+     *            The maximum number of bytes in flight.
+     */
+    SendCredits(SendCredits parent, int maxRequests, long maxBytes) {
+        _parent = parent;
+        for (int i = 0; i < TrafficClass.values().length; ++i) {
+            _queues.add(new ArrayDeque<Admission>());
+        }
+        setLimits(maxRequests, maxBytes);
+    }
+
+    /**
+     * Change the limits. Callers already holding credits keep them.
+     *
+     * @param maxRequests
+     *            The maximum number of requests in flight, at least 1.
+     * @param maxBytes
+     *            The maximum number of bytes in flight, at least 1.
+     */
+    void setLimits(int maxRequests, long maxBytes) {
+        if (maxRequests < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException(
+                    String.format("invalid credits, requests: %s, bytes: %s", maxRequests, maxBytes));
+        }
+        synchronized (this) {
+            _maxRequests = maxRequests;
+            _maxBytes = maxBytes;
+        }
+        drain();
+        wakeBlockedChildren();
+    }
+
+    /**
+     * @return The maximum number of bytes in flight.
+     */
+    synchronized long getMaxBytes() {
+        return _maxBytes;
+    }
+
+    /**
+     * Acquire the credits for one request, from these credits and the parent.
+     *
+     * @param bytes
+     *            The size of the request.
+     * @param trafficClass
+     *            The kind of traffic, whose priority orders the waiting
+     *            callers.
+     * @param timeoutNanos
+     *            The longest time to wait, in nanoseconds.
+     * @param description
+     *            Describes the destination, for the timeout message.
+     * @return A future completed when the credits are granted, or failed with
+     *         an <code>RpcTimeoutException</code> when the timeout expires.
+     */
+    CompletableFuture<Void> acquire(long bytes, TrafficClass trafficClass, long timeoutNanos,
+            final String description) {
+        final Admission admission;
+        final ArrayDeque<Admission> queue = _queues.get(trafficClass.ordinal());
+        synchronized (this) {
+            if (!isWaiting(trafficClass.ordinal()) && tryTake(bytes, trafficClass.ordinal())) {
+                return CompletableFuture.completedFuture(null);
+            }
+            admission = new Admission(bytes);
+            queue.add(admission);
+        }
+
+        admission._timeout = NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+             */
+            public void run(Timeout t) {
+                boolean removed;
+                synchronized (SendCredits.this) {
+                    removed = queue.remove(admission);
+                }
+                if (removed) {
+                    String msg = String.format("timed out waiting for send credits on the connection: %s",
+                            description);
+                    admission._future.completeExceptionally(new RpcTimeoutException(msg));
+                    // the callers behind may fit now
+                    drain();
+                }
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+
+        // credits may have been released before the timer was set
+        drain();
+        return admission._future;
+    }
+
+    /**
+     * Give back the credits of one request, and admit the waiting callers
+     * that now fit.
+     *
+     * @param bytes
+     *            The size of the request.
+     */
+    void release(long bytes) {
+        synchronized (this) {
+            --_requests;
+            _bytes -= bytes;
+        }
+        if (_parent != null) {
+            _parent.releaseFromChild(bytes);
+        }
+        drain();
+    }
+
+    /**
+     * Admit the waiting callers that fit, in order of priority and then of
+     * arrival. Their futures are completed outside the lock, as completion
+     * sends the requests.
+     */
+    private void drain() {
+        List<Admission> admitted = null;
+        synchronized (this) {
+            for (int priority = 0; priority < _queues.size(); ++priority) {
+                ArrayDeque<Admission> queue = _queues.get(priority);
+                while (!queue.isEmpty() && tryTake(queue.peek()._bytes, priority)) {
+                    if (admitted == null) {
+                        admitted = new ArrayList<Admission>();
+                    }
+                    admitted.add(queue.poll());
+                }
+                if (!queue.isEmpty()) {
+                    // the callers of lower priority wait behind this one
+                    break;
+                }
+            }
+        }
+
+        if (admitted != null) {
+            for (Admission admission : admitted) {
+                if (admission._timeout != null) {
+                    admission._timeout.cancel();
+                }
+                admission._future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * @param priority
+     *            The priority of a caller, 0 being the highest.
+     * @return <code>true</code> if callers of that priority or higher are
+     *         waiting. Must be called while holding the lock.
+     */
+    private boolean isWaiting(int priority) {
+        for (int i = 0; i <= priority; ++i) {
+            if (!_queues.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The highest priority of the waiting callers, or the number of
+     *         traffic classes if none is waiting.
+     */
+    private synchronized int getWaitingPriority() {
+        for (int i = 0; i < _queues.size(); ++i) {
+            if (!_queues.get(i).isEmpty()) {
+                return i;
+            }
+        }
+        return _queues.size();
+    }
+
+    /**
+     * Take the credits from these credits and the parent, if both have room.
+     * Must be called while holding the lock.
+     *
+     * @param bytes
+     *            The size of the request.
+     * @param priority
+     *            The priority of the caller, 0 being the highest.
+     * @return <code>true</code> if the credits were taken.
+     */
+    private boolean tryTake(long bytes, int priority) {
+        if (!fits(bytes)) {
+            return false;
+        }
+        if (_parent != null && !_parent.tryTakeForChild(bytes, priority, this)) {
+            return false;
+        }
+        ++_requests;
+        _bytes += bytes;
+        return true;
+    }
+
+    /**
+     * @param bytes
+     *            The size of the request.
+     * @return <code>true</code> if a request of that size fits in the
+     *         remaining credits. Must be called while holding the lock.
+     */
+    private boolean fits(long bytes) {
+        return _requests < _maxRequests && (_bytes + bytes <= _maxBytes || _requests == 0);
+    }
+
+    /**
+     * Take the credits for a child if there is room, or remember that the
+     * child is waiting, in one step, so that no release can be missed. The
+     * parent lock is always taken after the child lock, never before.
+     *
+     * @param bytes
+     *            The size of the request.
+     * @param priority
+     *            The priority of the caller, 0 being the highest.
+     * @param child
+     *            The child credits.
+     * @return <code>true</code> if the credits were taken.
+     */
+    private synchronized boolean tryTakeForChild(long bytes, int priority, SendCredits child) {
+        if (!isWaiting(priority) && fits(bytes)) {
+            ++_requests;
+            _bytes += bytes;
+            return true;
+        }
+        _blockedChildren.add(child);
+        return false;
+    }
+
+    /**
+     * Give back the credits of a child's request, and let the waiting
+     * children try again.
+     *
+     * @param bytes
+     *            The size of the request.
+     */
+    private void releaseFromChild(long bytes) {
+        synchronized (this) {
+            --_requests;
+            _bytes -= bytes;
+        }
+        wakeBlockedChildren();
+    }
+
+    /**
+     * Let the children waiting for these credits try again, those with the
+     * callers of highest priority first.
+     */
+    private void wakeBlockedChildren() {
+        List<SendCredits> blocked;
+        synchronized (this) {
+            if (_blockedChildren.isEmpty()) {
+                return;
+            }
+            blocked = new ArrayList<SendCredits>(_blockedChildren);
+            _blockedChildren.clear();
+        }
+        if (blocked.size() == 1) {
+            blocked.get(0).drain();
+            return;
+        }
+
+        // the priorities are read once, as they change while the children
+        // drain
+        int[] priorities = new int[blocked.size()];
+        for (int i = 0; i < priorities.length; ++i) {
+            priorities[i] = blocked.get(i).getWaitingPriority();
+        }
+        for (int priority = 0; priority <= _queues.size(); ++priority) {
+            for (int i = 0; i < priorities.length; ++i) {
+                if (priorities[i] == priority) {
+                    blocked.get(i).drain();
+                }
+            }
+        }
+    }
+
+    /**
+     * A caller waiting for credits.
+     */
+    private static class Admission {
+
+        /**
+         * The size of the request.
+         */
+        private final long _bytes;
+
+        /**
+         * Completed when the credits are granted.
+         */
+        private final CompletableFuture<Void> _future = new CompletableFuture<Void>();
+
+        /**
+         * The deadline timer.
+         */
+        private volatile Timeout _timeout;
+
+        /**
+         * @param bytes
+         *            The size of the request.
+         */
+        Admission(long bytes) {
+            _bytes = bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+/**
+ * The kinds of traffic. Metadata calls are sent on their own connections to a
+ * server so that they do not queue behind bulk transfers, which share theirs
+ * unless <code>NetMgr.setDedicatedLanes</code> gives each class its own. They
+ * are listed in order of priority, which decides who goes first when callers
+ * wait for send credits.
+ */
+public enum TrafficClass {
+
+    /**
+     * Small calls on names and attributes, such as LOOKUP, GETATTR and
+     * CREATE, and the calls of the mount and portmap services.
+     */
+    METADATA,
+
+    /**
+     * COMMIT calls, which are small but wait on the server's disks.
+     */
+    COMMIT,
+
+    /**
+     * Calls whose replies carry file data or directory listings.
+     */
+    READ,
+
+    /**
+     * Calls carrying file data.
+     */
+    WRITE;
+
+}
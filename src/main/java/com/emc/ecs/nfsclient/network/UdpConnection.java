@@ -0,0 +1,332 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import com.emc.ecs.nfsclient.rpc.RpcException;
+import com.emc.ecs.nfsclient.rpc.RpcStatus;
+import com.emc.ecs.nfsclient.rpc.RpcTimeoutException;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An RPC transport over UDP, for small metadata requests such as GETATTR,
+ * LOOKUP or ACCESS. A datagram avoids the stream connection and its record
+ * marking, and a lost request only delays its own reply rather than every
+ * request queued behind it.
+ *
+ * <p>
+ * RFC1831: there is no record marking on datagrams, each datagram holds one
+ * whole message. Replies are matched to calls by xid, and a request with no
+ * reply is sent again under the same xid, after an interval that doubles
+ * each time, until its timeout expires. Only idempotent requests may be sent
+ * this way, as the server may execute a request more than once.
+ * </p>
+ */
+public class UdpConnection {
+
+    /**
+     * The usual logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(UdpConnection.class);
+
+    /**
+     * The interval before the first retransmission in milliseconds.
+     */
+    private static final long INITIAL_RETRANSMIT_MILLIS = 1000;
+
+    /**
+     * The size of the receive buffers, enough for the largest datagram.
+     */
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The server address.
+     */
+    private final InetSocketAddress _remoteAddress;
+
+    /**
+     * The bound datagram channel.
+     */
+    private final Channel _channel;
+
+    /**
+     * The calls waiting for a reply, keyed by xid.
+     */
+    private final PendingCallTable _pendingCalls = new PendingCallTable();
+
+    /**
+     * Bind a datagram channel to an ephemeral local port.
+     *
+     * @param remoteHost
+     *            The server host.
+     * @param port
+     *            The server port.
+     * @throws RpcException
+     *             If the channel cannot be bound.
+     */
+    public UdpConnection(String remoteHost, int port) throws RpcException {
+        _remoteAddress = new InetSocketAddress(remoteHost, port);
+
+        // the channel is bound by hand, as the bootstrap would wait on the
+        // monitor of the bind future
+        String msg = String.format("cannot bind a udp channel for: %s", _remoteAddress);
+        try {
+            _channel = NetMgr.getInstance().getDatagramFactory().newChannel(Channels.pipeline(new DatagramHandler()));
+            _channel.getConfig().setOption("receiveBufferSizePredictorFactory",
+                    new FixedReceiveBufferSizePredictorFactory(RECEIVE_BUFFER_SIZE));
+        } catch (ChannelException e) {
+            LOG.error(msg, e);
+            throw new RpcException(RpcStatus.NETWORK_ERROR, msg, e);
+        }
+
+        ChannelFuture bindFuture = Connection.awaitUninterruptibly(_channel.bind(new InetSocketAddress(0)));
+        if (!bindFuture.isSuccess()) {
+            LOG.error(msg, bindFuture.getCause());
+            _channel.close();
+            throw new RpcException(RpcStatus.NETWORK_ERROR, msg);
+        }
+    }
+
+    /**
+     * @return The server address.
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return _remoteAddress;
+    }
+
+    /**
+     * Send a RPC request and wait for the reply.
+     *
+     * @param timeout
+     *            The timeout in seconds.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return The Xdr data for the response.
+     * @throws RpcException
+     */
+    public Xdr sendAndWait(int timeout, Xdr xdrRequest) throws RpcException {
+        return sendAndWait(timeout, TimeUnit.SECONDS, xdrRequest);
+    }
+
+    /**
+     * Send a RPC request and wait for the reply.
+     *
+     * @param timeout
+     *            The timeout.
+     * @param unit
+     *            The unit of the timeout.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return The Xdr data for the response.
+     * @throws RpcException
+     */
+    public Xdr sendAndWait(long timeout, TimeUnit unit, Xdr xdrRequest) throws RpcException {
+        try {
+            return sendAsync(timeout, unit, xdrRequest).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Send a RPC request without blocking the caller. The request is sent
+     * again until a reply is received, and the future is failed with an
+     * <code>RpcTimeoutException</code> if none is received in time.
+     *
+     * @param timeout
+     *            The timeout in seconds.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> sendAsync(int timeout, Xdr xdrRequest) {
+        return sendAsync(timeout, TimeUnit.SECONDS, xdrRequest);
+    }
+
+    /**
+     * Send a RPC request without blocking the caller, as
+     * <code>sendAsync(int, Xdr)</code> does.
+     *
+     * @param timeout
+     *            The timeout.
+     * @param unit
+     *            The unit of the timeout.
+     * @param xdrRequest
+     *            The generic RPC data and protocol-specific data.
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> sendAsync(long timeout, TimeUnit unit, Xdr xdrRequest) {
+        final CompletableFuture<Xdr> result = new CompletableFuture<Xdr>();
+
+        PendingCallTable.Call call = new PendingCallTable.Call(xdrRequest, result);
+        final int xid = xdrRequest.isXidReserved() ? _pendingCalls.add(call, xdrRequest.getXid())
+                : _pendingCalls.add(call);
+        xdrRequest.putXid(xid);
+        _pendingCalls.removeWhenCancelled(call);
+
+        call.setDeadline(NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+             */
+            public void run(Timeout t) {
+                expire(xid);
+            }
+        }, timeout, unit));
+
+        transmit(xdrRequest, toDatagram(xdrRequest), INITIAL_RETRANSMIT_MILLIS, result);
+        return result;
+    }
+
+    /**
+     * Send the datagram, and schedule its retransmission unless the call has
+     * completed by then.
+     *
+     * @param request
+     *            The request.
+     * @param datagram
+     *            The whole request, wrapping its buffer.
+     * @param intervalMillis
+     *            The time to wait for the reply before sending it again.
+     * @param result
+     *            The future of the call.
+     */
+    private void transmit(final Xdr request, final ChannelBuffer datagram, final long intervalMillis,
+            final CompletableFuture<Xdr> result) {
+        if (result.isDone() || !request.retain()) {
+            return;
+        }
+
+        // each write consumes the readable bytes of its buffer, and keeps the
+        // request buffer that it wraps
+        RecordMarkingUtil.releaseOnCompletion(_channel.write(datagram.duplicate(), _remoteAddress), request);
+
+        NetMgr.getInstance().getTimer().newTimeout(new TimerTask() {
+            /* (non-Javadoc)
+             * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+             */
+            public void run(Timeout t) {
+                if (!result.isDone()) {
+                    LOG.debug("retransmitting a udp request to: {}", _remoteAddress);
+                    transmit(request, datagram, intervalMillis * 2, result);
+                }
+            }
+        }, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param xdrRequest
+     * @return The header and payloads of the request as one buffer, without
+     *         copying any data.
+     */
+    private static ChannelBuffer toDatagram(Xdr xdrRequest) {
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        buffers.add(xdrRequest.wrapData());
+        if (xdrRequest.getPayloads() != null) {
+            buffers.addAll(xdrRequest.getPayloads());
+        }
+        return ChannelBuffers.wrappedBuffer(true, buffers.toArray(new ByteBuffer[buffers.size()]));
+    }
+
+    /**
+     * Fail a pending request whose timeout has expired. Do nothing if the
+     * reply has already arrived.
+     *
+     * @param xid
+     *            The xid of the request.
+     */
+    private void expire(int xid) {
+        PendingCallTable.Call call = _pendingCalls.remove(xid);
+        if (call != null) {
+            String msg = String.format("rpc request timeout on udp to: %s", _remoteAddress);
+            call.fail(new RpcTimeoutException(msg));
+        }
+    }
+
+    /**
+     * Close the channel, and fail the calls still waiting for a reply.
+     */
+    public void shutdown() {
+        _channel.close();
+        String msg = String.format("udp channel closed to: %s", _remoteAddress);
+        for (PendingCallTable.Call call : _pendingCalls.removeAll(true)) {
+            call.fail(new RpcException(RpcStatus.NETWORK_ERROR, msg));
+        }
+    }
+
+    /**
+     * Matches the replies to the pending calls. Replies to calls that have
+     * already completed, such as duplicate replies to retransmitted
+     * requests, are dropped.
+     */
+    private class DatagramHandler extends SimpleChannelHandler {
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * org.jboss.netty.channel.SimpleChannelHandler#messageReceived(org.jboss.
+         * netty.channel.ChannelHandlerContext,
+         * org.jboss.netty.channel.MessageEvent)
+         */
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            Xdr x = RecordMarkingUtil.toXdr((ChannelBuffer) e.getMessage());
+            PendingCallTable.Call call = _pendingCalls.remove(x.getXid());
+            if (call != null) {
+                NetMgr.getInstance().complete(call, x);
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * org.jboss.netty.channel.SimpleChannelHandler#exceptionCaught(org.jboss.
+         * netty.channel.ChannelHandlerContext,
+         * org.jboss.netty.channel.ExceptionEvent)
+         */
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+            // the lost request is retransmitted, there is nothing to close
+            LOG.warn("Exception on udp channel to " + _remoteAddress, e.getCause());
+        }
+
+    }
+
+}
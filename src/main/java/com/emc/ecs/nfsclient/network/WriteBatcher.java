@@ -0,0 +1,212 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the records written to a connection within a short window, or
+ * until a byte threshold is reached, into a single gathering write. With
+ * <code>tcpNoDelay</code> set, this turns a storm of small metadata calls into
+ * a few large segments and system calls instead of one each.
+ */
+class WriteBatcher {
+
+    /**
+     * The longest time a record waits for others, in nanoseconds.
+     */
+    private final long _windowNanos;
+
+    /**
+     * The batch is written as soon as it holds this many bytes.
+     */
+    private final int _maxBytes;
+
+    /**
+     * The metric updated for each batch written.
+     */
+    private final BatchMetric _metric;
+
+    /**
+     * The channel that the pending records are for.
+     */
+    private Channel _channel;
+
+    /**
+     * The pending record fragments, in sending order.
+     */
+    private List<ChannelBuffer> _fragments = new ArrayList<ChannelBuffer>();
+
+    /**
+     * The pending requests, released once their batch has been written.
+     */
+    private List<Xdr> _requests = new ArrayList<Xdr>();
+
+    /**
+     * The number of pending records.
+     */
+    private int _records;
+
+    /**
+     * The number of pending bytes.
+     */
+    private int _bytes;
+
+    /**
+     * <code>true</code> if a flush of the pending records is scheduled.
+     */
+    private boolean _flushScheduled;
+
+    /**
+     * @param windowNanos
+     *            The longest time a record waits for others, in nanoseconds.
+     * @param maxBytes
+     *            The batch is written as soon as it holds this many bytes.
+     * @param metric
+     *            The metric updated for each batch written.
+     */
+    WriteBatcher(long windowNanos, int maxBytes, BatchMetric metric) {
+        _windowNanos = windowNanos;
+        _maxBytes = maxBytes;
+        _metric = metric;
+    }
+
+    /**
+     * Add a request to the current batch, writing the batch if it is full.
+     * The caller's reference to the request is released once the batch has
+     * been written.
+     * 
+     * @param channel
+     *            The Channel to use for sending.
+     * @param rpcRequest
+     *            The request to send, retained by the caller.
+     */
+    void write(Channel channel, Xdr rpcRequest) {
+        List<ChannelBuffer> fragments = new ArrayList<ChannelBuffer>(1);
+        int bytes = RecordMarkingUtil.putRecordMarking(rpcRequest, fragments);
+
+        Batch previous = null;
+        Batch full = null;
+        boolean schedule = false;
+        synchronized (this) {
+            if (channel != _channel) {
+                // the connection was re-established, do not mix channels
+                previous = takeBatch();
+                _channel = channel;
+            }
+
+            _fragments.addAll(fragments);
+            _requests.add(rpcRequest);
+            ++_records;
+            _bytes += bytes;
+
+            if (_bytes >= _maxBytes) {
+                full = takeBatch();
+            } else if (!_flushScheduled) {
+                _flushScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (previous != null) {
+            previous.write();
+        }
+        if (full != null) {
+            full.write();
+        }
+        if (schedule) {
+            NetMgr.getInstance().getBatchScheduler().schedule(this::flush, _windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Write the pending records, if any.
+     */
+    void flush() {
+        Batch batch;
+        synchronized (this) {
+            _flushScheduled = false;
+            batch = takeBatch();
+        }
+
+        if (batch != null) {
+            batch.write();
+        }
+    }
+
+    /**
+     * Take the pending records. Must be called while holding the lock.
+     * 
+     * @return The batch, or <code>null</code> if nothing is pending.
+     */
+    private Batch takeBatch() {
+        if (_records == 0) {
+            return null;
+        }
+
+        Batch batch = new Batch(_channel, _fragments, _requests, _records, _bytes);
+        _fragments = new ArrayList<ChannelBuffer>();
+        _requests = new ArrayList<Xdr>();
+        _records = 0;
+        _bytes = 0;
+        return batch;
+    }
+
+    /**
+     * Records taken from the batcher, to be written outside the lock.
+     */
+    private class Batch {
+
+        private final Channel _batchChannel;
+
+        private final List<ChannelBuffer> _batchFragments;
+
+        private final List<Xdr> _batchRequests;
+
+        private final int _batchRecords;
+
+        private final int _batchBytes;
+
+        Batch(Channel channel, List<ChannelBuffer> fragments, List<Xdr> requests, int records, int bytes) {
+            _batchChannel = channel;
+            _batchFragments = fragments;
+            _batchRequests = requests;
+            _batchRecords = records;
+            _batchBytes = bytes;
+        }
+
+        /**
+         * Write all the records with a single gathering write.
+         */
+        void write() {
+            ChannelBuffer[] buffers = _batchFragments.toArray(new ChannelBuffer[_batchFragments.size()]);
+            ChannelFuture write = _batchChannel.write(ChannelBuffers.wrappedBuffer(true, buffers));
+            RecordMarkingUtil.releaseOnCompletion(write,
+                    _batchRequests.toArray(new Xdr[_batchRequests.size()]));
+            _metric.add(_batchRecords, _batchBytes);
+        }
+
+    }
+
+}
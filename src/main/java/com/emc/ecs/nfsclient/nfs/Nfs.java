@@ -23,6 +23,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client for an NFS RPC server, as specified by RFC 1813
@@ -234,6 +235,18 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     Credential getCredential();
 
+    /**
+     * @return The cache of the attributes returned by the server, which every
+     *         response feeds.
+     */
+    NfsAttributeCache getAttributeCache();
+
+    /**
+     * @return The directory name lookup cache, which every LOOKUP response
+     *         and every change to a directory feeds.
+     */
+    NfsNameCache getNameCache();
+
     /**
      * @return The path on the filesystem that is exported by the NFS server.
      */
@@ -334,6 +347,26 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsGetAttrResponse wrapped_getAttr(NfsGetAttrRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure GETATTR retrieves the attributes for a specified file system
+     * object. The object is identified by the file handle that the server
+     * returned as part of the response from a LOOKUP, CREATE, MKDIR, SYMLINK,
+     * MKNOD, or READDIRPLUS procedure (or from the MOUNT service, described
+     * elsewhere).
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsGetAttrResponse> wrapped_getAttrAsync(NfsGetAttrRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -390,6 +423,23 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsSetAttrResponse wrapped_setAttr(NfsSetAttrRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure SETATTR changes one or more of the attributes of a file system
+     * object on the server.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsSetAttrResponse> wrapped_setAttrAsync(NfsSetAttrRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -439,6 +489,23 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsLookupResponse wrapped_getLookup(NfsLookupRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure LOOKUP searches a directory for a specific name and returns the
+     * file handle for the corresponding file system object.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsLookupResponse> wrapped_getLookupAsync(NfsLookupRequest request);
+
     /**
      * Creates the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -535,6 +602,35 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsAccessResponse wrapped_getAccess(NfsAccessRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure ACCESS determines the access rights that a user, as identified
+     * by the credentials in the request, has with respect to a file system
+     * object. The client encodes the set of permissions that are to be checked
+     * in a bit mask. The server checks the permissions encoded in the bit mask.
+     * A status of NFS3_OK is returned along with a bit mask encoded with the
+     * permissions that the client is allowed.
+     * </p>
+     * 
+     * <p>
+     * The results of this procedure are necessarily advisory in nature. That
+     * is, a return status of NFS3_OK and the appropriate bit set in the bit
+     * mask does not imply that such access will be allowed to the file system
+     * object in the future, as access rights can be revoked by the server at
+     * any time.
+     * </p>
+     *
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsAccessResponse> wrapped_getAccessAsync(NfsAccessRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -621,6 +717,36 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsReadlinkResponse wrapped_getReadlink(NfsReadlinkRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * This method reads the data associated with a symbolic link. The data is
+     * an ASCII string that is opaque to the server. That is, whether created by
+     * the NFS version 3 protocol software from a client or created locally on
+     * the server, the data in a symbolic link is not interpreted when created,
+     * but is simply stored.
+     * </p>
+     * 
+     * <p>
+     * A symbolic link is nominally a pointer to another file. The data is not
+     * necessarily interpreted by the server, just stored in the file. It is
+     * possible for a client implementation to store a path name that is not
+     * meaningful to the server operating system in a symbolic link. A READLINK
+     * operation returns the data to the client for interpretation. If different
+     * implementations want to share access to symbolic links, then they must
+     * agree on the interpretation of the data in the symbolic link.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsReadlinkResponse> wrapped_getReadlinkAsync(NfsReadlinkRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -693,6 +819,27 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsReadResponse wrapped_getRead(NfsReadRequest request, byte[] bytes, int position) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure READ reads data from a file.
+     * </p>
+     * 
+     * @param request
+     * @param bytes
+     *            optional externally provided buffer - if not provided, the
+     *            method will create a new, empty buffer for receiving the data.
+     * @param position
+     *            position to start writing, defaults to 0 if buffer is null
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsReadResponse> wrapped_getReadAsync(NfsReadRequest request, byte[] bytes, int position);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -754,6 +901,22 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsWriteResponse wrapped_sendWrite(NfsWriteRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure WRITE writes data to a file.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsWriteResponse> wrapped_sendWriteAsync(NfsWriteRequest request);
+
     /**
      * Implementation of the NFS RPC call, wrapped to include repeated attempts,
      * error checking, and logging. The details are as specified by RFC 1813
@@ -774,6 +937,27 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsWriteResponse wrapped_sendWrite(NfsWriteRequest request, Long verifier) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure WRITE writes data to a file.
+     * </p>
+     * 
+     * @param request
+     * @param verifier
+     *            This is a cookie, previously returned from the server, that
+     *            the client can use to determine whether the server has changed
+     *            state between a call to WRITE and a subsequent call to either
+     *            WRITE or COMMIT.
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsWriteResponse> wrapped_sendWriteAsync(NfsWriteRequest request, Long verifier);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -843,6 +1027,22 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsCreateResponse wrapped_sendCreate(NfsCreateRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure CREATE creates a regular file.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsCreateResponse> wrapped_sendCreateAsync(NfsCreateRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -894,6 +1094,22 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsMkdirResponse wrapped_sendMkdir(NfsMkdirRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure MKDIR creates a new subdirectory.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsMkdirResponse> wrapped_sendMkdirAsync(NfsMkdirRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -947,6 +1163,22 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsSymlinkResponse wrapped_sendSymlink(NfsSymlinkRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure SYMLINK creates a new symbolic link.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsSymlinkResponse> wrapped_sendSymlinkAsync(NfsSymlinkRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1009,6 +1241,23 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsMknodResponse wrapped_sendMknod(NfsMknodRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure MKNOD creates a new special file of the type, <code>type</code>
+     * . Special files can be device files or named pipes.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsMknodResponse> wrapped_sendMknodAsync(NfsMknodRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1062,6 +1311,24 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsRemoveResponse wrapped_sendRemove(NfsRemoveRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure REMOVE removes (deletes) an entry from a directory. If the
+     * entry in the directory was the last reference to the corresponding file
+     * system object, the object may be destroyed.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsRemoveResponse> wrapped_sendRemoveAsync(NfsRemoveRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1115,6 +1382,24 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsRmdirResponse wrapped_sendRmdir(NfsRmdirRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure RMDIR removes (deletes) a subdirectory from a directory. If the
+     * directory entry of the subdirectory is the last reference to the
+     * subdirectory, the subdirectory may be destroyed.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsRmdirResponse> wrapped_sendRmdirAsync(NfsRmdirRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1180,6 +1465,26 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsRenameResponse wrapped_sendRename(NfsRenameRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure RENAME renames the file identified by <code>name</code> in the
+     * directory, <code>fileHandle</code>, to <code>toName</code> in the
+     * directory, <code>toFileHandle</code>. The operation is required to be
+     * atomic to the client. <code>toFileHandle</code> and
+     * <code>fileHandle</code> must reside on the same file system and server.
+     * </p>
+     *
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsRenameResponse> wrapped_sendRenameAsync(NfsRenameRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1242,6 +1547,26 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsLinkResponse wrapped_sendLink(NfsLinkRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure LINK creates a hard link from <code>fileHandle</code> to
+     * <code>name</code>, in the directory,
+     * <code>parentDirectoryFileHandle</code>. <code>fileHandle</code> and
+     * <code>parentDirectoryFileHandle</code> must reside on the same file
+     * system and server.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsLinkResponse> wrapped_sendLinkAsync(NfsLinkRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1310,6 +1635,25 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsReaddirResponse wrapped_getReaddir(NfsReaddirRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure READDIR retrieves a variable number of entries, in sequence,
+     * from a directory and returns the name and file identifier for each, with
+     * information to allow the client to request additional directory entries
+     * in a subsequent READDIR request.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsReaddirResponse> wrapped_getReaddirAsync(NfsReaddirRequest request);
+
     /**
      * Implementation of the NFS RPC call, wrapped to include repeated attempts,
      * error checking, and logging. The details are as specified by RFC 1813
@@ -1391,6 +1735,17 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsReaddirplusResponse getReaddirplus(NfsReaddirplusRequest request) throws IOException;
 
+    /**
+     * Bare implementation of the NFS RPC call, without blocking the caller.
+     * The callback is invoked when a response is received, whatever its
+     * status, and its <code>fail</code> method is called if no response is
+     * received.
+     * 
+     * @param request
+     * @param callback
+     *            The callback invoked with the response or the failure.
+     * @throws IOException
+     */
     void getReaddirplusAsync(NfsReaddirplusRequest request, Callback<NfsReaddirplusResponse> callback) throws IOException;
 
     /**
@@ -1414,6 +1769,28 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsReaddirplusResponse wrapped_getReaddirplus(NfsReaddirplusRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure READDIRPLUS retrieves a variable number of entries from a file
+     * system directory and returns complete information about each along with
+     * information to allow the client to request additional directory entries
+     * in a subsequent READDIRPLUS. READDIRPLUS differs from READDIR only in the
+     * amount of information returned for each entry. In READDIR, each entry
+     * returns the filename and the fileid. In READDIRPLUS, each entry returns
+     * the name, the fileid, attributes (including the fileid), and file handle.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsReaddirplusResponse> wrapped_getReaddirplusAsync(NfsReaddirplusRequest request);
+
     /**
      * Implementation of the NFS RPC call, wrapped to include repeated attempts,
      * error checking, and logging. The details are as specified by RFC 1813
@@ -1508,6 +1885,22 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsFsStatResponse wrapped_getFsStat(NfsFsStatRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure FSSTAT retrieves volatile file system state information.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsFsStatResponse> wrapped_getFsStatAsync(NfsFsStatRequest request);
+
     /**
      * Procedure FSINFO retrieves nonvolatile file system state information and
      * general information about the NFS version 3 protocol server
@@ -1588,6 +1981,24 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsFsInfoResponse wrapped_getFsInfo(NfsFsInfoRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure FSINFO retrieves nonvolatile file system state information and
+     * general information about the NFS version 3 protocol server
+     * implementation.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsFsInfoResponse> wrapped_getFsInfoAsync(NfsFsInfoRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1641,6 +2052,25 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsPathconfResponse wrapped_getPathconf(NfsPathconfRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure PATHCONF retrieves the pathconf information for a file or
+     * directory. If the FSF_HOMOGENEOUS bit is set in FSFINFO3resok.properties,
+     * the pathconf information will be the same for all files and directories
+     * in the exported file system in which this file or directory resides.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsPathconfResponse> wrapped_getPathconfAsync(NfsPathconfRequest request);
+
     /**
      * Convenience method for creating the request, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -1701,4 +2131,22 @@ public interface Nfs<F extends NfsFile<?, ?>> {
      */
     NfsCommitResponse wrapped_sendCommit(NfsCommitRequest request) throws IOException;
 
+    /**
+     * Asynchronous implementation of the NFS RPC call, wrapped to include
+     * repeated attempts, error checking, and logging, without blocking the
+     * caller. The details are as specified by RFC 1813
+     * (https://tools.ietf.org/html/rfc1813).
+     * 
+     * <p>
+     * Procedure COMMIT forces or flushes data to stable storage that was
+     * previously written with a WRITE procedure call with the stable field set
+     * to UNSTABLE.
+     * </p>
+     * 
+     * @param request
+     * @return a future for the response, completed exceptionally with the
+     *         <code>IOException</code> that the blocking call would throw
+     */
+    CompletableFuture<? extends NfsCommitResponse> wrapped_sendCommitAsync(NfsCommitRequest request);
+
 }
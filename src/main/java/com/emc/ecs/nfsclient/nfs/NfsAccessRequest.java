@@ -115,6 +115,15 @@ public class NfsAccessRequest extends NfsRequestBase {
         xdr.putUnsignedInt(_accessToCheck);
     }
 
+    /**
+     * The access mask.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 4;
+    }
+
     /*
      * (non-Javadoc)
      * 
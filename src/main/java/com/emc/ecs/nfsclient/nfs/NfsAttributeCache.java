@@ -0,0 +1,299 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of file attributes, keyed by file handle, fed by the post-operation
+ * attributes that come back with nearly every NFSv3 reply.
+ *
+ * <p>
+ * As in the usual NFS clients, an entry lives for a time that grows with how
+ * long the file has gone without a change: a tenth of the time since its last
+ * modification, kept between a minimum and a maximum that are set separately
+ * for directories and for other files. Our own changes replace the entries
+ * with the attributes returned by the change, so they are seen at once; changes
+ * made by other clients are seen once the entry expires. The cache holds a
+ * bounded number of entries, and evicts the least recently used. It keeps its
+ * own copies of the attributes, and hands out copies, so that callers cannot
+ * change what other callers see.
+ * </p>
+ */
+public class NfsAttributeCache {
+
+    /**
+     * The default minimum time to live of a file entry in milliseconds.
+     */
+    private static final long DEFAULT_FILE_MIN_MILLIS = 3000;
+
+    /**
+     * The default maximum time to live of a file entry in milliseconds.
+     */
+    private static final long DEFAULT_FILE_MAX_MILLIS = 60000;
+
+    /**
+     * The default minimum time to live of a directory entry in milliseconds.
+     */
+    private static final long DEFAULT_DIRECTORY_MIN_MILLIS = 30000;
+
+    /**
+     * The default maximum time to live of a directory entry in milliseconds.
+     */
+    private static final long DEFAULT_DIRECTORY_MAX_MILLIS = 60000;
+
+    /**
+     * The default maximum number of entries.
+     */
+    private static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+    /**
+     * The entries, by file handle, from the least to the most recently used.
+     */
+    private final LinkedHashMap<ByteBuffer, CachedAttributes> _entries = new LinkedHashMap<ByteBuffer, CachedAttributes>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedAttributes> eldest) {
+            return size() > _maximumSize;
+        }
+
+    };
+
+    /**
+     * The minimum time to live of a file entry in milliseconds.
+     */
+    private long _fileMinMillis = DEFAULT_FILE_MIN_MILLIS;
+
+    /**
+     * The maximum time to live of a file entry in milliseconds, or 0 if files
+     * are not cached.
+     */
+    private long _fileMaxMillis = DEFAULT_FILE_MAX_MILLIS;
+
+    /**
+     * The minimum time to live of a directory entry in milliseconds.
+     */
+    private long _directoryMinMillis = DEFAULT_DIRECTORY_MIN_MILLIS;
+
+    /**
+     * The maximum time to live of a directory entry in milliseconds, or 0 if
+     * directories are not cached.
+     */
+    private long _directoryMaxMillis = DEFAULT_DIRECTORY_MAX_MILLIS;
+
+    /**
+     * The maximum number of entries.
+     */
+    private int _maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    /**
+     * Set the time to live of the entries for files other than directories,
+     * like the <code>acregmin</code> and <code>acregmax</code> mount options.
+     * 
+     * @param minMillis
+     *            The minimum in milliseconds.
+     * @param maxMillis
+     *            The maximum in milliseconds, or 0 to stop caching them.
+     */
+    public synchronized void setFileTtl(long minMillis, long maxMillis) {
+        checkTtl(minMillis, maxMillis);
+        _fileMinMillis = minMillis;
+        _fileMaxMillis = maxMillis;
+    }
+
+    /**
+     * Set the time to live of the entries for directories, like the
+     * <code>acdirmin</code> and <code>acdirmax</code> mount options.
+     * 
+     * @param minMillis
+     *            The minimum in milliseconds.
+     * @param maxMillis
+     *            The maximum in milliseconds, or 0 to stop caching them.
+     */
+    public synchronized void setDirectoryTtl(long minMillis, long maxMillis) {
+        checkTtl(minMillis, maxMillis);
+        _directoryMinMillis = minMillis;
+        _directoryMaxMillis = maxMillis;
+    }
+
+    /**
+     * @param minMillis
+     * @param maxMillis
+     * @throws IllegalArgumentException
+     *             If the range is not valid.
+     */
+    private static void checkTtl(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException(
+                    String.format("invalid attribute cache ttl: min %s ms, max %s ms", minMillis, maxMillis));
+        }
+    }
+
+    /**
+     * @param maximumSize
+     *            The maximum number of entries, or 0 to disable the cache.
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException(String.format("invalid attribute cache size: %s", maximumSize));
+        }
+        _maximumSize = maximumSize;
+        if (maximumSize == 0) {
+            _entries.clear();
+        } else {
+            while (_entries.size() > maximumSize) {
+                _entries.remove(_entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * @param fileHandle
+     *            The file handle.
+     * @return A copy of the attributes, or <code>null</code> if there are
+     *         none or they have expired.
+     */
+    public synchronized NfsGetAttributes get(byte[] fileHandle) {
+        if (fileHandle == null) {
+            return null;
+        }
+        ByteBuffer key = ByteBuffer.wrap(fileHandle);
+        CachedAttributes entry = _entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry._expiryNanos >= 0) {
+            _entries.remove(key);
+            return null;
+        }
+        return new NfsGetAttributes(entry._attributes);
+    }
+
+    /**
+     * Add or replace the attributes of a file. Attributes with an older change
+     * time than the ones already held, such as from a reply that was overtaken
+     * by a later one, are ignored.
+     * 
+     * @param fileHandle
+     *            The file handle, or <code>null</code>.
+     * @param attributes
+     *            The attributes, or <code>null</code> if the reply had none.
+     */
+    public synchronized void put(byte[] fileHandle, NfsGetAttributes attributes) {
+        if (fileHandle == null || attributes == null || !attributes.isLoaded() || _maximumSize == 0) {
+            return;
+        }
+        ByteBuffer key = ByteBuffer.wrap(fileHandle.clone());
+        CachedAttributes entry = _entries.get(key);
+        if (entry != null && isBefore(attributes.getCtime(), entry._attributes.getCtime())) {
+            return;
+        }
+
+        long minMillis = _fileMinMillis;
+        long maxMillis = _fileMaxMillis;
+        if (attributes.getType() == NfsType.NFS_DIR) {
+            minMillis = _directoryMinMillis;
+            maxMillis = _directoryMaxMillis;
+        }
+        long unchangedMillis = System.currentTimeMillis() - attributes.getMtime().getTimeInMillis();
+        long ttlMillis = Math.min(maxMillis, Math.max(minMillis, unchangedMillis / 10));
+        if (ttlMillis == 0) {
+            _entries.remove(key);
+        } else {
+            _entries.put(key, new CachedAttributes(new NfsGetAttributes(attributes),
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        }
+    }
+
+    /**
+     * @param time
+     * @param other
+     * @return <code>true</code> if <code>time</code> is before
+     *         <code>other</code>, to the nanosecond, <code>false</code>
+     *         otherwise.
+     */
+    private static boolean isBefore(NfsTime time, NfsTime other) {
+        if (time.getSeconds() != other.getSeconds()) {
+            return time.getSeconds() < other.getSeconds();
+        }
+        return time.getNanoseconds() < other.getNanoseconds();
+    }
+
+    /**
+     * Drop the attributes of a file, such as when the server reports that
+     * the handle is stale.
+     * 
+     * @param fileHandle
+     *            The file handle, or <code>null</code>.
+     */
+    public synchronized void remove(byte[] fileHandle) {
+        if (fileHandle != null) {
+            _entries.remove(ByteBuffer.wrap(fileHandle));
+        }
+    }
+
+    /**
+     * Drop all the entries.
+     */
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    /**
+     * @return The number of entries, including any that have expired but are
+     *         not yet removed.
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * The attributes of a file and their expiry.
+     */
+    private static final class CachedAttributes {
+
+        /**
+         * The attributes.
+         */
+        private final NfsGetAttributes _attributes;
+
+        /**
+         * The expiry, from <code>System.nanoTime()</code>.
+         */
+        private final long _expiryNanos;
+
+        /**
+         * @param attributes
+         *            The attributes.
+         * @param expiryNanos
+         *            The expiry, from <code>System.nanoTime()</code>.
+         */
+        private CachedAttributes(NfsGetAttributes attributes, long expiryNanos) {
+            _attributes = attributes;
+            _expiryNanos = expiryNanos;
+        }
+
+    }
+
+}
@@ -89,6 +89,15 @@ public class NfsCommitRequest extends NfsRequestBase {
         xdr.putUnsignedInt(_dataSizeToCommit);
     }
 
+    /**
+     * The offset and the count.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 12;
+    }
+
     /*
      * (non-Javadoc)
      * 
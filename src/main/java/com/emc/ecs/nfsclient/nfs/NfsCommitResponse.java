@@ -100,4 +100,15 @@ public class NfsCommitResponse extends NfsResponseBase {
         return _fileWccData;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheAttributes(com.emc.
+     * ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        cache.put(request.getFileHandle(), _fileWccData.getAttributes());
+    }
+
 }
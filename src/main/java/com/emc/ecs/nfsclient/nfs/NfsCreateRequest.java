@@ -125,6 +125,13 @@ public class NfsCreateRequest extends NfsRequestBase {
         }
     }
 
+    /**
+     * @return The name that is to be associated with the created file.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
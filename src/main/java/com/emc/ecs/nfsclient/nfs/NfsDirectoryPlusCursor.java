@@ -0,0 +1,215 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs;
+
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+/**
+ * A cursor over the entries of a READDIRPLUS reply, as specified by RFC 1813
+ * (https://tools.ietf.org/html/rfc1813), reading the reply buffer in place.
+ *
+ * <p>
+ * Moving to an entry only reads its file id and cookie, and notes where its
+ * name, attributes and file handle are. Those are decoded when they are
+ * asked for, so scanning a large directory for a few names creates no
+ * objects for the other entries. The cursor itself is the current entry, and
+ * is reused for each one: use <code>toEntry()</code> to keep an entry. A
+ * cursor must not be shared between threads.
+ * </p>
+ */
+public class NfsDirectoryPlusCursor {
+
+    /**
+     * The size in bytes of the fattr3 structure, which has no variable
+     * fields.
+     */
+    private static final int ATTRIBUTES_SIZE = 84;
+
+    /**
+     * The reply, or <code>null</code> if there are no entries.
+     */
+    private final Xdr _xdr;
+
+    /**
+     * <code>true</code> once the last entry has been passed.
+     */
+    private boolean _done;
+
+    /**
+     * The offset of the current entry, or -1 before the first one.
+     */
+    private int _entryOffset = -1;
+
+    /**
+     * The offset of the entry after the current one.
+     */
+    private int _nextOffset;
+
+    /**
+     * The file id of the current entry.
+     */
+    private long _fileId;
+
+    /**
+     * The cookie of the current entry.
+     */
+    private long _cookie;
+
+    /**
+     * The offset of the name of the current entry.
+     */
+    private int _fileNameOffset;
+
+    /**
+     * The name of the current entry, once it has been decoded.
+     */
+    private String _fileName;
+
+    /**
+     * The offset of the attributes of the current entry, or -1 if it has
+     * none.
+     */
+    private int _attributesOffset;
+
+    /**
+     * The offset of the file handle of the current entry, or -1 if it has
+     * none.
+     */
+    private int _fileHandleOffset;
+
+    /**
+     * Create the cursor.
+     *
+     * @param xdr
+     *            The reply, with the offset at the <code>value_follows</code>
+     *            flag of the first entry, or <code>null</code> if there are no
+     *            entries. The offset is moved as the cursor moves.
+     */
+    NfsDirectoryPlusCursor(Xdr xdr) {
+        _xdr = xdr;
+        _done = (xdr == null);
+    }
+
+    /**
+     * Move to the next entry.
+     *
+     * @return <code>true</code> if there is one, <code>false</code> if the
+     *         last entry has been passed.
+     */
+    public boolean next() {
+        if (_done) {
+            return false;
+        }
+        if (_entryOffset >= 0) {
+            _xdr.setOffset(_nextOffset);
+        }
+        if (!_xdr.getBoolean()) {
+            _done = true;
+            return false;
+        }
+
+        _entryOffset = _xdr.getOffset();
+        _fileId = _xdr.getLong();
+        _fileNameOffset = _xdr.getOffset();
+        _xdr.skip(_xdr.getInt());
+        _fileName = null;
+        _cookie = _xdr.getLong();
+
+        _attributesOffset = -1;
+        if (_xdr.getBoolean()) {
+            _attributesOffset = _xdr.getOffset();
+            _xdr.skip(ATTRIBUTES_SIZE);
+        }
+
+        _fileHandleOffset = -1;
+        if (_xdr.getBoolean()) {
+            _fileHandleOffset = _xdr.getOffset();
+            _xdr.skip(_xdr.getInt());
+        }
+
+        _nextOffset = _xdr.getOffset();
+        return true;
+    }
+
+    /**
+     * @return The cookie from the server, for use in future RPC calls.
+     */
+    public long getCookie() {
+        return _cookie;
+    }
+
+    /**
+     * @return A number which uniquely identifies the file within its file
+     *         system (on UNIX this would be the inumber).
+     */
+    public long getFileId() {
+        return _fileId;
+    }
+
+    /**
+     * @return The file name from the directory listing, decoded on the first
+     *         call for each entry.
+     */
+    public String getFileName() {
+        if (_fileName == null) {
+            _xdr.setOffset(_fileNameOffset);
+            _fileName = _xdr.getString();
+        }
+        return _fileName;
+    }
+
+    /**
+     * @return <code>true</code> if the server returned the attributes of the
+     *         file.
+     */
+    public boolean hasAttributes() {
+        return _attributesOffset >= 0;
+    }
+
+    /**
+     * @return The attributes of the file, decoded on each call, or
+     *         <code>null</code> if the server did not return them.
+     */
+    public NfsGetAttributes getAttributes() {
+        if (_attributesOffset < 0) {
+            return null;
+        }
+        _xdr.setOffset(_attributesOffset);
+        NfsGetAttributes attributes = new NfsGetAttributes();
+        attributes.unmarshalling(_xdr);
+        return attributes;
+    }
+
+    /**
+     * @return The file handle, for use in RPC calls, copied on each call, or
+     *         <code>null</code> if the server did not return it.
+     */
+    public byte[] getFileHandle() {
+        if (_fileHandleOffset < 0) {
+            return null;
+        }
+        _xdr.setOffset(_fileHandleOffset);
+        return _xdr.getByteArray();
+    }
+
+    /**
+     * @return The current entry, fully decoded.
+     */
+    public NfsDirectoryPlusEntry toEntry() {
+        _xdr.setOffset(_entryOffset);
+        return new NfsDirectoryPlusEntry(_xdr);
+    }
+
+}
@@ -54,6 +54,15 @@ public class NfsFsInfoRequest extends NfsRequestBase {
         super(Nfs.RPC_PROGRAM, nfsVersion, Nfs.NFSPROC3_FSINFO, credential, fileHandle);
     }
 
+    /**
+     * FSINFO has no arguments beyond the file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 0;
+    }
+
     /*
      * (non-Javadoc)
      * 
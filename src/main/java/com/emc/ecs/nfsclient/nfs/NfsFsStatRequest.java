@@ -51,6 +51,15 @@ public class NfsFsStatRequest extends NfsRequestBase {
         super(Nfs.RPC_PROGRAM, nfsVersion, Nfs.NFSPROC3_FSSTAT, credential, fileHandle);
     }
 
+    /**
+     * FSSTAT has no arguments beyond the file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 0;
+    }
+
     /*
      * (non-Javadoc)
      * 
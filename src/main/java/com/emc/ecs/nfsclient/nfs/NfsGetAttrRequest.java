@@ -57,6 +57,15 @@ public class NfsGetAttrRequest extends NfsRequestBase {
         super(Nfs.RPC_PROGRAM, nfsVersion, Nfs.NFSPROC3_GETATTR, credential, fileHandle);
     }
 
+    /**
+     * GETATTR has no arguments beyond the file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 0;
+    }
+
     /*
      * (non-Javadoc)
      * 
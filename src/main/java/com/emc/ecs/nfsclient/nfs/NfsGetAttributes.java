@@ -156,6 +156,36 @@ public class NfsGetAttributes {
      */
     private NfsTime _ctime;
 
+    /**
+     * Create an empty holder, to be populated by <code>unmarshalling</code>.
+     */
+    public NfsGetAttributes() {
+        super();
+    }
+
+    /**
+     * Create a copy, which shares nothing that can change with the original.
+     * 
+     * @param attributes
+     *            The attributes to copy.
+     */
+    public NfsGetAttributes(NfsGetAttributes attributes) {
+        _loaded = attributes._loaded;
+        _type = attributes._type;
+        _mode = attributes._mode;
+        _nlink = attributes._nlink;
+        _uid = attributes._uid;
+        _gid = attributes._gid;
+        _size = attributes._size;
+        _used = attributes._used;
+        _rdev = attributes._rdev.clone();
+        _fsid = attributes._fsid;
+        _fileid = attributes._fileid;
+        _atime = (attributes._atime == null) ? null : new NfsTime(attributes._atime);
+        _mtime = (attributes._mtime == null) ? null : new NfsTime(attributes._mtime);
+        _ctime = (attributes._ctime == null) ? null : new NfsTime(attributes._ctime);
+    }
+
     /**
      * Reads the Xdr response, as specified by RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
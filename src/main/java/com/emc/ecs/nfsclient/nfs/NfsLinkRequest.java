@@ -76,6 +76,21 @@ public class NfsLinkRequest extends NfsRequestBase {
         _name = trimFileName(name);
     }
 
+    /**
+     * @return The file handle for the directory in which the link is to be
+     *         created.
+     */
+    public byte[] getParentDirectoryFileHandle() {
+        return _parentDirectoryFileHandle;
+    }
+
+    /**
+     * @return The name that is to be associated with the created link.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -88,6 +103,15 @@ public class NfsLinkRequest extends NfsRequestBase {
         xdr.putString(_name);
     }
 
+    /**
+     * The directory file handle and the name.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return Xdr.sizeOf(_parentDirectoryFileHandle) + Xdr.maximumSizeOf(_name);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -78,4 +78,32 @@ public class NfsLinkResponse extends NfsResponseBase {
         return _directoryWccData;
     }
 
+    /**
+     * The file attributes go under the request file handle, and the directory
+     * attributes under the handle of the directory holding the link.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheAttributes(com.emc.
+     * ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        super.cacheAttributes(request, cache);
+        cache.put(((NfsLinkRequest) request).getParentDirectoryFileHandle(), _directoryWccData.getAttributes());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheNames(com.emc.ecs.
+     * nfsclient.nfs.NfsRequestBase, com.emc.ecs.nfsclient.nfs.NfsNameCache)
+     */
+    public void cacheNames(NfsRequestBase request, NfsNameCache cache) {
+        NfsLinkRequest linkRequest = (NfsLinkRequest) request;
+        cache.change(linkRequest.getParentDirectoryFileHandle(), linkRequest.getName(), _directoryWccData);
+        if (stateIsOk()) {
+            cache.put(linkRequest.getParentDirectoryFileHandle(), linkRequest.getName(), request.getFileHandle(),
+                    null, _directoryWccData.getAttributes());
+        }
+    }
+
 }
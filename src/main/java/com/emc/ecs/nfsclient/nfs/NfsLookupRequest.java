@@ -61,6 +61,13 @@ public class NfsLookupRequest extends NfsRequestBase {
         _name = trimFileName(name);
     }
 
+    /**
+     * @return The filename to be searched for.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -72,6 +79,15 @@ public class NfsLookupRequest extends NfsRequestBase {
         xdr.putString(_name);
     }
 
+    /**
+     * The name.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return Xdr.maximumSizeOf(_name);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -74,4 +74,34 @@ public class NfsLookupResponse extends NfsResponseBase {
         return _directoryAttributes;
     }
 
+    /**
+     * The object attributes go under the handle that was looked up, and the
+     * directory attributes under the request file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheAttributes(com.emc.
+     * ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        cache.put(request.getFileHandle(), _directoryAttributes);
+        if (stateIsOk()) {
+            cache.put(getFileHandle(), getAttributes());
+        }
+    }
+
+    /**
+     * A name that does not exist is cached as a negative entry.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheNames(com.emc.ecs.
+     * nfsclient.nfs.NfsRequestBase, com.emc.ecs.nfsclient.nfs.NfsNameCache)
+     */
+    public void cacheNames(NfsRequestBase request, NfsNameCache cache) {
+        String name = ((NfsLookupRequest) request).getName();
+        if (stateIsOk()) {
+            cache.put(request.getFileHandle(), name, getFileHandle(), getAttributesType(), _directoryAttributes);
+        } else if (getState() == NfsStatus.NFS3ERR_NOENT.getValue()) {
+            cache.put(request.getFileHandle(), name, null, null, _directoryAttributes);
+        }
+    }
+
 }
@@ -69,6 +69,13 @@ public class NfsMkdirRequest extends NfsRequestBase {
         _attributes = attributes;
     }
 
+    /**
+     * @return The name that is to be associated with the created subdirectory.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
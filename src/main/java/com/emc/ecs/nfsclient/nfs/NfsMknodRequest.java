@@ -94,6 +94,13 @@ public class NfsMknodRequest extends NfsRequestBase {
         _rdev = (rdev == null) ? null : rdev.clone();
     }
 
+    /**
+     * @return The name that is to be associated with the created special file.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,408 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Directory name lookup cache: the file handle found for a name in a
+ * directory, keyed by the directory file handle and the name, so that paths
+ * can be resolved without a LOOKUP for each component. The file type is kept
+ * with the handle, since it never changes, so that symbolic links on the path
+ * can be spotted without a GETATTR. A name that does not exist is cached too,
+ * as a negative entry.
+ *
+ * <p>
+ * The entries of a directory are valid while the directory has the
+ * modification and change times it had when they were cached, as shown by its
+ * current attributes. Our own changes to a directory move those times forward
+ * without dropping its other entries, as long as the attributes from before
+ * the change show that nobody else changed it in between. The cache holds a
+ * bounded number of entries, and evicts the least recently used.
+ * </p>
+ */
+public class NfsNameCache {
+
+    /**
+     * The default maximum number of entries.
+     */
+    private static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+    /**
+     * The maximum number of entries, and of directories.
+     */
+    private int _maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    /**
+     * The entries, by directory and name, from the least to the most recently
+     * used.
+     */
+    private final LinkedHashMap<Name, CachedName> _names = new LinkedHashMap<Name, CachedName>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        protected boolean removeEldestEntry(Map.Entry<Name, CachedName> eldest) {
+            return size() > _maximumSize;
+        }
+
+    };
+
+    /**
+     * The times against which the entries of each directory are valid, by
+     * directory file handle, from the least to the most recently used.
+     */
+    private final LinkedHashMap<ByteBuffer, Directory> _directories = new LinkedHashMap<ByteBuffer, Directory>(16,
+            0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Directory> eldest) {
+            return size() > _maximumSize;
+        }
+
+    };
+
+    /**
+     * @param maximumSize
+     *            The maximum number of entries, or 0 to disable the cache.
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException(String.format("invalid name cache size: %s", maximumSize));
+        }
+        _maximumSize = maximumSize;
+        _names.clear();
+        _directories.clear();
+    }
+
+    /**
+     * @param directoryFileHandle
+     *            The directory file handle.
+     * @param name
+     *            The name in the directory.
+     * @param directoryAttributes
+     *            The current attributes of the directory, or <code>null</code>
+     *            if they are not known.
+     * @return The entry, or <code>null</code> if there is none or the
+     *         directory has changed since it was cached.
+     */
+    public synchronized CachedName get(byte[] directoryFileHandle, String name,
+            NfsGetAttributes directoryAttributes) {
+        if (directoryFileHandle == null || directoryAttributes == null || !directoryAttributes.isLoaded()) {
+            return null;
+        }
+        ByteBuffer directoryKey = ByteBuffer.wrap(directoryFileHandle);
+        Directory directory = _directories.get(directoryKey);
+        if (directory == null) {
+            return null;
+        }
+        if (!directory.matches(directoryAttributes.getMtime(), directoryAttributes.getCtime())) {
+            // the directory has changed, so none of its entries can be trusted
+            _directories.remove(directoryKey);
+            return null;
+        }
+        CachedName cachedName = _names.get(new Name(directoryFileHandle, name));
+        return (cachedName != null && cachedName._directory == directory) ? cachedName : null;
+    }
+
+    /**
+     * Add or replace an entry, as found by a LOOKUP.
+     * 
+     * @param directoryFileHandle
+     *            The directory file handle.
+     * @param name
+     *            The name in the directory.
+     * @param fileHandle
+     *            The file handle, or <code>null</code> if the name does not
+     *            exist.
+     * @param type
+     *            The file type, or <code>null</code> if it is not known.
+     * @param directoryAttributes
+     *            The attributes of the directory at the time, or
+     *            <code>null</code> if they are not known, in which case
+     *            nothing is cached.
+     */
+    public synchronized void put(byte[] directoryFileHandle, String name, byte[] fileHandle, NfsType type,
+            NfsGetAttributes directoryAttributes) {
+        if (directoryFileHandle == null || name == null || directoryAttributes == null
+                || !directoryAttributes.isLoaded() || _maximumSize == 0) {
+            return;
+        }
+        ByteBuffer directoryKey = ByteBuffer.wrap(directoryFileHandle.clone());
+        Directory directory = _directories.get(directoryKey);
+        if (directory == null || !directory.matches(directoryAttributes.getMtime(), directoryAttributes.getCtime())) {
+            directory = new Directory(directoryAttributes);
+            _directories.put(directoryKey, directory);
+        }
+        _names.put(new Name(directoryFileHandle.clone(), name),
+                new CachedName((fileHandle == null) ? null : fileHandle.clone(), type, directory));
+    }
+
+    /**
+     * @param directoryFileHandle
+     *            The directory file handle.
+     * @param name
+     *            The name in the directory.
+     * @return The file handle last cached for the name, whether or not the
+     *         entry is still valid, or <code>null</code> if there is none or
+     *         the name was cached as missing. This is only fit for dropping
+     *         what is cached about the file.
+     */
+    public synchronized byte[] peekFileHandle(byte[] directoryFileHandle, String name) {
+        if (directoryFileHandle == null || name == null) {
+            return null;
+        }
+        CachedName cachedName = _names.get(new Name(directoryFileHandle, name));
+        return (cachedName == null) ? null : cachedName.getFileHandle();
+    }
+
+    /**
+     * Account for a change that we made to a name in a directory, dropping
+     * the entry for the name. The other entries of the directory are kept if
+     * the attributes from before the change show that nobody else changed the
+     * directory in between, and dropped otherwise.
+     * 
+     * @param directoryFileHandle
+     *            The directory file handle.
+     * @param name
+     *            The name that was changed.
+     * @param directoryWccData
+     *            The directory attributes from before and after the change.
+     */
+    public synchronized void change(byte[] directoryFileHandle, String name, NfsWccData directoryWccData) {
+        if (directoryFileHandle == null) {
+            return;
+        }
+        _names.remove(new Name(directoryFileHandle, name));
+
+        ByteBuffer directoryKey = ByteBuffer.wrap(directoryFileHandle);
+        Directory directory = _directories.get(directoryKey);
+        if (directory == null) {
+            return;
+        }
+        NfsPreOpAttributes before = directoryWccData.getPreOpAttributes();
+        NfsGetAttributes after = directoryWccData.getAttributes();
+        if (after == null || !after.isLoaded()) {
+            _directories.remove(directoryKey);
+        } else if (directory.matches(after.getMtime(), after.getCtime())) {
+            // already accounted for, such as by the other half of a rename
+            // within one directory
+        } else if (before != null && directory.matches(before.getMTime(), before.getCTime())) {
+            directory.set(after);
+        } else {
+            _directories.remove(directoryKey);
+        }
+    }
+
+    /**
+     * Drop all the entries.
+     */
+    public synchronized void clear() {
+        _names.clear();
+        _directories.clear();
+    }
+
+    /**
+     * @return The number of entries, including any that are no longer valid
+     *         but are not yet removed.
+     */
+    public synchronized int size() {
+        return _names.size();
+    }
+
+    /**
+     * A cached result of looking up a name.
+     */
+    public static final class CachedName {
+
+        /**
+         * The file handle, or <code>null</code> if the name does not exist.
+         */
+        private final byte[] _fileHandle;
+
+        /**
+         * The file type, or <code>null</code> if it is not known.
+         */
+        private final NfsType _type;
+
+        /**
+         * The directory times against which this is valid.
+         */
+        private final Directory _directory;
+
+        /**
+         * @param fileHandle
+         *            The file handle, or <code>null</code> if the name does
+         *            not exist.
+         * @param type
+         *            The file type, or <code>null</code> if it is not known.
+         * @param directory
+         *            The directory times against which this is valid.
+         */
+        private CachedName(byte[] fileHandle, NfsType type, Directory directory) {
+            _fileHandle = fileHandle;
+            _type = type;
+            _directory = directory;
+        }
+
+        /**
+         * @return The file handle, or <code>null</code> if the name does not
+         *         exist.
+         */
+        public byte[] getFileHandle() {
+            return (_fileHandle == null) ? null : _fileHandle.clone();
+        }
+
+        /**
+         * @return The file type, or <code>null</code> if it is not known.
+         */
+        public NfsType getType() {
+            return _type;
+        }
+
+        /**
+         * @return <code>true</code> if the name does not exist,
+         *         <code>false</code> otherwise.
+         */
+        public boolean isNegative() {
+            return _fileHandle == null;
+        }
+
+    }
+
+    /**
+     * The key of an entry.
+     */
+    private static final class Name {
+
+        /**
+         * The directory file handle.
+         */
+        private final byte[] _directoryFileHandle;
+
+        /**
+         * The name in the directory.
+         */
+        private final String _name;
+
+        /**
+         * @param directoryFileHandle
+         *            The directory file handle.
+         * @param name
+         *            The name in the directory.
+         */
+        private Name(byte[] directoryFileHandle, String name) {
+            _directoryFileHandle = directoryFileHandle;
+            _name = name;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_directoryFileHandle) + _name.hashCode();
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Name)) {
+                return false;
+            }
+            Name other = (Name) obj;
+            return _name.equals(other._name) && Arrays.equals(_directoryFileHandle, other._directoryFileHandle);
+        }
+
+    }
+
+    /**
+     * The modification and change times of a directory against which its
+     * entries are valid.
+     */
+    private static final class Directory {
+
+        /**
+         * The modification time.
+         */
+        private NfsTime _mtime;
+
+        /**
+         * The change time.
+         */
+        private NfsTime _ctime;
+
+        /**
+         * @param attributes
+         *            The directory attributes.
+         */
+        private Directory(NfsGetAttributes attributes) {
+            set(attributes);
+        }
+
+        /**
+         * @param attributes
+         *            The directory attributes.
+         */
+        private void set(NfsGetAttributes attributes) {
+            _mtime = attributes.getMtime();
+            _ctime = attributes.getCtime();
+        }
+
+        /**
+         * @param mtime
+         *            A modification time.
+         * @param ctime
+         *            A change time.
+         * @return <code>true</code> if both times are the ones held, to the
+         *         nanosecond, <code>false</code> otherwise.
+         */
+        private boolean matches(NfsTime mtime, NfsTime ctime) {
+            return isSameTime(_mtime, mtime) && isSameTime(_ctime, ctime);
+        }
+
+        /**
+         * @param held
+         *            A time that is held.
+         * @param time
+         *            A time to compare with it, or <code>null</code>.
+         * @return <code>true</code> if the times are the same,
+         *         <code>false</code> otherwise.
+         */
+        private static boolean isSameTime(NfsTime held, NfsTime time) {
+            return time != null && held.getSeconds() == time.getSeconds()
+                    && held.getNanoseconds() == time.getNanoseconds();
+        }
+
+    }
+
+}
@@ -55,6 +55,15 @@ public class NfsPathconfRequest extends NfsRequestBase {
         super(Nfs.RPC_PROGRAM, nfsVersion, Nfs.NFSPROC3_PATHCONF, credential, fileHandle);
     }
 
+    /**
+     * PATHCONF has no arguments beyond the file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 0;
+    }
+
     /*
      * (non-Javadoc)
      * 
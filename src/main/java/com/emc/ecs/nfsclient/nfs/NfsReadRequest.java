@@ -103,6 +103,15 @@ public class NfsReadRequest extends NfsRequestBase {
         xdr.putUnsignedInt(_size);
     }
 
+    /**
+     * The offset and the count.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 12;
+    }
+
     /*
      * (non-Javadoc)
      * 
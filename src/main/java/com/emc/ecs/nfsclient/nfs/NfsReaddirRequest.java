@@ -108,6 +108,15 @@ public class NfsReaddirRequest extends NfsRequestBase {
         xdr.putUnsignedInt(_count);
     }
 
+    /**
+     * The cookie, the cookie verifier and the count.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 20;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -128,6 +128,15 @@ public class NfsReaddirplusRequest extends NfsRequestBase {
         xdr.putUnsignedInt(_maxcount);
     }
 
+    /**
+     * The cookie, the cookie verifier and both counts.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 24;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -48,10 +48,17 @@ public class NfsReaddirplusResponse extends NfsResponseBase {
     private long _cookieverf;
 
     /**
-     * The list of entries
+     * The list of entries, or <code>null</code> until it is asked for if the
+     * caller did not provide one.
      */
     List<NfsDirectoryPlusEntry> _entries;
 
+    /**
+     * A view of the reply with the offset at the first entry, or
+     * <code>null</code> if there are no entries.
+     */
+    private Xdr _entriesXdr;
+
     /**
      * <ul>
      * <li><code>true</code> if the end of file is reached.</li>
@@ -80,7 +87,7 @@ public class NfsReaddirplusResponse extends NfsResponseBase {
      *            other versions.
      */
     public NfsReaddirplusResponse(int nfsVersion) {
-        this(new ArrayList<NfsDirectoryPlusEntry>(), nfsVersion);
+        this(null, nfsVersion);
     }
 
     /**
@@ -98,7 +105,8 @@ public class NfsReaddirplusResponse extends NfsResponseBase {
      * </p>
      * 
      * @param entries
-     *            A list in which to store the entries.
+     *            A list in which to store the entries, or <code>null</code>
+     *            to decode the entries only when they are asked for.
      * @param nfsVersion
      *            The NFS version number. This is ignored for now, as only NFSv3
      *            is supported, but is included to allow future support for
@@ -121,11 +129,16 @@ public class NfsReaddirplusResponse extends NfsResponseBase {
         if (stateIsOk()) {
             _cookieverf = xdr.getLong();
 
-            // get directory entries
-            while (xdr.getBoolean()) {
-                NfsDirectoryPlusEntry entry = new NfsDirectoryPlusEntry(xdr);
-                _entries.add(entry);
-                _cookie = entry.getCookie();
+            // keep the entries in the reply buffer, only decoding them into
+            // the list if the caller provided one
+            _entriesXdr = xdr.duplicate();
+            _entriesXdr.setOffset(xdr.getOffset());
+            NfsDirectoryPlusCursor cursor = new NfsDirectoryPlusCursor(xdr);
+            while (cursor.next()) {
+                if (_entries != null) {
+                    _entries.add(cursor.toEntry());
+                }
+                _cookie = cursor.getCookie();
             }
 
             // check whether it is the end of directory
@@ -150,12 +163,37 @@ public class NfsReaddirplusResponse extends NfsResponseBase {
     }
 
     /**
-     * @return The list of entries
+     * @return The list of entries, decoded on the first call if the caller
+     *         did not provide a list.
      */
     public List<NfsDirectoryPlusEntry> getEntries() {
+        if (_entries == null) {
+            List<NfsDirectoryPlusEntry> entries = new ArrayList<NfsDirectoryPlusEntry>();
+            NfsDirectoryPlusCursor cursor = getCursor();
+            while (cursor.next()) {
+                entries.add(cursor.toEntry());
+            }
+            _entries = entries;
+        }
         return _entries;
     }
 
+    /**
+     * The cursor reads the reply in place, so it keeps the reply buffer in
+     * memory while it is in use.
+     * 
+     * @return A new cursor over the entries, decoding each part of an entry
+     *         only when it is asked for.
+     */
+    public NfsDirectoryPlusCursor getCursor() {
+        if (_entriesXdr == null) {
+            return new NfsDirectoryPlusCursor(null);
+        }
+        Xdr xdr = _entriesXdr.duplicate();
+        xdr.setOffset(_entriesXdr.getOffset());
+        return new NfsDirectoryPlusCursor(xdr);
+    }
+
     /**
      * @return
      *         <ul>
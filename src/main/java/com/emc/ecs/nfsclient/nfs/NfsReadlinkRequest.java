@@ -77,6 +77,15 @@ public class NfsReadlinkRequest extends NfsRequestBase {
         super(Nfs.RPC_PROGRAM, nfsVersion, Nfs.NFSPROC3_READLINK, credential, fileHandle);
     }
 
+    /**
+     * READLINK has no arguments beyond the file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 0;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -64,6 +64,13 @@ public class NfsRemoveRequest extends NfsRequestBase {
         _name = trimFileName(name);
     }
 
+    /**
+     * @return The name of the entry to be removed.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -75,6 +82,15 @@ public class NfsRemoveRequest extends NfsRequestBase {
         xdr.putString(_name);
     }
 
+    /**
+     * The name.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return Xdr.maximumSizeOf(_name);
+    }
+
     /*
      * (non-Javadoc)
      * 
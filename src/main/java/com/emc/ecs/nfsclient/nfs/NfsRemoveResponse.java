@@ -72,4 +72,44 @@ public class NfsRemoveResponse extends NfsResponseBase {
         return _directoryWccData;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheAttributes(com.emc.
+     * ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        cache.put(request.getFileHandle(), _directoryWccData.getAttributes());
+    }
+
+    /**
+     * The removed object may still be cached under its handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#dropReplacedAttributes(com
+     * .emc.ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsNameCache,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void dropReplacedAttributes(NfsRequestBase request, NfsNameCache nameCache,
+            NfsAttributeCache attributeCache) {
+        if (stateIsOk()) {
+            attributeCache.remove(nameCache.peekFileHandle(request.getFileHandle(), ((NfsRemoveRequest) request).getName()));
+        }
+    }
+
+    /**
+     * A removed name is cached as a negative entry.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheNames(com.emc.ecs.
+     * nfsclient.nfs.NfsRequestBase, com.emc.ecs.nfsclient.nfs.NfsNameCache)
+     */
+    public void cacheNames(NfsRequestBase request, NfsNameCache cache) {
+        String name = ((NfsRemoveRequest) request).getName();
+        cache.change(request.getFileHandle(), name, _directoryWccData);
+        if (stateIsOk()) {
+            cache.put(request.getFileHandle(), name, null, null, _directoryWccData.getAttributes());
+        }
+    }
+
 }
@@ -86,6 +86,28 @@ public class NfsRenameRequest extends NfsRequestBase {
         _toName = trimFileName(toName);
     }
 
+    /**
+     * @return The file handle for the directory to which the object is to be
+     *         renamed.
+     */
+    public byte[] getToFileHandle() {
+        return _toFileHandle;
+    }
+
+    /**
+     * @return The name of the entry that identifies the object to be renamed.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return The new name for the object.
+     */
+    public String getToName() {
+        return _toName;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -99,6 +121,15 @@ public class NfsRenameRequest extends NfsRequestBase {
         xdr.putString(_toName);
     }
 
+    /**
+     * The name, the target directory file handle and the target name.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return Xdr.maximumSizeOf(_name) + Xdr.sizeOf(_toFileHandle) + Xdr.maximumSizeOf(_toName);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -89,4 +89,51 @@ public class NfsRenameResponse extends NfsResponseBase {
         return _toDirectoryWccData;
     }
 
+    /**
+     * The attributes of both directories are cached.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheAttributes(com.emc.
+     * ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        cache.put(request.getFileHandle(), _fromDirectoryWccData.getAttributes());
+        cache.put(((NfsRenameRequest) request).getToFileHandle(), _toDirectoryWccData.getAttributes());
+    }
+
+    /**
+     * The renamed object has a new change time, and an object that the new
+     * name replaced may be gone.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#dropReplacedAttributes(com
+     * .emc.ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsNameCache,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void dropReplacedAttributes(NfsRequestBase request, NfsNameCache nameCache,
+            NfsAttributeCache attributeCache) {
+        if (stateIsOk()) {
+            NfsRenameRequest renameRequest = (NfsRenameRequest) request;
+            attributeCache.remove(nameCache.peekFileHandle(request.getFileHandle(), renameRequest.getName()));
+            attributeCache.remove(
+                    nameCache.peekFileHandle(renameRequest.getToFileHandle(), renameRequest.getToName()));
+        }
+    }
+
+    /**
+     * The old name is cached as a negative entry. The handle under the new
+     * name is not known, so it is left to the next LOOKUP.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheNames(com.emc.ecs.
+     * nfsclient.nfs.NfsRequestBase, com.emc.ecs.nfsclient.nfs.NfsNameCache)
+     */
+    public void cacheNames(NfsRequestBase request, NfsNameCache cache) {
+        NfsRenameRequest renameRequest = (NfsRenameRequest) request;
+        cache.change(request.getFileHandle(), renameRequest.getName(), _fromDirectoryWccData);
+        cache.change(renameRequest.getToFileHandle(), renameRequest.getToName(), _toDirectoryWccData);
+        if (stateIsOk()) {
+            cache.put(request.getFileHandle(), renameRequest.getName(), null, null, _fromDirectoryWccData.getAttributes());
+        }
+    }
+
 }
@@ -17,6 +17,7 @@ package com.emc.ecs.nfsclient.nfs;
 import java.io.FileNotFoundException;
 import java.util.Arrays;
 
+import com.emc.ecs.nfsclient.network.TrafficClass;
 import com.emc.ecs.nfsclient.rpc.Credential;
 import com.emc.ecs.nfsclient.rpc.RpcRequest;
 import com.emc.ecs.nfsclient.rpc.Xdr;
@@ -100,6 +101,91 @@ public abstract class NfsRequestBase extends RpcRequest implements NfsRequest {
         return _fileHandle;
     }
 
+    /**
+     * Only the procedures that read state are idempotent.
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RpcRequest#isIdempotent()
+     */
+    public boolean isIdempotent() {
+        switch (getServiceProcedure()) {
+        case Nfs.NFSPROC3_NULL:
+        case Nfs.NFSPROC3_GETATTR:
+        case Nfs.NFSPROC3_LOOKUP:
+        case Nfs.NFSPROC3_ACCESS:
+        case Nfs.NFSPROC3_READLINK:
+        case Nfs.NFSPROC3_READ:
+        case Nfs.NFSPROC3_READDIR:
+        case Nfs.NFSPROC3_READDIRPLUS:
+        case Nfs.NFSPROC3_FSSTAT:
+        case Nfs.NFSPROC3_FSINFO:
+        case Nfs.NFSPROC3_PATHCONF:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * The procedures moving file data or directory listings are bulk.
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RpcRequest#isBulk()
+     */
+    public boolean isBulk() {
+        switch (getServiceProcedure()) {
+        case Nfs.NFSPROC3_READ:
+        case Nfs.NFSPROC3_WRITE:
+        case Nfs.NFSPROC3_READDIR:
+        case Nfs.NFSPROC3_READDIRPLUS:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * The bulk procedures get their own connections, apart from the metadata
+     * calls.
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RpcRequest#getTrafficClass()
+     */
+    public TrafficClass getTrafficClass() {
+        switch (getServiceProcedure()) {
+        case Nfs.NFSPROC3_READ:
+        case Nfs.NFSPROC3_READDIR:
+        case Nfs.NFSPROC3_READDIRPLUS:
+            return TrafficClass.READ;
+        case Nfs.NFSPROC3_WRITE:
+            return TrafficClass.WRITE;
+        case Nfs.NFSPROC3_COMMIT:
+            return TrafficClass.COMMIT;
+        default:
+            return TrafficClass.METADATA;
+        }
+    }
+
+    /**
+     * Adds the file handle and the arguments to the call header.
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RpcRequest#getMarshalledSize()
+     */
+    public int getMarshalledSize() {
+        int argumentsSize = getArgumentsSize();
+        if (argumentsSize < 0) {
+            return -1;
+        }
+        return getHeaderSize() + Xdr.sizeOf(_fileHandle) + argumentsSize;
+    }
+
+    /**
+     * The size is unknown unless a subclass says otherwise.
+     * 
+     * @return The largest number of bytes of the arguments that follow the
+     *         primary file handle, not counting payloads, or -1 if unknown.
+     */
+    protected int getArgumentsSize() {
+        return -1;
+    }
+
     /**
      * @return the key, used in determining IP addresses for RPC calls.
      */
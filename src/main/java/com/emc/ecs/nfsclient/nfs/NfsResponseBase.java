@@ -109,6 +109,14 @@ public abstract class NfsResponseBase extends RpcResponse {
         return (_fileHandle == null) ? null : _fileHandle.clone();
     }
 
+    /**
+     * @return The file type from the post-operation attributes, or
+     *         <code>null</code> if there are none.
+     */
+    protected final NfsType getAttributesType() {
+        return (_attributes == null) ? null : _attributes.getType();
+    }
+
     /**
      * Check the state returned in the response. For details, see RFC 1813
      * (https://tools.ietf.org/html/rfc1813).
@@ -119,6 +127,54 @@ public abstract class NfsResponseBase extends RpcResponse {
         return _state == NfsStatus.NFS3_OK.getValue();
     }
 
+    /**
+     * Pass the attributes carried by this response to the cache, under the
+     * file handles they describe. By default these are the post-operation
+     * attributes of the object named by the request file handle. A stale
+     * handle is dropped from the cache.
+     * 
+     * @param request
+     *            The request that this response answers.
+     * @param cache
+     *            The cache.
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        if (_state == NfsStatus.NFS3ERR_STALE.getValue()) {
+            cache.remove(request.getFileHandle());
+        } else {
+            cache.put(request.getFileHandle(), _attributes);
+        }
+    }
+
+    /**
+     * Drop the cached attributes of the objects that the request removed or
+     * replaced. Their handles are not in the reply, so they are taken from
+     * the name cache, which must not have seen the reply yet. Nothing is
+     * dropped by default.
+     * 
+     * @param request
+     *            The request that this response answers.
+     * @param nameCache
+     *            The name cache, to find the handles.
+     * @param attributeCache
+     *            The attribute cache.
+     */
+    public void dropReplacedAttributes(NfsRequestBase request, NfsNameCache nameCache,
+            NfsAttributeCache attributeCache) {
+    }
+
+    /**
+     * Pass the names found or changed by this response to the directory name
+     * lookup cache. By default there are none.
+     * 
+     * @param request
+     *            The request that this response answers.
+     * @param cache
+     *            The cache.
+     */
+    public void cacheNames(NfsRequestBase request, NfsNameCache cache) {
+    }
+
     /**
      * Unmarshall the object if it is there. Convenience method for use in
      * subclasses.
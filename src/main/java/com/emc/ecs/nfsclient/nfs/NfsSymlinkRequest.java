@@ -77,6 +77,14 @@ public class NfsSymlinkRequest extends NfsRequestBase {
         _attributes = attributes;
     }
 
+    /**
+     * @return The name that is to be associated with the created
+     *         symbolic link.
+     */
+    public String getName() {
+        return _name;
+    }
+
     /*
      * (non-Javadoc)
      * 
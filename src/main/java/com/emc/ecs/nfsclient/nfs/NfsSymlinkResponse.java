@@ -72,4 +72,35 @@ public class NfsSymlinkResponse extends NfsResponseBase {
         return _directoryWccData;
     }
 
+    /**
+     * The attributes of the new object go under its handle, and the directory
+     * attributes under the request file handle.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheAttributes(com.emc.
+     * ecs.nfsclient.nfs.NfsRequestBase,
+     * com.emc.ecs.nfsclient.nfs.NfsAttributeCache)
+     */
+    public void cacheAttributes(NfsRequestBase request, NfsAttributeCache cache) {
+        cache.put(request.getFileHandle(), _directoryWccData.getAttributes());
+        if (stateIsOk()) {
+            cache.put(getFileHandle(), getAttributes());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsResponseBase#cacheNames(com.emc.ecs.
+     * nfsclient.nfs.NfsRequestBase, com.emc.ecs.nfsclient.nfs.NfsNameCache)
+     */
+    public void cacheNames(NfsRequestBase request, NfsNameCache cache) {
+        String name = ((NfsSymlinkRequest) request).getName();
+        cache.change(request.getFileHandle(), name, _directoryWccData);
+        // the handle is optional in the reply, and a missing one must not
+        // look like a name that does not exist
+        if (stateIsOk() && getFileHandle() != null) {
+            cache.put(request.getFileHandle(), name, getFileHandle(), getAttributesType(), _directoryWccData.getAttributes());
+        }
+    }
+
 }
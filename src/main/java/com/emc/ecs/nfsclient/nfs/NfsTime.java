@@ -100,6 +100,18 @@ public class NfsTime implements NfsRequest, NfsResponse {
         this(milliseconds, isSettingTime ? SET_TO_CLIENT_TIME : IS_BARE_TIME);
     }
 
+    /**
+     * Create a copy of a time.
+     * 
+     * @param time
+     *            The time to copy.
+     */
+    public NfsTime(NfsTime time) {
+        _timeSettingType = time._timeSettingType;
+        seconds = time.seconds;
+        nanoseconds = time.nanoseconds;
+    }
+
     private NfsTime(long milliseconds, int timeSettingType) {
         _timeSettingType = timeSettingType;
         if ( captureTime() ) {
@@ -155,6 +167,20 @@ public class NfsTime implements NfsRequest, NfsResponse {
         nanoseconds = xdr.getUnsignedInt();
     }
 
+    /**
+     * @return The seconds part of the time.
+     */
+    public long getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * @return The nanoseconds part of the time.
+     */
+    public long getNanoseconds() {
+        return nanoseconds;
+    }
+
     /**
      * @return time in milliseconds, same as java.util.Calendar.
      */
@@ -154,6 +154,16 @@ public class NfsWriteRequest extends NfsRequestBase {
         }
     }
 
+    /**
+     * The offset, the count, the stability and the length of the data, which
+     * is sent as payloads.
+     * 
+     * @see com.emc.ecs.nfsclient.nfs.NfsRequestBase#getArgumentsSize()
+     */
+    protected int getArgumentsSize() {
+        return 20;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -25,6 +25,11 @@ import com.emc.ecs.nfsclient.nfs.*;
  * has been modified appropriately for manipulations of NFS files, as specified
  * by RFC 1813 (https://tools.ietf.org/html/rfc1813).
  * 
+ * <p>
+ * Methods that make several calls can be bounded as a whole by running them
+ * under a <code>com.emc.ecs.nfsclient.rpc.Deadline</code>.
+ * </p>
+ * 
  * @author seibed
  */
 public interface NfsFile<N extends Nfs<?>, F extends NfsFile<N, F>> extends Comparable<F> {
@@ -201,7 +206,12 @@ public interface NfsFile<N extends Nfs<?>, F extends NfsFile<N, F>> extends Comp
     void delete() throws IOException;
 
     /**
-     * Tests whether this file exists on the NFS server.
+     * Tests whether this file exists on the NFS server. The file itself is
+     * always looked up on the server. The handles of the directories above it
+     * may come from the name cache, so a change to one of them by another
+     * client may go unseen until the cached attributes of its parent expire,
+     * after at most the maximum directory time to live of the attribute cache
+     * (60 seconds by default).
      *
      * @return <code>true</code> if the file exists on the NFS server
      * @throws IOException
@@ -297,6 +307,10 @@ public interface NfsFile<N extends Nfs<?>, F extends NfsFile<N, F>> extends Comp
     long getAccess(long accessToCheck) throws IOException;
 
     /**
+     * The attributes are taken from the attribute cache of the client while
+     * they are fresh, and fetched with GETATTR otherwise. Use
+     * <code>getattr()</code> to always ask the server.
+     * 
      * @return The NFS attributes, as specified by RFC 1813
      *         (https://tools.ietf.org/html/rfc1813).
      * @throws IOException
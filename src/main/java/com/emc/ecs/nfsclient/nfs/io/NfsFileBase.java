@@ -14,7 +14,6 @@
  */
 package com.emc.ecs.nfsclient.nfs.io;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -28,6 +27,13 @@ import com.emc.ecs.nfsclient.nfs.*;
  * Basic implementation of NfsFile. Subclasses need only implement constructors
  * and newChildFile().
  * 
+ * <p>
+ * Creating a file from a path does not touch the network. The handle is
+ * resolved when an operation first needs it, by a forward walk from the root
+ * that takes each handle from the name cache while it is valid, and follows a
+ * symbolic link on the path only where a LOOKUP shows one.
+ * </p>
+ * 
  * @author seibed
  */
 public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> implements NfsFile<N, F> {
@@ -72,6 +78,20 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     private F _parentFile;
 
+    /**
+     * The tracker to use when following links on the path, or
+     * <code>null</code> to start a new one. It is dropped once the parent has
+     * been followed, so that long-lived files do not hold on to it.
+     */
+    private LinkTracker<N, F> _linkTracker;
+
+    /**
+     * The file type, or <code>null</code> until it is known. It is taken from
+     * the LOOKUP that found the handle, so that links can be spotted without a
+     * GETATTR.
+     */
+    private NfsType _type;
+
     /**
      * The full path of the file, starting with the mount point.
      */
@@ -95,6 +115,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
             throw new IllegalArgumentException("Nfs instance can not be null");
         }
         _nfs = nfs;
+        _linkTracker = linkTracker;
         _parent = makeParentPath(path);
         F parent = isRootPath(path) ? null : newFile(_parent, linkTracker);
         setParentFileAndName(parent, makeName(path), linkTracker);
@@ -281,15 +302,13 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * @see com.emc.ecs.nfsclient.util.NfsFile#exists()
      */
     public boolean exists() throws IOException {
-        boolean exists = false;
-        try {
-            // force lookup again
-            setFileHandle(null);
-            exists = (getFileHandle() != null);
-        } catch (FileNotFoundException e) {
-            // do nothing
+        if (_isRootFile) {
+            return getFileHandle() != null;
         }
-        return exists;
+        // force lookup again, rather than trust the name cache, so that a
+        // file made or removed by another client is seen at once
+        setFileHandle(false);
+        return _fileHandle != null;
     }
 
     /*
@@ -312,8 +331,8 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
     public F followLinks(LinkTracker<N, F> linkTracker) throws IOException {
         if (_backingFile == null) {
             F backingFile = (F) this;
-            NfsGetAttributes attributes = safeGetAttributes(backingFile);
-            while (NfsType.NFS_LNK == attributes.getType()) {
+            NfsType type = safeGetType();
+            while (NfsType.NFS_LNK == type) {
                 if (linkTracker == null) {
                     linkTracker = new LinkTracker<N, F>();
                 }
@@ -323,7 +342,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
                 } else {
                     backingFile = followLink(backingFile.readlink().getData(), linkTracker);
                 }
-                attributes = safeGetAttributes(backingFile);
+                type = safeGetAttributes(backingFile).getType();
             }
             _backingFile = backingFile;
             if (linkTracker != null) {
@@ -334,6 +353,22 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
         return _backingFile;
     }
 
+    /**
+     * @return The type of this file, from the LOOKUP that found the handle if
+     *         it had one, or else from the attributes, or <code>null</code> if
+     *         they cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    private NfsType safeGetType() {
+        if (_isRootFile) {
+            return NfsType.NFS_DIR;
+        }
+        if (_type == null) {
+            _type = safeGetAttributes((F) this).getType();
+        }
+        return _type;
+    }
+
     /**
      * @param file
      *            The file for which the attributes are wanted.
@@ -415,7 +450,12 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * @see com.emc.ecs.nfsclient.util.NfsFile#getAttributes()
      */
     public NfsGetAttributes getAttributes() throws IOException {
-        return getNfs().wrapped_getAttr(getNfs().makeGetAttrRequest(getFileHandle())).getAttributes();
+        byte[] fileHandle = getFileHandle();
+        NfsGetAttributes attributes = getNfs().getAttributeCache().get(fileHandle);
+        if (attributes == null) {
+            attributes = getNfs().wrapped_getAttr(getNfs().makeGetAttrRequest(fileHandle)).getAttributes();
+        }
+        return attributes;
     }
 
     /*
@@ -801,7 +841,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * @see com.emc.ecs.nfsclient.nfs.NfsFile#makeLookupRequest()
      */
     public NfsLookupRequest makeLookupRequest() throws IOException {
-        return getNfs().makeLookupRequest(getParentFile().getFileHandle(), getName());
+        return getNfs().makeLookupRequest(getParentDirectoryFileHandle(), getName());
     }
 
     /*
@@ -897,7 +937,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
     public NfsCreateResponse create(NfsCreateMode createMode, NfsSetAttributes attributes, byte[] verifier)
             throws IOException {
         NfsCreateResponse response = getNfs().wrapped_sendCreate(getNfs().makeCreateRequest(createMode,
-                getParentFile().getFileHandle(), getName(), attributes, verifier));
+                getParentDirectoryFileHandle(), getName(), attributes, verifier));
         setFileHandle(response.getFileHandle());
         return response;
     }
@@ -911,7 +951,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     public NfsCreateRequest makeCreateRequest(NfsCreateMode createMode, NfsSetAttributes attributes, byte[] verifier)
             throws IOException {
-        return getNfs().makeCreateRequest(createMode, getParentFile().getFileHandle(), getName(), attributes, verifier);
+        return getNfs().makeCreateRequest(createMode, getParentDirectoryFileHandle(), getName(), attributes, verifier);
     }
 
     /*
@@ -934,7 +974,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * nfs.NfsSetAttributes)
      */
     public NfsMkdirRequest makeMkdirRequest(NfsSetAttributes attributes) throws IOException {
-        return getNfs().makeMkdirRequest(getParentFile().getFileHandle(), getName(), attributes);
+        return getNfs().makeMkdirRequest(getParentDirectoryFileHandle(), getName(), attributes);
     }
 
     /*
@@ -958,7 +998,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     public NfsSymlinkRequest makeSymlinkRequest(String symbolicLinkData, NfsSetAttributes attributes)
             throws IOException {
-        return getNfs().makeSymlinkRequest(symbolicLinkData, getParentFile().getFileHandle(), getName(), attributes);
+        return getNfs().makeSymlinkRequest(symbolicLinkData, getParentDirectoryFileHandle(), getName(), attributes);
     }
 
     /*
@@ -981,7 +1021,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * nfs.NfsType, com.emc.ecs.nfsclient.nfs.NfsSetAttributes, long[])
      */
     public NfsMknodRequest makeMknodRequest(NfsType type, NfsSetAttributes attributes, long[] rdev) throws IOException {
-        return getNfs().makeMknodRequest(getParentFile().getFileHandle(), getName(), type, attributes, rdev);
+        return getNfs().makeMknodRequest(getParentDirectoryFileHandle(), getName(), type, attributes, rdev);
     }
 
     /*
@@ -991,6 +1031,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     public NfsRemoveResponse remove() throws IOException {
         NfsRemoveResponse response = getNfs().wrapped_sendRemove(makeRemoveRequest());
+        getNfs().getAttributeCache().remove(_fileHandle);
         setFileHandle(null);
         return response;
     }
@@ -1001,7 +1042,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * @see com.emc.ecs.nfsclient.nfs.NfsFile#makeRemoveRequest()
      */
     public NfsRemoveRequest makeRemoveRequest() throws IOException {
-        return getNfs().makeRemoveRequest(getParentFile().getFileHandle(), getName());
+        return getNfs().makeRemoveRequest(getParentDirectoryFileHandle(), getName());
     }
 
     /*
@@ -1011,6 +1052,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     public NfsRmdirResponse rmdir() throws IOException {
         NfsRmdirResponse response = getNfs().wrapped_sendRmdir(makeRmdirRequest());
+        getNfs().getAttributeCache().remove(_fileHandle);
         setFileHandle(null);
         return response;
     }
@@ -1021,7 +1063,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * @see com.emc.ecs.nfsclient.nfs.NfsFile#makeRmdirRequest()
      */
     public NfsRmdirRequest makeRmdirRequest() throws IOException {
-        return getNfs().makeRmdirRequest(getParentFile().getFileHandle(), getName());
+        return getNfs().makeRmdirRequest(getParentDirectoryFileHandle(), getName());
     }
 
     /*
@@ -1033,6 +1075,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
     public NfsRenameResponse rename(F toFile) throws IOException {
         NfsRenameResponse response = getNfs().wrapped_sendRename(makeRenameRequest(toFile));
         if (response.stateIsOk()) {
+            getNfs().getAttributeCache().remove(_fileHandle);
             setPathFields(toFile);
         }
         return response;
@@ -1046,8 +1089,8 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * .nfs.NfsFile)
      */
     public NfsRenameRequest makeRenameRequest(F toFile) throws IOException {
-        return getNfs().makeRenameRequest(getParentFile().getFileHandle(), getName(),
-                toFile.getParentFile().getFileHandle(), toFile.getName());
+        return getNfs().makeRenameRequest(getParentDirectoryFileHandle(), getName(),
+                toFile.getParentFile().followLinks().getFileHandle(), toFile.getName());
     }
 
     /*
@@ -1070,7 +1113,7 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      * nfs.NfsFile)
      */
     public NfsLinkRequest makeLinkRequest(F source) throws IOException {
-        return getNfs().makeLinkRequest(source.getFileHandle(), getParentFile().getFileHandle(), getName());
+        return getNfs().makeLinkRequest(source.getFileHandle(), getParentDirectoryFileHandle(), getName());
     }
 
     /*
@@ -1238,6 +1281,20 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     protected final void setFileHandle(byte[] fileHandle) {
         _fileHandle = fileHandle;
+        _type = null;
+    }
+
+    /**
+     * @return The handle of the parent directory, following the parent if it
+     *         is a symbolic link.
+     * @throws IOException
+     */
+    private byte[] getParentDirectoryFileHandle() throws IOException {
+        F parentDirectory = getParentFile().followLinks(_linkTracker);
+        // the parent keeps what it resolved to, so the tracker is not needed
+        // again
+        _linkTracker = null;
+        return parentDirectory.getFileHandle();
     }
 
     /**
@@ -1267,19 +1324,20 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
     protected abstract F newFile(String path, LinkTracker<N, F> linkTracker) throws IOException;
 
     /**
-     * This method handles special cases, such as symbolic links in the parent
-     * directory, empty filenames, or the special names "." and "..". The
-     * algorithm required is simplified by the fact that special cases for the
-     * parent file are handled before this is called, as the path is always
-     * resolved from the bottom up. This means that the special cases have
-     * already been resolved for the parents and all supporting ancestors, so
-     * those possibilities need only be considered at the current level,
-     * eliminating any need for explicit recursive handling here.
+     * This method handles special cases, such as empty filenames, or the
+     * special names "." and "..". The algorithm required is simplified by the
+     * fact that special cases for the parent file are handled before this is
+     * called, as the path is always built from the bottom up. This means that
+     * the special cases have already been handled for the parents and all
+     * supporting ancestors, so those possibilities need only be considered at
+     * the current level, eliminating any need for explicit recursive handling
+     * here. Symbolic links are left to be followed when the handle is
+     * resolved, except before ".", "..", and empty names, which name the
+     * directory that a link points to, or its parent.
      * 
      * @param parentFile
      *            The original parent file. This may be changed for cases that
-     *            require special handling, e.g., symbolic links, ".", "..", and
-     *            empty names.
+     *            require special handling, e.g., ".", "..", and empty names.
      * @param name
      *            The original name. This may also be changed for cases that
      *            require special handling.
@@ -1292,12 +1350,12 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
      */
     private void setParentFileAndName(F parentFile, String name, LinkTracker<N, F> linkTracker) throws IOException {
         if (parentFile != null) {
-            parentFile = parentFile.followLinks(linkTracker);
             if (StringUtils.isBlank(name) || ".".equals(name)) {
+                parentFile = parentFile.followLinks(linkTracker);
                 name = parentFile.getName();
                 parentFile = parentFile.getParentFile();
             } else if ("..".equals(name)) {
-                parentFile = parentFile.getParentFile();
+                parentFile = parentFile.followLinks(linkTracker).getParentFile();
                 if (parentFile == null) {
                     name = "";
                 } else {
@@ -1368,22 +1426,52 @@ public abstract class NfsFileBase<N extends Nfs<F>, F extends NfsFile<N, F>> imp
     }
 
     /**
-     * Set the file handle from the _path value
+     * Set the file handle from the _path value, using the name cache.
      */
     private void setFileHandle() {
+        setFileHandle(true);
+    }
+
+    /**
+     * Set the file handle from the _path value. Resolving the parent handle
+     * first makes this a walk forward from the nearest ancestor whose handle
+     * is already known.
+     * 
+     * @param useNameCache
+     *            If <code>false</code>, the name is looked up even if the name
+     *            cache holds it. The directories above it may still come from
+     *            the cache.
+     */
+    private void setFileHandle(boolean useNameCache) {
         byte[] fileHandle = null;
+        NfsType type = null;
         if (_isRootFile) {
             fileHandle = getNfs().getRootFileHandle();
         } else {
             try {
-                if (getParentFile().getFileHandle() != null) {
-                    fileHandle = getNfs().wrapped_getLookup(makeLookupRequest()).getFileHandle();
+                byte[] parentFileHandle = getParentDirectoryFileHandle();
+                if (parentFileHandle != null) {
+                    NfsNameCache.CachedName cachedName = !useNameCache ? null
+                            : getNfs().getNameCache().get(parentFileHandle, getName(),
+                                    getNfs().getAttributeCache().get(parentFileHandle));
+                    if (cachedName != null) {
+                        fileHandle = cachedName.getFileHandle();
+                        type = cachedName.getType();
+                    } else {
+                        NfsLookupResponse response = getNfs()
+                                .wrapped_getLookup(getNfs().makeLookupRequest(parentFileHandle, getName()));
+                        fileHandle = response.getFileHandle();
+                        if (response.getAttributes() != null) {
+                            type = response.getAttributes().getType();
+                        }
+                    }
                 }
             } catch (IOException e) {
                 // do nothing, this will be a common exception
             }
         }
         setFileHandle(fileHandle);
+        _type = type;
     }
 
 }
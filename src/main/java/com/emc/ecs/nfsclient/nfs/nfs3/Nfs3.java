@@ -14,6 +14,7 @@
  */
 package com.emc.ecs.nfsclient.nfs.nfs3;
 
+import com.emc.ecs.nfsclient.mount.MountCache;
 import com.emc.ecs.nfsclient.mount.MountException;
 import com.emc.ecs.nfsclient.mount.MountRequest;
 import com.emc.ecs.nfsclient.mount.MountResponse;
@@ -28,6 +29,7 @@ import com.emc.ecs.nfsclient.portmap.Portmapper;
 import com.emc.ecs.nfsclient.rpc.Credential;
 import com.emc.ecs.nfsclient.rpc.CredentialUnix;
 import com.emc.ecs.nfsclient.rpc.RejectStatus;
+import com.emc.ecs.nfsclient.rpc.RetryPolicy;
 import com.emc.ecs.nfsclient.rpc.RpcException;
 import com.emc.ecs.nfsclient.rpc.RpcResponseHandler;
 import com.emc.ecs.nfsclient.rpc.RpcStatus;
@@ -46,8 +48,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Nfs3 client operations implementation, as specified by RFC 1813
@@ -65,6 +75,22 @@ public class Nfs3 implements Nfs<Nfs3File> {
      */
     private static final Logger LOG = LoggerFactory.getLogger(Nfs3.class);
 
+    /**
+     * Runs the mounts that follow a failed check of a cached root handle.
+     * They block on portmap and MOUNT calls, so they get their own threads
+     * rather than a network thread or the common pool of the application.
+     */
+    private static final ExecutorService REMOUNT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nfs-remount");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    });
+
     // NFS version number for RPC use
     /**
      * The NFS version number.
@@ -89,7 +115,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     /**
      * The remote NFS server port, obtained dynamically from Portmap.
      */
-    private int _port = 0;
+    private volatile int _port = 0;
 
     /**
      * The exported path handled by this client.
@@ -99,7 +125,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     /**
      * The root file handle for the exported path, obtained by a MOUNT call.
      */
-    private byte[] _rootFileHandle = null;
+    private volatile byte[] _rootFileHandle = null;
 
     /**
      * Maximum NFS call retries, used in the wrapped method calls.
@@ -107,12 +133,13 @@ public class Nfs3 implements Nfs<Nfs3File> {
     private final int _maximumRetries;
 
     /**
-     * The default wait time between retries in milliseconds.
+     * The default wait ceiling of the first retry in milliseconds, doubled
+     * for each later retry.
      */
     private final int DEFAULT_WAIT_TIME_MILLIS = 1000;
 
     /**
-     * The wait time between retries in milliseconds.
+     * The wait ceiling of the first retry in milliseconds.
      */
     private final int _retryWait = DEFAULT_WAIT_TIME_MILLIS;
 
@@ -132,9 +159,9 @@ public class Nfs3 implements Nfs<Nfs3File> {
     private final RpcWrapper<NfsRequestBase, NfsResponseBase> _rpcWrapper;
 
     /**
-     * Timeout for MOUNT calls in seconds.
+     * Timeout for MOUNT calls in milliseconds.
      */
-    private final static int MOUNT_RPC_TIMEOUT = 10;   // seconds
+    private final static long MOUNT_RPC_TIMEOUT_MILLIS = 10000;
 
     /**
      * Maximum retries for MOUNT calls.
@@ -146,6 +173,16 @@ public class Nfs3 implements Nfs<Nfs3File> {
      */
     private final static int MOUNT_MAX_REQUEST_SIZE = 8 * 1024;
 
+    /**
+     * The attributes returned by the server, by file handle.
+     */
+    private final NfsAttributeCache _attributeCache = new NfsAttributeCache();
+
+    /**
+     * The file handles found for names in directories.
+     */
+    private final NfsNameCache _nameCache = new NfsNameCache();
+
     /**
      * Convenience constructor
      * 
@@ -224,6 +261,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
             _credential = credential;
         }
         _rpcWrapper = new RpcWrapper<NfsRequestBase, NfsResponseBase>(_server, _port, _retryWait, _maximumRetries, MAXIMUM_NFS_REQUEST_SIZE, NFS_TIMEOUT);
+        _rpcWrapper.setAddressProbe(this::nullCallAsync);
 
         if (rootFileHandle == null) {
             prepareRootFhAndNfsPort();
@@ -234,6 +272,26 @@ public class Nfs3 implements Nfs<Nfs3File> {
         }
     }
 
+    /**
+     * Constructor that makes no calls, for a wrapper that does not need the
+     * network. Only tests need it.
+     * 
+     * @param server
+     * @param exportedPath
+     * @param rootFileHandle
+     * @param credential
+     * @param rpcWrapper
+     */
+    Nfs3(String server, String exportedPath, byte[] rootFileHandle, Credential credential,
+            RpcWrapper<NfsRequestBase, NfsResponseBase> rpcWrapper) {
+        _server = server;
+        _exportedPath = exportedPath;
+        _maximumRetries = 1;
+        _credential = credential;
+        _rpcWrapper = rpcWrapper;
+        _rootFileHandle = rootFileHandle.clone();
+    }
+
     /**
      * Convenience method to check String parameters that cannot be blank.
      * 
@@ -267,7 +325,8 @@ public class Nfs3 implements Nfs<Nfs3File> {
     }
 
     /**
-     * Query the port and root file handle for NFS server.
+     * Query the port and root file handle for NFS server, or take them from
+     * the mount cache. A cached root handle is validated in the background.
      * @throws IOException
      */
     private void prepareRootFhAndNfsPort() throws IOException {
@@ -277,21 +336,101 @@ public class Nfs3 implements Nfs<Nfs3File> {
         }
 
         try {
-            _port = getNfsPortFromServer();
-            _rpcWrapper.setPort(_port);
-            _rootFileHandle = lookupRootHandle();
+            MountCache.Entry entry = MountCache.getInstance().get(_server, _exportedPath,
+                    _credential.getCredentialFlavor());
+            if (entry == null) {
+                bootstrap();
+            } else {
+                _port = entry.getNfsPort();
+                _rpcWrapper.setPort(_port);
+                _rootFileHandle = entry.getRootFileHandle();
+                validateCachedRootHandle();
+            }
         } finally {
             _prepareLock.unlock();
         }
     }
 
+    /**
+     * Query the ports with portmap and the root file handle with mount, and
+     * add them to the mount cache. Must be called while holding the prepare
+     * lock.
+     * @throws IOException
+     */
+    private void bootstrap() throws IOException {
+        _port = getNfsPortFromServer();
+        _rpcWrapper.setPort(_port);
+        int portOfMountService = Portmapper.queryPortFromPortMap(MOUNTPROG, VERSION, _server);
+        _rootFileHandle = lookupRootHandle(portOfMountService);
+        MountCache.getInstance().put(_server, _exportedPath, _credential.getCredentialFlavor(), _port,
+                _rootFileHandle);
+    }
+
+    /**
+     * Check a root handle taken from the mount cache with a GETATTR, without
+     * blocking the constructor. If the handle is stale, or the server cannot
+     * be reached on the cached port, the entry is removed and the export is
+     * mounted again. Calls made in the meantime may fail with the stale
+     * handle.
+     */
+    private void validateCachedRootHandle() {
+        CompletableFuture<Nfs3GetAttrResponse> result;
+        try {
+            result = wrapped_getAttrAsync(makeGetAttrRequest(_rootFileHandle));
+        } catch (FileNotFoundException e) {
+            result = new CompletableFuture<Nfs3GetAttrResponse>();
+            result.completeExceptionally(e);
+        }
+
+        // mounting again blocks, so it must not run on a network thread
+        result.whenCompleteAsync((response, throwable) -> {
+            if (throwable == null) {
+                return;
+            }
+            Throwable cause = (throwable instanceof CompletionException) ? throwable.getCause() : throwable;
+            if (cause instanceof NfsException) {
+                NfsStatus status = ((NfsException) cause).getStatus();
+                if (!status.equals(NfsStatus.NFS3ERR_STALE) && !status.equals(NfsStatus.NFS3ERR_BADHANDLE)
+                        && !status.equals(NfsStatus.NFS3ERR_IO)) {
+                    // the server answered about the handle, so it is valid
+                    return;
+                }
+            }
+
+            LOG.info("cached root handle for {}:{} is not valid, mounting again", _server, _exportedPath);
+            MountCache.getInstance().remove(_server, _exportedPath, _credential.getCredentialFlavor());
+            _prepareLock.lock();
+            try {
+                bootstrap();
+            } catch (IOException e) {
+                LOG.error(String.format("cannot mount %s:%s again", _server, _exportedPath), e);
+            } finally {
+                _prepareLock.unlock();
+            }
+        }, REMOUNT_EXECUTOR);
+    }
+
     /**
      * @return the root handle
      * @throws IOException
      */
     byte[] lookupRootHandle()
             throws IOException {
-        int portOfMountService = Portmapper.queryPortFromPortMap(MOUNTPROG, VERSION, _server);
+        return lookupRootHandle(Portmapper.queryPortFromPortMap(MOUNTPROG, VERSION, _server));
+    }
+
+    /**
+     * Mount the export once, then unmount it.
+     * 
+     * @param portOfMountService
+     *            The port of the mount service.
+     * @return the root handle
+     * @throws IOException
+     */
+    private byte[] lookupRootHandle(int portOfMountService)
+            throws IOException {
+        // mount traffic is rare, so use a single connection opened on demand
+        NetMgr.getInstance().setPoolSize(_server, portOfMountService, 0, 1);
 
         MountResponse response = null;
         MountRequest request = new MountRequest(VERSION, _exportedPath, _credential);
@@ -304,7 +443,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
                 if (usePrivilegedPort) {
                     System.out.println("Mounting with privileged port - attempt with unprivileged failed with an authentication error.");
                 }
-                response.unmarshalling(NetMgr.getInstance().sendAndWait(_server, portOfMountService, usePrivilegedPort, mountXdr, MOUNT_RPC_TIMEOUT));
+                response.unmarshalling(NetMgr.getInstance().sendAndWait(_server, portOfMountService, usePrivilegedPort, mountXdr, MOUNT_RPC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
                 int status = response.getMountStatus();
                 if (status != MountStatus.MNT3_OK.getValue()) {
                     String msg = String.format(
@@ -312,6 +451,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
                             _exportedPath, VERSION, status);
                     throw new MountException(MountStatus.fromValue(status), msg);
                 }
+                break;
             } catch (RpcException e) {
                 usePrivilegedPort = handleRpcException(e, i);
             }
@@ -325,7 +465,8 @@ public class Nfs3 implements Nfs<Nfs3File> {
                 unmountRequest.marshalling(unmountXdr);
                 // RFC defines the response of a unmount request as void
                 // If we mounted with a privileged port, use one to unmount.
-                NetMgr.getInstance().sendAndWait(_server, portOfMountService, usePrivilegedPort, unmountXdr, MOUNT_RPC_TIMEOUT);
+                NetMgr.getInstance().sendAndWait(_server, portOfMountService, usePrivilegedPort, unmountXdr, MOUNT_RPC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                break;
             } catch (RpcException e) {
                 if (i+1 < MOUNT_MAX_RETRIES) {
                     LOG.warn(String.format(
@@ -406,6 +547,83 @@ public class Nfs3 implements Nfs<Nfs3File> {
         return _credential;
     }
 
+    /**
+     * Replace the retry policy of the NFS calls. By default, network errors
+     * are retried with exponential backoff and full jitter, starting from a
+     * 1 second ceiling, up to the maximum number of retries given to the
+     * constructor, and within a retry budget of this client.
+     * 
+     * @param retryPolicy
+     *            The policy.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        _rpcWrapper.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Turn on hedging of idempotent calls, such as GETATTR, LOOKUP and READ.
+     * A call that has not completed after the given percentile of recent
+     * latencies is sent again, to another IP address of the server if there
+     * is one, and the first reply wins.
+     * 
+     * @param percentile
+     *            The percentile of recent latencies after which a call is
+     *            hedged, such as 95.
+     * @param maximumHedgeRatio
+     *            The largest fraction of calls that may be hedged, such as
+     *            0.05.
+     */
+    public void enableHedging(double percentile, double maximumHedgeRatio) {
+        _rpcWrapper.enableHedging(percentile, maximumHedgeRatio);
+    }
+
+    /**
+     * Turn off hedging, which is off by default.
+     */
+    public void disableHedging() {
+        _rpcWrapper.disableHedging();
+    }
+
+    /**
+     * Set the timeout of each attempt for the procedures without their own,
+     * which is <code>NFS_TIMEOUT</code> seconds by default. The time left
+     * before the deadline of a call, if it has one, cuts each attempt short
+     * and stops the retries.
+     * 
+     * @param timeoutMillis
+     *            The timeout in milliseconds.
+     */
+    public void setDefaultTimeout(long timeoutMillis) {
+        _rpcWrapper.setTimeout(timeoutMillis);
+    }
+
+    /**
+     * Set the timeout of each attempt for one procedure.
+     * 
+     * @param procedure
+     *            The procedure, such as <code>Nfs.NFSPROC3_COMMIT</code>.
+     * @param timeoutMillis
+     *            The timeout in milliseconds, or 0 to use the default timeout
+     *            again.
+     */
+    public void setTimeout(int procedure, long timeoutMillis) {
+        _rpcWrapper.setTimeout(procedure, timeoutMillis);
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#getAttributeCache()
+     */
+    public NfsAttributeCache getAttributeCache() {
+        return _attributeCache;
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#getNameCache()
+     */
+    public NfsNameCache getNameCache() {
+        return _nameCache;
+    }
+
     /* (non-Javadoc)
      * @see com.emc.ecs.nfsclient.nfs.Nfs#getExportedPath()
      */
@@ -445,6 +663,25 @@ public class Nfs3 implements Nfs<Nfs3File> {
      * @see com.emc.ecs.nfsclient.nfs.Nfs#nullCall()
      */
     public Xdr nullCall() throws IOException {
+        return _rpcWrapper.callRpc(_rpcWrapper.chooseIP(_server.getBytes(RpcRequest.CHARSET)), makeNullXdr(), false);
+    }
+
+    /**
+     * Send the NULL procedure to one IP address of the server, without
+     * blocking. Used to check whether an ejected address is healthy again.
+     * 
+     * @param ip
+     *            The IP address.
+     * @return A future for the response.
+     */
+    private CompletableFuture<Xdr> nullCallAsync(String ip) {
+        return _rpcWrapper.callRpcAsync(ip, makeNullXdr(), false);
+    }
+
+    /**
+     * @return The marshalled NULL procedure request.
+     */
+    private Xdr makeNullXdr() {
         Xdr xdr = new Xdr(MAXIMUM_NFS_REQUEST_SIZE);
         new RpcRequest(RPC_PROGRAM, VERSION, NFSPROC3_NULL, _credential) {
 
@@ -456,7 +693,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
             }
 
         }.marshalling(xdr);
-        return _rpcWrapper.callRpc(_rpcWrapper.chooseIP(_server.getBytes(RpcRequest.CHARSET)), xdr, false);
+        return xdr;
     }
 
     /*
@@ -477,7 +714,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3GetAttrResponse getAttr(NfsGetAttrRequest request) throws IOException {
         Nfs3GetAttrResponse response = new Nfs3GetAttrResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /*
@@ -499,7 +736,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getAttrAsync(com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest)
+     */
+    public CompletableFuture<Nfs3GetAttrResponse> wrapped_getAttrAsync(NfsGetAttrRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3GetAttrResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -518,7 +763,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3SetAttrResponse setAttr(NfsSetAttrRequest request) throws IOException {
         Nfs3SetAttrResponse response = new Nfs3SetAttrResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /*
@@ -540,7 +785,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_setAttrAsync(com.emc.ecs.nfsclient.nfs.NfsSetAttrRequest)
+     */
+    public CompletableFuture<Nfs3SetAttrResponse> wrapped_setAttrAsync(NfsSetAttrRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3SetAttrResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -556,14 +809,96 @@ public class Nfs3 implements Nfs<Nfs3File> {
       public Nfs3LookupResponse getLookup(NfsLookupRequest request) throws IOException {
          Nfs3LookupResponse response = new Nfs3LookupResponse();
          _rpcWrapper.callRpcNaked(request, response);
-         return response;
+         return updateCaches(request, response);
      }
 
     /* (non-Javadoc)
      * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getLookup(com.emc.ecs.nfsclient.nfs.NfsLookupRequest)
      */
     public Nfs3LookupResponse wrapped_getLookup(NfsLookupRequest request) throws IOException {
-        RpcResponseHandler<Nfs3LookupResponse> responseHandler = new NfsResponseHandler<Nfs3LookupResponse>() {
+        RpcResponseHandler<Nfs3LookupResponse> responseHandler = makeLookupResponseHandler();
+        _rpcWrapper.callRpcWrapped(request, responseHandler);
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getLookupAsync(com.emc.ecs.nfsclient.nfs.NfsLookupRequest)
+     */
+    public CompletableFuture<Nfs3LookupResponse> wrapped_getLookupAsync(final NfsLookupRequest request) {
+        final CompletableFuture<Nfs3LookupResponse> result = lookupAsync(request);
+        if (!isRootFileHandle(request.getFileHandle())) {
+            return result;
+        }
+
+        // the response handler runs on a network thread, so it leaves the
+        // mount to the remount threads, and the lookup is tried once more
+        // with the new root handle
+        return result.handle((response, throwable) -> {
+            Throwable cause = (throwable instanceof CompletionException) ? throwable.getCause() : throwable;
+            if (!(cause instanceof NfsException)
+                    || !((NfsException) cause).getStatus().equals(NfsStatus.NFS3ERR_BADHANDLE)) {
+                return result;
+            }
+            return CompletableFuture.supplyAsync(() -> remountForRetry(request, cause), REMOUNT_EXECUTOR)
+                    .thenCompose(this::lookupAsync);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * @param request
+     * @return the LOOKUP response, once the caches have been updated from it
+     */
+    private CompletableFuture<Nfs3LookupResponse> lookupAsync(final NfsLookupRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeLookupResponseHandler(false))
+                .thenApply(response -> updateCaches(request, response));
+    }
+
+    /**
+     * Mount again after the server rejected the root handle of a LOOKUP. This
+     * blocks, so it must not run on a network thread.
+     * 
+     * @param request
+     *            The rejected request.
+     * @param failure
+     *            The rejection, reported if the export cannot be mounted again.
+     * @return the same request, for the new root handle
+     */
+    private NfsLookupRequest remountForRetry(NfsLookupRequest request, Throwable failure) {
+        try {
+            prepareRootFhAndNfsPort();
+            return makeLookupRequest(_rootFileHandle, request.getName());
+        } catch (IOException e) {
+            LOG.error(String.format("cannot mount %s:%s again", _server, _exportedPath), e);
+            throw new CompletionException(failure);
+        }
+    }
+
+    /**
+     * @param fileHandle
+     * @return <code>true</code> if the handle is the current root handle.
+     *         Requests hold copies of their handles, so the contents are
+     *         compared.
+     */
+    private boolean isRootFileHandle(byte[] fileHandle) {
+        return Arrays.equals(fileHandle, _rootFileHandle);
+    }
+
+    /**
+     * @return a LOOKUP response handler that mounts again if the root file
+     *         handle is bad, and caches missing names
+     */
+    private RpcResponseHandler<Nfs3LookupResponse> makeLookupResponseHandler() {
+        return makeLookupResponseHandler(true);
+    }
+
+    /**
+     * @param remountOnBadRootHandle
+     *            If <code>false</code>, a bad root handle is only reported,
+     *            and the caller mounts again.
+     * @return a LOOKUP response handler that caches missing names
+     */
+    private RpcResponseHandler<Nfs3LookupResponse> makeLookupResponseHandler(final boolean remountOnBadRootHandle) {
+        return new NfsResponseHandler<Nfs3LookupResponse>() {
 
             /* (non-Javadoc)
              * @see com.emc.ecs.nfsclient.rpc.RpcResponseHandler#makeNewResponse()
@@ -577,16 +912,18 @@ public class Nfs3 implements Nfs<Nfs3File> {
              */
             public void checkResponse(RpcRequest request) throws IOException {
                 // If the root file handle is bad, we should mount again.
-                if ((getResponse().getState() == NfsStatus.NFS3ERR_BADHANDLE.getValue())
-                 && (((NfsLookupRequest)request).getFileHandle() == _rootFileHandle)) {
+                if (remountOnBadRootHandle && (getResponse().getState() == NfsStatus.NFS3ERR_BADHANDLE.getValue())
+                 && isRootFileHandle(((NfsLookupRequest)request).getFileHandle())) {
                     prepareRootFhAndNfsPort();
                 }
+                // a missing name is cached before it is reported
+                if (getResponse().getState() == NfsStatus.NFS3ERR_NOENT.getValue()) {
+                    updateCaches((NfsRequestBase) request, getResponse());
+                }
                 super.checkResponse(request);
             }
 
         };
-        _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
     }
 
     /* (non-Javadoc)
@@ -602,7 +939,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3AccessResponse getAccess(NfsAccessRequest request) throws IOException {
         Nfs3AccessResponse response = new Nfs3AccessResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -620,7 +957,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getAccessAsync(com.emc.ecs.nfsclient.nfs.NfsAccessRequest)
+     */
+    public CompletableFuture<Nfs3AccessResponse> wrapped_getAccessAsync(NfsAccessRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3AccessResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -636,7 +981,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3ReadlinkResponse getReadlink(NfsReadlinkRequest request) throws IOException {
         Nfs3ReadlinkResponse response = new Nfs3ReadlinkResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -654,7 +999,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
         };
 
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getReadlinkAsync(com.emc.ecs.nfsclient.nfs.NfsReadlinkRequest)
+     */
+    public CompletableFuture<Nfs3ReadlinkResponse> wrapped_getReadlinkAsync(NfsReadlinkRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3ReadlinkResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -670,7 +1023,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3ReadResponse getRead(NfsReadRequest request, byte[] bytes, int position) throws IOException {
         Nfs3ReadResponse response = new Nfs3ReadResponse(bytes, position);
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -688,7 +1041,16 @@ public class Nfs3 implements Nfs<Nfs3File> {
         };
 
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getReadAsync(com.emc.ecs.nfsclient.nfs.NfsReadRequest, byte[], int)
+     */
+    public CompletableFuture<Nfs3ReadResponse> wrapped_getReadAsync(NfsReadRequest request, final byte[] bytes,
+            final int position) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(() -> new Nfs3ReadResponse(bytes, position)))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -704,7 +1066,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3WriteResponse sendWrite(NfsWriteRequest request) throws IOException {
         Nfs3WriteResponse response = new Nfs3WriteResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -725,17 +1087,51 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler, ip);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendWriteAsync(com.emc.ecs.nfsclient.nfs.NfsWriteRequest)
+     */
+    public CompletableFuture<Nfs3WriteResponse> wrapped_sendWriteAsync(NfsWriteRequest request) {
+        // for async write, all the writes and commit should be sent to
+        // the same NFS server
+        String ip = request.isSync() ? null : _server;
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3WriteResponse::new), ip)
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
      * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendWrite(com.emc.ecs.nfsclient.nfs.NfsWriteRequest, java.lang.Long)
      */
-    public Nfs3WriteResponse wrapped_sendWrite(NfsWriteRequest request, final Long verifier) throws IOException {
+    public Nfs3WriteResponse wrapped_sendWrite(NfsWriteRequest request, Long verifier) throws IOException {
         // for async write, all the writes and commit should be sent to
         // the same NFS server
         String ip = request.isSync() ? _rpcWrapper.chooseIP(request.getIpKey()) : _server;
-        NfsResponseHandler<Nfs3WriteResponse> responseHandler = new NfsResponseHandler<Nfs3WriteResponse>() {
+        NfsResponseHandler<Nfs3WriteResponse> responseHandler = makeWriteResponseHandler(verifier);
+        _rpcWrapper.callRpcWrapped(request, responseHandler, ip);
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendWriteAsync(com.emc.ecs.nfsclient.nfs.NfsWriteRequest, java.lang.Long)
+     */
+    public CompletableFuture<Nfs3WriteResponse> wrapped_sendWriteAsync(NfsWriteRequest request, Long verifier) {
+        // for async write, all the writes and commit should be sent to
+        // the same NFS server
+        String ip = request.isSync() ? null : _server;
+        return _rpcWrapper.callRpcWrappedAsync(request, makeWriteResponseHandler(verifier), ip)
+                .thenApply(response -> updateCaches(request, response));
+    }
+
+    /**
+     * @param verifier
+     *            The verifier returned by earlier writes, or <code>null</code>.
+     * @return a WRITE response handler that detects server restarts for
+     *         unstable writes
+     */
+    private NfsResponseHandler<Nfs3WriteResponse> makeWriteResponseHandler(final Long verifier) {
+        return new NfsResponseHandler<Nfs3WriteResponse>() {
 
             protected Nfs3WriteResponse makeNewResponse() {
                 return new Nfs3WriteResponse();
@@ -752,8 +1148,6 @@ public class Nfs3 implements Nfs<Nfs3File> {
             }
 
         };
-        _rpcWrapper.callRpcWrapped(request, responseHandler, ip);
-        return responseHandler.getResponse();
     }
 
     /* (non-Javadoc)
@@ -770,7 +1164,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3CreateResponse sendCreate(NfsCreateRequest request) throws IOException {
         Nfs3CreateResponse response = new Nfs3CreateResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -788,7 +1182,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendCreateAsync(com.emc.ecs.nfsclient.nfs.NfsCreateRequest)
+     */
+    public CompletableFuture<Nfs3CreateResponse> wrapped_sendCreateAsync(NfsCreateRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3CreateResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -805,7 +1207,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3MkdirResponse sendMkdir(NfsMkdirRequest request) throws IOException {
         Nfs3MkdirResponse response = new Nfs3MkdirResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -823,7 +1225,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendMkdirAsync(com.emc.ecs.nfsclient.nfs.NfsMkdirRequest)
+     */
+    public CompletableFuture<Nfs3MkdirResponse> wrapped_sendMkdirAsync(NfsMkdirRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3MkdirResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -840,7 +1250,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3SymlinkResponse sendSymlink(NfsSymlinkRequest request) throws IOException {
         Nfs3SymlinkResponse response = new Nfs3SymlinkResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -858,7 +1268,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendSymlinkAsync(com.emc.ecs.nfsclient.nfs.NfsSymlinkRequest)
+     */
+    public CompletableFuture<Nfs3SymlinkResponse> wrapped_sendSymlinkAsync(NfsSymlinkRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3SymlinkResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -875,7 +1293,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3MknodResponse sendMknod(NfsMknodRequest request) throws IOException {
         Nfs3MknodResponse response = new Nfs3MknodResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -893,7 +1311,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendMknodAsync(com.emc.ecs.nfsclient.nfs.NfsMknodRequest)
+     */
+    public CompletableFuture<Nfs3MknodResponse> wrapped_sendMknodAsync(NfsMknodRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3MknodResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -909,7 +1335,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3RemoveResponse sendRemove(NfsRemoveRequest request) throws IOException {
         Nfs3RemoveResponse response = new Nfs3RemoveResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -927,7 +1353,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendRemoveAsync(com.emc.ecs.nfsclient.nfs.NfsRemoveRequest)
+     */
+    public CompletableFuture<Nfs3RemoveResponse> wrapped_sendRemoveAsync(NfsRemoveRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3RemoveResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -943,7 +1377,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3RmdirResponse sendRmdir(NfsRmdirRequest request) throws IOException {
         Nfs3RmdirResponse response = new Nfs3RmdirResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -961,7 +1395,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendRmdirAsync(com.emc.ecs.nfsclient.nfs.NfsRmdirRequest)
+     */
+    public CompletableFuture<Nfs3RmdirResponse> wrapped_sendRmdirAsync(NfsRmdirRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3RmdirResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -978,7 +1420,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3RenameResponse sendRename(NfsRenameRequest request) throws IOException {
         Nfs3RenameResponse response = new Nfs3RenameResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -996,7 +1438,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendRenameAsync(com.emc.ecs.nfsclient.nfs.NfsRenameRequest)
+     */
+    public CompletableFuture<Nfs3RenameResponse> wrapped_sendRenameAsync(NfsRenameRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3RenameResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /*
@@ -1017,7 +1467,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3LinkResponse sendLink(NfsLinkRequest request) throws IOException {
         Nfs3LinkResponse response = new Nfs3LinkResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /*
@@ -1039,7 +1489,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendLinkAsync(com.emc.ecs.nfsclient.nfs.NfsLinkRequest)
+     */
+    public CompletableFuture<Nfs3LinkResponse> wrapped_sendLinkAsync(NfsLinkRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3LinkResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -1055,7 +1513,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3ReaddirResponse getReaddir(NfsReaddirRequest request) throws IOException {
         Nfs3ReaddirResponse response = new Nfs3ReaddirResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -1073,7 +1531,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getReaddirAsync(com.emc.ecs.nfsclient.nfs.NfsReaddirRequest)
+     */
+    public CompletableFuture<Nfs3ReaddirResponse> wrapped_getReaddirAsync(NfsReaddirRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3ReaddirResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -1092,7 +1558,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
     }
 
     /* (non-Javadoc)
@@ -1109,23 +1575,30 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3ReaddirplusResponse getReaddirplus(NfsReaddirplusRequest request) throws IOException {
         Nfs3ReaddirplusResponse response = new Nfs3ReaddirplusResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
-    public void getReaddirplusAsync(NfsReaddirplusRequest request, Callback<NfsReaddirplusResponse> callback) throws IOException {
-        Nfs3ReaddirplusResponse response = new Nfs3ReaddirplusResponse();
-        _rpcWrapper.callRpcNakedAsync(request, response, _rpcWrapper.chooseIP(request.getIpKey()), new Callback<NfsResponseBase>() {
-
-            private final long startTimeNanos = System.nanoTime();
-
-            @Override
-            public void invoke(NfsResponseBase nfsResponseBase) throws RpcException {
-                metric.add(System.nanoTime() - startTimeNanos);
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#getReaddirplusAsync(com.emc.ecs.nfsclient.nfs.NfsReaddirplusRequest, com.emc.ecs.nfsclient.network.Callback)
+     */
+    public void getReaddirplusAsync(NfsReaddirplusRequest request, final Callback<NfsReaddirplusResponse> callback) throws IOException {
+        final long startTimeNanos = System.nanoTime();
+        _rpcWrapper.callRpcNakedAsync(request, new Nfs3ReaddirplusResponse(), _rpcWrapper.chooseIP(request.getIpKey()))
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        LOG.warn("readdirplus failure, server: {}", _server, throwable);
+                        callback.fail((throwable instanceof CompletionException) ? throwable.getCause() : throwable);
+                        return;
+                    }
 
-                Nfs3ReaddirplusResponse resp = (Nfs3ReaddirplusResponse) nfsResponseBase;
-                callback.invoke(resp);
-            }
-        });
+                    metric.add(System.nanoTime() - startTimeNanos);
+                    updateCaches(request, response);
+                    try {
+                        callback.invoke(response);
+                    } catch (RpcException e) {
+                        LOG.warn("readdirplus callback failure, server: {}", _server, e);
+                    }
+                });
     }
 
     /* (non-Javadoc)
@@ -1143,7 +1616,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getReaddirplusAsync(com.emc.ecs.nfsclient.nfs.NfsReaddirplusRequest)
+     */
+    public CompletableFuture<Nfs3ReaddirplusResponse> wrapped_getReaddirplusAsync(NfsReaddirplusRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3ReaddirplusResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -1162,7 +1643,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
     }
 
     /* (non-Javadoc)
@@ -1192,7 +1673,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3FsStatResponse getFsStat(NfsFsStatRequest request) throws IOException {
         Nfs3FsStatResponse response = new Nfs3FsStatResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -1210,7 +1691,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getFsStatAsync(com.emc.ecs.nfsclient.nfs.NfsFsStatRequest)
+     */
+    public CompletableFuture<Nfs3FsStatResponse> wrapped_getFsStatAsync(NfsFsStatRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3FsStatResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -1240,7 +1729,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3FsInfoResponse getFsInfo(NfsFsInfoRequest request) throws IOException {
         Nfs3FsInfoResponse response = new Nfs3FsInfoResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -1258,7 +1747,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getFsInfoAsync(com.emc.ecs.nfsclient.nfs.NfsFsInfoRequest)
+     */
+    public CompletableFuture<Nfs3FsInfoResponse> wrapped_getFsInfoAsync(NfsFsInfoRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3FsInfoResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -1274,7 +1771,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3PathconfResponse getPathconf(NfsPathconfRequest request) throws IOException {
         Nfs3PathconfResponse response = new Nfs3PathconfResponse();
         _rpcWrapper.callRpcNaked(request, response);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -1292,7 +1789,15 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_getPathconfAsync(com.emc.ecs.nfsclient.nfs.NfsPathconfRequest)
+     */
+    public CompletableFuture<Nfs3PathconfResponse> wrapped_getPathconfAsync(NfsPathconfRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3PathconfResponse::new))
+                .thenApply(response -> updateCaches(request, response));
     }
 
     /* (non-Javadoc)
@@ -1308,7 +1813,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
     public Nfs3CommitResponse sendCommit(NfsCommitRequest request) throws IOException {
         Nfs3CommitResponse response = new Nfs3CommitResponse();
         _rpcWrapper.callRpcNaked(request, response, _server);
-        return response;
+        return updateCaches(request, response);
     }
 
     /* (non-Javadoc)
@@ -1326,7 +1831,53 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
         };
         _rpcWrapper.callRpcWrapped(request, responseHandler, _server);
-        return responseHandler.getResponse();
+        return updateCaches(request, responseHandler.getResponse());
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.nfs.Nfs#wrapped_sendCommitAsync(com.emc.ecs.nfsclient.nfs.NfsCommitRequest)
+     */
+    public CompletableFuture<Nfs3CommitResponse> wrapped_sendCommitAsync(NfsCommitRequest request) {
+        return _rpcWrapper.callRpcWrappedAsync(request, makeResponseHandler(Nfs3CommitResponse::new), _server)
+                .thenApply(response -> updateCaches(request, response));
+    }
+
+    /**
+     * Feed the attributes and names carried by a response to the caches.
+     * 
+     * @param request
+     *            The request.
+     * @param response
+     *            The response to the request.
+     * @return The response.
+     */
+    private <T extends NfsResponseBase> T updateCaches(NfsRequestBase request, T response) {
+        response.dropReplacedAttributes(request, _nameCache, _attributeCache);
+        response.cacheAttributes(request, _attributeCache);
+        response.cacheNames(request, _nameCache);
+        return response;
+    }
+
+    /**
+     * Create a response handler that performs only the basic NFS response
+     * checking.
+     * 
+     * @param responseFactory
+     *            Creates a new response for each attempt.
+     * @return the response handler
+     */
+    private static <T extends NfsResponseBase> NfsResponseHandler<T> makeResponseHandler(
+            final Supplier<T> responseFactory) {
+        return new NfsResponseHandler<T>() {
+
+            /* (non-Javadoc)
+             * @see com.emc.ecs.nfsclient.rpc.RpcResponseHandler#makeNewResponse()
+             */
+            protected T makeNewResponse() {
+                return responseFactory.get();
+            }
+
+        };
     }
 
     // TODO: Figure out what to do with the rest of the code in this class (following this comment).
@@ -1388,7 +1939,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
       };
       _rpcWrapper.callRpcWrapped(request, responseHandler);
-      return responseHandler.getResponse().getBytesRead();
+      return updateCaches(request, responseHandler.getResponse()).getBytesRead();
   }
 
   public void fsync(String path, byte[] fh, final Long verifier) throws IOException {
@@ -1416,6 +1967,7 @@ public class Nfs3 implements Nfs<Nfs3File> {
 
       };
       _rpcWrapper.callRpcWrapped(request, responseHandler, _server);
+      updateCaches(request, responseHandler.getResponse());
   }
 
   public long metrics() {
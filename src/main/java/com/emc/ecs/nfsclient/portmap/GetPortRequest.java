@@ -117,6 +117,15 @@ public class GetPortRequest extends RpcRequest {
         _networkProtocol = networkProtocol;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RpcRequest#isIdempotent()
+     */
+    public boolean isIdempotent() {
+        return true;
+    }
+
     /*
      * (non-Javadoc)
      * 
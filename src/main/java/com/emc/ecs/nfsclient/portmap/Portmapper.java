@@ -20,6 +20,7 @@ import com.emc.ecs.nfsclient.rpc.RpcStatus;
 import com.emc.ecs.nfsclient.rpc.Xdr;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.NotImplementedException;
 
@@ -43,9 +44,9 @@ public class Portmapper {
     private static final int PORTMAP_MAX_REQUEST_SIZE = 128;
 
     /**
-     * RPC timeout in seconds.
+     * RPC timeout in milliseconds.
      */
-    private static int PORTMAP_RPC_TIMEOUT = 10;
+    private static long PORTMAP_RPC_TIMEOUT_MILLIS = 10000;
 
     /**
      * Maximum number of retries. Calls are wrapped in case of temporary issues.
@@ -76,16 +77,20 @@ public class Portmapper {
     public static int queryPortFromPortMap(int program, int version, String serverIP) throws IOException {
         GetPortResponse response = null;
         GetPortRequest request = new GetPortRequest(program, version);
+
+        // portmap traffic is rare, so use a single connection opened on demand
+        NetMgr.getInstance().setPoolSize(serverIP, PMAP_PORT, 0, 1);
         for (int i = 0; i < _maxRetry; ++i) {
             try {
                 Xdr portmapXdr = new Xdr(PORTMAP_MAX_REQUEST_SIZE);
                 request.marshalling(portmapXdr);
 
                 Xdr reply = NetMgr.getInstance().sendAndWait(serverIP, PMAP_PORT, _usePrivilegedPort, portmapXdr,
-                        PORTMAP_RPC_TIMEOUT);
+                        PORTMAP_RPC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
 
                 response = new GetPortResponse();
                 response.unmarshalling(reply);
+                break;
             } catch (RpcException e) {
                 handleRpcException(e, i, serverIP);
             }
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses among the IP addresses of a server, using their health and
+ * latency.
+ *
+ * <p>
+ * Each address has a round trip time, tracked as an exponentially weighted
+ * moving average, and a count of consecutive network errors. An address with
+ * too many errors is ejected: it gets no traffic until a probe, normally an
+ * NFS NULL call, succeeds. Probes are sent with a backoff that doubles on
+ * each failure.
+ * </p>
+ *
+ * <p>
+ * The healthy addresses are chosen by weighted rendezvous hashing on the IP
+ * key, such as a file handle: each key scores every address, and the highest
+ * score wins. The same key keeps going to the same address, so the server's
+ * caches stay warm, and an address that is twice as slow as the fastest gets
+ * half the keys. Weights are rounded to powers of two, so that small changes
+ * in latency do not move keys around.
+ * </p>
+ */
+class AddressSelector {
+
+    /**
+     * The usual logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AddressSelector.class);
+
+    /**
+     * The weight of the latest sample in the moving average of round trip
+     * times.
+     */
+    private static final double RTT_ALPHA = 0.2;
+
+    /**
+     * The number of consecutive network errors that ejects an address.
+     */
+    static final int EJECT_AFTER_ERRORS = 3;
+
+    /**
+     * The time before the first probe of an ejected address, in milliseconds.
+     */
+    static final long INITIAL_PROBE_DELAY_MILLIS = 1000;
+
+    /**
+     * The longest time between probes of an ejected address, in milliseconds.
+     */
+    private static final long MAX_PROBE_DELAY_MILLIS = 30000;
+
+    /**
+     * The lowest weight, reached by addresses that are 16 times slower than
+     * the fastest one.
+     */
+    private static final double MIN_WEIGHT = 1.0 / 16;
+
+    /**
+     * The addresses, sorted, so that the same key maps to the same address in
+     * every client.
+     */
+    private final String[] _ips;
+
+    /**
+     * The health of each address, indexed like <code>_ips</code>.
+     */
+    private final Health[] _health;
+
+    /**
+     * The index of each address.
+     */
+    private final Map<String, Integer> _indexes = new HashMap<String, Integer>();
+
+    /**
+     * Runs the probes.
+     */
+    private final ScheduledExecutorService _scheduler;
+
+    /**
+     * Sends a probe to an ejected address, or <code>null</code> to put the
+     * address back after the probe delay without checking.
+     */
+    private volatile RpcWrapper.AddressProbe _probe;
+
+    /**
+     * @param ips
+     *            The addresses.
+     * @param scheduler
+     *            Runs the probes.
+     */
+    AddressSelector(String[] ips, ScheduledExecutorService scheduler) {
+        _ips = ips.clone();
+        Arrays.sort(_ips);
+        _health = new Health[_ips.length];
+        for (int i = 0; i < _ips.length; ++i) {
+            _health[i] = new Health();
+            _indexes.put(_ips[i], i);
+        }
+        _scheduler = scheduler;
+    }
+
+    /**
+     * @param probe
+     *            Sends a probe to an ejected address.
+     */
+    void setProbe(RpcWrapper.AddressProbe probe) {
+        _probe = probe;
+    }
+
+    /**
+     * @return The number of addresses.
+     */
+    int size() {
+        return _ips.length;
+    }
+
+    /**
+     * @param key
+     *            The IP key of the request.
+     * @return The address to use.
+     */
+    String choose(byte[] key) {
+        return choose(key, null);
+    }
+
+    /**
+     * @param key
+     *            The IP key of the request.
+     * @param excluded
+     *            An address to avoid, such as the one a hedged call is
+     *            waiting on, or <code>null</code>.
+     * @return The address to use, which is the excluded one only if there is
+     *         no other healthy address.
+     */
+    String choose(byte[] key, String excluded) {
+        int keyHash = Arrays.hashCode(key);
+
+        long bestRtt = Long.MAX_VALUE;
+        for (Health health : _health) {
+            long rtt = health._rttNanos;
+            if (!health._ejected && rtt > 0 && rtt < bestRtt) {
+                bestRtt = rtt;
+            }
+        }
+
+        int best = -1;
+        double bestScore = 0;
+        for (int i = 0; i < _ips.length; ++i) {
+            Health health = _health[i];
+            if (health._ejected || _ips[i].equals(excluded)) {
+                continue;
+            }
+            double score = getWeight(health._rttNanos, bestRtt) / -Math.log(toUnitInterval(keyHash, i));
+            if (best < 0 || score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        if (best < 0) {
+            if (excluded != null) {
+                return excluded;
+            }
+            // every address is ejected, so fall back to plain affinity
+            best = Math.floorMod(keyHash, _ips.length);
+        }
+        return _ips[best];
+    }
+
+    /**
+     * Record a successful round trip, putting the address back if it was
+     * ejected.
+     *
+     * @param ip
+     *            The address.
+     * @param rttNanos
+     *            The round trip time.
+     */
+    void recordSuccess(String ip, long rttNanos) {
+        Integer index = _indexes.get(ip);
+        if (index == null) {
+            return;
+        }
+
+        Health health = _health[index];
+        synchronized (health) {
+            long rtt = health._rttNanos;
+            health._rttNanos = (rtt == 0) ? Math.max(rttNanos, 1)
+                    : Math.max((long) (RTT_ALPHA * rttNanos + (1 - RTT_ALPHA) * rtt), 1);
+            health._consecutiveErrors = 0;
+        }
+        readmit(index);
+    }
+
+    /**
+     * Record a network error or timeout, ejecting the address if it has had
+     * too many in a row. The last address in use is never ejected.
+     *
+     * @param ip
+     *            The address.
+     */
+    void recordFailure(String ip) {
+        Integer index = _indexes.get(ip);
+        if (index == null) {
+            return;
+        }
+
+        Health health = _health[index];
+        long probeDelay;
+        synchronized (health) {
+            ++health._consecutiveErrors;
+            if (health._ejected || health._consecutiveErrors < EJECT_AFTER_ERRORS || !hasOtherHealthy(index)) {
+                return;
+            }
+            health._ejected = true;
+            probeDelay = health._probeDelayMillis;
+        }
+
+        LOG.warn("address {} ejected after {} consecutive errors", ip, EJECT_AFTER_ERRORS);
+        scheduleProbe(index, probeDelay);
+    }
+
+    /**
+     * Put an ejected address back, unless a successful call already has.
+     *
+     * @param index
+     *            The index of the address.
+     */
+    private void readmit(int index) {
+        Health health = _health[index];
+        synchronized (health) {
+            if (!health._ejected) {
+                return;
+            }
+            health._consecutiveErrors = 0;
+            health._ejected = false;
+            health._probeDelayMillis = INITIAL_PROBE_DELAY_MILLIS;
+        }
+        LOG.info("address {} is healthy again", _ips[index]);
+    }
+
+    /**
+     * @param index
+     *            The index of the address.
+     * @return <code>true</code> if another address is not ejected.
+     */
+    private boolean hasOtherHealthy(int index) {
+        for (int i = 0; i < _health.length; ++i) {
+            if (i != index && !_health[i]._ejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Probe an ejected address after the delay. If the probe fails, the next
+     * one is scheduled with twice the delay.
+     *
+     * @param index
+     *            The index of the address.
+     * @param delayMillis
+     *            The delay in milliseconds.
+     */
+    private void scheduleProbe(final int index, long delayMillis) {
+        _scheduler.schedule(new Runnable() {
+            /* (non-Javadoc)
+             * @see java.lang.Runnable#run()
+             */
+            public void run() {
+                probe(index);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Probe an ejected address, or simply put it back if there is no probe.
+     *
+     * @param index
+     *            The index of the address.
+     */
+    private void probe(final int index) {
+        final String ip = _ips[index];
+        RpcWrapper.AddressProbe probe = _probe;
+        if (probe == null) {
+            readmit(index);
+            return;
+        }
+
+        probe.probe(ip).whenComplete((response, cause) -> {
+            if (cause == null) {
+                readmit(index);
+                return;
+            }
+
+            long delay;
+            Health health = _health[index];
+            synchronized (health) {
+                if (!health._ejected) {
+                    return;
+                }
+                health._probeDelayMillis = Math.min(health._probeDelayMillis * 2, MAX_PROBE_DELAY_MILLIS);
+                delay = health._probeDelayMillis;
+            }
+            LOG.debug("probe of address {} failed, next in {} ms", ip, delay);
+            scheduleProbe(index, delay);
+        });
+    }
+
+    /**
+     * @param ip
+     *            The address.
+     * @return <code>true</code> if the address is ejected.
+     */
+    boolean isEjected(String ip) {
+        Integer index = _indexes.get(ip);
+        return index != null && _health[index]._ejected;
+    }
+
+    /**
+     * @param ip
+     *            The address.
+     * @return The moving average of the round trip time in nanoseconds, or 0
+     *         if there has been no successful call yet.
+     */
+    long getRttNanos(String ip) {
+        Integer index = _indexes.get(ip);
+        return (index == null) ? 0 : _health[index]._rttNanos;
+    }
+
+    /**
+     * @param rttNanos
+     *            The round trip time of the address, or 0 if unknown.
+     * @param bestRttNanos
+     *            The best round trip time of the healthy addresses.
+     * @return The weight of the address, rounded down to a power of two.
+     *         Addresses whose time is unknown get the full weight, so that
+     *         they are tried.
+     */
+    private static double getWeight(long rttNanos, long bestRttNanos) {
+        if (rttNanos == 0 || bestRttNanos == Long.MAX_VALUE || rttNanos <= bestRttNanos) {
+            return 1;
+        }
+        double ratio = (double) bestRttNanos / rttNanos;
+        double weight = Math.pow(2, Math.floor(Math.log(ratio) / Math.log(2)));
+        return Math.max(weight, MIN_WEIGHT);
+    }
+
+    /**
+     * @param keyHash
+     *            The hash of the key.
+     * @param index
+     *            The index of the address.
+     * @return A hash of both, mapped to the open interval (0, 1).
+     */
+    private static double toUnitInterval(int keyHash, int index) {
+        // the finalizer of MurmurHash3, to spread the bits
+        long h = ((long) keyHash << 32) ^ (index * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return ((h >>> 11) + 0.5) / (1L << 53);
+    }
+
+    /**
+     * The health of one address.
+     */
+    private static class Health {
+
+        /**
+         * The moving average of the round trip time in nanoseconds, or 0 if
+         * unknown.
+         */
+        private volatile long _rttNanos;
+
+        /**
+         * The number of network errors since the last success.
+         */
+        private int _consecutiveErrors;
+
+        /**
+         * Whether the address gets no traffic until a probe succeeds.
+         */
+        private volatile boolean _ejected;
+
+        /**
+         * The delay before the next probe, in milliseconds.
+         */
+        private long _probeDelayMillis = INITIAL_PROBE_DELAY_MILLIS;
+
+    }
+
+}
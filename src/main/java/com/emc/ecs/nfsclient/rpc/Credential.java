@@ -36,4 +36,30 @@ public interface Credential {
      */
     void marshalling(Xdr xdr);
 
+    /**
+     * Put the header of a call using this credential into an XDR buffer: a
+     * placeholder for the xid, the call fields, the credential and the
+     * verifier.
+     * 
+     * @param xdr
+     * @param program
+     *            The program number of the service.
+     * @param version
+     *            The version number of the service.
+     * @param procedure
+     *            The service procedure number to be called.
+     */
+    void marshallingCallHeader(Xdr xdr, int program, int version, int procedure);
+
+    /**
+     * @return The credential flavor, such as <code>AUTH_NONE</code>.
+     */
+    int getCredentialFlavor();
+
+    /**
+     * @return The number of bytes that <code>marshalling</code> puts into the
+     *         XDR buffer.
+     */
+    int getMarshalledSize();
+
 }
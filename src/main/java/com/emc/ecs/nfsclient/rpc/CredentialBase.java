@@ -14,28 +14,118 @@
  */
 package com.emc.ecs.nfsclient.rpc;
 
+import java.util.Arrays;
+
 /**
  * @author seibed
  *
  */
 public class CredentialBase implements Credential {
 
+    /**
+     * The call headers encoded so far, one for each procedure called with
+     * this credential. The array is replaced rather than modified, so it is
+     * read without locking.
+     */
+    private volatile CallHeader[] _callHeaders = new CallHeader[0];
+
     /* (non-Javadoc)
      * @see com.emc.ecs.nfsclient.rpc.Credential#marshalling(com.emc.ecs.nfsclient.rpc.Xdr)
      */
     public void marshalling(Xdr xdr) {
         xdr.putInt(getCredentialFlavor()); // credential flavor
-        xdr.putByteArray(getCredential()); // bytes of credentials
+        putCredential(xdr); // bytes of credentials
         xdr.putInt(getVerifierFlavor()); // verifier flavor
         xdr.putByteArray(getVerifier()); // bytes of verifier
     }
 
+    /**
+     * The header is copied from a template encoded the first time the
+     * procedure is called, and again whenever the generation of the
+     * credential changes.
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.Credential#marshallingCallHeader(com.emc.ecs.nfsclient.rpc.Xdr,
+     *      int, int, int)
+     */
+    public void marshallingCallHeader(Xdr xdr, int program, int version, int procedure) {
+        int generation = getGeneration();
+        CallHeader callHeader = null;
+        for (CallHeader candidate : _callHeaders) {
+            if (candidate.matches(program, version, procedure)) {
+                callHeader = candidate;
+                break;
+            }
+        }
+
+        if (callHeader == null || callHeader._generation != generation) {
+            callHeader = new CallHeader(program, version, procedure, generation);
+            putCallHeader(callHeader);
+        }
+        xdr.putBytes(callHeader._bytes, 0, callHeader._bytes.length);
+    }
+
+    /**
+     * Add a call header, or replace the one for the same procedure.
+     * 
+     * @param callHeader
+     */
+    private synchronized void putCallHeader(CallHeader callHeader) {
+        CallHeader[] callHeaders = _callHeaders;
+        for (int i = 0; i < callHeaders.length; ++i) {
+            if (callHeaders[i].matches(callHeader._program, callHeader._version, callHeader._procedure)) {
+                callHeaders = callHeaders.clone();
+                callHeaders[i] = callHeader;
+                _callHeaders = callHeaders;
+                return;
+            }
+        }
+        callHeaders = Arrays.copyOf(callHeaders, callHeaders.length + 1);
+        callHeaders[callHeaders.length - 1] = callHeader;
+        _callHeaders = callHeaders;
+    }
+
+    /**
+     * The default credential never changes.
+     * 
+     * @return A number that changes whenever the encoded credential does, so
+     *         that the call headers are encoded again.
+     */
+    protected int getGeneration() {
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.emc.ecs.nfsclient.rpc.Credential#getMarshalledSize()
+     */
+    public int getMarshalledSize() {
+        return 8 + getCredentialSize() + Xdr.sizeOf(getVerifier());
+    }
+
+    /**
+     * Put the bytes of the credential into the buffer, as a counted array.
+     * The default copies them from <code>getCredential()</code>, and
+     * subclasses may write them in place instead.
+     * 
+     * @param xdr
+     */
+    protected void putCredential(Xdr xdr) {
+        xdr.putByteArray(getCredential());
+    }
+
+    /**
+     * @return The number of bytes that <code>putCredential</code> puts into
+     *         the buffer.
+     */
+    protected int getCredentialSize() {
+        return Xdr.sizeOf(getCredential());
+    }
+
     /**
      * The default value is AUTH_NONE.
      * 
      * @return The flavor.
      */
-    protected int getCredentialFlavor() {
+    public int getCredentialFlavor() {
         return AUTH_NONE;
     }
 
@@ -66,4 +156,73 @@ public class CredentialBase implements Credential {
         return new Xdr(0);
     }
 
+    /**
+     * The encoded header of calls to one procedure, with a placeholder for
+     * the xid.
+     */
+    private class CallHeader {
+
+        /**
+         * The program number of the service.
+         */
+        private final int _program;
+
+        /**
+         * The version number of the service.
+         */
+        private final int _version;
+
+        /**
+         * The service procedure number.
+         */
+        private final int _procedure;
+
+        /**
+         * The generation of the credential when it was encoded.
+         */
+        private final int _generation;
+
+        /**
+         * The encoded header.
+         */
+        private final byte[] _bytes;
+
+        /**
+         * Encode the header.
+         * 
+         * @param program
+         * @param version
+         * @param procedure
+         * @param generation
+         */
+        CallHeader(int program, int version, int procedure, int generation) {
+            _program = program;
+            _version = version;
+            _procedure = procedure;
+            _generation = generation;
+
+            Xdr xdr = new Xdr(24 + getMarshalledSize());
+            xdr.putInt(0);
+            xdr.putInt(RpcRequest.CALL);
+            xdr.putInt(RpcRequest.RPC_VERSION);
+            xdr.putInt(program);
+            xdr.putInt(version);
+            xdr.putInt(procedure);
+            marshalling(xdr);
+            _bytes = Arrays.copyOf(xdr.getBuffer(), xdr.getOffset());
+        }
+
+        /**
+         * @param program
+         * @param version
+         * @param procedure
+         * @return <code>true</code> if this is the header of calls to the
+         *         procedure.
+         */
+        boolean matches(int program, int version, int procedure) {
+            return _procedure == procedure && _program == program && _version == version;
+        }
+
+    }
+
 }
@@ -52,9 +52,14 @@ public class CredentialUnix extends CredentialBase {
     private final String _host;
 
     /**
-     * The number of bytes needed for the Xdr buffer.
+     * The machine name, encoded.
      */
-    private final int _maximumXdrBytes;
+    private final byte[] _hostBytes;
+
+    /**
+     * The number of bytes of the credential, without its count.
+     */
+    private final int _credentialBytes;
 
     /**
      * Create the Credential.
@@ -80,7 +85,8 @@ public class CredentialUnix extends CredentialBase {
             ++index;
         }
         _host = getHostname();
-        _maximumXdrBytes = 24 + (4 * _gids.length) + _host.getBytes(RpcRequest.CHARSET).length;
+        _hostBytes = _host.getBytes(RpcRequest.CHARSET);
+        _credentialBytes = 16 + (4 * _gids.length) + Xdr.sizeOf(_hostBytes);
     }
 
     /**
@@ -95,32 +101,74 @@ public class CredentialUnix extends CredentialBase {
      * 
      * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getCredentialFlavor()
      */
-    protected int getCredentialFlavor() {
+    public int getCredentialFlavor() {
         return AUTH_UNIX;
     }
 
+    /**
+     * The stamp is in seconds, so the call headers are encoded again once a
+     * second.
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getGeneration()
+     */
+    protected int getGeneration() {
+        return getStamp();
+    }
+
     /*
      * (non-Javadoc)
      * 
      * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getCredential()
      */
     protected Xdr getCredential() {
-        Xdr credentials = new Xdr(_maximumXdrBytes);
-        credentials.setOffset(0);
-        credentials.putInt((int) (System.currentTimeMillis() / 1000));
-        credentials.putString(_host);
-        credentials.putInt(_uid);
-        credentials.putInt(_gid);
-        if (_gids == null) {
-            credentials.putInt(0);
-        } else {
-            credentials.putInt(_gids.length);
-            for (int i = 0; i < _gids.length; i++)
-                credentials.putInt(_gids[i]);
-        }
+        Xdr credentials = new Xdr(_credentialBytes);
+        putCredentialBody(credentials);
         return credentials;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.CredentialBase#putCredential(com.emc.ecs.nfsclient.rpc.Xdr)
+     */
+    protected void putCredential(Xdr xdr) {
+        // written in place, rather than through a buffer of its own
+        xdr.putInt(_credentialBytes);
+        putCredentialBody(xdr);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getCredentialSize()
+     */
+    protected int getCredentialSize() {
+        return 4 + _credentialBytes;
+    }
+
+    /**
+     * Put the fields of the credential into the buffer.
+     * 
+     * @param xdr
+     */
+    private void putCredentialBody(Xdr xdr) {
+        xdr.putInt(getStamp());
+        xdr.putByteArray(_hostBytes);
+        xdr.putInt(_uid);
+        xdr.putInt(_gid);
+        xdr.putInt(_gids.length);
+        for (int i = 0; i < _gids.length; i++) {
+            xdr.putInt(_gids[i]);
+        }
+    }
+
+    /**
+     * @return The stamp of the credential, the current time in seconds.
+     */
+    private static int getStamp() {
+        return (int) (System.currentTimeMillis() / 1000);
+    }
+
     /**
      * @return The hostname, or "localhost" if it cannot be determined.
      */
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which an operation must be done, however many calls,
+ * retries and waits it takes. Each call of the operation gets the smaller of
+ * its own timeout and the time left, and no retry is started once the time
+ * left cannot cover the retry wait, so the operation fails fast instead of
+ * running on past its budget.
+ *
+ * <p>
+ * A deadline is given to a single request with
+ * <code>RpcRequest.setDeadline</code>, or to every call made by the current
+ * thread, including the calls made by <code>NfsFile</code> methods, with
+ * <code>enter()</code>:
+ * </p>
+ *
+ * <pre>
+ * try (Deadline.Scope scope = Deadline.after(500).enter()) {
+ *     file.createNewFile();
+ * }
+ * </pre>
+ *
+ * <p>
+ * Asynchronous calls take the deadline of the thread that starts them, and
+ * keep it on whatever thread their later attempts run.
+ * </p>
+ */
+public final class Deadline {
+
+    /**
+     * The deadline of the current thread, or <code>null</code> if there is
+     * none.
+     */
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    /**
+     * The expiry, from <code>System.nanoTime()</code>.
+     */
+    private final long _expiryNanos;
+
+    /**
+     * @param expiryNanos
+     *            The expiry, from <code>System.nanoTime()</code>.
+     */
+    private Deadline(long expiryNanos) {
+        _expiryNanos = expiryNanos;
+    }
+
+    /**
+     * @param millis
+     *            The time budget in milliseconds.
+     * @return A deadline that expires after the budget, starting now.
+     */
+    public static Deadline after(long millis) {
+        return after(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param duration
+     *            The time budget.
+     * @param unit
+     *            The unit of the budget.
+     * @return A deadline that expires after the budget, starting now.
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException(String.format("invalid deadline: %s %s", duration, unit));
+        }
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * @return The deadline of the current thread, or <code>null</code> if
+     *         there is none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param a
+     *            A deadline, or <code>null</code>.
+     * @param b
+     *            A deadline, or <code>null</code>.
+     * @return The earlier of the two, or the one that is not
+     *         <code>null</code>.
+     */
+    public static Deadline earlier(Deadline a, Deadline b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return (a._expiryNanos - b._expiryNanos <= 0) ? a : b;
+    }
+
+    /**
+     * @return The time left in nanoseconds, or 0 if the deadline has expired.
+     */
+    public long getRemainingNanos() {
+        return Math.max(0, _expiryNanos - System.nanoTime());
+    }
+
+    /**
+     * @return The time left in milliseconds, rounded up, or 0 if the deadline
+     *         has expired.
+     */
+    public long getRemainingMillis() {
+        return (getRemainingNanos() + 999999) / 1000000;
+    }
+
+    /**
+     * @return <code>true</code> if the deadline has expired,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isExpired() {
+        return getRemainingNanos() == 0;
+    }
+
+    /**
+     * Make this the deadline of the current thread until the scope is closed.
+     * A deadline already in place that expires sooner is kept.
+     *
+     * @return The scope, to close in a <code>finally</code> block or a
+     *         try-with-resources statement.
+     */
+    public Scope enter() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(earlier(previous, this));
+        return new Scope(previous);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return String.format("Deadline[%s ms left]", getRemainingMillis());
+    }
+
+    /**
+     * Restores the deadline of the thread that was in place before
+     * <code>enter()</code>.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        /**
+         * The deadline to restore, or <code>null</code> if there was none.
+         */
+        private final Deadline _previous;
+
+        /**
+         * @param previous
+         *            The deadline to restore, or <code>null</code>.
+         */
+        private Scope(Deadline previous) {
+            _previous = previous;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.AutoCloseable#close()
+         */
+        public void close() {
+            if (_previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(_previous);
+            }
+        }
+
+    }
+
+}
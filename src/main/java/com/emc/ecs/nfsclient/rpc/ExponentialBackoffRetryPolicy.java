@@ -0,0 +1,187 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default retry policy. Only network errors and timeouts are retried, as
+ * any other error comes from a server that answered.
+ *
+ * <p>
+ * The waits use exponential backoff with full jitter: before attempt
+ * <code>n</code>, the wait is chosen uniformly between 0 and
+ * <code>min(maximumDelay, baseDelay * 2^n)</code>, so that clients which
+ * failed together do not retry together. Retries also take tokens from a
+ * retry budget shared by all calls of the client, which stops the retries
+ * once they are no longer a small fraction of the successful calls.
+ * </p>
+ *
+ * <p>
+ * Requests whose <code>isIdempotent()</code> is <code>false</code>, such as
+ * CREATE or REMOVE, are retried as well by default, relying on the duplicate
+ * request cache of the server, which is how this client has always behaved.
+ * Use <code>setRetryNonIdempotent(false)</code> to fail them on the first
+ * error instead.
+ * </p>
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    /**
+     * The usual logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ExponentialBackoffRetryPolicy.class);
+
+    /**
+     * The default ratio of the maximum wait to the base wait.
+     */
+    private static final int DEFAULT_MAXIMUM_DELAY_FACTOR = 32;
+
+    /**
+     * The largest power of two applied to the base wait, which keeps the
+     * ceiling from overflowing.
+     */
+    private static final int MAXIMUM_SHIFT = 30;
+
+    /**
+     * The wait ceiling of the first retry in milliseconds.
+     */
+    private final long _baseDelayMillis;
+
+    /**
+     * The largest wait ceiling in milliseconds.
+     */
+    private final long _maximumDelayMillis;
+
+    /**
+     * The maximum number of attempts of a call, including the first one.
+     */
+    private final int _maximumAttempts;
+
+    /**
+     * The retry budget, or <code>null</code> for unlimited retries.
+     */
+    private final RetryBudget _retryBudget;
+
+    /**
+     * Whether requests that are not idempotent are retried.
+     */
+    private volatile boolean _retryNonIdempotent = true;
+
+    /**
+     * Create a policy with a default retry budget, and a maximum wait of 32
+     * times the base wait.
+     *
+     * @param baseDelayMillis
+     *            The wait ceiling of the first retry in milliseconds.
+     * @param maximumAttempts
+     *            The maximum number of attempts of a call, including the
+     *            first one.
+     */
+    public ExponentialBackoffRetryPolicy(long baseDelayMillis, int maximumAttempts) {
+        this(baseDelayMillis, baseDelayMillis * DEFAULT_MAXIMUM_DELAY_FACTOR, maximumAttempts, new RetryBudget());
+    }
+
+    /**
+     * @param baseDelayMillis
+     *            The wait ceiling of the first retry in milliseconds.
+     * @param maximumDelayMillis
+     *            The largest wait ceiling in milliseconds.
+     * @param maximumAttempts
+     *            The maximum number of attempts of a call, including the
+     *            first one.
+     * @param retryBudget
+     *            The retry budget, or <code>null</code> for unlimited
+     *            retries. Policies sharing a budget share its tokens.
+     */
+    public ExponentialBackoffRetryPolicy(long baseDelayMillis, long maximumDelayMillis, int maximumAttempts,
+            RetryBudget retryBudget) {
+        if (baseDelayMillis < 0 || maximumDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException(
+                    String.format("invalid retry delays: base %s, maximum %s", baseDelayMillis, maximumDelayMillis));
+        }
+        _baseDelayMillis = baseDelayMillis;
+        _maximumDelayMillis = maximumDelayMillis;
+        _maximumAttempts = maximumAttempts;
+        _retryBudget = retryBudget;
+    }
+
+    /**
+     * @param retryNonIdempotent
+     *            <code>true</code> to retry requests that are not
+     *            idempotent, <code>false</code> to fail them on the first
+     *            error.
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+        _retryNonIdempotent = retryNonIdempotent;
+    }
+
+    /**
+     * @return The retry budget, or <code>null</code> if retries are
+     *         unlimited.
+     */
+    public RetryBudget getRetryBudget() {
+        return _retryBudget;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RetryPolicy#getRetryDelay(com.emc.ecs.
+     * nfsclient.rpc.RpcRequest, com.emc.ecs.nfsclient.rpc.RpcException, int)
+     */
+    public long getRetryDelay(RpcRequest request, RpcException exception, int attemptNumber) {
+        if (!exception.getStatus().equals(RpcStatus.NETWORK_ERROR) || attemptNumber + 1 >= _maximumAttempts) {
+            return -1;
+        }
+        if (!_retryNonIdempotent && !request.isIdempotent()) {
+            return -1;
+        }
+        if (_retryBudget != null && !_retryBudget.tryAcquire()) {
+            LOG.warn("retry budget spent, failing the call instead of retrying");
+            return -1;
+        }
+        return ThreadLocalRandom.current().nextLong(getDelayCeiling(attemptNumber) + 1);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.emc.ecs.nfsclient.rpc.RetryPolicy#recordSuccess(com.emc.ecs.
+     * nfsclient.rpc.RpcRequest)
+     */
+    public void recordSuccess(RpcRequest request) {
+        if (_retryBudget != null) {
+            _retryBudget.recordSuccess();
+        }
+    }
+
+    /**
+     * @param attemptNumber
+     *            The number of the failed attempt, from 0.
+     * @return The largest wait before the next attempt in milliseconds.
+     */
+    long getDelayCeiling(int attemptNumber) {
+        int shift = Math.min(attemptNumber, MAXIMUM_SHIFT);
+        if (_baseDelayMillis > (_maximumDelayMillis >> shift)) {
+            return _maximumDelayMillis;
+        }
+        return _baseDelayMillis << shift;
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides when an idempotent call is sent a second time, to cut the tail
+ * latency caused by an occasional slow reply.
+ *
+ * <p>
+ * The latencies of recent calls are kept in a ring, and the hedge delay is
+ * their configured percentile, recomputed every few calls. A call still
+ * waiting after the delay is sent again, and the first reply wins. Hedges
+ * take tokens from a bucket that each call refills by the maximum hedge
+ * ratio, so that even if the server slows down as a whole, hedging adds at
+ * most that fraction of extra calls, plus a small burst.
+ * </p>
+ */
+class RequestHedger {
+
+    /**
+     * The number of recent latencies kept.
+     */
+    private static final int SAMPLES = 1024;
+
+    /**
+     * The number of latencies needed before hedging starts.
+     */
+    private static final int MINIMUM_SAMPLES = 100;
+
+    /**
+     * The number of calls between recomputations of the delay.
+     */
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    /**
+     * The number of hedges allowed in a burst.
+     */
+    private static final int BURST = 10;
+
+    /**
+     * The percentile of recent latencies after which a call is hedged.
+     */
+    private final double _percentile;
+
+    /**
+     * The recent latencies in nanoseconds, 0 where not yet recorded.
+     */
+    private final AtomicLongArray _latencies = new AtomicLongArray(SAMPLES);
+
+    /**
+     * The number of latencies recorded.
+     */
+    private final AtomicInteger _count = new AtomicInteger();
+
+    /**
+     * The hedge delay in nanoseconds, or -1 while there are too few
+     * latencies.
+     */
+    private volatile long _delayNanos = -1;
+
+    /**
+     * The hedge tokens, refilled by each call.
+     */
+    private final RetryBudget _budget;
+
+    /**
+     * @param percentile
+     *            The percentile of recent latencies after which a call is
+     *            hedged, such as 95.
+     * @param maximumHedgeRatio
+     *            The largest fraction of calls that may be hedged, such as
+     *            0.05.
+     */
+    RequestHedger(double percentile, double maximumHedgeRatio) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException(String.format("invalid hedge percentile: %s", percentile));
+        }
+        if (!(maximumHedgeRatio > 0 && maximumHedgeRatio <= 1)) {
+            throw new IllegalArgumentException(String.format("invalid hedge ratio: %s", maximumHedgeRatio));
+        }
+        _percentile = percentile;
+        _budget = new RetryBudget(BURST, maximumHedgeRatio);
+    }
+
+    /**
+     * @return The delay after which a call is hedged in nanoseconds, or -1 if
+     *         calls are not hedged yet.
+     */
+    long getDelayNanos() {
+        return _delayNanos;
+    }
+
+    /**
+     * Count a call, which earns a fraction of a hedge.
+     */
+    void recordCall() {
+        _budget.recordSuccess();
+    }
+
+    /**
+     * Record the latency of a successful attempt, whether or not it was a
+     * hedge.
+     *
+     * @param latencyNanos
+     */
+    void recordLatency(long latencyNanos) {
+        int count = _count.getAndIncrement();
+        _latencies.set(Math.floorMod(count, SAMPLES), Math.max(latencyNanos, 1));
+        if (count + 1 >= MINIMUM_SAMPLES && (count + 1) % RECOMPUTE_INTERVAL == 0) {
+            recompute();
+        }
+    }
+
+    /**
+     * Take a token to send a hedge.
+     *
+     * @return <code>true</code> if the hedge may be sent, <code>false</code>
+     *         if the hedge rate is at its cap.
+     */
+    boolean tryAcquire() {
+        return _budget.tryAcquire();
+    }
+
+    /**
+     * Recompute the delay from the recent latencies.
+     */
+    private void recompute() {
+        long[] latencies = new long[SAMPLES];
+        int size = 0;
+        for (int i = 0; i < SAMPLES; ++i) {
+            long latency = _latencies.get(i);
+            if (latency > 0) {
+                latencies[size++] = latency;
+            }
+        }
+        if (size < MINIMUM_SAMPLES) {
+            return;
+        }
+        Arrays.sort(latencies, 0, size);
+        int index = (int) Math.ceil(_percentile / 100 * size) - 1;
+        _delayNanos = latencies[Math.max(0, Math.min(index, size - 1))];
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket limiting the retries of a client. Each retry takes a token,
+ * and each successful call puts back a fraction of one, so that once the
+ * bucket is empty the client retries at most that fraction of its successful
+ * calls. While a server recovers from an outage, the clients then send it
+ * mostly new calls rather than a growing wave of retries.
+ *
+ * <p>
+ * Tokens are counted in thousandths, so that the bucket is a single atomic
+ * counter.
+ * </p>
+ */
+public class RetryBudget {
+
+    /**
+     * The number of units in one token.
+     */
+    private static final long UNITS_PER_TOKEN = 1000;
+
+    /**
+     * The default number of tokens in a full bucket.
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * The default fraction of a token put back by a successful call.
+     */
+    public static final double DEFAULT_REFILL_PER_SUCCESS = 0.1;
+
+    /**
+     * The number of units in a full bucket.
+     */
+    private final long _capacity;
+
+    /**
+     * The number of units put back by a successful call.
+     */
+    private final long _refillPerSuccess;
+
+    /**
+     * The number of units in the bucket.
+     */
+    private final AtomicLong _units;
+
+    /**
+     * Create a full bucket with the default capacity and refill.
+     */
+    public RetryBudget() {
+        this(DEFAULT_CAPACITY, DEFAULT_REFILL_PER_SUCCESS);
+    }
+
+    /**
+     * Create a full bucket.
+     *
+     * @param capacity
+     *            The number of tokens in a full bucket, which is the number
+     *            of retries allowed in a burst.
+     * @param refillPerSuccess
+     *            The fraction of a token put back by each successful call,
+     *            which is the sustained ratio of retries to successful calls.
+     */
+    public RetryBudget(int capacity, double refillPerSuccess) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(String.format("invalid retry budget capacity: %s", capacity));
+        }
+        if (!(refillPerSuccess >= 0)) {
+            throw new IllegalArgumentException(String.format("invalid retry budget refill: %s", refillPerSuccess));
+        }
+        _capacity = capacity * UNITS_PER_TOKEN;
+        _refillPerSuccess = Math.round(refillPerSuccess * UNITS_PER_TOKEN);
+        _units = new AtomicLong(_capacity);
+    }
+
+    /**
+     * Take a token for a retry.
+     *
+     * @return <code>true</code> if there was one, <code>false</code> if the
+     *         budget is spent and the call should fail instead.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long units = _units.get();
+            if (units < UNITS_PER_TOKEN) {
+                return false;
+            }
+            if (_units.compareAndSet(units, units - UNITS_PER_TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Put back a fraction of a token after a successful call.
+     */
+    public void recordSuccess() {
+        while (true) {
+            long units = _units.get();
+            if (units >= _capacity) {
+                return;
+            }
+            if (_units.compareAndSet(units, Math.min(units + _refillPerSuccess, _capacity))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The number of tokens left, which may be fractional.
+     */
+    public double getTokens() {
+        return (double) _units.get() / UNITS_PER_TOKEN;
+    }
+
+}
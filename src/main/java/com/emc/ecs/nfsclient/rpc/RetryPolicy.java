@@ -0,0 +1,54 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+/**
+ * Decides whether and when a failed RPC call is attempted again. Each client
+ * has its own policy, set with <code>RpcWrapper.setRetryPolicy()</code>, and
+ * a policy may keep state across the calls of its client, such as a retry
+ * budget.
+ *
+ * <p>
+ * The policy only chooses the wait: blocking calls sleep on the calling
+ * thread for it, while asynchronous calls are scheduled again without
+ * holding any thread.
+ * </p>
+ */
+public interface RetryPolicy {
+
+    /**
+     * Decide whether to attempt a failed call again.
+     *
+     * @param request
+     *            The request of the call. Its <code>isIdempotent()</code>
+     *            tells whether executing it twice is harmless.
+     * @param exception
+     *            The failure of the attempt.
+     * @param attemptNumber
+     *            The number of the failed attempt, from 0.
+     * @return The wait in milliseconds before the next attempt, or a negative
+     *         value to fail the call with this exception.
+     */
+    long getRetryDelay(RpcRequest request, RpcException exception, int attemptNumber);
+
+    /**
+     * Called when a call succeeds, whether or not it was retried.
+     *
+     * @param request
+     *            The request of the call.
+     */
+    void recordSuccess(RpcRequest request);
+
+}
@@ -17,10 +17,11 @@ package com.emc.ecs.nfsclient.rpc;
 import java.io.FileNotFoundException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.emc.ecs.nfsclient.network.TrafficClass;
+
 /**
  * An RPC request, as specified by RFC 1831
  * (https://tools.ietf.org/html/rfc1831).
@@ -35,28 +36,28 @@ public abstract class RpcRequest {
     public static final Charset CHARSET = StandardCharsets.UTF_8;
 
     /**
-     * The xid generator, so that xid values are unique.
+     * The xid that the request was last sent with, kept so that a retry goes
+     * out under the same xid and the server's duplicate request cache can
+     * recognise it.
      */
-    private static AtomicInteger _nextXid = new AtomicInteger(initializeXid());
+    private volatile int _xid;
 
     /**
-     * RFC1831: the xid field is only used for clients matching reply messages
-     * with call messages or for servers detecting retransmissions; the service
-     * side cannot treat this id as any type of sequence number.
+     * Whether <code>_xid</code> has been set.
      */
-    private final int _xid;
+    private volatile boolean _hasXid;
 
     /**
      * Requests must be calls (CALL = 0). Specified by RFC 1831
      * (https://tools.ietf.org/html/rfc1831).
      */
-    private final int _direction = 0;
+    static final int CALL = 0;
 
     /**
      * The RPC version, as specified by RFC 1831
      * (https://tools.ietf.org/html/rfc1831).
      */
-    private final int _rpcVersion = 2;
+    static final int RPC_VERSION = 2;
 
     /**
      * The program number of the service.
@@ -90,6 +91,12 @@ public abstract class RpcRequest {
      */
     private boolean _usePrivilegedPort = false;
 
+    /**
+     * The deadline of the call, covering all its attempts, or
+     * <code>null</code> to use the deadline of the calling thread, if any.
+     */
+    private volatile Deadline _deadline;
+
     /**
      * Create the request, as specified by RFC 1831
      * (https://tools.ietf.org/html/rfc1831).
@@ -104,7 +111,6 @@ public abstract class RpcRequest {
      *            The authentication credential to be used for the call.
      */
     public RpcRequest(int serviceProgram, int serviceVersion, int serviceProcedure, Credential credential) {
-        _xid = nextXid();
         _serviceProgram = serviceProgram;
         _serviceVersion = serviceVersion;
         _serviceProcedure = serviceProcedure;
@@ -119,14 +125,61 @@ public abstract class RpcRequest {
      * rpc.Xdr)
      */
     public void marshalling(Xdr xdr) {
-        xdr.setXid(_xid);
-        xdr.putInt(_xid);
-        xdr.putInt(_direction);
-        xdr.putInt(_rpcVersion);
-        xdr.putInt(_serviceProgram);
-        xdr.putInt(_serviceVersion);
-        xdr.putInt(_serviceProcedure);
-        _credential.marshalling(xdr);
+        // RFC1831: the xid field is only used for clients matching reply
+        // messages with call messages or for servers detecting retransmissions.
+        // Each connection allocates its own xids, and writes the xid over this
+        // placeholder when the request is sent, unless the request has been
+        // sent before, in which case it keeps the earlier xid if it can. The
+        // rest of the header only depends on the procedure and the credential,
+        // so the credential keeps it encoded.
+        xdr.setIdempotent(isIdempotent());
+        xdr.setBulk(isBulk());
+        xdr.setTrafficClass(getTrafficClass());
+        _credential.marshallingCallHeader(xdr, _serviceProgram, _serviceVersion, _serviceProcedure);
+        if (_hasXid) {
+            xdr.reserveXid(_xid);
+        }
+    }
+
+    /**
+     * Keep the xid that an attempt of the request was sent with, when the
+     * attempt failed without a reply, so that the next attempt is sent under
+     * the same xid.
+     * 
+     * @param xdr
+     *            The Xdr that held the attempt.
+     */
+    public void keepXid(Xdr xdr) {
+        if (xdr.hasXid()) {
+            _xid = xdr.getXid();
+            _hasXid = true;
+        }
+    }
+
+    /**
+     * Drop the kept xid once an attempt of the request has been answered, so
+     * that the next attempt is a new transaction with a new xid.
+     */
+    public void forgetXid() {
+        _hasXid = false;
+    }
+
+    /**
+     * The size is unknown unless a subclass says otherwise.
+     * 
+     * @return The largest number of bytes that <code>marshalling</code> puts
+     *         into the XDR buffer, not counting payloads, or -1 if unknown.
+     */
+    public int getMarshalledSize() {
+        return -1;
+    }
+
+    /**
+     * @return The number of bytes of the call header, including the
+     *         credential.
+     */
+    protected final int getHeaderSize() {
+        return 24 + _credential.getMarshalledSize();
     }
 
     /**
@@ -158,24 +211,71 @@ public abstract class RpcRequest {
     }
 
     /**
-     * @return The next xid, which should be unique for all rpc requests
+     * @return The deadline of the call, or <code>null</code> to use the
+     *         deadline of the calling thread, if any.
      */
-    private static int nextXid() {
-        return _nextXid.getAndIncrement();
+    public Deadline getDeadline() {
+        return _deadline;
     }
 
     /**
-     * @return The first xid, based on the system time in nanoseconds
-     *         (OpenSolaris approach).
+     * Set the deadline of the call. Each attempt gets the smaller of the
+     * procedure timeout and the time left, and the call fails without another
+     * attempt once the time left cannot cover the retry wait.
+     * 
+     * @param deadline
+     *            The deadline, or <code>null</code> to use the deadline of the
+     *            calling thread, if any.
+     */
+    public void setDeadline(Deadline deadline) {
+        _deadline = deadline;
+    }
+
+    /**
+     * @return The service procedure number to be called.
+     */
+    public final int getServiceProcedure() {
+        return _serviceProcedure;
+    }
+
+    /**
+     * Requests are not idempotent unless a subclass says otherwise.
+     * 
+     * @return
+     *         <ul>
+     *         <li><code>true</code> if executing the request more than once
+     *         has the same effect as executing it once, so that it can be
+     *         sent again on a new connection under the same xid.</li>
+     *         <li><code>false</code> otherwise.</li>
+     *         </ul>
      */
-    private static int initializeXid() {
-        long cur = System.nanoTime();
-        long seconds = cur / 1000000000;
-        long nano = cur % 1000000000;
+    public boolean isIdempotent() {
+        return false;
+    }
 
-        int firstXid = (int) ((seconds << 20) | (nano >> 10));
+    /**
+     * Requests are small unless a subclass says otherwise.
+     * 
+     * @return
+     *         <ul>
+     *         <li><code>true</code> if the request or its reply carries file
+     *         data or directory listings, so that it must not be sent over
+     *         UDP.</li>
+     *         <li><code>false</code> otherwise.</li>
+     *         </ul>
+     */
+    public boolean isBulk() {
+        return false;
+    }
 
-        return firstXid;
+    /**
+     * Requests are metadata unless a subclass says otherwise.
+     * 
+     * @return The kind of traffic, which decides the connections the request
+     *         is sent on and its priority while waiting for send credits.
+     */
+    public TrafficClass getTrafficClass() {
+        return TrafficClass.METADATA;
     }
 
     /**
@@ -187,7 +287,6 @@ public abstract class RpcRequest {
     protected StringBuilder startToString(String requestLabel) {
         StringBuilder stringBuilder = new StringBuilder(requestLabel);
         stringBuilder.append(" serviceVersion:").append(String.valueOf(_serviceVersion));
-        stringBuilder.append(" xid:").append(String.valueOf(_xid));
         stringBuilder.append(" usePrivilegedPort:").append(String.valueOf(_usePrivilegedPort));
         return stringBuilder;
     }
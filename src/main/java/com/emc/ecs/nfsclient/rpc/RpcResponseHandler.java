@@ -49,6 +49,17 @@ public abstract class RpcResponseHandler<T> {
         return _response;
     }
 
+    /**
+     * Make a response the current one, such as the response of the hedged
+     * attempt that answered first.
+     * 
+     * @param response
+     *            A response made by <code>makeNewResponse()</code>.
+     */
+    void setResponse(T response) {
+        _response = response;
+    }
+
     /**
      * This is implemented in all concrete subclasses, so that the new response
      * can be created using any available parameters.
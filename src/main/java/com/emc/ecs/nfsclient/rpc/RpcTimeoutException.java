@@ -0,0 +1,39 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+/**
+ * Thrown when no response is received for an RPC request before its timeout
+ * expires. The status is <code>RpcStatus.NETWORK_ERROR</code>, so timeouts are
+ * retried like any other network error.
+ */
+public class RpcTimeoutException extends RpcException {
+
+    /**
+     * The default.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct a new RPC timeout exception with the given error message.
+     * 
+     * @param msg
+     *            The error message.
+     */
+    public RpcTimeoutException(String msg) {
+        super(RpcStatus.NETWORK_ERROR, msg);
+    }
+
+}
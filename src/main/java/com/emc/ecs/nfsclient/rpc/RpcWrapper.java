@@ -16,11 +16,19 @@ package com.emc.ecs.nfsclient.rpc;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Arrays;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.emc.ecs.nfsclient.network.Callback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +51,22 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      */
     private static final Logger LOG = LoggerFactory.getLogger(RpcWrapper.class);
 
+    /**
+     * Scheduler used to delay the retries of asynchronous calls, so that no
+     * thread sleeps between attempts.
+     */
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "nfs-rpc-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+            });
+
     /**
      * The remote server being called.
      */
@@ -54,29 +78,61 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
     private int _port;
 
     /**
-     * The wait in milliseconds.
+     * Decides whether and when failed calls are attempted again.
      */
-    private final int _retryWait;
+    private volatile RetryPolicy _retryPolicy;
 
     /**
-     * The maximum number of retries.
+     * The maximum request size in bytes.
      */
-    private final int _maximumRetries;
+    private final int _maximumRequestSize;
 
     /**
-     * The maximum request size in bytes.
+     * The timeout of each attempt in milliseconds, for the procedures without
+     * their own timeout.
      */
-    private final int _maximumRequestSize;
+    private volatile long _timeoutMillis;
 
     /**
-     * The timeout in seconds.
+     * The timeouts in milliseconds of the procedures that have their own,
+     * keyed by procedure number.
      */
-    private final int _rpcTimeout;
+    private final ConcurrentHashMap<Integer, Long> _procedureTimeoutMillis = new ConcurrentHashMap<Integer, Long>();
 
     /**
-     * Discovered IP addresses for the remote server.
+     * Sends slow idempotent calls a second time, or <code>null</code> if
+     * hedging is off.
      */
-    private String[] _ips;
+    private volatile RequestHedger _hedger;
+
+    /**
+     * Chooses among the discovered IP addresses for the remote server.
+     */
+    private volatile AddressSelector _addressSelector;
+
+    /**
+     * Sends a probe to an ejected IP address, or <code>null</code> if there
+     * is none.
+     */
+    private volatile AddressProbe _addressProbe;
+
+    /**
+     * Checks whether an IP address is healthy again after it was ejected.
+     */
+    public interface AddressProbe {
+
+        /**
+         * Send a cheap request, such as the NFS NULL procedure, to the
+         * address.
+         * 
+         * @param ip
+         *            The IP address.
+         * @return A future completed normally if the address answered, and
+         *         exceptionally otherwise.
+         */
+        CompletableFuture<?> probe(String ip);
+
+    }
 
     /**
      * @param server
@@ -85,9 +141,11 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      *            The port on the remote server being used for this
      *            communication.
      * @param retryWait
-     *            The wait in milliseconds.
+     *            The wait ceiling of the first retry in milliseconds, for the
+     *            default retry policy.
      * @param maximumRetries
-     *            The maximum number of retries.
+     *            The maximum number of attempts of a call, for the default
+     *            retry policy.
      * @param maximumRequestSize
      *            The maximum request size in bytes.
      * @param rpcTimeout
@@ -97,10 +155,98 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
             int maximumRequestSize, int rpcTimeout) {
         _server = server;
         _port = port;
-        _retryWait = retryWait;
-        _maximumRetries = maximumRetries;
+        _retryPolicy = new ExponentialBackoffRetryPolicy(retryWait, maximumRetries);
         _maximumRequestSize = maximumRequestSize;
-        _rpcTimeout = rpcTimeout;
+        _timeoutMillis = TimeUnit.SECONDS.toMillis(rpcTimeout);
+    }
+
+    /**
+     * Set the timeout of each attempt for the procedures without their own.
+     * 
+     * @param timeoutMillis
+     *            The timeout in milliseconds.
+     */
+    public void setTimeout(long timeoutMillis) {
+        checkTimeout(timeoutMillis);
+        _timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Set the timeout of each attempt for one procedure, such as a longer one
+     * for COMMIT or a shorter one for GETATTR.
+     * 
+     * @param procedure
+     *            The procedure number.
+     * @param timeoutMillis
+     *            The timeout in milliseconds, or 0 to use the default timeout
+     *            again.
+     */
+    public void setTimeout(int procedure, long timeoutMillis) {
+        if (timeoutMillis == 0) {
+            _procedureTimeoutMillis.remove(procedure);
+        } else {
+            checkTimeout(timeoutMillis);
+            _procedureTimeoutMillis.put(procedure, timeoutMillis);
+        }
+    }
+
+    /**
+     * @param timeoutMillis
+     * @throws IllegalArgumentException
+     *             If the timeout is not positive.
+     */
+    private static void checkTimeout(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException(String.format("invalid timeout: %s ms", timeoutMillis));
+        }
+    }
+
+    /**
+     * @param request
+     *            The request of the call.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @return The timeout of the next attempt in milliseconds: the timeout of
+     *         the procedure, cut down to the time left before the deadline.
+     */
+    private long getTimeoutMillis(S request, Deadline deadline) {
+        Long procedureTimeout = _procedureTimeoutMillis.get(request.getServiceProcedure());
+        long timeoutMillis = (procedureTimeout == null) ? _timeoutMillis : procedureTimeout;
+        if (deadline != null) {
+            // an expired call still gets a minimal timeout, and so fails as a
+            // timeout on the normal path
+            timeoutMillis = Math.max(1, Math.min(timeoutMillis, deadline.getRemainingMillis()));
+        }
+        return timeoutMillis;
+    }
+
+    /**
+     * Take the deadline of a call as it starts. It is passed along with the
+     * call to the network, retry and hedging threads, which have no deadline
+     * of their own.
+     * 
+     * @param request
+     *            The request of the call.
+     * @return The earlier of the deadline set on the request and the deadline
+     *         of the calling thread, or <code>null</code> if there is none.
+     */
+    private static Deadline captureDeadline(RpcRequest request) {
+        return Deadline.earlier(request.getDeadline(), Deadline.current());
+    }
+
+    /**
+     * Fail a call whose deadline has expired, before another attempt.
+     * 
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @throws NfsException
+     *             If the deadline has expired.
+     */
+    private void checkDeadline(Deadline deadline) throws NfsException {
+        if (deadline != null && deadline.isExpired()) {
+            throw new NfsException(NfsStatus.NFS3ERR_IO,
+                    String.format("deadline exceeded, server: %s", _server), new RpcTimeoutException("deadline exceeded"));
+        }
     }
 
     /**
@@ -112,7 +258,71 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      */
     public void setPort(int port) {
         _port = port;
-        _ips = probeIps();
+        AddressSelector addressSelector = new AddressSelector(probeIps(), RETRY_SCHEDULER);
+        addressSelector.setProbe(_addressProbe);
+        _addressSelector = addressSelector;
+    }
+
+    /**
+     * Set the probe used to check whether an ejected IP address is healthy
+     * again. Without a probe, an ejected address is simply tried again after
+     * a delay.
+     * 
+     * @param addressProbe
+     *            The probe.
+     */
+    public void setAddressProbe(AddressProbe addressProbe) {
+        _addressProbe = addressProbe;
+        AddressSelector addressSelector = _addressSelector;
+        if (addressSelector != null) {
+            addressSelector.setProbe(addressProbe);
+        }
+    }
+
+    /**
+     * Replace the retry policy, which by default is an
+     * <code>ExponentialBackoffRetryPolicy</code> with its own retry budget.
+     * 
+     * @param retryPolicy
+     *            The policy.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("retryPolicy cannot be null");
+        }
+        _retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return The retry policy.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return _retryPolicy;
+    }
+
+    /**
+     * Turn on hedging, which is off by default. An idempotent call that has
+     * not completed after the given percentile of recent latencies is sent
+     * again, to another IP address of the server if there is a healthy one,
+     * or else on another connection of the pool. The first reply wins, and
+     * the other attempt is cancelled.
+     * 
+     * @param percentile
+     *            The percentile of recent latencies after which a call is
+     *            hedged, such as 95.
+     * @param maximumHedgeRatio
+     *            The largest fraction of calls that may be hedged, such as
+     *            0.05, which bounds the extra load on the server.
+     */
+    public void enableHedging(double percentile, double maximumHedgeRatio) {
+        _hedger = new RequestHedger(percentile, maximumHedgeRatio);
+    }
+
+    /**
+     * Turn off hedging.
+     */
+    public void disableHedging() {
+        _hedger = null;
     }
 
     /**
@@ -127,14 +337,7 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      * @throws IOException
      */
     public void callRpcWrapped(S request, RpcResponseHandler<? extends T> responseHandler) throws IOException {
-        for (int i = 0; i < _maximumRetries; ++i) {
-            try {
-                callRpcChecked(request, responseHandler);
-                return;
-            } catch (RpcException e) {
-                handleRpcException(e, i);
-            }
-        }
+        callRpcWrapped(request, responseHandler, null);
     }
 
     /**
@@ -147,21 +350,119 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      * @param responseHandler
      *            A response handler.
      * @param ip
-     *            The IP address to use for communication.
+     *            The IP address to use for communication, or <code>null</code>
+     *            to choose one from the request IP key on each attempt.
      * @throws IOException
      */
     public void callRpcWrapped(S request, RpcResponseHandler<? extends T> responseHandler, String ip)
             throws IOException {
-        for (int i = 0; i < _maximumRetries; ++i) {
+        Deadline deadline = captureDeadline(request);
+        for (int i = 0;; ++i) {
+            checkDeadline(deadline);
             try {
-                callRpcChecked(request, responseHandler, ip);
+                callRpcChecked(request, responseHandler, (ip == null) ? chooseIP(request.getIpKey()) : ip, deadline);
+                _retryPolicy.recordSuccess(request);
                 return;
             } catch (RpcException e) {
-                handleRpcException(e, i);
+                handleRpcException(request, e, i, deadline);
             }
         }
     }
 
+    /**
+     * Asynchronous version of <code>callRpcWrapped</code>, getting the IP key
+     * from the request. Retries and status checking are the same, but no
+     * thread is blocked while waiting for responses or between retries.
+     * 
+     * @param request
+     *            The request to send.
+     * @param responseHandler
+     *            A response handler.
+     * @return A future for the checked response. Failures are reported by
+     *         completing it exceptionally with the same
+     *         <code>IOException</code> that the blocking call would throw.
+     */
+    public <R extends T> CompletableFuture<R> callRpcWrappedAsync(S request, RpcResponseHandler<R> responseHandler) {
+        return callRpcWrappedAsync(request, responseHandler, null);
+    }
+
+    /**
+     * Asynchronous version of <code>callRpcWrapped</code>, using the given
+     * <code>ip</code>. Retries and status checking are the same, but no thread
+     * is blocked while waiting for responses or between retries.
+     * 
+     * @param request
+     *            The request to send.
+     * @param responseHandler
+     *            A response handler.
+     * @param ip
+     *            The IP address to use for communication, or <code>null</code>
+     *            to choose one from the request IP key on each attempt.
+     * @return A future for the checked response. Failures are reported by
+     *         completing it exceptionally with the same
+     *         <code>IOException</code> that the blocking call would throw.
+     */
+    public <R extends T> CompletableFuture<R> callRpcWrappedAsync(S request, RpcResponseHandler<R> responseHandler,
+            String ip) {
+        CompletableFuture<R> result = new CompletableFuture<R>();
+        callRpcWrappedAsync(request, responseHandler, ip, captureDeadline(request), 0, result);
+        return result;
+    }
+
+    /**
+     * Make one attempt of the wrapped call, and either complete the result or
+     * schedule the next attempt.
+     * 
+     * @param request
+     *            The request to send.
+     * @param responseHandler
+     *            A response handler.
+     * @param ip
+     *            The IP address to use for communication, or <code>null</code>
+     *            to choose one from the request IP key.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @param attemptNumber
+     *            The number of attempts so far.
+     * @param result
+     *            The future to complete.
+     */
+    private <R extends T> void callRpcWrappedAsync(final S request, final RpcResponseHandler<R> responseHandler,
+            final String ip, final Deadline deadline, final int attemptNumber, final CompletableFuture<R> result) {
+        CompletableFuture<R> attempt;
+        try {
+            checkDeadline(deadline);
+            attempt = callRpcCheckedAsync(request, responseHandler, (ip == null) ? chooseIP(request.getIpKey()) : ip,
+                    deadline);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+
+        attempt.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                _retryPolicy.recordSuccess(request);
+                result.complete(response);
+                return;
+            }
+
+            Throwable cause = (throwable instanceof CompletionException) ? throwable.getCause() : throwable;
+            if (!(cause instanceof RpcException)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            try {
+                long waitTime = checkRetry(request, (RpcException) cause, attemptNumber, deadline);
+                RETRY_SCHEDULER.schedule(
+                        () -> callRpcWrappedAsync(request, responseHandler, ip, deadline, attemptNumber + 1, result),
+                        waitTime, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
     /**
      * Convenience wrapper for NFS RPC calls where the IP is determined by a
      * byte[] key. This method just determines the IP address and calls the
@@ -174,7 +475,7 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      * @throws IOException
      */
     public void callRpcChecked(S request, RpcResponseHandler<? extends T> responseHandler) throws IOException {
-        callRpcChecked(request, responseHandler, chooseIP(request.getIpKey()));
+        callRpcChecked(request, responseHandler, chooseIP(request.getIpKey()), captureDeadline(request));
     }
 
     /**
@@ -203,23 +504,239 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      * @throws RpcException
      */
     public void callRpcNaked(S request, T response, String ipAddress) throws RpcException {
-        Xdr xdr = new Xdr(_maximumRequestSize);
-        request.marshalling(xdr);
-        response.unmarshalling(callRpc(ipAddress, xdr, request.isUsePrivilegedPort()));
+        callRpcNaked(request, response, ipAddress, captureDeadline(request));
+    }
+
+    /**
+     * Make the call to a specified IP address, within the deadline.
+     * 
+     * @param request
+     *            The request to send.
+     * @param response
+     *            A response to hold the returned data.
+     * @param ipAddress
+     *            The IP address to use for communication.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @throws RpcException
+     */
+    private void callRpcNaked(S request, T response, String ipAddress, Deadline deadline) throws RpcException {
+        Xdr xdr = newRequestXdr(request);
+        Xdr reply = null;
+        try {
+            request.marshalling(xdr);
+            reply = callRpc(ipAddress, xdr, request.isUsePrivilegedPort(), getTimeoutMillis(request, deadline));
+            response.unmarshalling(reply);
+        } finally {
+            keepOrForgetXid(request, xdr, reply != null);
+            xdr.release();
+        }
+    }
+
+    /**
+     * Make the call to a specified IP address without blocking the caller.
+     * 
+     * @param request
+     *            The request to send.
+     * @param response
+     *            A response to hold the returned data.
+     * @param ipAddress
+     *            The IP address to use for communication.
+     * @return A future for the response, completed once the returned data has
+     *         been unmarshalled into it.
+     */
+    public <R extends T> CompletableFuture<R> callRpcNakedAsync(S request, final R response, String ipAddress) {
+        return unmarshallingAsync(sendRequestAsync(request, ipAddress, captureDeadline(request)), response);
+    }
+
+    /**
+     * Marshal the request and send it without blocking the caller.
+     * 
+     * @param request
+     *            The request to send.
+     * @param ipAddress
+     *            The IP address to use for communication.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @return The future of the network call, which abandons the call if it
+     *         is cancelled.
+     */
+    private CompletableFuture<Xdr> sendRequestAsync(S request, String ipAddress, Deadline deadline) {
+        final Xdr xdr = newRequestXdr(request);
+        CompletableFuture<Xdr> result;
+        try {
+            request.marshalling(xdr);
+            result = callRpcAsync(ipAddress, xdr, request.isUsePrivilegedPort(), getTimeoutMillis(request, deadline));
+        } catch (RuntimeException e) {
+            xdr.release();
+            throw e;
+        }
+        result.whenComplete((xdrResponse, cause) -> {
+            // a cancelled attempt was abandoned because the call has ended
+            if (!(cause instanceof CancellationException)) {
+                keepOrForgetXid(request, xdr, cause == null);
+            }
+            xdr.release();
+        });
+        return result;
+    }
+
+    /**
+     * Keep the xid of an attempt that failed without a reply, so that the
+     * retry is recognised as a retransmission, or drop it once a reply has
+     * been received.
+     * 
+     * @param request
+     *            The request.
+     * @param xdr
+     *            The Xdr that held the attempt.
+     * @param replied
+     *            Whether the server replied to the attempt.
+     */
+    private static void keepOrForgetXid(RpcRequest request, Xdr xdr, boolean replied) {
+        if (replied) {
+            request.forgetXid();
+        } else {
+            request.keepXid(xdr);
+        }
+    }
+
+    /**
+     * @param reply
+     *            The future of the returned data.
+     * @param response
+     *            A response to hold the returned data.
+     * @return A future for the response, completed once the returned data has
+     *         been unmarshalled into it.
+     */
+    private static <R extends NfsResponseBase> CompletableFuture<R> unmarshallingAsync(CompletableFuture<Xdr> reply,
+            final R response) {
+        return reply.thenApply(xdrResponse -> {
+            try {
+                response.unmarshalling(xdrResponse);
+            } catch (RpcException e) {
+                throw new CompletionException(e);
+            }
+            return response;
+        });
     }
 
-    public void callRpcNakedAsync(S request, T response, String ipAddress, Callback<T> callback) throws RpcException {
-        Xdr xdr = new Xdr(_maximumRequestSize);
-        request.marshalling(xdr);
+    /**
+     * Make the call, sending it a second time if it is slow and the hedge
+     * rate allows. The response of the attempt that answers first becomes the
+     * current response of the handler.
+     * 
+     * @param request
+     *            The request to send, which must be idempotent.
+     * @param responseHandler
+     *            A response handler.
+     * @param ipAddress
+     *            The IP address to use for the first attempt.
+     * @param hedger
+     *            The hedger.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @return A future for the unchecked response.
+     */
+    private <R extends T> CompletableFuture<R> callRpcHedgedAsync(final S request,
+            final RpcResponseHandler<R> responseHandler, final String ipAddress, final RequestHedger hedger,
+            final Deadline deadline) {
+        hedger.recordCall();
+        final CompletableFuture<R> result = new CompletableFuture<R>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicBoolean answered = new AtomicBoolean();
+
+        final CompletableFuture<Xdr> first = sendHedgedAttempt(request, responseHandler,
+                responseHandler.getNewResponse(), ipAddress, deadline, hedger, pending, answered, result);
+        result.whenComplete((response, cause) -> first.cancel(false));
+
+        long delayNanos = hedger.getDelayNanos();
+        if (delayNanos >= 0 && !result.isDone()) {
+            RETRY_SCHEDULER.schedule(() -> {
+                if (result.isDone() || !hedger.tryAcquire()) {
+                    return;
+                }
+                // do not hedge once the first attempt has failed
+                int count;
+                do {
+                    count = pending.get();
+                    if (count == 0) {
+                        return;
+                    }
+                } while (!pending.compareAndSet(count, count + 1));
+
+                String hedgeIp = chooseAlternateIP(request.getIpKey(), ipAddress);
+                LOG.debug("hedging a slow call, server {}, first ip {}, hedge ip {}",
+                        new Object[] { _server, ipAddress, hedgeIp });
+                final CompletableFuture<Xdr> hedge = sendHedgedAttempt(request, responseHandler,
+                        responseHandler.makeNewResponse(), hedgeIp, deadline, hedger, pending, answered, result);
+                result.whenComplete((response, cause) -> hedge.cancel(false));
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Send one attempt of a hedged call.
+     * 
+     * @param request
+     *            The request to send.
+     * @param responseHandler
+     *            A response handler.
+     * @param response
+     *            A response to hold the returned data of this attempt.
+     * @param ipAddress
+     *            The IP address to use for communication.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @param hedger
+     *            The hedger, which records the latency.
+     * @param pending
+     *            The number of attempts that have not failed.
+     * @param answered
+     *            Set by the first attempt that answers.
+     * @param result
+     *            The future of the call.
+     * @return The future of the network call, to cancel it if the other
+     *         attempt answers first.
+     */
+    private <R extends T> CompletableFuture<Xdr> sendHedgedAttempt(S request,
+            final RpcResponseHandler<R> responseHandler, R response, String ipAddress, Deadline deadline,
+            final RequestHedger hedger, final AtomicInteger pending, final AtomicBoolean answered,
+            final CompletableFuture<R> result) {
+        final long start = System.nanoTime();
+        CompletableFuture<Xdr> reply;
+        try {
+            reply = sendRequestAsync(request, ipAddress, deadline);
+        } catch (RuntimeException e) {
+            reply = new CompletableFuture<Xdr>();
+            reply.completeExceptionally(e);
+        }
 
-        callRpcAsync(ipAddress, xdr, request.isUsePrivilegedPort(), new Callback<Xdr>() {
-            @Override
-            public void invoke(Xdr xdr) throws RpcException {
-                response.unmarshalling(xdr);
-                callback.invoke(response);
+        unmarshallingAsync(reply, response).whenComplete((attemptResponse, throwable) -> {
+            if (throwable == null) {
+                hedger.recordLatency(System.nanoTime() - start);
+                if (answered.compareAndSet(false, true)) {
+                    responseHandler.setResponse(attemptResponse);
+                    result.complete(attemptResponse);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(
+                        (throwable instanceof CompletionException) ? throwable.getCause() : throwable);
             }
         });
-//        response.unmarshalling(callRpc(ipAddress, xdr, request.isUsePrivilegedPort()));
+        return reply;
+    }
+
+    /**
+     * @param request
+     *            The request to send.
+     * @return An Xdr on a pooled buffer, sized for the request, or of the
+     *         maximum request size if the request cannot tell its size.
+     */
+    private Xdr newRequestXdr(S request) {
+        int size = request.getMarshalledSize();
+        return Xdr.allocate((size < 0) ? _maximumRequestSize : size);
     }
 
     /**
@@ -240,16 +757,113 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      * @throws RpcException
      */
     public Xdr callRpc(String serverIP, Xdr xdrRequest, boolean usePrivilegedPort) throws RpcException {
-        return NetMgr.getInstance().sendAndWait(serverIP, _port, usePrivilegedPort, xdrRequest, _rpcTimeout);
+        return callRpc(serverIP, xdrRequest, usePrivilegedPort, _timeoutMillis);
     }
 
-    public void callRpcAsync(String serverIP, Xdr xdrRequest, boolean usePrivilegedPort, Callback<Xdr> callback) throws RpcException {
-        NetMgr.getInstance().sendAsync(serverIP, _port, usePrivilegedPort, xdrRequest, callback);
+    /**
+     * Basic RPC call functionality only, with the given timeout.
+     * 
+     * @param serverIP
+     *            The endpoint of the server being called.
+     * @param xdrRequest
+     *            The Xdr data for the request.
+     * @param usePrivilegedPort
+     *            Whether to use a privileged local port (below 1024).
+     * @param timeoutMillis
+     *            The timeout in milliseconds.
+     * @return The Xdr data for the response.
+     * @throws RpcException
+     */
+    private Xdr callRpc(String serverIP, Xdr xdrRequest, boolean usePrivilegedPort, long timeoutMillis)
+            throws RpcException {
+        long start = System.nanoTime();
+        try {
+            Xdr response = NetMgr.getInstance().sendAndWait(serverIP, _port, usePrivilegedPort, xdrRequest,
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+            recordOutcome(serverIP, start, null);
+            return response;
+        } catch (RpcException e) {
+            recordOutcome(serverIP, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Basic RPC call functionality only, without blocking the caller.
+     * 
+     * @param serverIP
+     *            The endpoint of the server being called.
+     * @param xdrRequest
+     *            The Xdr data for the request.
+     * @param usePrivilegedPort
+     *            <ul>
+     *            <li>If <code>true</code>, use a privileged local port (below
+     *            1024) for RPC communication.</li>
+     *            <li>If <code>false</code>, use any non-privileged local port
+     *            for RPC communication.</li>
+     *            </ul>
+     * @return A future for the Xdr data of the response.
+     */
+    public CompletableFuture<Xdr> callRpcAsync(final String serverIP, Xdr xdrRequest, boolean usePrivilegedPort) {
+        return callRpcAsync(serverIP, xdrRequest, usePrivilegedPort, _timeoutMillis);
+    }
+
+    /**
+     * Basic RPC call functionality only, without blocking the caller, with
+     * the given timeout.
+     * 
+     * @param serverIP
+     *            The endpoint of the server being called.
+     * @param xdrRequest
+     *            The Xdr data for the request.
+     * @param usePrivilegedPort
+     *            Whether to use a privileged local port (below 1024).
+     * @param timeoutMillis
+     *            The timeout in milliseconds.
+     * @return A future for the Xdr data of the response.
+     */
+    private CompletableFuture<Xdr> callRpcAsync(final String serverIP, Xdr xdrRequest, boolean usePrivilegedPort,
+            long timeoutMillis) {
+        final long start = System.nanoTime();
+        CompletableFuture<Xdr> result = NetMgr.getInstance().sendAsync(serverIP, _port, usePrivilegedPort,
+                xdrRequest, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((response, cause) -> recordOutcome(serverIP, start, cause));
+        return result;
+    }
+
+    /**
+     * Update the health of the IP address after a call. Only network errors
+     * and timeouts count against the address, as other errors come from a
+     * server that answered.
+     * 
+     * @param serverIP
+     *            The IP address called.
+     * @param start
+     *            The time of the call, from <code>System.nanoTime()</code>.
+     * @param cause
+     *            The failure, or <code>null</code> if the call succeeded.
+     */
+    private void recordOutcome(String serverIP, long start, Throwable cause) {
+        AddressSelector addressSelector = _addressSelector;
+        if (addressSelector == null) {
+            return;
+        }
+
+        if (cause instanceof CompletionException) {
+            cause = cause.getCause();
+        }
+        if (cause == null) {
+            addressSelector.recordSuccess(serverIP, System.nanoTime() - start);
+        } else if (cause instanceof RpcException
+                && ((RpcException) cause).getStatus().equals(RpcStatus.NETWORK_ERROR)) {
+            addressSelector.recordFailure(serverIP);
+        }
     }
 
     /**
      * Select an IP address to use for communication, based on the
-     * <code>key</code> and <code>policy</code>.
+     * <code>key</code>. Keys stick to the same address, while addresses with
+     * repeated network errors are avoided and slower ones get fewer keys.
      * 
      * @param key
      *            The key to use when selecting an IP address.
@@ -257,7 +871,8 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      * @throws IOException
      */
     public String chooseIP(byte[] key) throws IOException {
-        if (_ips == null || _ips.length == 0) {
+        AddressSelector addressSelector = _addressSelector;
+        if (addressSelector == null || addressSelector.size() == 0) {
             if (_server != null) {
                 LOG.warn("ip list is not initialized, fallback to server");
                 return _server;
@@ -265,7 +880,43 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
             throw new IOException("ip list is not initialized");
         }
 
-        return _ips[Math.abs(Arrays.hashCode(key)) % _ips.length];
+        return addressSelector.choose(key);
+    }
+
+    /**
+     * Select an IP address for the second attempt of a hedged call.
+     * 
+     * @param key
+     *            The key to use when selecting an IP address.
+     * @param ipAddress
+     *            The IP address of the first attempt.
+     * @return Another healthy IP address, or the same one if there is none.
+     */
+    private String chooseAlternateIP(byte[] key, String ipAddress) {
+        AddressSelector addressSelector = _addressSelector;
+        if (addressSelector == null || addressSelector.size() == 0) {
+            return ipAddress;
+        }
+        return addressSelector.choose(key, ipAddress);
+    }
+
+    /**
+     * Wait for an asynchronous call, throwing its failure as the blocking call
+     * would.
+     * 
+     * @param future
+     *            The future of the call.
+     * @throws IOException
+     */
+    private static void join(CompletableFuture<?> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -280,13 +931,20 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
      *            A response handler.
      * @param ipAddress
      *            The IP address to use for communication.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
      * @throws IOException
      */
-    private void callRpcChecked(S request, RpcResponseHandler<? extends T> responseHandler, String ipAddress)
-            throws IOException {
+    private void callRpcChecked(S request, RpcResponseHandler<? extends T> responseHandler, String ipAddress,
+            Deadline deadline) throws IOException {
         LOG.debug("server {}, port {}, request {}", _server, _port, request);
 
-        callRpcNaked(request, responseHandler.getNewResponse(), ipAddress);
+        RequestHedger hedger = _hedger;
+        if (hedger != null && request.isIdempotent()) {
+            join(callRpcHedgedAsync(request, responseHandler, ipAddress, hedger, deadline));
+        } else {
+            callRpcNaked(request, responseHandler.getNewResponse(), ipAddress, deadline);
+        }
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("server {}, port {}, response {}", _server, _port, responseHandler.getResponse());
@@ -295,39 +953,107 @@ public class RpcWrapper<S extends NfsRequestBase, T extends NfsResponseBase> {
         responseHandler.checkResponse(request);
     }
 
+    /**
+     * Asynchronous version of <code>callRpcChecked</code>.
+     * 
+     * @param request
+     *            The request to send.
+     * @param responseHandler
+     *            A response handler.
+     * @param ipAddress
+     *            The IP address to use for communication.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @return A future for the checked response.
+     */
+    private <R extends T> CompletableFuture<R> callRpcCheckedAsync(final S request,
+            final RpcResponseHandler<R> responseHandler, String ipAddress, Deadline deadline) {
+        LOG.debug("server {}, port {}, request {}", _server, _port, request);
+
+        RequestHedger hedger = _hedger;
+        CompletableFuture<R> result = (hedger != null && request.isIdempotent())
+                ? callRpcHedgedAsync(request, responseHandler, ipAddress, hedger, deadline)
+                : unmarshallingAsync(sendRequestAsync(request, ipAddress, deadline),
+                        responseHandler.getNewResponse());
+        return result.thenApply(response -> {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("server {}, port {}, response {}", _server, _port, response);
+            }
+
+            try {
+                responseHandler.checkResponse(request);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            return response;
+        });
+    }
+
     /**
      * Decide whether to retry or throw an exception.
      * 
+     * @param request
+     *            The request of the call.
      * @param e
      *            The exception.
      * @param attemptNumber
      *            The number of attempts so far.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
      * @throws IOException
      */
-    private void handleRpcException(RpcException e, int attemptNumber) throws IOException {
-        String messageStart;
-
-        if (!(e.getStatus().equals(RpcStatus.NETWORK_ERROR))) {
-            messageStart = "rpc";
-        } else {
-            // check whether to retry
-            if (attemptNumber + 1 < _maximumRetries) {
-                try {
-                    int waitTime = _retryWait * (attemptNumber + 1);
-                    Thread.sleep(waitTime);
-                } catch (InterruptedException ie) {
-                    // restore the interrupt status
-                    Thread.currentThread().interrupt();
-                }
-                LOG.warn("network error happens, server {}, attemptNumber {}", new Object[] { _server, attemptNumber });
-                return;
-            }
+    private void handleRpcException(S request, RpcException e, int attemptNumber, Deadline deadline)
+            throws IOException {
+        long waitTime = checkRetry(request, e, attemptNumber, deadline);
+        try {
+            Thread.sleep(waitTime);
+        } catch (InterruptedException ie) {
+            // restore the interrupt status
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            messageStart = "network";
+    /**
+     * Decide whether to retry or throw an exception, without waiting, by
+     * asking the retry policy.
+     * 
+     * @param request
+     *            The request of the call.
+     * @param e
+     *            The exception.
+     * @param attemptNumber
+     *            The number of attempts so far.
+     * @param deadline
+     *            The deadline of the call, or <code>null</code>.
+     * @return The wait in milliseconds before the next attempt.
+     * @throws IOException
+     *             If the call should not be retried, or the time left before
+     *             the deadline does not cover the wait.
+     */
+    private long checkRetry(S request, RpcException e, int attemptNumber, Deadline deadline) throws IOException {
+        long waitTime = _retryPolicy.getRetryDelay(request, e, attemptNumber);
+        if (waitTime >= 0 && deadline != null && deadline.getRemainingMillis() <= waitTime) {
+            throw new NfsException(NfsStatus.NFS3ERR_IO, String.format(
+                    "%s error, deadline exceeded, server: %s, RPC error: %s", getMessageStart(e), _server,
+                    e.getMessage()), e);
+        }
+        if (waitTime >= 0) {
+            LOG.warn("{} error happens, server {}, attemptNumber {}, retrying in {} ms",
+                    new Object[] { getMessageStart(e), _server, attemptNumber, waitTime });
+            return waitTime;
         }
 
         throw new NfsException(NfsStatus.NFS3ERR_IO,
-                String.format("%s error, server: %s, RPC error: %s", messageStart, _server, e.getMessage()), e);
+                String.format("%s error, server: %s, RPC error: %s", getMessageStart(e), _server, e.getMessage()), e);
+    }
+
+    /**
+     * @param e
+     *            The exception.
+     * @return The kind of error, for messages.
+     */
+    private static String getMessageStart(RpcException e) {
+        return e.getStatus().equals(RpcStatus.NETWORK_ERROR) ? "network" : "rpc";
     }
 
     /**
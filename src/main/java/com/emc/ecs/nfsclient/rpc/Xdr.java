@@ -17,6 +17,9 @@ package com.emc.ecs.nfsclient.rpc;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.emc.ecs.nfsclient.network.TrafficClass;
 
 /**
  * This class handles the serialization and deserialization of primitive types
@@ -38,7 +41,14 @@ public class Xdr {
     private int _size;
 
     /**
-     * The current offset of the buffer in bytes.
+     * The start of the XDR data in the buffer, in bytes. This is 0 unless the
+     * Xdr wraps a region of a larger array.
+     */
+    private final int _start;
+
+    /**
+     * The current offset of the buffer in bytes, relative to the start of the
+     * array (not to <code>_start</code>).
      */
     private int _offset;
 
@@ -47,6 +57,35 @@ public class Xdr {
      */
     private int _xid;
 
+    /**
+     * Whether the xid has been written into a request - used only by the
+     * client.
+     */
+    private boolean _hasXid;
+
+    /**
+     * Whether the request carries the xid of an earlier attempt, which the
+     * connection keeps if it can - used only by the client.
+     */
+    private boolean _xidReserved;
+
+    /**
+     * Whether the request can safely be sent again - used only by the client.
+     */
+    private boolean _idempotent;
+
+    /**
+     * Whether the request moves file data or directory listings, with replies
+     * too large for a datagram - used only by the client.
+     */
+    private boolean _bulk;
+
+    /**
+     * The kind of traffic of the request, which decides its connections and
+     * its priority - used only by the client.
+     */
+    private TrafficClass _trafficClass = TrafficClass.METADATA;
+
     /**
      * payload with this XDR
      */
@@ -57,6 +96,24 @@ public class Xdr {
      */
     private int _payloadsSize;
 
+    /**
+     * The pool that the buffer came from, or <code>null</code> if it is not
+     * pooled.
+     */
+    private final XdrBufferPool _pool;
+
+    /**
+     * The number of users of a pooled buffer: the call, and each write in
+     * progress. The buffer goes back to the pool when this drops to 0.
+     */
+    private volatile int _references;
+
+    /**
+     * Updates <code>_references</code> without an atomic object per Xdr.
+     */
+    private static final AtomicIntegerFieldUpdater<Xdr> REFERENCES = AtomicIntegerFieldUpdater
+            .newUpdater(Xdr.class, "_references");
+
     /**
      * Build an Xdr object for serialization.
      *
@@ -66,7 +123,39 @@ public class Xdr {
     public Xdr(int size) {
         _buffer = new byte[size];
         _size = size;
+        _start = 0;
+        _offset = 0;
+        _pool = null;
+    }
+
+    /**
+     * Build an Xdr object for serialization on a pooled buffer.
+     *
+     * @param size
+     *            Size of the data in bytes.
+     * @param pool
+     *            The pool.
+     */
+    private Xdr(int size, XdrBufferPool pool) {
+        _buffer = pool.acquire(size);
+        _size = size;
+        _start = 0;
         _offset = 0;
+        _pool = pool;
+        _references = 1;
+    }
+
+    /**
+     * Build an Xdr object for serialization, on a buffer taken from the
+     * shared pool. The caller holds the only reference, and must call
+     * <code>release()</code> once the request has been sent and answered.
+     *
+     * @param size
+     *            Size of the data in bytes.
+     * @return The Xdr.
+     */
+    public static Xdr allocate(int size) {
+        return new Xdr(size, XdrBufferPool.getInstance());
     }
 
     /**
@@ -78,7 +167,29 @@ public class Xdr {
     public Xdr(byte[] data) {
         _buffer = data.clone();
         _size = data.length;
+        _start = 0;
         _offset = 0;
+        _pool = null;
+    }
+
+    /**
+     * Build an Xdr object for deserialization that reads a region of an
+     * existing array without copying it. The array must not be modified while
+     * the Xdr is in use.
+     * 
+     * @param data
+     *            The array holding the data.
+     * @param start
+     *            The start of the XDR data in the array.
+     * @param length
+     *            The length of the XDR data in bytes.
+     */
+    public Xdr(byte[] data, int start, int length) {
+        _buffer = data;
+        _size = length;
+        _start = start;
+        _offset = start;
+        _pool = null;
     }
 
     /**
@@ -89,8 +200,8 @@ public class Xdr {
      *            of the buffer in bytes
      */
     public void skip(int count) {
-        int bytesToPad = getBytesOfPadding(_offset += count);
-        _offset += bytesToPad;
+        _offset += count;
+        _offset += getBytesOfPadding(_offset - _start);
     }
 
     /**
@@ -102,13 +213,69 @@ public class Xdr {
         return _buffer.clone();
     }
 
+    /**
+     * Build a view of the same data for deserialization, with its own offset,
+     * without copying it. The data must not be modified while the view is in
+     * use.
+     *
+     * @return The view, with the offset at the start of the data.
+     */
+    public Xdr duplicate() {
+        return new Xdr(_buffer, _start, _size);
+    }
+
+    /**
+     * Wrap the data written so far, without copying it. The data must not be
+     * modified while the wrapper is in use.
+     *
+     * @return A buffer from the start of the data to the current offset.
+     */
+    public ByteBuffer wrapData() {
+        return ByteBuffer.wrap(_buffer, _start, getOffset());
+    }
+
+    /**
+     * Add a reference to a pooled buffer, such as a write in progress, unless
+     * the buffer has already gone back to the pool. Always succeeds if the
+     * buffer is not pooled.
+     *
+     * @return <code>true</code> if the reference was added,
+     *         <code>false</code> if the buffer must no longer be used.
+     */
+    public boolean retain() {
+        if (_pool == null) {
+            return true;
+        }
+        while (true) {
+            int references = _references;
+            if (references == 0) {
+                return false;
+            }
+            if (REFERENCES.compareAndSet(this, references, references + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drop a reference to a pooled buffer, returning it to the pool when the
+     * last one is gone. Does nothing if the buffer is not pooled.
+     */
+    public void release() {
+        if (_pool != null && REFERENCES.decrementAndGet(this) == 0) {
+            byte[] buffer = _buffer;
+            _buffer = null;
+            _pool.release(buffer);
+        }
+    }
+
     /**
      * Return the current offset
      * 
      * @return offset into XDR buffer
      */
     public int getOffset() {
-        return _offset;
+        return _offset - _start;
     }
 
     /**
@@ -118,7 +285,7 @@ public class Xdr {
      *            offset into XDR buffer
      */
     public void setOffset(int offset) {
-        _offset = offset;
+        _offset = _start + offset;
     }
 
     /**
@@ -359,7 +526,7 @@ public class Xdr {
      *            XDR buffer
      */
     public void putByteArray(Xdr x) {
-        putByteArray(x.getBuffer(), x.getOffset());
+        putByteArray(x._buffer, x._start, x.getOffset());
     }
 
     /**
@@ -374,7 +541,45 @@ public class Xdr {
      */
     public void putBytes(byte[] b, int boff, int len) {
         System.arraycopy(b, boff, _buffer, _offset, len);
-        skip(len);
+        _offset += len;
+
+        // pooled buffers are not cleared, so write the padding
+        for (int padding = getBytesOfPadding(_offset - _start); padding > 0; --padding) {
+            _buffer[_offset++] = 0;
+        }
+    }
+
+    /**
+     * @param b
+     *            byte array
+     * @return The number of bytes taken by the array, counted and padded.
+     */
+    public static int sizeOf(byte[] b) {
+        return 4 + b.length + getBytesOfPadding(b.length);
+    }
+
+    /**
+     * @param x
+     *            XDR buffer
+     * @return The number of bytes taken by the data written to the buffer,
+     *         counted and padded.
+     */
+    public static int sizeOf(Xdr x) {
+        return 4 + x.getOffset() + getBytesOfPadding(x.getOffset());
+    }
+
+    /**
+     * Strings are encoded in UTF-8, which takes at most 3 bytes for each
+     * char, so the size is found without encoding the string.
+     *
+     * @param s
+     *            string
+     * @return The largest number of bytes the string can take, counted and
+     *         padded.
+     */
+    public static int maximumSizeOf(String s) {
+        int length = 3 * s.length();
+        return 4 + length + getBytesOfPadding(length);
     }
 
     /**
@@ -393,6 +598,100 @@ public class Xdr {
         _xid = xid;
     }
 
+    /**
+     * Set the xid, and write it over the first int of the data, where the
+     * header of an RPC call holds it. The offset is not changed.
+     * 
+     * @param xid
+     */
+    public void putXid(int xid) {
+        _xid = xid;
+        _hasXid = true;
+        _buffer[_start] = (byte) (xid >>> 24);
+        _buffer[_start + 1] = (byte) (xid >> 16);
+        _buffer[_start + 2] = (byte) (xid >> 8);
+        _buffer[_start + 3] = (byte) xid;
+    }
+
+    /**
+     * Write the xid of an earlier attempt of the request, and ask the
+     * connection to send it under that xid, so that the server can recognise
+     * the retransmission. The offset is not changed.
+     * 
+     * @param xid
+     */
+    public void reserveXid(int xid) {
+        putXid(xid);
+        _xidReserved = true;
+    }
+
+    /**
+     * @return <code>true</code> if an xid has been written into the request,
+     *         <code>false</code> otherwise.
+     */
+    public boolean hasXid() {
+        return _hasXid;
+    }
+
+    /**
+     * @return <code>true</code> if the request carries the xid of an earlier
+     *         attempt, <code>false</code> otherwise.
+     */
+    public boolean isXidReserved() {
+        return _xidReserved;
+    }
+
+    /**
+     * @return <code>true</code> if the request held by this Xdr can safely be
+     *         sent again after a connection is lost, <code>false</code>
+     *         otherwise.
+     */
+    public boolean isIdempotent() {
+        return _idempotent;
+    }
+
+    /**
+     * @param idempotent
+     *            <code>true</code> if the request held by this Xdr can safely
+     *            be sent again after a connection is lost.
+     */
+    public void setIdempotent(boolean idempotent) {
+        _idempotent = idempotent;
+    }
+
+    /**
+     * @return <code>true</code> if the request held by this Xdr moves file
+     *         data or directory listings, and must stay on a stream
+     *         connection, <code>false</code> otherwise.
+     */
+    public boolean isBulk() {
+        return _bulk;
+    }
+
+    /**
+     * @param bulk
+     *            <code>true</code> if the request held by this Xdr moves file
+     *            data or directory listings.
+     */
+    public void setBulk(boolean bulk) {
+        _bulk = bulk;
+    }
+
+    /**
+     * @return The kind of traffic of the request held by this Xdr.
+     */
+    public TrafficClass getTrafficClass() {
+        return _trafficClass;
+    }
+
+    /**
+     * @param trafficClass
+     *            The kind of traffic of the request held by this Xdr.
+     */
+    public void setTrafficClass(TrafficClass trafficClass) {
+        _trafficClass = trafficClass;
+    }
+
     /**
      * add payloads, more than one can be added.
      *
@@ -402,7 +701,8 @@ public class Xdr {
     public void putPayloads(List<ByteBuffer> payloads, int size) {
         putInt(size);
         if (_payloads == null) {
-            _payloads = payloads;
+            // copied, as the terminal padding is added to this list
+            _payloads = new ArrayList<ByteBuffer>(payloads);
         } else {
             _payloads.addAll(payloads);
         }
@@ -410,6 +710,13 @@ public class Xdr {
 
     }
 
+    /**
+     * @return The total size of the payloads added so far, in bytes.
+     */
+    public int getPayloadsSize() {
+        return _payloadsSize;
+    }
+
     /**
      * @return The terminated list of payloads, properly padded and ready for
      *         sending.
@@ -417,9 +724,12 @@ public class Xdr {
     public List<ByteBuffer> getPayloads() {
         ByteBuffer terminalPadding = getTerminalPadding();
         if (terminalPadding != null) {
-            List<ByteBuffer> paddingList = new ArrayList<ByteBuffer>(1);
-            paddingList.add(terminalPadding);
-            putPayloads(paddingList, terminalPadding.remaining());
+            // the padding is not an opaque of its own, so it has no length
+            if (_payloads == null) {
+                _payloads = new ArrayList<ByteBuffer>(1);
+            }
+            _payloads.add(terminalPadding);
+            _payloadsSize += terminalPadding.remaining();
         }
         return _payloads;
     }
@@ -454,7 +764,7 @@ public class Xdr {
      * @return The proper amount of terminal padding.
      */
     ByteBuffer getTerminalPadding() {
-        int bytesOfPadding = getBytesOfPadding(_offset + _payloadsSize);
+        int bytesOfPadding = getBytesOfPadding(getOffset() + _payloadsSize);
         if (bytesOfPadding == 0) {
             return null;
         } else {
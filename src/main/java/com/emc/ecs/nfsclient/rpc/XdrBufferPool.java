@@ -0,0 +1,169 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton pool of the arrays used to marshal requests, in power of two size
+ * classes from 256 bytes to 64 KiB. A GETATTR takes a 256 byte array rather
+ * than the maximum request size, and the array goes back to the pool once the
+ * call has completed and its last write has finished.
+ *
+ * <p>
+ * The free lists are shared rather than per thread, so that many short-lived
+ * or virtual threads do not each hold their own arrays. Each size class keeps
+ * at most a fixed number of free arrays, and larger arrays are not pooled.
+ * </p>
+ */
+public class XdrBufferPool {
+
+    /**
+     * The smallest size class, as a power of two.
+     */
+    private static final int MINIMUM_SHIFT = 8;
+
+    /**
+     * The largest size class, as a power of two.
+     */
+    private static final int MAXIMUM_SHIFT = 16;
+
+    /**
+     * The default number of free arrays kept in each size class.
+     */
+    private static final int DEFAULT_MAXIMUM_FREE = 256;
+
+    /**
+     * The single instance.
+     */
+    private static final XdrBufferPool _instance = new XdrBufferPool();
+
+    /**
+     * @return The instance.
+     */
+    public static XdrBufferPool getInstance() {
+        return _instance;
+    }
+
+    /**
+     * The free arrays of each size class.
+     */
+    private final SizeClass[] _sizeClasses = new SizeClass[MAXIMUM_SHIFT - MINIMUM_SHIFT + 1];
+
+    /**
+     * The number of free arrays kept in each size class.
+     */
+    private volatile int _maximumFree = DEFAULT_MAXIMUM_FREE;
+
+    /**
+     * Construct the private instance.
+     */
+    private XdrBufferPool() {
+        for (int i = 0; i < _sizeClasses.length; ++i) {
+            _sizeClasses[i] = new SizeClass();
+        }
+    }
+
+    /**
+     * Set the number of free arrays kept in each size class. Arrays released
+     * beyond this are left to the garbage collector.
+     *
+     * @param maximumFree
+     *            The number of arrays, or 0 to disable pooling.
+     */
+    public void setMaximumFree(int maximumFree) {
+        if (maximumFree < 0) {
+            throw new IllegalArgumentException(String.format("invalid maximum free buffers: %s", maximumFree));
+        }
+        _maximumFree = maximumFree;
+    }
+
+    /**
+     * Take an array from the pool, or allocate one.
+     *
+     * @param size
+     *            The number of bytes needed.
+     * @return An array of at least that many bytes. Its contents are not
+     *         cleared.
+     */
+    byte[] acquire(int size) {
+        int index = getIndex(size);
+        if (index < 0) {
+            return new byte[size];
+        }
+
+        SizeClass sizeClass = _sizeClasses[index];
+        byte[] buffer = sizeClass._free.poll();
+        if (buffer == null) {
+            return new byte[1 << (index + MINIMUM_SHIFT)];
+        }
+        sizeClass._count.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Return an array to the pool. The caller must not use it again.
+     *
+     * @param buffer
+     *            An array returned by <code>acquire</code>.
+     */
+    void release(byte[] buffer) {
+        int index = getIndex(buffer.length);
+        if (index < 0 || buffer.length != (1 << (index + MINIMUM_SHIFT))) {
+            return;
+        }
+
+        SizeClass sizeClass = _sizeClasses[index];
+        if (sizeClass._count.incrementAndGet() > _maximumFree) {
+            sizeClass._count.decrementAndGet();
+            return;
+        }
+        sizeClass._free.offer(buffer);
+    }
+
+    /**
+     * @param size
+     *            The number of bytes needed.
+     * @return The index of the smallest size class holding that many bytes,
+     *         or -1 if they are too many to pool.
+     */
+    private static int getIndex(int size) {
+        if (size > (1 << MAXIMUM_SHIFT)) {
+            return -1;
+        }
+        int shift = (size <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(shift, MINIMUM_SHIFT) - MINIMUM_SHIFT;
+    }
+
+    /**
+     * The free arrays of one size.
+     */
+    private static class SizeClass {
+
+        /**
+         * The free arrays.
+         */
+        private final Queue<byte[]> _free = new ConcurrentLinkedQueue<byte[]>();
+
+        /**
+         * The number of free arrays, as the queue does not count them cheaply.
+         */
+        private final AtomicInteger _count = new AtomicInteger();
+
+    }
+
+}
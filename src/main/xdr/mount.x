@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/*
+ * MOUNT version 3, from appendix I of RFC 1813
+ * (https://tools.ietf.org/html/rfc1813), for the procedures the client calls.
+ */
+
+const MNTPATHLEN = 1024;
+const MNTNAMLEN = 255;
+const FHSIZE3 = 64;
+
+typedef opaque fhandle3<FHSIZE3>;
+typedef string dirpath<MNTPATHLEN>;
+
+enum mountstat3 {
+    MNT3_OK = 0,
+    MNT3ERR_PERM = 1,
+    MNT3ERR_NOENT = 2,
+    MNT3ERR_IO = 5,
+    MNT3ERR_ACCES = 13,
+    MNT3ERR_NOTDIR = 20,
+    MNT3ERR_INVAL = 22,
+    MNT3ERR_NAMETOOLONG = 63,
+    MNT3ERR_NOTSUPP = 10004,
+    MNT3ERR_SERVERFAULT = 10006
+};
+
+/* the argument of MNT and UMNT, as a struct so that it has a codec */
+struct mountargs3 {
+    dirpath dirpath;
+};
+
+struct mountres3_ok {
+    fhandle3 fhandle;
+    int auth_flavors<>;
+};
+
+union mountres3 switch (mountstat3 fhs_status) {
+case MNT3_OK:
+    mountres3_ok mountinfo;
+default:
+    void;
+};
+
+program MOUNT_PROGRAM {
+    version MOUNT_V3 {
+        void MOUNTPROC3_NULL(void) = 0;
+        mountres3 MOUNTPROC3_MNT(dirpath) = 1;
+        void MOUNTPROC3_UMNT(dirpath) = 3;
+    } = 3;
+} = 100005;
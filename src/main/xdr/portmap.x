@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+/*
+ * The port mapper version 2, from RFC 1833
+ * (https://tools.ietf.org/html/rfc1833), for the procedures the client
+ * calls.
+ */
+
+const PMAP_PORT = 111;
+const IPPROTO_TCP = 6;
+const IPPROTO_UDP = 17;
+
+struct mapping {
+    unsigned int prog;
+    unsigned int vers;
+    unsigned int prot;
+    unsigned int port;
+};
+
+program PMAP_PROG {
+    version PMAP_VERS {
+        void PMAPPROC_NULL(void) = 0;
+        unsigned int PMAPPROC_GETPORT(mapping) = 3;
+    } = 2;
+} = 100000;
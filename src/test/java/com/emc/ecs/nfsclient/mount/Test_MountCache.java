@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.mount;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_MountCache extends Assert {
+
+    private static final byte[] ROOT = new byte[] { 1, 2, 3, 4 };
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path file = Files.createTempDirectory("mountcache").resolve("mounts.properties");
+        MountCache cache = new MountCache();
+        cache.setFile(file);
+        cache.put("server", "/export", 1, 2049, ROOT);
+        assertTrue(Files.exists(file));
+
+        MountCache loaded = new MountCache();
+        loaded.setFile(file);
+        MountCache.Entry entry = loaded.get("server", "/export", 1);
+        assertEquals(2049, entry.getNfsPort());
+        assertArrayEquals(ROOT, entry.getRootFileHandle());
+        assertNull(loaded.get("server", "/export", 0));
+        assertNull(loaded.get("server", "/other", 1));
+
+        // a removal is written too
+        loaded.remove("server", "/export", 1);
+        MountCache reloaded = new MountCache();
+        reloaded.setFile(file);
+        assertNull(reloaded.get("server", "/export", 1));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        Path file = Files.createTempFile("mountcache", ".properties");
+        Files.write(file, Arrays.asList("server\\:/export\\#1=2049,0,AQIDBA=="), StandardCharsets.ISO_8859_1);
+
+        // created at the epoch, so long expired
+        MountCache cache = new MountCache();
+        cache.setFile(file);
+        assertNull(cache.get("server", "/export", 1));
+
+        cache.put("server", "/export", 1, 2049, ROOT);
+        assertNotNull(cache.get("server", "/export", 1));
+        cache.setTtl(1);
+        Thread.sleep(10);
+        assertNull(cache.get("server", "/export", 1));
+
+        cache.setTtl(0);
+        cache.put("server", "/export", 1, 2049, ROOT);
+        assertNull(cache.get("server", "/export", 1));
+    }
+
+    @Test
+    public void testCorruptFile() throws Exception {
+        long now = System.currentTimeMillis();
+        Path file = Files.createTempFile("mountcache", ".properties");
+        Files.write(file, Arrays.asList("server\\:/export\\#1=2049," + now + ",AQIDBA==",
+                "server\\:/bad\\#1=not,a,number", "server\\:/short\\#1=2049", "noflavor=2049," + now + ",AQIDBA==",
+                "server\\:/handle\\#1=2049," + now + ",!!!"), StandardCharsets.ISO_8859_1);
+
+        // the valid entry is kept, and the others are ignored
+        MountCache cache = new MountCache();
+        cache.setFile(file);
+        assertArrayEquals(ROOT, cache.get("server", "/export", 1).getRootFileHandle());
+        assertNull(cache.get("server", "/bad", 1));
+        assertNull(cache.get("server", "/short", 1));
+        assertNull(cache.get("server", "/handle", 1));
+
+        // a malformed escape spoils the whole file
+        Files.write(file, Arrays.asList("server\\:/export\\#1=\\uZZZZ"), StandardCharsets.ISO_8859_1);
+        MountCache spoiled = new MountCache();
+        spoiled.setFile(file);
+        assertNull(spoiled.get("server", "/export", 1));
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        Path file = Files.createTempDirectory("mountcache").resolve("mounts.properties");
+        final MountCache cache = new MountCache();
+        cache.setFile(file);
+
+        // the file is written outside the lock, and must still end up with
+        // the latest state
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; ++i) {
+            final int thread = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 20; ++j) {
+                    cache.put("server", "/export" + thread + "_" + j, 1, 2049, ROOT);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        MountCache loaded = new MountCache();
+        loaded.setFile(file);
+        for (int i = 0; i < threads.length; ++i) {
+            for (int j = 0; j < 20; ++j) {
+                assertNotNull(loaded.get("server", "/export" + i + "_" + j, 1));
+            }
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        Path file = Files.createTempDirectory("mountcache").resolve("missing.properties");
+        MountCache cache = new MountCache();
+        cache.setFile(file);
+        assertNull(cache.get("server", "/export", 1));
+        assertFalse(Files.exists(file));
+
+        cache.put("server", "/export", 1, 2049, ROOT);
+        assertTrue(Files.exists(file));
+    }
+
+}
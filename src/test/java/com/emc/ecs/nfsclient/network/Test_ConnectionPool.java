@@ -0,0 +1,272 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_ConnectionPool extends Assert {
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        TestPool pool = new TestPool(3, 3, ConnectionPool.Strategy.LEAST_OUTSTANDING);
+        openAll(pool, 3);
+
+        pool.get(0).setLoad(5, 0);
+        pool.get(1).setLoad(2, 100);
+        pool.get(2).setLoad(2, 50);
+
+        // the fewest requests win, and the fewest bytes break the tie
+        for (int i = 0; i < 10; ++i) {
+            assertSame(pool.get(2), pool.getConnection());
+        }
+
+        pool.get(0).setLoad(0, 0);
+        for (int i = 0; i < 10; ++i) {
+            assertSame(pool.get(0), pool.getConnection());
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsShareLoad() throws Exception {
+        TestPool pool = new TestPool(3, 3, ConnectionPool.Strategy.LEAST_OUTSTANDING);
+        openAll(pool, 3);
+
+        Set<Connection> chosen = new HashSet<Connection>();
+        for (int i = 0; i < 3; ++i) {
+            chosen.add(pool.getConnection());
+        }
+        assertEquals(3, chosen.size());
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() throws Exception {
+        TestPool pool = new TestPool(2, 2, ConnectionPool.Strategy.POWER_OF_TWO_CHOICES);
+        openAll(pool, 2);
+
+        pool.get(0).setLoad(4, 0);
+        pool.get(1).setLoad(1, 0);
+        for (int i = 0; i < 20; ++i) {
+            assertSame(pool.get(1), pool.getConnection());
+        }
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        TestPool pool = new TestPool(3, 3, ConnectionPool.Strategy.ROUND_ROBIN);
+        openAll(pool, 3);
+
+        pool.get(0).setLoad(5, 0);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        Connection third = pool.getConnection();
+        assertEquals(3, new HashSet<Connection>(Arrays.asList(first, second, third)).size());
+        assertSame(first, pool.getConnection());
+    }
+
+    @Test
+    public void testGrowth() throws Exception {
+        TestPool pool = new TestPool(1, 3, ConnectionPool.Strategy.LEAST_OUTSTANDING);
+        try {
+            Connection first = pool.getConnection();
+            assertEquals(1, pool.size());
+
+            // below the average depth that adds a connection
+            pool.get(0).setLoad(7, 0);
+            assertSame(first, pool.getConnection());
+            assertEquals(1, pool.size());
+
+            pool.get(0).setLoad(8, 0);
+            Connection second = pool.getConnection();
+            assertEquals(2, pool.size());
+            assertSame(pool.get(1), second);
+
+            // the bytes in flight count as well
+            pool.get(0).setLoad(0, 4 * 1024 * 1024);
+            pool.get(1).setLoad(0, 4 * 1024 * 1024);
+            pool.getConnection();
+            assertEquals(3, pool.size());
+
+            // but never beyond the maximum
+            for (int i = 0; i < 3; ++i) {
+                pool.get(i).setLoad(100, 0);
+            }
+            pool.getConnection();
+            assertEquals(3, pool.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testShrink() throws Exception {
+        TestPool pool = new TestPool(1, 3, ConnectionPool.Strategy.LEAST_OUTSTANDING);
+        try {
+            pool.getConnection();
+            pool.get(0).setLoad(8, 0);
+            pool.getConnection();
+            pool.get(1).setLoad(8, 0);
+            pool.getConnection();
+            assertEquals(3, pool.getQueueDepths().length);
+
+            // the busy connection and the recently used one stay
+            long idle = System.nanoTime() - TimeUnit.MINUTES.toNanos(2);
+            pool.get(0).setLoad(0, 0);
+            pool.get(0).setLastUsed(idle);
+            pool.get(1).setLastUsed(idle);
+            pool.get(2).setLoad(0, 0);
+            pool.closeIdleConnections();
+            assertEquals(2, pool.getQueueDepths().length);
+            assertTrue(pool.get(0).isShutdown());
+            assertFalse(pool.get(1).isShutdown());
+            assertFalse(pool.get(2).isShutdown());
+
+            // never below the minimum
+            pool.get(1).setLoad(0, 0);
+            pool.get(2).setLastUsed(idle);
+            pool.closeIdleConnections();
+            assertEquals(1, pool.getQueueDepths().length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testClosedConnectionReplaced() throws Exception {
+        TestPool pool = new TestPool(1, 1, ConnectionPool.Strategy.LEAST_OUTSTANDING);
+        Connection first = pool.getConnection();
+        pool.remove(first);
+        assertEquals(0, pool.getQueueDepths().length);
+
+        Connection second = pool.getConnection();
+        assertNotSame(first, second);
+        assertEquals(1, pool.getQueueDepths().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new TestPool(3, 2, ConnectionPool.Strategy.LEAST_OUTSTANDING);
+    }
+
+    /**
+     * Take connections until the pool has opened the given number.
+     * 
+     * @param pool
+     * @param size
+     * @throws Exception
+     */
+    private static void openAll(TestPool pool, int size) throws Exception {
+        while (pool.size() < size) {
+            pool.getConnection();
+        }
+        assertEquals(size, pool.getQueueDepths().length);
+    }
+
+    /**
+     * A pool of connections that are never established, with a load set by
+     * the test.
+     */
+    static class TestPool extends ConnectionPool {
+
+        private final List<TestConnection> _opened = new ArrayList<TestConnection>();
+
+        TestPool(int minSize, int maxSize, Strategy strategy) {
+            super("127.0.0.1", 2049, false, minSize, maxSize, strategy);
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.network.ConnectionPool#openConnection()
+         */
+        Connection openConnection() {
+            TestConnection connection = new TestConnection(this);
+            _opened.add(connection);
+            return connection;
+        }
+
+        TestConnection get(int index) {
+            return _opened.get(index);
+        }
+
+        int size() {
+            return _opened.size();
+        }
+
+    }
+
+    static class TestConnection extends Connection {
+
+        private volatile int _depth;
+
+        private volatile long _bytes;
+
+        private volatile long _lastUsed = System.nanoTime();
+
+        private volatile boolean _shutdown;
+
+        TestConnection(ConnectionPool pool) {
+            super("127.0.0.1", 2049, false, pool);
+        }
+
+        void setLoad(int depth, long bytes) {
+            _depth = depth;
+            _bytes = bytes;
+        }
+
+        void setLastUsed(long lastUsed) {
+            _lastUsed = lastUsed;
+        }
+
+        boolean isShutdown() {
+            return _shutdown;
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.network.Connection#getQueueDepth()
+         */
+        public int getQueueDepth() {
+            return _depth;
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.network.Connection#getPendingBytes()
+         */
+        public long getPendingBytes() {
+            return _bytes;
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.network.Connection#getLastUsed()
+         */
+        long getLastUsed() {
+            return _lastUsed;
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.network.Connection#shutdown()
+         */
+        protected void shutdown() {
+            _shutdown = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsReadRequest;
+import com.emc.ecs.nfsclient.nfs.NfsRemoveRequest;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.RpcRequest;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_NetMgr extends Assert {
+
+    @Test
+    public void testDatagramRouting() throws Exception {
+        NetMgr netMgr = NetMgr.getInstance();
+        CredentialUnix credential = new CredentialUnix();
+        byte[] fileHandle = new byte[] { 1, 2, 3 };
+        Xdr getAttr = marshall(new NfsGetAttrRequest(fileHandle, credential, 3));
+        Xdr read = marshall(new NfsReadRequest(fileHandle, 0, 4096, credential, 3));
+        Xdr remove = marshall(new NfsRemoveRequest(fileHandle, "name", credential, 3));
+
+        // off by default
+        assertFalse(netMgr.isDatagramRequest(false, getAttr));
+
+        netMgr.setDatagramCutoff(1024);
+        try {
+            assertTrue(netMgr.isDatagramRequest(false, getAttr));
+
+            // a privileged port, a bulk reply or a request that may not be
+            // sent twice all need tcp
+            assertFalse(netMgr.isDatagramRequest(true, getAttr));
+            assertFalse(netMgr.isDatagramRequest(false, read));
+            assertFalse(netMgr.isDatagramRequest(false, remove));
+
+            // as does a request above the cutoff
+            netMgr.setDatagramCutoff(getAttr.getOffset());
+            assertTrue(netMgr.isDatagramRequest(false, getAttr));
+            netMgr.setDatagramCutoff(getAttr.getOffset() - 1);
+            assertFalse(netMgr.isDatagramRequest(false, getAttr));
+        } finally {
+            netMgr.setDatagramCutoff(0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDatagramCutoff() {
+        NetMgr.getInstance().setDatagramCutoff(-1);
+    }
+
+    @Test
+    public void testEventLoops() {
+        NetMgr netMgr = NetMgr.getInstance();
+        try {
+            netMgr.setEventLoops(0);
+            fail("there must be an event loop");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // the loops cannot change once they run
+        netMgr.getFactory();
+        try {
+            netMgr.setEventLoops(2);
+            fail("the event loops are running");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLanes() {
+        NetMgr netMgr = NetMgr.getInstance();
+        InetSocketAddress key = InetSocketAddress.createUnresolved("127.0.0.1", 2021);
+        try {
+            // by default, metadata has its own pool and the bulk classes share one
+            ConnectionPool metadata = netMgr.getConnectionPool("127.0.0.1", 2021, false, TrafficClass.METADATA);
+            ConnectionPool read = netMgr.getConnectionPool("127.0.0.1", 2021, false, TrafficClass.READ);
+            assertNotSame(metadata, read);
+            assertSame(read, netMgr.getConnectionPool("127.0.0.1", 2021, false, TrafficClass.WRITE));
+            assertSame(read, netMgr.getConnectionPool("127.0.0.1", 2021, false, TrafficClass.COMMIT));
+
+            netMgr.setDedicatedLanes(true);
+            Set<ConnectionPool> pools = new HashSet<ConnectionPool>();
+            for (TrafficClass trafficClass : TrafficClass.values()) {
+                pools.add(netMgr.getConnectionPool("127.0.0.1", 2021, false, trafficClass));
+            }
+            assertEquals(TrafficClass.values().length, pools.size());
+            assertTrue(pools.contains(metadata));
+            assertTrue(pools.contains(read));
+        } finally {
+            netMgr.setDedicatedLanes(false);
+            netMgr.dropConnection(key);
+        }
+    }
+
+    @Test
+    public void testCompletions() throws Exception {
+        NetMgr netMgr = NetMgr.getInstance();
+        Thread caller = Thread.currentThread();
+
+        // by default, the call completes on a separate executor
+        assertNotSame(caller, complete(netMgr));
+
+        // inline, the response completes the call on the thread that read it
+        netMgr.setInlineCompletions(true);
+        try {
+            assertSame(caller, complete(netMgr));
+        } finally {
+            netMgr.setInlineCompletions(false);
+        }
+    }
+
+    /**
+     * @param netMgr
+     * @return The thread that ran the action depending on a completed call.
+     * @throws Exception
+     */
+    private static Thread complete(NetMgr netMgr) throws Exception {
+        CompletableFuture<Xdr> result = new CompletableFuture<Xdr>();
+        CompletableFuture<Thread> completingThread = result.thenApply(response -> Thread.currentThread());
+        netMgr.complete(new PendingCallTable.Call(new Xdr(16), result), new Xdr(16));
+        return completingThread.get(10, TimeUnit.SECONDS);
+    }
+
+    private static Xdr marshall(RpcRequest request) {
+        Xdr xdr = new Xdr(1024);
+        request.marshalling(xdr);
+        return xdr;
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.util.Timeout;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.RpcTimeoutException;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_PendingCallTable extends Assert {
+
+    @Test
+    public void testAddAndRemove() {
+        PendingCallTable table = new PendingCallTable();
+        Set<Integer> xids = new HashSet<Integer>();
+        List<PendingCallTable.Call> calls = new ArrayList<PendingCallTable.Call>();
+
+        // enough calls to grow the table several times
+        for (int i = 0; i < 1000; ++i) {
+            PendingCallTable.Call call = newCall(false);
+            assertTrue(xids.add(table.add(call)));
+            calls.add(call);
+        }
+
+        int i = 0;
+        for (int xid : xids) {
+            PendingCallTable.Call call = table.remove(xid);
+            assertNotNull(call);
+            assertNull(table.remove(xid));
+            ++i;
+        }
+        assertEquals(calls.size(), i);
+        assertTrue(table.removeAll(true).isEmpty());
+    }
+
+    @Test
+    public void testSlowCallKeepsItsSlot() {
+        PendingCallTable table = new PendingCallTable();
+        PendingCallTable.Call slow = newCall(false);
+        int slowXid = table.add(slow);
+
+        // the ring wraps around many times while the slow call is pending
+        for (int i = 0; i < 10000; ++i) {
+            int xid = table.add(newCall(false));
+            assertNotEquals(slowXid, xid);
+            assertNotNull(table.remove(xid));
+        }
+
+        assertSame(slow, table.remove(slowXid));
+    }
+
+    @Test
+    public void testRemoveAllKeepsIdempotent() {
+        PendingCallTable table = new PendingCallTable();
+        int idempotentXid = table.add(newCall(true));
+        int otherXid = table.add(newCall(false));
+
+        assertEquals(1, table.getIdempotent().size());
+        assertEquals(1, table.removeAll(false).size());
+        assertNull(table.remove(otherXid));
+        assertNotNull(table.remove(idempotentXid));
+    }
+
+    @Test
+    public void testReplayKeepsXids() {
+        PendingCallTable table = new PendingCallTable();
+        List<Integer> idempotentXids = new ArrayList<Integer>();
+        for (int i = 0; i < 10; ++i) {
+            PendingCallTable.Call call = newCall(i % 2 == 0);
+            // as done by the connection when the call is first sent
+            int xid = table.add(call);
+            call.getRequest().putXid(xid);
+            if (call.getRequest().isIdempotent()) {
+                idempotentXids.add(xid);
+            }
+        }
+
+        // the channel closes: the other calls fail, and the idempotent ones
+        // are written again as they are
+        assertEquals(5, table.removeAll(false).size());
+        List<PendingCallTable.Call> replayed = table.getIdempotent();
+        assertEquals(5, replayed.size());
+        Set<Integer> replayedXids = new HashSet<Integer>();
+        for (PendingCallTable.Call call : replayed) {
+            replayedXids.add(call.getRequest().getXid());
+        }
+        assertEquals(new HashSet<Integer>(idempotentXids), replayedXids);
+
+        // so the replies to the replayed requests still find their calls
+        for (int xid : idempotentXids) {
+            assertNotNull(table.remove(xid));
+        }
+        assertTrue(table.getIdempotent().isEmpty());
+    }
+
+    @Test
+    public void testRetryKeepsXid() {
+        PendingCallTable table = new PendingCallTable();
+        int xid = table.add(newCall(false));
+        assertNotNull(table.remove(xid));
+        assertEquals(xid, table.add(newCall(false), xid));
+
+        // another call holds the slot, so the ring grows to keep the xid
+        int sharedSlotXid = xid + 64;
+        assertEquals(sharedSlotXid, table.add(newCall(false), sharedSlotXid));
+        assertNotNull(table.remove(xid));
+        assertNotNull(table.remove(sharedSlotXid));
+
+        // the earlier attempt is still pending, so the retry gets a new xid
+        PendingCallTable.Call earlier = newCall(false);
+        xid = table.add(earlier);
+        assertNotEquals(xid, table.add(newCall(false), xid));
+        assertSame(earlier, table.remove(xid));
+    }
+
+    @Test
+    public void testRequestKeepsXid() throws Exception {
+        NfsGetAttrRequest request = new NfsGetAttrRequest(new byte[] { 1, 2, 3 }, new CredentialUnix(), 3);
+        Xdr first = new Xdr(256);
+        request.marshalling(first);
+        assertFalse(first.isXidReserved());
+
+        // as done by the connection that sent the first attempt
+        first.putXid(1234);
+        request.keepXid(first);
+
+        Xdr retry = new Xdr(256);
+        request.marshalling(retry);
+        assertTrue(retry.isXidReserved());
+        assertEquals(1234, retry.getXid());
+        assertEquals(1234, new Xdr(retry.getBuffer(), 0, retry.getOffset()).getInt());
+
+        // once answered, the next attempt is a new transaction
+        request.forgetXid();
+        Xdr next = new Xdr(256);
+        request.marshalling(next);
+        assertFalse(next.isXidReserved());
+    }
+
+    @Test
+    public void testCompletionCancelsDeadline() {
+        AtomicInteger cancels = new AtomicInteger();
+
+        PendingCallTable.Call answered = newCall(false);
+        answered.setDeadline(newTimeout(cancels));
+        answered.complete(new Xdr(16));
+        assertEquals(1, cancels.getAndSet(0));
+
+        PendingCallTable.Call failed = newCall(false);
+        failed.setDeadline(newTimeout(cancels));
+        failed.fail(new RpcTimeoutException("timeout"));
+        assertEquals(1, cancels.getAndSet(0));
+
+        // a cancelled call leaves the table and the timer at once
+        PendingCallTable table = new PendingCallTable();
+        CompletableFuture<Xdr> result = new CompletableFuture<Xdr>();
+        PendingCallTable.Call cancelled = new PendingCallTable.Call(new Xdr(16), result);
+        int xid = table.add(cancelled);
+        cancelled.setDeadline(newTimeout(cancels));
+        table.removeWhenCancelled(cancelled);
+        result.cancel(false);
+        assertEquals(1, cancels.get());
+        assertNull(table.remove(xid));
+    }
+
+    /**
+     * @param cancels
+     *            Counts the cancellations.
+     * @return A timer entry that only counts its cancellations.
+     */
+    private static Timeout newTimeout(final AtomicInteger cancels) {
+        return (Timeout) Proxy.newProxyInstance(Timeout.class.getClassLoader(), new Class<?>[] { Timeout.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("cancel")) {
+                        cancels.incrementAndGet();
+                    }
+                    return method.getReturnType().equals(boolean.class) ? Boolean.FALSE : null;
+                });
+    }
+
+    private static PendingCallTable.Call newCall(boolean idempotent) {
+        Xdr request = new Xdr(16);
+        request.setIdempotent(idempotent);
+        return new PendingCallTable.Call(request, new CompletableFuture<Xdr>());
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_RPCRecordDecoder extends Assert {
+
+    @Test
+    public void testMultiFragmentRecord() throws Exception {
+        Reader reader = new Reader();
+        List<Xdr> records = reader.read(record(7, 3, 1, 2, 3, 4, 5));
+        assertEquals(1, records.size());
+        checkRecord(records.get(0), 7, 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void testRecordSplitAcrossReads() throws Exception {
+        byte[] record = record(7, 2, 1, 2, 3, 4, 5);
+
+        // split in a header, in a fragment, and between fragments
+        for (int split = 1; split < record.length; ++split) {
+            Reader reader = new Reader();
+            assertTrue(reader.read(Arrays.copyOfRange(record, 0, split)).isEmpty());
+            List<Xdr> records = reader.read(Arrays.copyOfRange(record, split, record.length));
+            assertEquals("split at " + split, 1, records.size());
+            checkRecord(records.get(0), 7, 1, 2, 3, 4, 5);
+        }
+    }
+
+    @Test
+    public void testTwoRecordsInOneBuffer() throws Exception {
+        byte[] first = record(7, 1, 1, 2);
+        byte[] second = record(8, 2, 3, 4, 5);
+        byte[] third = record(9, 1, 6);
+        ByteBuffer bytes = ByteBuffer.allocate(first.length + second.length + 4);
+        bytes.put(first).put(second).put(third, 0, 4);
+
+        Reader reader = new Reader();
+        List<Xdr> records = reader.read(bytes.array());
+        assertEquals(2, records.size());
+        checkRecord(records.get(0), 7, 1, 2);
+        checkRecord(records.get(1), 8, 3, 4, 5);
+
+        // the start of the third record waits for the rest
+        records = reader.read(Arrays.copyOfRange(third, 4, third.length));
+        assertEquals(1, records.size());
+        checkRecord(records.get(0), 9, 6);
+    }
+
+    /**
+     * @param xid
+     *            The xid, which starts the record data.
+     * @param fragmentInts
+     *            The number of ints in each fragment but the last.
+     * @param values
+     *            The ints that follow the xid.
+     * @return The record, with its record marking.
+     */
+    private static byte[] record(int xid, int fragmentInts, int... values) {
+        int[] data = new int[values.length + 1];
+        data[0] = xid;
+        System.arraycopy(values, 0, data, 1, values.length);
+
+        int fragments = (data.length + fragmentInts - 1) / fragmentInts;
+        ByteBuffer record = ByteBuffer.allocate(4 * (fragments + data.length));
+        for (int start = 0; start < data.length; start += fragmentInts) {
+            int end = Math.min(data.length, start + fragmentInts);
+            int header = 4 * (end - start);
+            if (end == data.length) {
+                header |= 0x80000000;
+            }
+            record.putInt(header);
+            for (int i = start; i < end; ++i) {
+                record.putInt(data[i]);
+            }
+        }
+        return record.array();
+    }
+
+    /**
+     * @param xdr
+     *            A decoded record.
+     * @param xid
+     *            The expected xid.
+     * @param values
+     *            The expected ints that follow the xid.
+     */
+    private static void checkRecord(Xdr xdr, int xid, int... values) {
+        assertEquals(xid, xdr.getXid());
+        assertEquals(xid, xdr.getInt());
+        for (int value : values) {
+            assertEquals(value, xdr.getInt());
+        }
+    }
+
+    /**
+     * Feeds reads to the decoder as FrameDecoder does, which keeps only the
+     * unread bytes from one read to the next.
+     */
+    private static class Reader {
+
+        private final RPCRecordDecoder _decoder = new RPCRecordDecoder();
+
+        private ChannelBuffer _cumulation;
+
+        /**
+         * @param bytes
+         *            The bytes of one read.
+         * @return The records completed by the read.
+         * @throws Exception
+         */
+        private List<Xdr> read(byte[] bytes) throws Exception {
+            ChannelBuffer input = ChannelBuffers.wrappedBuffer(bytes);
+            if (_cumulation != null) {
+                input = ChannelBuffers.wrappedBuffer(_cumulation, input);
+            }
+
+            List<Xdr> records = new ArrayList<Xdr>();
+            while (input.readable()) {
+                int readerIndex = input.readerIndex();
+                Object record = _decoder.decode(null, null, input);
+                if (record == null) {
+                    if (readerIndex == input.readerIndex()) {
+                        break;
+                    }
+                } else {
+                    records.add(RecordMarkingUtil.toXdr((ChannelBuffer) record));
+                }
+            }
+            _cumulation = input.readable() ? input.slice() : null;
+            return records;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_SendCredits extends Assert {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void testFirstComeFirstServed() {
+        SendCredits credits = new SendCredits(null, 1, 1024 * 1024);
+        assertTrue(credits.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "test").isDone());
+
+        CompletableFuture<Void> first = credits.acquire(1000, TrafficClass.WRITE, TIMEOUT_NANOS, "test");
+        CompletableFuture<Void> second = credits.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "test");
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        credits.release(100);
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        credits.release(1000);
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    public void testByteLimit() {
+        SendCredits credits = new SendCredits(null, 8, 1000);
+        assertTrue(credits.acquire(600, TrafficClass.WRITE, TIMEOUT_NANOS, "test").isDone());
+
+        CompletableFuture<Void> waiting = credits.acquire(600, TrafficClass.WRITE, TIMEOUT_NANOS, "test");
+        assertFalse(waiting.isDone());
+        credits.release(600);
+        assertTrue(waiting.isDone());
+        credits.release(600);
+
+        // a request larger than the limit still goes, on its own
+        assertTrue(credits.acquire(5000, TrafficClass.WRITE, TIMEOUT_NANOS, "test").isDone());
+        CompletableFuture<Void> small = credits.acquire(1, TrafficClass.WRITE, TIMEOUT_NANOS, "test");
+        assertFalse(small.isDone());
+        credits.release(5000);
+        assertTrue(small.isDone());
+    }
+
+    @Test
+    public void testParentLimit() {
+        SendCredits global = new SendCredits(null, 1, 1024 * 1024);
+        SendCredits first = new SendCredits(global, 8, 1024 * 1024);
+        SendCredits second = new SendCredits(global, 8, 1024 * 1024);
+
+        // each connection has room, but the global credits do not
+        assertTrue(first.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "first").isDone());
+        CompletableFuture<Void> waiting = second.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "second");
+        assertFalse(waiting.isDone());
+
+        first.release(100);
+        assertTrue(waiting.isDone());
+    }
+
+    @Test
+    public void testMetadataGoesFirst() {
+        SendCredits credits = new SendCredits(null, 1, 1024 * 1024);
+        assertTrue(credits.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "test").isDone());
+
+        CompletableFuture<Void> write = credits.acquire(1000, TrafficClass.WRITE, TIMEOUT_NANOS, "test");
+        CompletableFuture<Void> read = credits.acquire(100, TrafficClass.READ, TIMEOUT_NANOS, "test");
+        CompletableFuture<Void> lookup = credits.acquire(100, TrafficClass.METADATA, TIMEOUT_NANOS, "test");
+        assertFalse(write.isDone());
+        assertFalse(read.isDone());
+        assertFalse(lookup.isDone());
+
+        // the metadata call is admitted first, although it came last
+        credits.release(100);
+        assertTrue(lookup.isDone());
+        assertFalse(read.isDone());
+        credits.release(100);
+        assertTrue(read.isDone());
+        assertFalse(write.isDone());
+        credits.release(100);
+        assertTrue(write.isDone());
+    }
+
+    @Test
+    public void testPriorityAcrossConnections() {
+        SendCredits global = new SendCredits(null, 1, 1024 * 1024);
+        SendCredits bulk = new SendCredits(global, 8, 1024 * 1024);
+        SendCredits metadata = new SendCredits(global, 8, 1024 * 1024);
+
+        assertTrue(bulk.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "bulk").isDone());
+        CompletableFuture<Void> write = bulk.acquire(100, TrafficClass.WRITE, TIMEOUT_NANOS, "bulk");
+        CompletableFuture<Void> lookup = metadata.acquire(100, TrafficClass.METADATA, TIMEOUT_NANOS, "metadata");
+
+        // the connection with a metadata call waiting gets the global credits
+        bulk.release(100);
+        assertTrue(lookup.isDone());
+        assertFalse(write.isDone());
+        metadata.release(100);
+        assertTrue(write.isDone());
+    }
+
+}
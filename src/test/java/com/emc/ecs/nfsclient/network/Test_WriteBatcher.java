@@ -0,0 +1,144 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.network;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_WriteBatcher extends Assert {
+
+    /**
+     * The size of each test record, with its record marking.
+     */
+    private static final int RECORD_BYTES = 44;
+
+    @Test
+    public void testFlushByBytes() {
+        AtomicInteger writes = new AtomicInteger();
+        Channel channel = newChannel(writes);
+        BatchMetric metric = new BatchMetric();
+        WriteBatcher batcher = new WriteBatcher(TimeUnit.HOURS.toNanos(1), 3 * RECORD_BYTES, metric);
+
+        batcher.write(channel, newRequest());
+        batcher.write(channel, newRequest());
+        assertEquals(0, writes.get());
+
+        // the third record fills the batch, which is written at once
+        batcher.write(channel, newRequest());
+        assertEquals(1, writes.get());
+        assertEquals(1, metric.getBatches());
+        assertEquals(3, metric.getRecords());
+        assertEquals(3 * RECORD_BYTES, metric.getBytes());
+
+        // nothing is left for the scheduled flush
+        batcher.flush();
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void testFlushByWindow() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        Channel channel = newChannel(writes);
+        BatchMetric metric = new BatchMetric();
+        WriteBatcher batcher = new WriteBatcher(TimeUnit.MILLISECONDS.toNanos(20), 1024 * 1024, metric);
+
+        batcher.write(channel, newRequest());
+        batcher.write(channel, newRequest());
+
+        // the records wait for the window, then go in a single write
+        long expiry = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writes.get() == 0 && System.nanoTime() < expiry) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, writes.get());
+        assertEquals(1, metric.getBatches());
+        assertEquals(2, metric.getRecords());
+    }
+
+    @Test
+    public void testNewChannelFlushes() {
+        AtomicInteger oldWrites = new AtomicInteger();
+        AtomicInteger newWrites = new AtomicInteger();
+        Channel oldChannel = newChannel(oldWrites);
+        Channel newChannel = newChannel(newWrites);
+        BatchMetric metric = new BatchMetric();
+        WriteBatcher batcher = new WriteBatcher(TimeUnit.HOURS.toNanos(1), 1024 * 1024, metric);
+
+        batcher.write(oldChannel, newRequest());
+        batcher.write(oldChannel, newRequest());
+
+        // records for a reconnected channel are not mixed with the others
+        batcher.write(newChannel, newRequest());
+        assertEquals(1, oldWrites.get());
+        assertEquals(0, newWrites.get());
+
+        batcher.flush();
+        assertEquals(1, oldWrites.get());
+        assertEquals(1, newWrites.get());
+        assertEquals(2, metric.getBatches());
+        assertEquals(2, metric.getMaxRecords());
+    }
+
+    /**
+     * @return A request of 40 bytes.
+     */
+    private static Xdr newRequest() {
+        Xdr request = new Xdr(40);
+        for (int i = 0; i < 10; ++i) {
+            request.putInt(i);
+        }
+        return request;
+    }
+
+    /**
+     * @param writes
+     *            Counts the writes.
+     * @return A channel whose writes complete at once.
+     */
+    private static Channel newChannel(final AtomicInteger writes) {
+        final ChannelFuture done = (ChannelFuture) Proxy.newProxyInstance(ChannelFuture.class.getClassLoader(),
+                new Class<?>[] { ChannelFuture.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("addListener")) {
+                        ((ChannelFutureListener) args[0]).operationComplete((ChannelFuture) proxy);
+                        return null;
+                    }
+                    return method.getReturnType().equals(boolean.class) ? Boolean.TRUE : null;
+                });
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("write")) {
+                        writes.incrementAndGet();
+                        return done;
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    return method.getReturnType().equals(boolean.class) ? Boolean.FALSE : null;
+                });
+    }
+
+}
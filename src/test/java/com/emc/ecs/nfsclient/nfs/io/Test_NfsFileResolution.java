@@ -0,0 +1,341 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.Nfs;
+import com.emc.ecs.nfsclient.nfs.NfsAttributeCache;
+import com.emc.ecs.nfsclient.nfs.NfsException;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrResponse;
+import com.emc.ecs.nfsclient.nfs.NfsLookupRequest;
+import com.emc.ecs.nfsclient.nfs.NfsLookupResponse;
+import com.emc.ecs.nfsclient.nfs.NfsNameCache;
+import com.emc.ecs.nfsclient.nfs.NfsReadlinkRequest;
+import com.emc.ecs.nfsclient.nfs.NfsReadlinkResponse;
+import com.emc.ecs.nfsclient.nfs.NfsStatus;
+import com.emc.ecs.nfsclient.nfs.NfsType;
+import com.emc.ecs.nfsclient.rpc.Credential;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+/**
+ * Checks when paths send requests, against a fake server that counts them.
+ */
+public class Test_NfsFileResolution extends Assert {
+
+    @Test
+    public void testDeepPathSendsNoCalls() throws Exception {
+        FakeServer server = new FakeServer();
+        FakeFile file = new FakeFile(server.getNfs(), "/a/b/c/d/e");
+        assertEquals("/a/b/c/d/e", file.getPath());
+        assertEquals("/a/b/c/d", file.getParentFile().getPath());
+        assertEquals("/a/b/c/d/e/f", file.getChildFile("f").getPath());
+        assertEquals(new ArrayList<String>(), server.getCalls());
+    }
+
+    @Test
+    public void testLinkFollowedForHandle() throws Exception {
+        FakeServer server = new FakeServer();
+        server.add("/a", NfsType.NFS_DIR, null);
+        server.add("/a/link", NfsType.NFS_LNK, "target");
+        server.add("/a/target", NfsType.NFS_DIR, null);
+        server.add("/a/target/f", NfsType.NFS_REG, null);
+
+        FakeFile file = new FakeFile(server.getNfs(), "/a/link/f");
+        assertEquals("/a/link/f", file.getPath());
+        assertEquals(new ArrayList<String>(), server.getCalls());
+
+        // the types from the LOOKUPs show the link, so no GETATTR is needed
+        assertArrayEquals(FakeServer.toFileHandle("/a/target/f"), file.getFileHandle());
+        assertEquals(Arrays.asList("LOOKUP a", "LOOKUP link", "READLINK /a/link", "LOOKUP target", "LOOKUP f"),
+                server.getCalls());
+
+        // a path without links reads none, and the warm directories send
+        // nothing
+        server.getCalls().clear();
+        FakeFile direct = new FakeFile(server.getNfs(), "/a/target/f");
+        assertArrayEquals(FakeServer.toFileHandle("/a/target/f"), direct.getFileHandle());
+        assertEquals(new ArrayList<String>(), server.getCalls());
+    }
+
+    @Test
+    public void testDotsThroughLink() throws Exception {
+        FakeServer server = new FakeServer();
+        server.add("/a", NfsType.NFS_DIR, null);
+        server.add("/a/link", NfsType.NFS_LNK, FakeServer.EXPORTED_PATH + "/b/c");
+        server.add("/b", NfsType.NFS_DIR, null);
+        server.add("/b/c", NfsType.NFS_DIR, null);
+
+        // the dots name the link target, or its parent, not the link
+        assertEquals("/b", new FakeFile(server.getNfs(), "/a/link/..").getPath());
+        assertEquals("/b/c", new FakeFile(server.getNfs(), "/a/link/.").getPath());
+        assertEquals("/b/c", new FakeFile(server.getNfs(), "/a/link").getChildFile(".").getPath());
+    }
+
+    @Test
+    public void testExistsLooksUpAgain() throws Exception {
+        FakeServer server = new FakeServer();
+        server.add("/a", NfsType.NFS_DIR, null);
+        server.add("/a/f", NfsType.NFS_REG, null);
+
+        FakeFile file = new FakeFile(server.getNfs(), "/a/f");
+        assertTrue(file.exists());
+        assertTrue(file.exists());
+        assertEquals(2, server.count("LOOKUP f"));
+
+        // the directory still comes from the name cache
+        assertEquals(1, server.count("LOOKUP a"));
+
+        // another client removed the file, so the cached name is stale
+        server.remove("/a/f");
+        assertFalse(file.exists());
+        assertEquals(3, server.count("LOOKUP f"));
+    }
+
+    /**
+     * A file for the fake server.
+     */
+    private static class FakeFile extends NfsFileBase<Nfs<FakeFile>, FakeFile> {
+
+        private FakeFile(Nfs<FakeFile> nfs, String path) throws IOException {
+            super(nfs, path, null);
+        }
+
+        private FakeFile(Nfs<FakeFile> nfs, String path, LinkTracker<Nfs<FakeFile>, FakeFile> linkTracker)
+                throws IOException {
+            super(nfs, path, linkTracker);
+        }
+
+        private FakeFile(FakeFile parent, String child) throws IOException {
+            super(parent, child);
+        }
+
+        public FakeFile newChildFile(String childName) throws IOException {
+            return new FakeFile(this, childName);
+        }
+
+        protected FakeFile newFile(String path, LinkTracker<Nfs<FakeFile>, FakeFile> linkTracker)
+                throws IOException {
+            return new FakeFile(getNfs(), path, linkTracker);
+        }
+
+    }
+
+    /**
+     * Answers LOOKUP, GETATTR and READLINK from a table of paths, caching the
+     * replies as the real client does, and records each call. The handle of
+     * a file is its path.
+     */
+    private static class FakeServer implements InvocationHandler {
+
+        private static final String EXPORTED_PATH = "/export";
+
+        private final Credential _credential = new CredentialUnix();
+
+        private final NfsAttributeCache _attributeCache = new NfsAttributeCache();
+
+        private final NfsNameCache _nameCache = new NfsNameCache();
+
+        private final Map<String, NfsType> _types = new HashMap<String, NfsType>();
+
+        private final Map<String, String> _links = new HashMap<String, String>();
+
+        private final List<String> _calls = new ArrayList<String>();
+
+        private final Nfs<FakeFile> _nfs;
+
+        @SuppressWarnings("unchecked")
+        private FakeServer() {
+            _types.put("", NfsType.NFS_DIR);
+            _nfs = (Nfs<FakeFile>) Proxy.newProxyInstance(Nfs.class.getClassLoader(), new Class<?>[] { Nfs.class },
+                    this);
+        }
+
+        private Nfs<FakeFile> getNfs() {
+            return _nfs;
+        }
+
+        private List<String> getCalls() {
+            return _calls;
+        }
+
+        private int count(String call) {
+            int count = 0;
+            for (String each : _calls) {
+                if (each.equals(call)) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        private void add(String path, NfsType type, String linkData) {
+            _types.put(path, type);
+            if (linkData != null) {
+                _links.put(path, linkData);
+            }
+        }
+
+        private void remove(String path) {
+            _types.remove(path);
+        }
+
+        private static byte[] toFileHandle(String path) {
+            return path.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static String toPath(byte[] fileHandle) {
+            return new String(fileHandle, StandardCharsets.UTF_8);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "getRootFileHandle":
+                return toFileHandle("");
+            case "getServer":
+                return "fake";
+            case "getExportedPath":
+                return EXPORTED_PATH;
+            case "getAttributeCache":
+                return _attributeCache;
+            case "getNameCache":
+                return _nameCache;
+            case "makeLookupRequest":
+                return new NfsLookupRequest((byte[]) args[0], (String) args[1], _credential, 3);
+            case "makeGetAttrRequest":
+                return new NfsGetAttrRequest((byte[]) args[0], _credential, 3);
+            case "makeReadlinkRequest":
+                return new NfsReadlinkRequest((byte[]) args[0], _credential, 3);
+            case "wrapped_getLookup":
+                return lookup((NfsLookupRequest) args[0]);
+            case "wrapped_getAttr":
+                return getAttr((NfsGetAttrRequest) args[0]);
+            case "wrapped_getReadlink":
+                return readlink((NfsReadlinkRequest) args[0]);
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "FakeServer";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private NfsLookupResponse lookup(NfsLookupRequest request) throws IOException {
+            _calls.add("LOOKUP " + request.getName());
+            String path = toPath(request.getFileHandle()) + "/" + request.getName();
+            NfsType type = _types.get(path);
+            Xdr xdr = new Xdr(512);
+            if (type == null) {
+                putReplyHeader(xdr, NfsStatus.NFS3ERR_NOENT);
+            } else {
+                putReplyHeader(xdr, NfsStatus.NFS3_OK);
+                xdr.putByteArray(toFileHandle(path));
+                xdr.putBoolean(true);
+                putAttributes(xdr, type);
+            }
+            xdr.putBoolean(true);
+            putAttributes(xdr, NfsType.NFS_DIR);
+            NfsLookupResponse response = new NfsLookupResponse(3);
+            response.unmarshalling(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+            response.cacheAttributes(request, _attributeCache);
+            response.cacheNames(request, _nameCache);
+            if (type == null) {
+                throw new NfsException(NfsStatus.NFS3ERR_NOENT, "no such file: " + path);
+            }
+            return response;
+        }
+
+        private NfsGetAttrResponse getAttr(NfsGetAttrRequest request) throws IOException {
+            String path = toPath(request.getFileHandle());
+            _calls.add("GETATTR " + path);
+            NfsType type = _types.get(path);
+            if (type == null) {
+                throw new FileNotFoundException(path);
+            }
+            Xdr xdr = new Xdr(512);
+            putReplyHeader(xdr, NfsStatus.NFS3_OK);
+            putAttributes(xdr, type);
+            NfsGetAttrResponse response = new NfsGetAttrResponse(3);
+            response.unmarshalling(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+            return response;
+        }
+
+        private NfsReadlinkResponse readlink(NfsReadlinkRequest request) throws IOException {
+            String path = toPath(request.getFileHandle());
+            _calls.add("READLINK " + path);
+            Xdr xdr = new Xdr(512);
+            putReplyHeader(xdr, NfsStatus.NFS3_OK);
+            xdr.putBoolean(false);
+            xdr.putString(_links.get(path));
+            NfsReadlinkResponse response = new NfsReadlinkResponse(3);
+            response.unmarshalling(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+            return response;
+        }
+
+        /**
+         * Write the header of an accepted, successful RPC reply, followed by
+         * the NFS status.
+         */
+        private static void putReplyHeader(Xdr xdr, NfsStatus status) {
+            xdr.putInt(1);
+            xdr.putInt(1);
+            xdr.putInt(0);
+            xdr.putInt(0);
+            xdr.putInt(0);
+            xdr.putInt(0);
+            xdr.putInt(status.getValue());
+        }
+
+        /**
+         * Write attributes that never change, so that the name cache trusts
+         * its entries.
+         */
+        private static void putAttributes(Xdr xdr, NfsType type) {
+            xdr.putInt(type.getValue());
+            for (int i = 0; i < 4; ++i) {
+                xdr.putInt(0);
+            }
+            for (int i = 0; i < 5; ++i) {
+                xdr.putLong(0);
+            }
+            for (int i = 0; i < 6; ++i) {
+                xdr.putInt(100);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.nfs3;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.mount.MountCache;
+import com.emc.ecs.nfsclient.nfs.NfsException;
+import com.emc.ecs.nfsclient.nfs.NfsLookupRequest;
+import com.emc.ecs.nfsclient.nfs.NfsRequestBase;
+import com.emc.ecs.nfsclient.nfs.NfsResponseBase;
+import com.emc.ecs.nfsclient.nfs.NfsStatus;
+import com.emc.ecs.nfsclient.rpc.Credential;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.RpcResponseHandler;
+import com.emc.ecs.nfsclient.rpc.RpcWrapper;
+
+public class Test_Nfs3AsyncLookup extends Assert {
+
+    private static final String SERVER = "127.0.0.1";
+
+    private static final String EXPORT = "/async-lookup";
+
+    private static final byte[] OLD_ROOT = new byte[] { 1, 2, 3 };
+
+    private static final byte[] NEW_ROOT = new byte[] { 4, 5, 6 };
+
+    @Test
+    public void testBadRootHandleDoesNotBlockCompletion() throws Exception {
+        Credential credential = new CredentialUnix();
+        MountCache mountCache = MountCache.getInstance();
+        mountCache.put(SERVER, EXPORT, credential.getCredentialFlavor(), 2049, NEW_ROOT);
+        try {
+            FakeRpcWrapper rpcWrapper = new FakeRpcWrapper();
+            Nfs3 nfs = new Nfs3(SERVER, EXPORT, OLD_ROOT, credential, rpcWrapper);
+            CompletableFuture<Nfs3LookupResponse> result = nfs
+                    .wrapped_getLookupAsync(nfs.makeLookupRequest(OLD_ROOT, "a"));
+            Call first = rpcWrapper.nextCall(NfsLookupRequest.class);
+
+            // mounting again waits for the cache, which the test holds
+            Thread io;
+            synchronized (mountCache) {
+                io = new Thread(() -> first.result
+                        .completeExceptionally(new NfsException(NfsStatus.NFS3ERR_BADHANDLE, "bad handle")));
+                io.start();
+                io.join(5000);
+                assertFalse("the completing thread mounted again", io.isAlive());
+                assertFalse(result.isDone());
+            }
+
+            Call retry = rpcWrapper.nextCall(NfsLookupRequest.class);
+            assertArrayEquals(NEW_ROOT, ((NfsLookupRequest) retry.request).getFileHandle());
+            retry.result.completeExceptionally(new NfsException(NfsStatus.NFS3ERR_NOENT, "no entry"));
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("the lookup should fail");
+            } catch (ExecutionException e) {
+                assertEquals(NfsStatus.NFS3ERR_NOENT, ((NfsException) e.getCause()).getStatus());
+            }
+        } finally {
+            mountCache.remove(SERVER, EXPORT, credential.getCredentialFlavor());
+        }
+    }
+
+    private static class Call {
+
+        private final NfsRequestBase request;
+
+        private final CompletableFuture<NfsResponseBase> result = new CompletableFuture<NfsResponseBase>();
+
+        private Call(NfsRequestBase request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Records the calls and leaves them to the test to complete.
+     */
+    private static class FakeRpcWrapper extends RpcWrapper<NfsRequestBase, NfsResponseBase> {
+
+        private final BlockingQueue<Call> _calls = new LinkedBlockingQueue<Call>();
+
+        private FakeRpcWrapper() {
+            super(SERVER, 2049, 0, 1, 1024, 1000);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <R extends NfsResponseBase> CompletableFuture<R> callRpcWrappedAsync(NfsRequestBase request,
+                RpcResponseHandler<R> responseHandler) {
+            Call call = new Call(request);
+            _calls.add(call);
+            return (CompletableFuture<R>) call.result;
+        }
+
+        /**
+         * @param type
+         * @return the next call with a request of that type, skipping others
+         * @throws InterruptedException
+         */
+        private Call nextCall(Class<?> type) throws InterruptedException {
+            while (true) {
+                Call call = _calls.poll(5, TimeUnit.SECONDS);
+                assertNotNull("no call was made", call);
+                if (type.isInstance(call.request)) {
+                    return call;
+                }
+            }
+        }
+    }
+}
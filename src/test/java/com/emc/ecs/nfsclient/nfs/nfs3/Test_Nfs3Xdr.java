@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.nfs3;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsDirectoryPlusEntry;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsReaddirplusResponse;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.Entryplus3;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.GETATTR3args;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.Nfs3Xdr;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.NfsFh3;
+import com.emc.ecs.nfsclient.nfs.nfs3.xdr.READDIRPLUS3res;
+import com.emc.ecs.nfsclient.rpc.Credential;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+/**
+ * Checks the codecs generated from nfs3.x against the hand-written classes.
+ */
+public class Test_Nfs3Xdr extends Assert {
+
+    @Test
+    public void testGetAttrRequest() throws Exception {
+        Credential credential = new CredentialUnix(1000, 1000, null);
+        byte[] fileHandle = new byte[] { 1, 2, 3, 4, 5 };
+
+        NfsGetAttrRequest request = new NfsGetAttrRequest(fileHandle, credential, 3);
+        Xdr expected = new Xdr(request.getMarshalledSize());
+        request.marshalling(expected);
+
+        GETATTR3args args = new GETATTR3args();
+        args.object.setData(fileHandle);
+        Xdr actual = new Xdr(request.getMarshalledSize());
+        credential.marshallingCallHeader(actual, Nfs3Xdr.NFS_PROGRAM, Nfs3Xdr.NFS_V3, Nfs3Xdr.NFSPROC3_GETATTR);
+        args.encode(actual);
+
+        assertEquals(expected.getOffset(), actual.getOffset());
+        assertEquals(Xdr.sizeOf(fileHandle), args.encodedSize());
+        assertArrayEquals(Arrays.copyOf(expected.getBuffer(), expected.getOffset()),
+                Arrays.copyOf(actual.getBuffer(), actual.getOffset()));
+    }
+
+    @Test
+    public void testReaddirplusReply() throws Exception {
+        Xdr reply = makeReaddirplusReply("first", "second", "third");
+
+        NfsReaddirplusResponse response = new NfsReaddirplusResponse(3);
+        response.unmarshalling(reply);
+        List<NfsDirectoryPlusEntry> entries = response.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals("second", entries.get(1).getFileName());
+        assertEquals(12, entries.get(1).getFileId());
+        assertArrayEquals(new byte[] { 2 }, entries.get(1).getFileHandle());
+        assertEquals(3, response.getCookie());
+        assertTrue(response.isEof());
+
+        // decoding a shorter list reuses the chain and ends where the reply
+        // ends
+        READDIRPLUS3res res = new READDIRPLUS3res();
+        reply.setOffset(24);
+        res.decode(reply);
+        Entryplus3 third = res.resok.reply.entries.nextentry.nextentry;
+        assertEquals("third", third.getNameAsString());
+
+        Xdr shorter = makeReaddirplusReply("one");
+        shorter.setOffset(24);
+        res.decode(shorter);
+        Entryplus3 first = res.resok.reply.entries;
+        assertEquals("one", first.getNameAsString());
+        assertEquals(1, first.cookie);
+        assertFalse(first.hasNextentry);
+        assertTrue(res.resok.reply.eof);
+        assertEquals(shorter.getSize(), shorter.getOffset());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLength() {
+        Xdr xdr = new Xdr(128);
+        xdr.putByteArray(new byte[Nfs3Xdr.NFS3_FHSIZE + 1]);
+        new NfsFh3().decode(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+    }
+
+    /**
+     * @param names
+     * @return An accepted READDIRPLUS reply with an entry for each name.
+     */
+    private static Xdr makeReaddirplusReply(String... names) {
+        READDIRPLUS3res res = new READDIRPLUS3res();
+        res.status = Nfs3Xdr.NFS3_OK;
+        res.resok.reply.eof = true;
+        Entryplus3 previous = null;
+        for (int i = 0; i < names.length; ++i) {
+            Entryplus3 entry = new Entryplus3();
+            entry.fileid = 11 + i;
+            entry.setName(names[i]);
+            entry.cookie = 1 + i;
+            entry.nameHandle.handleFollows = true;
+            entry.nameHandle.handle.setData(new byte[] { (byte) (1 + i) });
+            if (previous == null) {
+                res.resok.reply.hasEntries = true;
+                res.resok.reply.entries = entry;
+            } else {
+                previous.hasNextentry = true;
+                previous.nextentry = entry;
+            }
+            previous = entry;
+        }
+
+        Xdr xdr = new Xdr(24 + res.encodedSize());
+        xdr.putInt(1); // xid
+        xdr.putInt(1); // REPLY
+        xdr.putInt(0); // MSG_ACCEPTED
+        xdr.putInt(0); // AUTH_NONE verifier
+        xdr.putInt(0);
+        xdr.putInt(0); // SUCCESS
+        res.encode(xdr);
+        assertEquals(xdr.getBuffer().length, xdr.getOffset());
+        return new Xdr(xdr.getBuffer(), 0, xdr.getOffset());
+    }
+
+}
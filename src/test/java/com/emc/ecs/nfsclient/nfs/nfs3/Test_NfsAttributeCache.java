@@ -0,0 +1,241 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.nfs3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsAttributeCache;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttributes;
+import com.emc.ecs.nfsclient.nfs.NfsNameCache;
+import com.emc.ecs.nfsclient.nfs.NfsRemoveRequest;
+import com.emc.ecs.nfsclient.nfs.NfsRemoveResponse;
+import com.emc.ecs.nfsclient.nfs.NfsRenameRequest;
+import com.emc.ecs.nfsclient.nfs.NfsRenameResponse;
+import com.emc.ecs.nfsclient.nfs.NfsType;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_NfsAttributeCache extends Assert {
+
+    private static final byte[] HANDLE_A = new byte[] { 1, 2, 3 };
+
+    private static final byte[] HANDLE_B = new byte[] { 4, 5, 6 };
+
+    private static final byte[] HANDLE_C = new byte[] { 7, 8, 9 };
+
+    @Test
+    public void testPutAndGet() {
+        NfsAttributeCache cache = new NfsAttributeCache();
+        assertNull(cache.get(HANDLE_A));
+
+        NfsGetAttributes attributes = makeAttributes(NfsType.NFS_REG, 100, 100);
+        cache.put(HANDLE_A, attributes);
+        assertEquals(100, cache.get(new byte[] { 1, 2, 3 }).getCtime().getSeconds());
+        assertNull(cache.get(HANDLE_B));
+
+        // missing attributes and handles are ignored
+        cache.put(HANDLE_B, null);
+        cache.put(null, attributes);
+        cache.put(HANDLE_B, new NfsGetAttributes());
+        assertNull(cache.get(null));
+        assertEquals(1, cache.size());
+
+        cache.remove(HANDLE_A);
+        assertNull(cache.get(HANDLE_A));
+    }
+
+    @Test
+    public void testOlderAttributesIgnored() {
+        NfsAttributeCache cache = new NfsAttributeCache();
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 200));
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 150));
+        assertEquals(200, cache.get(HANDLE_A).getCtime().getSeconds());
+
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 250));
+        assertEquals(250, cache.get(HANDLE_A).getCtime().getSeconds());
+
+        // within one millisecond
+        cache.put(HANDLE_B, makeAttributes(NfsType.NFS_REG, 100, 0, 200, 2000));
+        cache.put(HANDLE_B, makeAttributes(NfsType.NFS_REG, 100, 0, 200, 1000));
+        assertEquals(2000, cache.get(HANDLE_B).getCtime().getNanoseconds());
+    }
+
+    @Test
+    public void testCopies() {
+        NfsAttributeCache cache = new NfsAttributeCache();
+        NfsGetAttributes attributes = makeAttributes(NfsType.NFS_REG, 100, 100);
+        cache.put(HANDLE_A, attributes);
+
+        // neither the caller's attributes nor those handed out are shared
+        NfsGetAttributes cached = cache.get(HANDLE_A);
+        assertNotSame(attributes, cached);
+        assertNotSame(cached, cache.get(HANDLE_A));
+        cached.getRdev()[0] = 42;
+        cached.unmarshalling(encodeAttributes(NfsType.NFS_DIR, 300, 0, 300, 0));
+        attributes.unmarshalling(encodeAttributes(NfsType.NFS_DIR, 300, 0, 300, 0));
+        NfsGetAttributes again = cache.get(HANDLE_A);
+        assertEquals(NfsType.NFS_REG, again.getType());
+        assertEquals(0, again.getRdev()[0]);
+        assertEquals(100, again.getCtime().getSeconds());
+    }
+
+    @Test
+    public void testRemoveDropsTarget() throws Exception {
+        NfsAttributeCache attributeCache = new NfsAttributeCache();
+        NfsNameCache nameCache = new NfsNameCache();
+        nameCache.put(HANDLE_A, "b", HANDLE_B, NfsType.NFS_REG, makeAttributes(NfsType.NFS_DIR, 100, 100));
+        attributeCache.put(HANDLE_B, makeAttributes(NfsType.NFS_REG, 100, 100));
+
+        NfsRemoveResponse response = new NfsRemoveResponse(3);
+        response.unmarshalling(makeReply(1));
+        response.dropReplacedAttributes(new NfsRemoveRequest(HANDLE_A, "b", new CredentialUnix(), 3), nameCache,
+                attributeCache);
+        assertNull(attributeCache.get(HANDLE_B));
+    }
+
+    @Test
+    public void testRenameDropsTargets() throws Exception {
+        NfsAttributeCache attributeCache = new NfsAttributeCache();
+        NfsNameCache nameCache = new NfsNameCache();
+        NfsGetAttributes directoryAttributes = makeAttributes(NfsType.NFS_DIR, 100, 100);
+        nameCache.put(HANDLE_A, "b", HANDLE_B, NfsType.NFS_REG, directoryAttributes);
+        nameCache.put(HANDLE_A, "c", HANDLE_C, NfsType.NFS_REG, directoryAttributes);
+        attributeCache.put(HANDLE_B, makeAttributes(NfsType.NFS_REG, 100, 100));
+        attributeCache.put(HANDLE_C, makeAttributes(NfsType.NFS_REG, 100, 100));
+
+        // b is moved over c
+        NfsRenameResponse response = new NfsRenameResponse(3);
+        response.unmarshalling(makeReply(2));
+        response.dropReplacedAttributes(new NfsRenameRequest(HANDLE_A, "b", HANDLE_A, "c", new CredentialUnix(), 3),
+                nameCache, attributeCache);
+        assertNull(attributeCache.get(HANDLE_B));
+        assertNull(attributeCache.get(HANDLE_C));
+    }
+
+    @Test
+    public void testTtl() throws InterruptedException {
+        NfsAttributeCache cache = new NfsAttributeCache();
+
+        // files are not cached, directories are
+        cache.setFileTtl(0, 0);
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 100));
+        cache.put(HANDLE_B, makeAttributes(NfsType.NFS_DIR, 100, 100));
+        assertNull(cache.get(HANDLE_A));
+        assertNotNull(cache.get(HANDLE_B));
+
+        // the maximum applies to a file that has not changed for a long time
+        cache.setFileTtl(1, 1);
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 100));
+        Thread.sleep(10);
+        assertNull(cache.get(HANDLE_A));
+    }
+
+    @Test
+    public void testEviction() {
+        NfsAttributeCache cache = new NfsAttributeCache();
+        cache.setMaximumSize(2);
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 100));
+        cache.put(HANDLE_B, makeAttributes(NfsType.NFS_REG, 100, 100));
+        assertNotNull(cache.get(HANDLE_A));
+
+        // B is the least recently used
+        cache.put(HANDLE_C, makeAttributes(NfsType.NFS_REG, 100, 100));
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(HANDLE_A));
+        assertNull(cache.get(HANDLE_B));
+        assertNotNull(cache.get(HANDLE_C));
+
+        cache.setMaximumSize(0);
+        assertEquals(0, cache.size());
+        cache.put(HANDLE_A, makeAttributes(NfsType.NFS_REG, 100, 100));
+        assertNull(cache.get(HANDLE_A));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTtl() {
+        new NfsAttributeCache().setDirectoryTtl(10, 5);
+    }
+
+    /**
+     * @param type
+     *            The file type.
+     * @param mtimeSeconds
+     *            The modification time in seconds.
+     * @param ctimeSeconds
+     *            The change time in seconds.
+     * @return The attributes, decoded as from a reply.
+     */
+    private static NfsGetAttributes makeAttributes(NfsType type, int mtimeSeconds, int ctimeSeconds) {
+        return makeAttributes(type, mtimeSeconds, 0, ctimeSeconds, 0);
+    }
+
+    /**
+     * @return The attributes, with times to the nanosecond, decoded as from a
+     *         reply.
+     */
+    private static NfsGetAttributes makeAttributes(NfsType type, int mtimeSeconds, int mtimeNanoseconds,
+            int ctimeSeconds, int ctimeNanoseconds) {
+        NfsGetAttributes attributes = new NfsGetAttributes();
+        attributes.unmarshalling(encodeAttributes(type, mtimeSeconds, mtimeNanoseconds, ctimeSeconds,
+                ctimeNanoseconds));
+        return attributes;
+    }
+
+    /**
+     * @return The attributes, encoded as in a reply.
+     */
+    private static Xdr encodeAttributes(NfsType type, int mtimeSeconds, int mtimeNanoseconds, int ctimeSeconds,
+            int ctimeNanoseconds) {
+        Xdr xdr = new Xdr(128);
+        xdr.putInt(type.getValue());
+        for (int i = 0; i < 4; ++i) {
+            xdr.putInt(0);
+        }
+        for (int i = 0; i < 5; ++i) {
+            xdr.putLong(0);
+        }
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(mtimeSeconds);
+        xdr.putInt(mtimeNanoseconds);
+        xdr.putInt(ctimeSeconds);
+        xdr.putInt(ctimeNanoseconds);
+        return new Xdr(xdr.getBuffer(), 0, xdr.getOffset());
+    }
+
+    /**
+     * @param wccDataCount
+     *            The number of directories in the reply.
+     * @return An accepted, successful RPC reply with NFS3_OK and empty weak
+     *         cache consistency data.
+     */
+    private static Xdr makeReply(int wccDataCount) {
+        Xdr xdr = new Xdr(128);
+        xdr.putInt(1);
+        xdr.putInt(1);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        for (int i = 0; i < wccDataCount; ++i) {
+            xdr.putBoolean(false);
+            xdr.putBoolean(false);
+        }
+        return new Xdr(xdr.getBuffer(), 0, xdr.getOffset());
+    }
+
+}
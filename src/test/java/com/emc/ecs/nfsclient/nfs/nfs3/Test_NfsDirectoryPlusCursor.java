@@ -0,0 +1,144 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.nfs3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsDirectoryPlusCursor;
+import com.emc.ecs.nfsclient.nfs.NfsDirectoryPlusEntry;
+import com.emc.ecs.nfsclient.nfs.NfsType;
+import com.emc.ecs.nfsclient.rpc.RpcException;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_NfsDirectoryPlusCursor extends Assert {
+
+    @Test
+    public void testLazyAccess() throws RpcException {
+        Nfs3ReaddirplusResponse response = makeResponse();
+        NfsDirectoryPlusCursor cursor = response.getCursor();
+
+        assertTrue(cursor.next());
+        assertEquals(11, cursor.getFileId());
+        assertEquals(101, cursor.getCookie());
+        assertTrue(cursor.hasAttributes());
+        assertEquals(4096, cursor.getAttributes().getSize());
+        assertEquals("first", cursor.getFileName());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, cursor.getFileHandle());
+
+        // the second entry is passed without decoding anything
+        assertTrue(cursor.next());
+        assertEquals(102, cursor.getCookie());
+
+        assertTrue(cursor.next());
+        assertEquals(13, cursor.getFileId());
+        assertFalse(cursor.hasAttributes());
+        assertNull(cursor.getAttributes());
+        assertNull(cursor.getFileHandle());
+        assertEquals("third", cursor.getFileName());
+
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+
+        // the reply itself was read through to the eof flag
+        assertEquals(103, response.getCookie());
+        assertTrue(response.isEof());
+
+        // and each cursor starts again from the first entry
+        cursor = response.getCursor();
+        assertTrue(cursor.next());
+        assertEquals("first", cursor.getFileName());
+    }
+
+    @Test
+    public void testToEntry() throws RpcException {
+        NfsDirectoryPlusCursor cursor = makeResponse().getCursor();
+        assertTrue(cursor.next());
+        assertEquals("first", cursor.getFileName());
+
+        NfsDirectoryPlusEntry entry = cursor.toEntry();
+        assertEquals(11, entry.getFileId());
+        assertEquals("first", entry.getFileName());
+        assertEquals(101, entry.getCookie());
+        assertEquals(4096, entry.getAttributes().getSize());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, entry.getFileHandle());
+
+        assertTrue(cursor.next());
+        assertEquals("second", cursor.toEntry().getFileName());
+        assertTrue(cursor.next());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(new Nfs3ReaddirplusResponse().getCursor().next());
+    }
+
+    /**
+     * @return A response decoded from a reply with three entries.
+     * @throws RpcException
+     */
+    private static Nfs3ReaddirplusResponse makeResponse() throws RpcException {
+        Xdr xdr = new Xdr(1024);
+        xdr.putInt(1); // xid
+        xdr.putInt(1); // reply
+        xdr.putInt(0); // accepted
+        xdr.putInt(0); // verifier flavor
+        xdr.putInt(0); // verifier length
+        xdr.putInt(0); // success
+        xdr.putInt(0); // NFS3_OK
+        xdr.putBoolean(false); // no directory attributes
+        xdr.putLong(42); // cookieverf
+        putEntry(xdr, 11, "first", 101, true, new byte[] { 1, 2, 3, 4, 5 });
+        putEntry(xdr, 12, "second", 102, true, new byte[] { 6 });
+        putEntry(xdr, 13, "third", 103, false, null);
+        xdr.putBoolean(false);
+        xdr.putBoolean(true);
+
+        Nfs3ReaddirplusResponse response = new Nfs3ReaddirplusResponse();
+        response.unmarshalling(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+        assertTrue(response.stateIsOk());
+        assertEquals(42, response.getCookieverf());
+        return response;
+    }
+
+    private static void putEntry(Xdr xdr, long fileId, String name, long cookie, boolean attributes,
+            byte[] fileHandle) {
+        xdr.putBoolean(true);
+        xdr.putLong(fileId);
+        xdr.putString(name);
+        xdr.putLong(cookie);
+        xdr.putBoolean(attributes);
+        if (attributes) {
+            xdr.putInt(NfsType.NFS_REG.getValue());
+            for (int i = 0; i < 4; ++i) {
+                xdr.putInt(0);
+            }
+            xdr.putLong(4096);
+            for (int i = 0; i < 3; ++i) {
+                xdr.putLong(0);
+            }
+            xdr.putLong(fileId);
+            for (int i = 0; i < 6; ++i) {
+                xdr.putInt(0);
+            }
+        }
+        xdr.putBoolean(fileHandle != null);
+        if (fileHandle != null) {
+            xdr.putByteArray(fileHandle);
+        }
+    }
+
+}
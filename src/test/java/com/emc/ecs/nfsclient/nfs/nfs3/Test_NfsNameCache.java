@@ -0,0 +1,212 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.nfs3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsCreateMode;
+import com.emc.ecs.nfsclient.nfs.NfsCreateRequest;
+import com.emc.ecs.nfsclient.nfs.NfsCreateResponse;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttributes;
+import com.emc.ecs.nfsclient.nfs.NfsNameCache;
+import com.emc.ecs.nfsclient.nfs.NfsSetAttributes;
+import com.emc.ecs.nfsclient.nfs.NfsType;
+import com.emc.ecs.nfsclient.nfs.NfsWccData;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+import com.emc.ecs.nfsclient.rpc.Xdr;
+
+public class Test_NfsNameCache extends Assert {
+
+    private static final byte[] DIRECTORY = new byte[] { 1, 2, 3 };
+
+    private static final byte[] FILE_A = new byte[] { 4, 5, 6 };
+
+    private static final byte[] FILE_B = new byte[] { 7, 8, 9 };
+
+    @Test
+    public void testPositiveAndNegative() {
+        NfsNameCache cache = new NfsNameCache();
+        NfsGetAttributes directoryAttributes = makeAttributes(100, 100);
+        cache.put(DIRECTORY, "a", FILE_A, NfsType.NFS_REG, directoryAttributes);
+        cache.put(DIRECTORY, "missing", null, null, directoryAttributes);
+
+        NfsNameCache.CachedName a = cache.get(new byte[] { 1, 2, 3 }, "a", directoryAttributes);
+        assertFalse(a.isNegative());
+        assertEquals(NfsType.NFS_REG, a.getType());
+        assertArrayEquals(FILE_A, a.getFileHandle());
+
+        NfsNameCache.CachedName missing = cache.get(DIRECTORY, "missing", directoryAttributes);
+        assertTrue(missing.isNegative());
+        assertNull(missing.getFileHandle());
+
+        assertNull(cache.get(DIRECTORY, "b", directoryAttributes));
+        assertNull(cache.get(FILE_A, "a", directoryAttributes));
+
+        // entries cannot be checked without the directory attributes
+        assertNull(cache.get(DIRECTORY, "a", null));
+    }
+
+    @Test
+    public void testDirectoryChanged() {
+        NfsNameCache cache = new NfsNameCache();
+        cache.put(DIRECTORY, "a", FILE_A, NfsType.NFS_REG, makeAttributes(100, 100));
+        assertNull(cache.get(DIRECTORY, "a", makeAttributes(101, 101)));
+
+        // the directory stays invalid even with the old attributes
+        assertNull(cache.get(DIRECTORY, "a", makeAttributes(100, 100)));
+    }
+
+    @Test
+    public void testDirectoryChangedWithinMillisecond() {
+        NfsNameCache cache = new NfsNameCache();
+        cache.put(DIRECTORY, "a", FILE_A, NfsType.NFS_REG, makeAttributes(100, 1000, 100, 1000));
+        assertNotNull(cache.get(DIRECTORY, "a", makeAttributes(100, 1000, 100, 1000)));
+        assertNull(cache.get(DIRECTORY, "a", makeAttributes(100, 2000, 100, 2000)));
+    }
+
+    @Test
+    public void testOwnChange() {
+        NfsNameCache cache = new NfsNameCache();
+        cache.put(DIRECTORY, "a", FILE_A, NfsType.NFS_REG, makeAttributes(100, 100));
+        cache.put(DIRECTORY, "b", null, null, makeAttributes(100, 100));
+
+        // only our change happened, so the other entries stay valid
+        cache.change(DIRECTORY, "b", makeWccData(100, 100, 200, 200));
+        cache.put(DIRECTORY, "b", FILE_B, NfsType.NFS_DIR, makeAttributes(200, 200));
+        NfsGetAttributes after = makeAttributes(200, 200);
+        assertArrayEquals(FILE_A, cache.get(DIRECTORY, "a", after).getFileHandle());
+        assertArrayEquals(FILE_B, cache.get(DIRECTORY, "b", after).getFileHandle());
+
+        // somebody else changed the directory before our change
+        cache.change(DIRECTORY, "b", makeWccData(250, 250, 300, 300));
+        assertNull(cache.get(DIRECTORY, "a", makeAttributes(300, 300)));
+        assertNull(cache.get(DIRECTORY, "b", makeAttributes(300, 300)));
+    }
+
+    @Test
+    public void testCreateWithoutHandle() throws Exception {
+        NfsNameCache cache = new NfsNameCache();
+        cache.put(DIRECTORY, "a", null, null, makeAttributes(100, 100));
+
+        // the server may leave out the handle of a file that it created
+        Xdr xdr = new Xdr(256);
+        putReplyHeader(xdr);
+        xdr.putBoolean(false);
+        xdr.putBoolean(false);
+        putWccData(xdr, 100, 100, 200, 200);
+        NfsCreateResponse response = new NfsCreateResponse(3);
+        response.unmarshalling(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+        assertTrue(response.stateIsOk());
+        assertNull(response.getFileHandle());
+
+        NfsCreateRequest request = new NfsCreateRequest(NfsCreateMode.UNCHECKED, DIRECTORY, "a",
+                new NfsSetAttributes(), null, new CredentialUnix(), 3);
+        response.cacheNames(request, cache);
+
+        // the old negative entry is gone, and no new one takes its place
+        assertNull(cache.get(DIRECTORY, "a", makeAttributes(200, 200)));
+    }
+
+    @Test
+    public void testDisabled() {
+        NfsNameCache cache = new NfsNameCache();
+        cache.setMaximumSize(0);
+        cache.put(DIRECTORY, "a", FILE_A, NfsType.NFS_REG, makeAttributes(100, 100));
+        assertEquals(0, cache.size());
+        assertNull(cache.get(DIRECTORY, "a", makeAttributes(100, 100)));
+    }
+
+    /**
+     * @param mtimeSeconds
+     *            The modification time in seconds.
+     * @param ctimeSeconds
+     *            The change time in seconds.
+     * @return Directory attributes, decoded as from a reply.
+     */
+    private static NfsGetAttributes makeAttributes(int mtimeSeconds, int ctimeSeconds) {
+        return makeAttributes(mtimeSeconds, 0, ctimeSeconds, 0);
+    }
+
+    /**
+     * @return Directory attributes with times to the nanosecond, decoded as
+     *         from a reply.
+     */
+    private static NfsGetAttributes makeAttributes(int mtimeSeconds, int mtimeNanoseconds, int ctimeSeconds,
+            int ctimeNanoseconds) {
+        Xdr xdr = new Xdr(128);
+        putAttributes(xdr, mtimeSeconds, mtimeNanoseconds, ctimeSeconds, ctimeNanoseconds);
+        NfsGetAttributes attributes = new NfsGetAttributes();
+        attributes.unmarshalling(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+        return attributes;
+    }
+
+    /**
+     * @return The directory attributes from before and after a change,
+     *         decoded as from a reply.
+     */
+    private static NfsWccData makeWccData(int mtimeBefore, int ctimeBefore, int mtimeAfter, int ctimeAfter) {
+        Xdr xdr = new Xdr(256);
+        putWccData(xdr, mtimeBefore, ctimeBefore, mtimeAfter, ctimeAfter);
+        return new NfsWccData(new Xdr(xdr.getBuffer(), 0, xdr.getOffset()));
+    }
+
+    private static void putWccData(Xdr xdr, int mtimeBefore, int ctimeBefore, int mtimeAfter, int ctimeAfter) {
+        xdr.putBoolean(true);
+        xdr.putLong(4096);
+        xdr.putInt(mtimeBefore);
+        xdr.putInt(0);
+        xdr.putInt(ctimeBefore);
+        xdr.putInt(0);
+        xdr.putBoolean(true);
+        putAttributes(xdr, mtimeAfter, ctimeAfter);
+    }
+
+    /**
+     * Write the header of an accepted, successful RPC reply, followed by the
+     * NFS3_OK status.
+     */
+    private static void putReplyHeader(Xdr xdr) {
+        xdr.putInt(1);
+        xdr.putInt(1);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(0);
+    }
+
+    private static void putAttributes(Xdr xdr, int mtimeSeconds, int ctimeSeconds) {
+        putAttributes(xdr, mtimeSeconds, 0, ctimeSeconds, 0);
+    }
+
+    private static void putAttributes(Xdr xdr, int mtimeSeconds, int mtimeNanoseconds, int ctimeSeconds,
+            int ctimeNanoseconds) {
+        xdr.putInt(NfsType.NFS_DIR.getValue());
+        for (int i = 0; i < 4; ++i) {
+            xdr.putInt(0);
+        }
+        for (int i = 0; i < 5; ++i) {
+            xdr.putLong(0);
+        }
+        xdr.putInt(0);
+        xdr.putInt(0);
+        xdr.putInt(mtimeSeconds);
+        xdr.putInt(mtimeNanoseconds);
+        xdr.putInt(ctimeSeconds);
+        xdr.putInt(ctimeNanoseconds);
+    }
+
+}
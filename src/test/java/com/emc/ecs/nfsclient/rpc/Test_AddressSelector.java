@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_AddressSelector extends Assert {
+
+    private static final String[] IPS = { "10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4" };
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Test
+    public void testAffinity() {
+        AddressSelector selector = new AddressSelector(IPS, SCHEDULER);
+        int[] counts = new int[IPS.length];
+        for (int i = 0; i < 4000; ++i) {
+            String ip = selector.choose(key(i));
+            assertEquals(ip, selector.choose(key(i)));
+            ++counts[indexOf(ip)];
+        }
+
+        // every address gets a share of the keys
+        for (int count : counts) {
+            assertTrue(count > 700);
+        }
+    }
+
+    @Test
+    public void testExcludedAddress() {
+        AddressSelector selector = new AddressSelector(IPS, SCHEDULER);
+        for (int i = 0; i < 1000; ++i) {
+            String ip = selector.choose(key(i));
+            assertNotEquals(ip, selector.choose(key(i), ip));
+        }
+
+        // with a single address, the hedge goes to the same one
+        AddressSelector single = new AddressSelector(new String[] { IPS[0] }, SCHEDULER);
+        assertEquals(IPS[0], single.choose(key(0), IPS[0]));
+    }
+
+    @Test
+    public void testEjectionAndProbe() throws Exception {
+        AddressSelector selector = new AddressSelector(IPS, SCHEDULER);
+        CompletableFuture<Object> probeResult = new CompletableFuture<Object>();
+        selector.setProbe(ip -> probeResult);
+
+        for (int i = 1; i < AddressSelector.EJECT_AFTER_ERRORS; ++i) {
+            selector.recordFailure(IPS[0]);
+            assertFalse(selector.isEjected(IPS[0]));
+        }
+        selector.recordFailure(IPS[0]);
+        assertTrue(selector.isEjected(IPS[0]));
+        for (int i = 0; i < 1000; ++i) {
+            assertNotEquals(IPS[0], selector.choose(key(i)));
+        }
+
+        // the probe is sent after the delay, and its success puts the address back
+        Thread.sleep(AddressSelector.INITIAL_PROBE_DELAY_MILLIS + 500);
+        assertTrue(selector.isEjected(IPS[0]));
+        probeResult.complete(null);
+        assertFalse(selector.isEjected(IPS[0]));
+    }
+
+    @Test
+    public void testLastAddressIsKept() {
+        AddressSelector selector = new AddressSelector(IPS, SCHEDULER);
+        for (String ip : IPS) {
+            for (int i = 0; i < AddressSelector.EJECT_AFTER_ERRORS; ++i) {
+                selector.recordFailure(ip);
+            }
+        }
+        assertFalse(selector.isEjected(IPS[IPS.length - 1]));
+        assertEquals(IPS[IPS.length - 1], selector.choose(key(0)));
+    }
+
+    @Test
+    public void testSlowAddressGetsFewerKeys() {
+        AddressSelector selector = new AddressSelector(IPS, SCHEDULER);
+        for (int i = 0; i < IPS.length; ++i) {
+            selector.recordSuccess(IPS[i], (i == 0) ? 8000000 : 1000000);
+        }
+        assertEquals(8000000, selector.getRttNanos(IPS[0]));
+
+        int slow = 0;
+        for (int i = 0; i < 4000; ++i) {
+            if (IPS[0].equals(selector.choose(key(i)))) {
+                ++slow;
+            }
+        }
+        assertTrue(slow > 0);
+        assertTrue(slow < 300);
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(4).putInt(i).array();
+    }
+
+    private static int indexOf(String ip) {
+        for (int i = 0; i < IPS.length; ++i) {
+            if (IPS[i].equals(ip)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+
+public class Test_CredentialBase extends Assert {
+
+    @Test
+    public void testCallHeader() {
+        TestCredential credential = new TestCredential();
+        Xdr xdr = new Xdr(128);
+        credential.marshallingCallHeader(xdr, 100003, 3, 1);
+
+        Xdr header = new Xdr(xdr.getBuffer(), 0, xdr.getOffset());
+        assertEquals(0, header.getInt()); // xid placeholder
+        assertEquals(RpcRequest.CALL, header.getInt());
+        assertEquals(RpcRequest.RPC_VERSION, header.getInt());
+        assertEquals(100003, header.getInt());
+        assertEquals(3, header.getInt());
+        assertEquals(1, header.getInt());
+        assertEquals(TestCredential.FLAVOR, header.getInt());
+        assertEquals(4, header.getInt());
+        assertEquals(0, header.getInt()); // generation
+        assertEquals(Credential.AUTH_NONE, header.getInt());
+        assertEquals(0, header.getInt()); // verifier length
+        assertEquals(xdr.getOffset(), header.getOffset());
+    }
+
+    @Test
+    public void testTemplatesReused() {
+        TestCredential credential = new TestCredential();
+        credential.marshallingCallHeader(new Xdr(128), 100003, 3, 1);
+        credential.marshallingCallHeader(new Xdr(128), 100003, 3, 1);
+        assertEquals(1, credential._encodings);
+
+        // each procedure has its own template
+        Xdr lookup = new Xdr(128);
+        credential.marshallingCallHeader(lookup, 100003, 3, 3);
+        assertEquals(2, credential._encodings);
+        assertEquals(3, new Xdr(lookup.getBuffer(), 20, 4).getInt());
+
+        // a new generation encodes the template again
+        credential._generation = 7;
+        Xdr xdr = new Xdr(128);
+        credential.marshallingCallHeader(xdr, 100003, 3, 1);
+        assertEquals(3, credential._encodings);
+        assertEquals(7, new Xdr(xdr.getBuffer(), 32, 4).getInt());
+        credential.marshallingCallHeader(new Xdr(128), 100003, 3, 1);
+        assertEquals(3, credential._encodings);
+    }
+
+    @Test
+    public void testXidPatched() throws Exception {
+        CredentialUnix credential = new CredentialUnix(1, 2, Collections.singleton(3));
+        NfsGetAttrRequest request = new NfsGetAttrRequest(new byte[] { 1, 2, 3 }, credential, 3);
+        Xdr first = new Xdr(256);
+        request.marshalling(first);
+        Xdr second = new Xdr(256);
+        request.marshalling(second);
+        assertEquals(first.getOffset(), second.getOffset());
+
+        // the connection writes each xid over the placeholder of the copy
+        first.putXid(1234);
+        second.putXid(5678);
+        Xdr firstHeader = new Xdr(first.getBuffer(), 0, first.getOffset());
+        Xdr secondHeader = new Xdr(second.getBuffer(), 0, second.getOffset());
+        assertEquals(1234, firstHeader.getInt());
+        assertEquals(5678, secondHeader.getInt());
+        assertEquals(RpcRequest.CALL, firstHeader.getInt());
+        assertEquals(RpcRequest.RPC_VERSION, firstHeader.getInt());
+        assertEquals(100003, firstHeader.getInt());
+        assertEquals(3, firstHeader.getInt());
+        assertEquals(1, firstHeader.getInt());
+        assertEquals(credential.getCredentialFlavor(), firstHeader.getInt());
+    }
+
+    /**
+     * A credential whose body is its generation, which counts the encodings
+     * of its templates.
+     */
+    private static class TestCredential extends CredentialBase {
+
+        static final int FLAVOR = 99;
+
+        private volatile int _generation;
+
+        private int _encodings;
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.rpc.CredentialBase#marshalling(com.emc.ecs.nfsclient.rpc.Xdr)
+         */
+        public void marshalling(Xdr xdr) {
+            ++_encodings;
+            super.marshalling(xdr);
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getCredentialFlavor()
+         */
+        public int getCredentialFlavor() {
+            return FLAVOR;
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getGeneration()
+         */
+        protected int getGeneration() {
+            return _generation;
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.rpc.CredentialBase#putCredential(com.emc.ecs.nfsclient.rpc.Xdr)
+         */
+        protected void putCredential(Xdr xdr) {
+            xdr.putInt(4);
+            xdr.putInt(_generation);
+        }
+
+        /* (non-Javadoc)
+         * @see com.emc.ecs.nfsclient.rpc.CredentialBase#getCredentialSize()
+         */
+        protected int getCredentialSize() {
+            return 8;
+        }
+
+    }
+
+}
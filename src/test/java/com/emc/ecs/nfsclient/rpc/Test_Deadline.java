@@ -0,0 +1,134 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsException;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrResponse;
+import com.emc.ecs.nfsclient.nfs.NfsRequestBase;
+import com.emc.ecs.nfsclient.nfs.NfsResponseBase;
+
+public class Test_Deadline extends Assert {
+
+    @Test
+    public void testRemainingTime() {
+        Deadline deadline = Deadline.after(1, TimeUnit.MINUTES);
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.getRemainingMillis() > 59000);
+        assertTrue(deadline.getRemainingMillis() <= 60000);
+
+        Deadline expired = Deadline.after(0);
+        assertTrue(expired.isExpired());
+        assertEquals(0, expired.getRemainingMillis());
+        assertEquals(0, expired.getRemainingNanos());
+    }
+
+    @Test
+    public void testEarlier() {
+        Deadline soon = Deadline.after(100);
+        Deadline later = Deadline.after(1, TimeUnit.HOURS);
+        assertSame(soon, Deadline.earlier(soon, later));
+        assertSame(soon, Deadline.earlier(later, soon));
+        assertSame(later, Deadline.earlier(null, later));
+        assertSame(later, Deadline.earlier(later, null));
+        assertNull(Deadline.earlier(null, null));
+    }
+
+    @Test
+    public void testScope() {
+        assertNull(Deadline.current());
+        Deadline outer = Deadline.after(1000);
+        try (Deadline.Scope outerScope = outer.enter()) {
+            assertSame(outer, Deadline.current());
+
+            // a later deadline does not extend the one in place
+            try (Deadline.Scope innerScope = Deadline.after(1, TimeUnit.HOURS).enter()) {
+                assertSame(outer, Deadline.current());
+            }
+
+            Deadline inner = Deadline.after(10);
+            try (Deadline.Scope innerScope = inner.enter()) {
+                assertSame(inner, Deadline.current());
+            }
+            assertSame(outer, Deadline.current());
+        }
+        assertNull(Deadline.current());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBudget() {
+        Deadline.after(-1);
+    }
+
+    @Test
+    public void testAsyncRetryKeepsDeadline() throws Exception {
+        // a local port that nobody listens on, so every attempt fails fast
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        RpcWrapper<NfsRequestBase, NfsResponseBase> wrapper = new RpcWrapper<NfsRequestBase, NfsResponseBase>(
+                "127.0.0.1", port, 100, 1000, 1024 * 1024, 10);
+        wrapper.setRetryPolicy(new RetryPolicy() {
+
+            public long getRetryDelay(RpcRequest request, RpcException exception, int attemptNumber) {
+                return 100;
+            }
+
+            public void recordSuccess(RpcRequest request) {
+            }
+
+        });
+
+        NfsGetAttrRequest request = new NfsGetAttrRequest(new byte[] { 1, 2, 3 }, new CredentialUnix(), 3);
+        request.setUsePrivilegedPort(false);
+        Deadline deadline = Deadline.after(1000);
+        long start = System.nanoTime();
+        CompletableFuture<NfsGetAttrResponse> result;
+        try (Deadline.Scope scope = deadline.enter()) {
+            result = wrapper.callRpcWrappedAsync(request, new RpcResponseHandler<NfsGetAttrResponse>() {
+
+                protected NfsGetAttrResponse makeNewResponse() {
+                    return new NfsGetAttrResponse(3);
+                }
+
+                public void checkResponse(RpcRequest request) {
+                }
+
+            }, "127.0.0.1");
+        }
+        assertNull(request.getDeadline());
+
+        // the retries run on other threads, after the scope is closed
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("the call cannot succeed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NfsException);
+            assertTrue(e.getCause().getMessage().contains("deadline exceeded"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+}
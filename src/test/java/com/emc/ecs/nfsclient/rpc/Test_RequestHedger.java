@@ -0,0 +1,75 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Test_RequestHedger extends Assert {
+
+    @Test
+    public void testPercentileDelay() {
+        RequestHedger hedger = new RequestHedger(90, 0.05);
+        assertEquals(-1, hedger.getDelayNanos());
+
+        // latencies of 1 to 128, so the 90th percentile is 116
+        for (int i = 1; i <= 128; ++i) {
+            hedger.recordLatency(i);
+        }
+        assertEquals(116, hedger.getDelayNanos());
+
+        // the oldest latencies are overwritten by newer ones
+        for (int i = 0; i < 1024; ++i) {
+            hedger.recordLatency(1000);
+        }
+        assertEquals(1000, hedger.getDelayNanos());
+    }
+
+    @Test
+    public void testHedgeRate() {
+        RequestHedger hedger = new RequestHedger(95, 0.1);
+
+        // the burst can be spent at once
+        int hedges = 0;
+        while (hedger.tryAcquire()) {
+            ++hedges;
+        }
+        assertEquals(10, hedges);
+
+        // then one call in ten may be hedged
+        for (int i = 0; i < 100; ++i) {
+            hedger.recordCall();
+            if (hedger.tryAcquire()) {
+                ++hedges;
+            }
+        }
+        assertEquals(20, hedges);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new RequestHedger(100, 0.05);
+            fail("percentile accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new RequestHedger(95, 0);
+            fail("ratio accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsRemoveRequest;
+
+public class Test_RetryPolicy extends Assert {
+
+    private static final RpcException NETWORK_ERROR = new RpcException(RpcStatus.NETWORK_ERROR, "timeout");
+
+    @Test
+    public void testFullJitter() throws Exception {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(100, 1000, 100, null);
+        assertEquals(100, policy.getDelayCeiling(0));
+        assertEquals(200, policy.getDelayCeiling(1));
+        assertEquals(800, policy.getDelayCeiling(3));
+        assertEquals(1000, policy.getDelayCeiling(4));
+        assertEquals(1000, policy.getDelayCeiling(90));
+
+        RpcRequest request = makeGetAttr();
+        long minimum = Long.MAX_VALUE;
+        long maximum = 0;
+        for (int i = 0; i < 1000; ++i) {
+            long delay = policy.getRetryDelay(request, NETWORK_ERROR, 2);
+            minimum = Math.min(minimum, delay);
+            maximum = Math.max(maximum, delay);
+        }
+        assertTrue(minimum >= 0);
+        assertTrue(minimum < 100);
+        assertTrue(maximum <= 400);
+        assertTrue(maximum > 300);
+    }
+
+    @Test
+    public void testWhatIsRetried() throws Exception {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 3);
+        RpcRequest getAttr = makeGetAttr();
+        RpcRequest remove = new NfsRemoveRequest(new byte[] { 1 }, "name", new CredentialUnix(), 3);
+
+        assertTrue(policy.getRetryDelay(getAttr, NETWORK_ERROR, 0) >= 0);
+        assertTrue(policy.getRetryDelay(getAttr, NETWORK_ERROR, 1) >= 0);
+        assertTrue(policy.getRetryDelay(getAttr, NETWORK_ERROR, 2) < 0);
+        assertTrue(policy.getRetryDelay(getAttr, new RpcTimeoutException("no reply"), 0) >= 0);
+        assertTrue(policy.getRetryDelay(getAttr, new RpcException(RpcStatus.LOCAL_BINDING_ERROR, "bind"), 0) < 0);
+
+        assertTrue(policy.getRetryDelay(remove, NETWORK_ERROR, 0) >= 0);
+        policy.setRetryNonIdempotent(false);
+        assertTrue(policy.getRetryDelay(remove, NETWORK_ERROR, 0) < 0);
+        assertTrue(policy.getRetryDelay(getAttr, NETWORK_ERROR, 0) >= 0);
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        RetryBudget budget = new RetryBudget(2, 0.5);
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 10, 100, budget);
+        RpcRequest request = makeGetAttr();
+
+        assertTrue(policy.getRetryDelay(request, NETWORK_ERROR, 0) >= 0);
+        assertTrue(policy.getRetryDelay(request, NETWORK_ERROR, 0) >= 0);
+        assertTrue(policy.getRetryDelay(request, NETWORK_ERROR, 0) < 0);
+        assertEquals(0.0, budget.getTokens(), 0.0);
+
+        // each success earns half a retry
+        policy.recordSuccess(request);
+        assertTrue(policy.getRetryDelay(request, NETWORK_ERROR, 0) < 0);
+        policy.recordSuccess(request);
+        policy.recordSuccess(request);
+        assertTrue(policy.getRetryDelay(request, NETWORK_ERROR, 0) >= 0);
+
+        // the bucket does not fill beyond its capacity
+        for (int i = 0; i < 100; ++i) {
+            budget.recordSuccess();
+        }
+        assertEquals(2.0, budget.getTokens(), 0.0);
+    }
+
+    private static RpcRequest makeGetAttr() throws Exception {
+        return new NfsGetAttrRequest(new byte[] { 1 }, new CredentialUnix(), 3);
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsRemoveRequest;
+import com.emc.ecs.nfsclient.portmap.GetPortRequest;
+
+public class Test_RpcRequest extends Assert {
+
+    @Test
+    public void testIdempotency() throws Exception {
+        assertIdempotent(true, new NfsGetAttrRequest(new byte[] { 1, 2, 3 }, new CredentialUnix(), 3));
+        assertIdempotent(true, new GetPortRequest(100003, 3));
+        assertIdempotent(false, new NfsRemoveRequest(new byte[] { 1, 2, 3 }, "name", new CredentialUnix(), 3));
+    }
+
+    /**
+     * Check the request, and the Xdr it is marshalled into, for idempotency.
+     * 
+     * @param expected
+     * @param request
+     */
+    private static void assertIdempotent(boolean expected, RpcRequest request) {
+        assertEquals(expected, request.isIdempotent());
+        Xdr xdr = new Xdr(256);
+        request.marshalling(xdr);
+        assertEquals(expected, xdr.isIdempotent());
+    }
+
+}
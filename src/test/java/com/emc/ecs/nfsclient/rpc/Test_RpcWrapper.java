@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.rpc;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.emc.ecs.nfsclient.nfs.NfsException;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrResponse;
+import com.emc.ecs.nfsclient.nfs.NfsRequestBase;
+import com.emc.ecs.nfsclient.nfs.NfsResponseBase;
+
+public class Test_RpcWrapper extends Assert {
+
+    @Test
+    public void testAsyncFailure() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        RpcWrapper<NfsRequestBase, NfsResponseBase> wrapper = newWrapper(attempts, 1);
+
+        NfsException blockingFailure = null;
+        try {
+            wrapper.callRpcWrapped(newRequest(), newResponseHandler(), "127.0.0.1");
+            fail("the call cannot succeed");
+        } catch (NfsException e) {
+            blockingFailure = e;
+        }
+        assertEquals(1, attempts.getAndSet(0));
+
+        // the future fails with the exception the blocking call throws, not
+        // with a wrapper
+        CompletableFuture<NfsGetAttrResponse> result = wrapper.callRpcWrappedAsync(newRequest(),
+                newResponseHandler(), "127.0.0.1");
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("the call cannot succeed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NfsException);
+            assertEquals(blockingFailure.getStatus(), ((NfsException) e.getCause()).getStatus());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testAsyncRetries() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        RpcWrapper<NfsRequestBase, NfsResponseBase> wrapper = newWrapper(attempts, 3);
+
+        CompletableFuture<NfsGetAttrResponse> result = wrapper.callRpcWrappedAsync(newRequest(),
+                newResponseHandler(), "127.0.0.1");
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("the call cannot succeed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NfsException);
+        }
+        assertEquals(3, attempts.get());
+    }
+
+    /**
+     * @param attempts
+     *            Counts the failed attempts.
+     * @param maximumAttempts
+     *            The number of attempts before giving up.
+     * @return A wrapper for a local port that nobody listens on, so that every
+     *         attempt fails fast.
+     * @throws IOException
+     */
+    private static RpcWrapper<NfsRequestBase, NfsResponseBase> newWrapper(final AtomicInteger attempts,
+            final int maximumAttempts) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        RpcWrapper<NfsRequestBase, NfsResponseBase> wrapper = new RpcWrapper<NfsRequestBase, NfsResponseBase>(
+                "127.0.0.1", port, 10, maximumAttempts, 1024 * 1024, 10);
+        wrapper.setRetryPolicy(new RetryPolicy() {
+
+            public long getRetryDelay(RpcRequest request, RpcException exception, int attemptNumber) {
+                return (attempts.incrementAndGet() < maximumAttempts) ? 10 : -1;
+            }
+
+            public void recordSuccess(RpcRequest request) {
+            }
+
+        });
+        return wrapper;
+    }
+
+    private static NfsGetAttrRequest newRequest() throws IOException {
+        NfsGetAttrRequest request = new NfsGetAttrRequest(new byte[] { 1, 2, 3 }, new CredentialUnix(), 3);
+        request.setUsePrivilegedPort(false);
+        return request;
+    }
+
+    private static RpcResponseHandler<NfsGetAttrResponse> newResponseHandler() {
+        return new RpcResponseHandler<NfsGetAttrResponse>() {
+
+            protected NfsGetAttrResponse makeNewResponse() {
+                return new NfsGetAttrResponse(3);
+            }
+
+            public void checkResponse(RpcRequest request) {
+            }
+
+        };
+    }
+
+}
@@ -16,7 +16,14 @@ package com.emc.ecs.nfsclient.rpc;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.NfsLookupRequest;
+import com.emc.ecs.nfsclient.nfs.NfsReadRequest;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -72,6 +79,79 @@ public class Test_Xdr extends Assert {
         assertNull(xdr.getTerminalPadding());
     }
 
+    @Test
+    public void testWrappedRegion() {
+        Xdr source = new Xdr(200);
+        source.putInt(7);
+        source.putString("abcde");
+        source.putLong(42L);
+        int length = source.getOffset();
+
+        // place the data at an unaligned position of a larger array
+        byte[] array = new byte[length + 10];
+        System.arraycopy(source.getBuffer(), 0, array, 3, length);
+
+        Xdr xdr = new Xdr(array, 3, length);
+        assertEquals(0, xdr.getOffset());
+        assertEquals(length, xdr.getSize());
+        assertEquals(7, xdr.getInt());
+        assertEquals("abcde", xdr.getString());
+        assertEquals(16, xdr.getOffset());
+        assertEquals(42L, xdr.getLong());
+        assertEquals(length, xdr.getOffset());
+
+        xdr.setOffset(0);
+        assertEquals(7, xdr.getInt());
+    }
+
+    @Test
+    public void testPooledBuffer() {
+        Xdr xdr = Xdr.allocate(100);
+        xdr.putInt(7);
+        assertEquals(4, xdr.wrapData().remaining());
+
+        // a write in progress keeps the buffer after the call releases it
+        assertTrue(xdr.retain());
+        xdr.release();
+        assertTrue(xdr.retain());
+        xdr.release();
+        xdr.release();
+        assertFalse(xdr.retain());
+
+        // buffers that are not pooled are never released
+        Xdr unpooled = new Xdr(100);
+        unpooled.release();
+        assertTrue(unpooled.retain());
+    }
+
+    @Test
+    public void testMarshalledSize() throws Exception {
+        Set<Integer> gids = new HashSet<Integer>(Arrays.asList(1, 2, 3));
+        Credential credential = new CredentialUnix(1000, 1000, gids);
+        byte[] fileHandle = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13 };
+
+        assertMarshalledSize(new NfsGetAttrRequest(fileHandle, credential, 3), true);
+        assertMarshalledSize(new NfsReadRequest(fileHandle, 0, 4096, credential, 3), true);
+        assertMarshalledSize(new NfsLookupRequest(fileHandle, "name", credential, 3), false);
+        assertMarshalledSize(new NfsLookupRequest(fileHandle, "\u00e9t\u00e9", credential, 3), false);
+    }
+
+    /**
+     * @param request
+     * @param exact
+     *            <code>true</code> if the size has no slack.
+     */
+    private static void assertMarshalledSize(RpcRequest request, boolean exact) {
+        int size = request.getMarshalledSize();
+        Xdr xdr = new Xdr(size);
+        request.marshalling(xdr);
+        if (exact) {
+            assertEquals(size, xdr.getOffset());
+        } else {
+            assertTrue(xdr.getOffset() <= size);
+        }
+    }
+
     /**
      * @param payloadNumber
      * @return a 1-byte payload with the payload number
@@ -0,0 +1,1019 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.xdrgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Arm;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Const;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Declaration;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Definition;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Enum;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Procedure;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Program;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Shape;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Struct;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Typedef;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Union;
+import com.emc.ecs.nfsclient.xdrgen.XdrParser.Version;
+
+/**
+ * Generates Java codecs from XDR protocol definitions, in the manner of
+ * rpcgen, for the build.
+ *
+ * <p>
+ * Each struct and union becomes a mutable record class with public fields and
+ * <code>encode(Xdr)</code>, <code>decode(Xdr)</code> and
+ * <code>encodedSize()</code> methods. Decoding into a record reuses its
+ * arrays and nested records, so a record decoded again and again allocates
+ * only when a reply holds more than any before it. Opaque data and strings
+ * are kept as a byte array and a length, and optional data as a flag and a
+ * record. A list, which XDR declares as a struct ending with an optional
+ * pointer to itself, is encoded and decoded in a loop. Constants, enum values
+ * and program, version and procedure numbers go into one constants class for
+ * each file.
+ * </p>
+ *
+ * <p>
+ * Usage:
+ * <code>XdrGenerator outputDirectory file=package.ConstantsClass ...</code>,
+ * where the records of each file are put in the package of its constants
+ * class.
+ * </p>
+ */
+public class XdrGenerator {
+
+    /**
+     * Java keywords which could clash with XDR names.
+     */
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("abstract", "boolean", "byte",
+            "case", "char", "class", "continue", "default", "do", "double", "else", "final", "for", "goto", "if",
+            "import", "int", "long", "new", "package", "private", "protected", "public", "return", "short",
+            "static", "switch", "this", "throw", "try", "void", "while"));
+
+    /**
+     * The base types of fields.
+     */
+    private enum Base {
+        INT("int", "Int", 4), UNSIGNED_INT("long", "UnsignedInt", 4), HYPER("long", "Long", 8), BOOL("boolean",
+                "Boolean", 4), FLOAT("float", "Float", 4), OPAQUE(null, null, 0), STRING(null, null, 0), RECORD(null,
+                        null, 0);
+
+        /**
+         * The Java type of a primitive base type.
+         */
+        private final String _javaType;
+
+        /**
+         * The suffix of the <code>Xdr</code> get and put methods of a
+         * primitive base type.
+         */
+        private final String _method;
+
+        /**
+         * The encoded size of a primitive base type.
+         */
+        private final int _size;
+
+        private Base(String javaType, String method, int size) {
+            _javaType = javaType;
+            _method = method;
+            _size = size;
+        }
+
+    }
+
+    /**
+     * The name of the file, for comments and error messages.
+     */
+    private final String _fileName;
+
+    /**
+     * The package of the generated classes.
+     */
+    private final String _packageName;
+
+    /**
+     * The simple name of the constants class.
+     */
+    private final String _constantsClass;
+
+    /**
+     * The definitions of the file.
+     */
+    private final List<Definition> _definitions;
+
+    /**
+     * The typedefs, by name.
+     */
+    private final Map<String, Declaration> _typedefs = new HashMap<String, Declaration>();
+
+    /**
+     * The names of the enums.
+     */
+    private final Set<String> _enums = new HashSet<String>();
+
+    /**
+     * The names of the structs and unions.
+     */
+    private final Set<String> _records = new HashSet<String>();
+
+    /**
+     * The names of the constants and enum values.
+     */
+    private final Set<String> _constants = new HashSet<String>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: XdrGenerator outputDirectory file=package.ConstantsClass ...");
+            System.exit(1);
+        }
+        File outputDirectory = new File(args[0]);
+        for (int i = 1; i < args.length; ++i) {
+            int separator = args[i].lastIndexOf('=');
+            File file = new File(args[i].substring(0, separator));
+            String constantsClass = args[i].substring(separator + 1);
+            String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            List<Definition> definitions = new XdrParser(file.getName(), source).parse();
+            new XdrGenerator(file.getName(), constantsClass, definitions).generate(outputDirectory);
+        }
+    }
+
+    /**
+     * @param fileName
+     *            The name of the file, for comments and error messages.
+     * @param constantsClass
+     *            The fully qualified name of the constants class.
+     * @param definitions
+     *            The definitions of the file.
+     */
+    XdrGenerator(String fileName, String constantsClass, List<Definition> definitions) {
+        _fileName = fileName;
+        int separator = constantsClass.lastIndexOf('.');
+        _packageName = constantsClass.substring(0, separator);
+        _constantsClass = constantsClass.substring(separator + 1);
+        _definitions = definitions;
+
+        for (Definition definition : definitions) {
+            if (definition instanceof Typedef) {
+                Declaration declaration = ((Typedef) definition)._declaration;
+                _typedefs.put(declaration._name, declaration);
+            } else if (definition instanceof Enum) {
+                _enums.add(((Enum) definition)._name);
+                for (Const value : ((Enum) definition)._values) {
+                    _constants.add(value._name);
+                }
+            } else if (definition instanceof Struct) {
+                _records.add(((Struct) definition)._name);
+            } else if (definition instanceof Union) {
+                _records.add(((Union) definition)._name);
+            } else if (definition instanceof Const) {
+                _constants.add(((Const) definition)._name);
+            }
+        }
+    }
+
+    /**
+     * Write the classes of the file.
+     *
+     * @param outputDirectory
+     *            The source root to write them to.
+     * @throws IOException
+     */
+    void generate(File outputDirectory) throws IOException {
+        File packageDirectory = new File(outputDirectory, _packageName.replace('.', File.separatorChar));
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("cannot create " + packageDirectory);
+        }
+
+        write(packageDirectory, _constantsClass, generateConstants());
+        for (Definition definition : _definitions) {
+            if (definition instanceof Struct) {
+                Struct struct = (Struct) definition;
+                write(packageDirectory, toClassName(struct._name), generateStruct(struct));
+            } else if (definition instanceof Union) {
+                Union union = (Union) definition;
+                write(packageDirectory, toClassName(union._name), generateUnion(union));
+            }
+        }
+    }
+
+    /**
+     * @param packageDirectory
+     * @param className
+     * @param source
+     * @throws IOException
+     */
+    private static void write(File packageDirectory, String className, String source) throws IOException {
+        if (!source.contains("RpcRequest.CHARSET")) {
+            source = source.replace("import com.emc.ecs.nfsclient.rpc.RpcRequest;\n", "");
+        }
+        Files.write(new File(packageDirectory, className + ".java").toPath(), source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The source of the constants class.
+     */
+    private String generateConstants() {
+        Writer out = new Writer();
+        out.header(false);
+        out.line("/**");
+        out.line(" * The constants, enum values and RPC numbers of " + _fileName + ".");
+        out.line(" */");
+        out.line("public final class " + _constantsClass + " {");
+        out.line();
+        for (Definition definition : _definitions) {
+            if (definition instanceof Const) {
+                Const constant = (Const) definition;
+                out.constant(constant._name, constant._value);
+            } else if (definition instanceof Enum) {
+                Enum enumeration = (Enum) definition;
+                out.line("    /* enum " + enumeration._name + " */");
+                out.line();
+                for (Const value : enumeration._values) {
+                    out.constant(value._name, value._value);
+                }
+            } else if (definition instanceof Program) {
+                Program program = (Program) definition;
+                out.constant(program._name, program._number);
+                for (Version version : program._versions) {
+                    out.constant(version._name, version._number);
+                    for (Procedure procedure : version._procedures) {
+                        out.line("    /**");
+                        out.line("     * <code>" + procedure._result + " " + procedure._name + "("
+                                + procedure._argument + ")</code>");
+                        out.line("     */");
+                        out.line("    public static final int " + procedure._name + " = " + procedure._number + ";");
+                        out.line();
+                    }
+                }
+            }
+        }
+        out.line("    private " + _constantsClass + "() {");
+        out.line("    }");
+        out.line();
+        out.line("}");
+        return out.toString();
+    }
+
+    /**
+     * @param struct
+     * @return The source of the record class of the struct.
+     */
+    private String generateStruct(Struct struct) {
+        String className = toClassName(struct._name);
+        Field[] fields = new Field[struct._fields.size()];
+        for (int i = 0; i < fields.length; ++i) {
+            fields[i] = resolve(struct._fields.get(i));
+        }
+        Field last = fields[fields.length - 1];
+        boolean list = last._shape == Shape.OPTIONAL && className.equals(last._recordClass);
+
+        Writer out = new Writer();
+        out.header(true);
+        out.line("/**");
+        out.line(" * The XDR <code>struct " + struct._name + "</code> of " + _fileName + ", as a mutable record.");
+        if (list) {
+            out.line(" * The records of a list are encoded and decoded in a loop, and decoding reuses");
+            out.line(" * the records already chained to this one.");
+        }
+        out.line(" */");
+        out.line("public class " + className + " {");
+        out.line();
+        for (Field field : fields) {
+            declare(out, field);
+        }
+
+        String target = list ? "record." : "this.";
+        int fieldCount = list ? fields.length - 1 : fields.length;
+
+        out.line("    public void encode(Xdr xdr) {");
+        if (list) {
+            out.line("        " + className + " record = this;");
+            out.line("        while (true) {");
+        }
+        for (int i = 0; i < fieldCount; ++i) {
+            encode(out, fields[i], target, list ? 3 : 2);
+        }
+        if (list) {
+            String has = target + "has" + capitalize(last._javaName);
+            out.line("            xdr.putBoolean(" + has + ");");
+            out.line("            if (!" + has + ") {");
+            out.line("                break;");
+            out.line("            }");
+            out.line("            record = " + target + last._javaName + ";");
+            out.line("        }");
+        }
+        out.line("    }");
+        out.line();
+
+        out.line("    public void decode(Xdr xdr) {");
+        if (list) {
+            out.line("        " + className + " record = this;");
+            out.line("        while (true) {");
+        }
+        for (int i = 0; i < fieldCount; ++i) {
+            decode(out, fields[i], target, list ? 3 : 2);
+        }
+        if (list) {
+            String has = target + "has" + capitalize(last._javaName);
+            out.line("            " + has + " = xdr.getBoolean();");
+            out.line("            if (!" + has + ") {");
+            out.line("                break;");
+            out.line("            }");
+            out.line("            if (" + target + last._javaName + " == null) {");
+            out.line("                " + target + last._javaName + " = new " + className + "();");
+            out.line("            }");
+            out.line("            record = " + target + last._javaName + ";");
+            out.line("        }");
+        }
+        out.line("    }");
+        out.line();
+
+        out.line("    public int encodedSize() {");
+        out.line("        int size = 0;");
+        if (list) {
+            out.line("        for (" + className + " record = this; record != null; record = (record.has"
+                    + capitalize(last._javaName) + " ? record." + last._javaName + " : null)) {");
+            out.line("            size += 4;");
+        }
+        for (int i = 0; i < fieldCount; ++i) {
+            size(out, fields[i], target, list ? 3 : 2);
+        }
+        if (list) {
+            out.line("        }");
+        }
+        out.line("        return size;");
+        out.line("    }");
+        out.line();
+
+        for (Field field : fields) {
+            accessors(out, field);
+        }
+        out.line("}");
+        return out.toString();
+    }
+
+    /**
+     * @param union
+     * @return The source of the record class of the union.
+     */
+    private String generateUnion(Union union) {
+        String className = toClassName(union._name);
+        Field discriminant = resolve(union._discriminant);
+        boolean bool = discriminant._base == Base.BOOL;
+        if (discriminant._shape != Shape.SCALAR || (discriminant._base != Base.INT && !bool
+                && discriminant._base != Base.UNSIGNED_INT)) {
+            throw error("the discriminant of " + union._name + " must be an int, an enum or a bool");
+        }
+        // switch needs an int, and an unsigned discriminant is never large
+        discriminant._base = bool ? Base.BOOL : Base.INT;
+
+        Writer out = new Writer();
+        out.header(true);
+        out.line("/**");
+        out.line(" * The XDR <code>union " + union._name + "</code> of " + _fileName
+                + ", as a mutable record. Only the");
+        out.line(" * arm selected by <code>" + discriminant._javaName + "</code> is encoded or decoded.");
+        out.line(" */");
+        out.line("public class " + className + " {");
+        out.line();
+        declare(out, discriminant);
+        Set<String> names = new HashSet<String>();
+        names.add(discriminant._javaName);
+        for (Arm arm : allArms(union)) {
+            if (arm._declaration._shape != Shape.VOID && names.add(arm._declaration._name)) {
+                declare(out, resolve(arm._declaration));
+            }
+        }
+
+        String[] methods = { "encode", "decode", "encodedSize" };
+        for (String method : methods) {
+            boolean size = method.equals("encodedSize");
+            out.line(size ? "    public int encodedSize() {" : "    public void " + method + "(Xdr xdr) {");
+            if (size) {
+                out.line("        int size = 4;");
+            } else if (method.equals("encode")) {
+                encode(out, discriminant, "this.", 2);
+            } else {
+                decode(out, discriminant, "this.", 2);
+            }
+
+            if (bool) {
+                out.line("        if (this." + discriminant._javaName + ") {");
+                arm(out, union, findArm(union, "TRUE"), method, 3);
+                out.line("        } else {");
+                arm(out, union, findArm(union, "FALSE"), method, 3);
+                out.line("        }");
+            } else {
+                out.line("        switch (this." + discriminant._javaName + ") {");
+                for (Arm arm : union._arms) {
+                    for (String value : arm._cases) {
+                        out.line("        case " + toValue(value) + ":");
+                    }
+                    arm(out, union, arm, method, 3);
+                    out.line("            break;");
+                }
+                out.line("        default:");
+                arm(out, union, union._defaultArm, method, 3);
+                out.line("        }");
+            }
+            if (size) {
+                out.line("        return size;");
+            }
+            out.line("    }");
+            out.line();
+        }
+
+        names.clear();
+        for (Arm arm : allArms(union)) {
+            if (arm._declaration._shape != Shape.VOID && names.add(arm._declaration._name)) {
+                accessors(out, resolve(arm._declaration));
+            }
+        }
+        out.line("}");
+        return out.toString();
+    }
+
+    /**
+     * Write the code of a union arm for a method.
+     *
+     * @param out
+     * @param union
+     * @param arm
+     *            The arm, or <code>null</code> for an invalid discriminant.
+     * @param method
+     * @param indent
+     */
+    private void arm(Writer out, Union union, Arm arm, String method, int indent) {
+        if (arm == null) {
+            out.line(indent, "throw new IllegalArgumentException(\"" + union._name + ": invalid discriminant \" + this."
+                    + toFieldName(union._discriminant._name) + ");");
+        } else if (arm._declaration._shape != Shape.VOID) {
+            Field field = resolve(arm._declaration);
+            if (method.equals("encode")) {
+                encode(out, field, "this.", indent);
+            } else if (method.equals("decode")) {
+                decode(out, field, "this.", indent);
+            } else {
+                size(out, field, "this.", indent);
+            }
+        }
+    }
+
+    /**
+     * @param union
+     * @return The arms, then the default arm if there is one.
+     */
+    private static List<Arm> allArms(Union union) {
+        List<Arm> arms = new java.util.ArrayList<Arm>(union._arms);
+        if (union._defaultArm != null) {
+            arms.add(union._defaultArm);
+        }
+        return arms;
+    }
+
+    /**
+     * @param union
+     * @param value
+     * @return The arm for the value, the default arm, or <code>null</code>.
+     */
+    private static Arm findArm(Union union, String value) {
+        for (Arm arm : union._arms) {
+            if (arm._cases.contains(value)) {
+                return arm;
+            }
+        }
+        return union._defaultArm;
+    }
+
+    /**
+     * Write the declaration of a field.
+     *
+     * @param out
+     * @param field
+     */
+    private void declare(Writer out, Field field) {
+        String name = field._javaName;
+        out.line("    /**");
+        out.line("     * <code>" + field._xdrName + "</code>");
+        out.line("     */");
+        switch (field._shape) {
+        case SCALAR:
+            if (field._base == Base.RECORD) {
+                out.line("    public " + field._recordClass + " " + name + " = new " + field._recordClass + "();");
+            } else {
+                out.line("    public " + field._base._javaType + " " + name + ";");
+            }
+            break;
+        case OPTIONAL:
+            out.line("    public boolean has" + capitalize(name) + ";");
+            out.line();
+            out.line("    public " + field._recordClass + " " + name + ";");
+            break;
+        case FIXED:
+            out.line("    public " + elementType(field) + "[] " + name + " = new " + elementType(field) + "["
+                    + field._size + "];");
+            break;
+        case VARIABLE:
+            out.line("    public " + elementType(field) + "[] " + name + " = new " + elementType(field) + "[0];");
+            out.line();
+            out.line("    public int " + name + "Length;");
+            break;
+        default:
+            throw new IllegalStateException();
+        }
+        out.line();
+    }
+
+    /**
+     * Write the convenience accessors of a field, if it has any.
+     *
+     * @param out
+     * @param field
+     */
+    private void accessors(Writer out, Field field) {
+        if (field._shape != Shape.VARIABLE) {
+            return;
+        }
+        String name = field._javaName;
+        if (field._base == Base.STRING) {
+            out.line("    public String get" + capitalize(name) + "AsString() {");
+            out.line("        return new String(" + name + ", 0, " + name + "Length, RpcRequest.CHARSET);");
+            out.line("    }");
+            out.line();
+            out.line("    public void set" + capitalize(name) + "(String value) {");
+            out.line("        set" + capitalize(name) + "(value.getBytes(RpcRequest.CHARSET));");
+            out.line("    }");
+            out.line();
+        }
+        if (field._base == Base.OPAQUE || field._base == Base.STRING) {
+            out.line("    /**");
+            out.line("     * @param value");
+            out.line("     *            The data, which is not copied.");
+            out.line("     */");
+            out.line("    public void set" + capitalize(name) + "(byte[] value) {");
+            out.line("        " + name + " = value;");
+            out.line("        " + name + "Length = value.length;");
+            out.line("    }");
+            out.line();
+        }
+    }
+
+    /**
+     * Write the encoding of a field.
+     *
+     * @param out
+     * @param field
+     * @param target
+     *            The prefix of the field, such as <code>"this."</code>.
+     * @param indent
+     */
+    private void encode(Writer out, Field field, String target, int indent) {
+        String name = target + field._javaName;
+        switch (field._shape) {
+        case SCALAR:
+            out.line(indent, encodeElement(field, name));
+            break;
+        case OPTIONAL:
+            out.line(indent, "xdr.putBoolean(" + target + "has" + capitalize(field._javaName) + ");");
+            out.line(indent, "if (" + target + "has" + capitalize(field._javaName) + ") {");
+            out.line(indent + 1, name + ".encode(xdr);");
+            out.line(indent, "}");
+            break;
+        case FIXED:
+        case VARIABLE:
+            boolean variable = field._shape == Shape.VARIABLE;
+            String length = variable ? name + "Length" : field._size;
+            if (field._base == Base.OPAQUE || field._base == Base.STRING) {
+                out.line(indent, variable ? "xdr.putByteArray(" + name + ", 0, " + length + ");"
+                        : "xdr.putBytes(" + name + ", 0, " + length + ");");
+            } else {
+                if (variable) {
+                    out.line(indent, "xdr.putInt(" + length + ");");
+                }
+                out.line(indent, "for (int i = 0; i < " + length + "; ++i) {");
+                out.line(indent + 1, encodeElement(field, name + "[i]"));
+                out.line(indent, "}");
+            }
+            break;
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Write the decoding of a field.
+     *
+     * @param out
+     * @param field
+     * @param target
+     *            The prefix of the field, such as <code>"this."</code>.
+     * @param indent
+     */
+    private void decode(Writer out, Field field, String target, int indent) {
+        String name = target + field._javaName;
+        switch (field._shape) {
+        case SCALAR:
+            if (field._base == Base.RECORD) {
+                out.line(indent, name + ".decode(xdr);");
+            } else {
+                out.line(indent, name + " = xdr.get" + field._base._method + "();");
+            }
+            break;
+        case OPTIONAL:
+            String has = target + "has" + capitalize(field._javaName);
+            out.line(indent, has + " = xdr.getBoolean();");
+            out.line(indent, "if (" + has + ") {");
+            out.line(indent + 1, "if (" + name + " == null) {");
+            out.line(indent + 2, name + " = new " + field._recordClass + "();");
+            out.line(indent + 1, "}");
+            out.line(indent + 1, name + ".decode(xdr);");
+            out.line(indent, "}");
+            break;
+        case FIXED:
+        case VARIABLE:
+            boolean variable = field._shape == Shape.VARIABLE;
+            boolean bytes = field._base == Base.OPAQUE || field._base == Base.STRING;
+            String length = variable ? name + "Length" : field._size;
+            if (variable) {
+                out.line(indent, "{");
+                ++indent;
+                out.line(indent, "int length = xdr.getInt();");
+                String check = (field._size == null) ? "length < 0" : "length < 0 || length > " + field._size;
+                out.line(indent, "if (" + check + ") {");
+                out.line(indent + 1, "throw new IllegalArgumentException(\"" + field._xdrName
+                        + ": invalid length \" + length);");
+                out.line(indent, "}");
+                out.line(indent, "if (" + name + ".length < length) {");
+                out.line(indent + 1, name + " = " + (bytes ? "new byte[length]"
+                        : "java.util.Arrays.copyOf(" + name + ", length)") + ";");
+                out.line(indent, "}");
+                out.line(indent, length + " = length;");
+            }
+            if (bytes) {
+                out.line(indent, "xdr.getBytes(" + length + ", " + name + ", 0);");
+            } else {
+                out.line(indent, "for (int i = 0; i < " + length + "; ++i) {");
+                if (field._base == Base.RECORD) {
+                    out.line(indent + 1, "if (" + name + "[i] == null) {");
+                    out.line(indent + 2, name + "[i] = new " + field._recordClass + "();");
+                    out.line(indent + 1, "}");
+                    out.line(indent + 1, name + "[i].decode(xdr);");
+                } else {
+                    out.line(indent + 1, name + "[i] = xdr.get" + field._base._method + "();");
+                }
+                out.line(indent, "}");
+            }
+            if (variable) {
+                --indent;
+                out.line(indent, "}");
+            }
+            break;
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Write the addition of the encoded size of a field to <code>size</code>.
+     *
+     * @param out
+     * @param field
+     * @param target
+     *            The prefix of the field, such as <code>"this."</code>.
+     * @param indent
+     */
+    private void size(Writer out, Field field, String target, int indent) {
+        String name = target + field._javaName;
+        switch (field._shape) {
+        case SCALAR:
+            out.line(indent, "size += " + sizeElement(field, name) + ";");
+            break;
+        case OPTIONAL:
+            out.line(indent, "size += 4;");
+            out.line(indent, "if (" + target + "has" + capitalize(field._javaName) + ") {");
+            out.line(indent + 1, "size += " + name + ".encodedSize();");
+            out.line(indent, "}");
+            break;
+        case FIXED:
+        case VARIABLE:
+            boolean variable = field._shape == Shape.VARIABLE;
+            String length = variable ? name + "Length" : field._size;
+            if (variable) {
+                out.line(indent, "size += 4;");
+            }
+            if (field._base == Base.OPAQUE || field._base == Base.STRING) {
+                out.line(indent, "size += (" + length + " + 3) & ~3;");
+            } else if (field._base == Base.RECORD) {
+                out.line(indent, "for (int i = 0; i < " + length + "; ++i) {");
+                out.line(indent + 1, "size += " + name + "[i].encodedSize();");
+                out.line(indent, "}");
+            } else {
+                out.line(indent, "size += " + field._base._size + " * " + length + ";");
+            }
+            break;
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * @param field
+     * @param value
+     *            The expression of one element.
+     * @return The statement encoding the element.
+     */
+    private static String encodeElement(Field field, String value) {
+        if (field._base == Base.RECORD) {
+            return value + ".encode(xdr);";
+        }
+        return "xdr.put" + field._base._method + "(" + value + ");";
+    }
+
+    /**
+     * @param field
+     * @param value
+     *            The expression of one element.
+     * @return The expression of the encoded size of the element.
+     */
+    private static String sizeElement(Field field, String value) {
+        if (field._base == Base.RECORD) {
+            return value + ".encodedSize()";
+        }
+        return Integer.toString(field._base._size);
+    }
+
+    /**
+     * @param field
+     * @return The Java type of the elements of an array field.
+     */
+    private static String elementType(Field field) {
+        switch (field._base) {
+        case OPAQUE:
+        case STRING:
+            return "byte";
+        case RECORD:
+            return field._recordClass;
+        default:
+            return field._base._javaType;
+        }
+    }
+
+    /**
+     * Resolve the typedefs of a declaration.
+     *
+     * @param declaration
+     * @return The field.
+     */
+    private Field resolve(Declaration declaration) {
+        Field field = new Field();
+        field._xdrName = declaration._name;
+        field._javaName = toFieldName(declaration._name);
+        field._shape = declaration._shape;
+        field._size = declaration._size;
+
+        String type = declaration._type;
+        Declaration typedef;
+        while ((typedef = _typedefs.get(type)) != null) {
+            if (typedef._shape != Shape.SCALAR) {
+                if (field._shape != Shape.SCALAR) {
+                    throw error(declaration._name + ": arrays of arrays are not supported");
+                }
+                field._shape = typedef._shape;
+                field._size = typedef._size;
+            }
+            type = typedef._type;
+        }
+        if (field._size != null) {
+            field._size = toValue(field._size);
+        }
+
+        switch (type) {
+        case "int":
+            field._base = Base.INT;
+            break;
+        case "unsigned int":
+            field._base = Base.UNSIGNED_INT;
+            break;
+        case "hyper":
+        case "unsigned hyper":
+            field._base = Base.HYPER;
+            break;
+        case "bool":
+            field._base = Base.BOOL;
+            break;
+        case "float":
+            field._base = Base.FLOAT;
+            break;
+        case "opaque":
+            field._base = Base.OPAQUE;
+            break;
+        case "string":
+            field._base = Base.STRING;
+            break;
+        default:
+            if (_enums.contains(type)) {
+                field._base = Base.INT;
+            } else if (_records.contains(type)) {
+                field._base = Base.RECORD;
+                field._recordClass = toClassName(type);
+            } else {
+                throw error(declaration._name + ": unknown type " + type);
+            }
+        }
+
+        if (field._shape == Shape.OPTIONAL && field._base != Base.RECORD) {
+            throw error(declaration._name + ": only structs and unions can be optional");
+        }
+        if (field._base == Base.STRING && field._shape != Shape.VARIABLE) {
+            throw error(declaration._name + ": strings must have a variable length");
+        }
+        return field;
+    }
+
+    /**
+     * @param value
+     *            A number, or the name of a constant.
+     * @return The Java expression of the value.
+     */
+    private String toValue(String value) {
+        if (value.equals("TRUE") || value.equals("FALSE")) {
+            return value;
+        }
+        if (_constants.contains(value)) {
+            return _constantsClass + "." + value;
+        }
+        if (Character.isDigit(value.charAt(0)) || value.charAt(0) == '-') {
+            return value;
+        }
+        throw error("unknown constant " + value);
+    }
+
+    /**
+     * @param message
+     * @return An exception for the file.
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(_fileName + ": " + message);
+    }
+
+    /**
+     * @param xdrName
+     *            A name such as <code>post_op_attr</code>.
+     * @return The class name, such as <code>PostOpAttr</code>.
+     */
+    private static String toClassName(String xdrName) {
+        StringBuilder name = new StringBuilder();
+        for (String part : xdrName.split("_")) {
+            name.append(capitalize(part));
+        }
+        return name.toString();
+    }
+
+    /**
+     * @param xdrName
+     *            A name such as <code>attributes_follow</code>.
+     * @return The field name, such as <code>attributesFollow</code>.
+     */
+    private static String toFieldName(String xdrName) {
+        String name = toClassName(xdrName);
+        name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        return KEYWORDS.contains(name) ? name + "_" : name;
+    }
+
+    /**
+     * @param name
+     * @return The name, starting with a capital letter.
+     */
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * A declaration resolved to a base type and shape.
+     */
+    private static class Field {
+
+        /**
+         * The name in the protocol definition.
+         */
+        private String _xdrName;
+
+        /**
+         * The name of the generated field.
+         */
+        private String _javaName;
+
+        private Base _base;
+
+        /**
+         * The class of a struct or union, or <code>null</code>.
+         */
+        private String _recordClass;
+
+        private Shape _shape;
+
+        /**
+         * The Java expression of the size of a fixed array, or of the maximum
+         * size of a variable one, or <code>null</code> if unbounded.
+         */
+        private String _size;
+
+    }
+
+    /**
+     * Writes generated source lines.
+     */
+    private class Writer {
+
+        /**
+         * The source.
+         */
+        private final StringBuilder _source = new StringBuilder();
+
+        /**
+         * Write the package, the imports and the generated notice.
+         *
+         * @param record
+         *            <code>true</code> for a record class, which needs the
+         *            imports.
+         */
+        void header(boolean record) {
+            line("/*");
+            line(" * Generated by XdrGenerator from " + _fileName + ". Do not edit.");
+            line(" */");
+            line("package " + _packageName + ";");
+            line();
+            if (record) {
+                line("import com.emc.ecs.nfsclient.rpc.RpcRequest;");
+                line("import com.emc.ecs.nfsclient.rpc.Xdr;");
+                line();
+            }
+        }
+
+        /**
+         * Write a constant.
+         *
+         * @param name
+         * @param value
+         */
+        void constant(String name, String value) {
+            line("    public static final int " + name + " = " + value + ";");
+            line();
+        }
+
+        /**
+         * Write a line at an indentation level of four spaces each.
+         *
+         * @param indent
+         * @param text
+         */
+        void line(int indent, String text) {
+            for (int i = 0; i < indent; ++i) {
+                _source.append("    ");
+            }
+            line(text);
+        }
+
+        void line(String text) {
+            _source.append(text).append('\n');
+        }
+
+        void line() {
+            _source.append('\n');
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            return _source.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,608 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.xdrgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the XDR language, as specified by RFC 4506
+ * (https://tools.ietf.org/html/rfc4506), with the program definitions of RFC
+ * 5531 (https://tools.ietf.org/html/rfc5531).
+ *
+ * <p>
+ * Enums, structs and unions must be named definitions: they cannot be
+ * declared inline in another type. Lines starting with <code>%</code> are
+ * ignored, as are <code>double</code> and <code>quadruple</code>, which the
+ * protocols used here do not have.
+ * </p>
+ */
+class XdrParser {
+
+    /**
+     * The name of the source, for error messages.
+     */
+    private final String _sourceName;
+
+    /**
+     * The tokens of the source.
+     */
+    private final List<Token> _tokens;
+
+    /**
+     * The index of the next token.
+     */
+    private int _next;
+
+    /**
+     * @param sourceName
+     *            The name of the source, for error messages.
+     * @param source
+     *            The XDR language source.
+     */
+    XdrParser(String sourceName, String source) {
+        _sourceName = sourceName;
+        _tokens = tokenize(source);
+    }
+
+    /**
+     * @return The definitions, in source order.
+     */
+    List<Definition> parse() {
+        List<Definition> definitions = new ArrayList<Definition>();
+        while (_next < _tokens.size()) {
+            definitions.add(parseDefinition());
+        }
+        return definitions;
+    }
+
+    /**
+     * @return The next definition.
+     */
+    private Definition parseDefinition() {
+        String keyword = nextIdentifier();
+        Definition definition;
+        switch (keyword) {
+        case "const":
+            String name = nextIdentifier();
+            expect("=");
+            definition = new Const(name, nextValue());
+            break;
+        case "typedef":
+            definition = new Typedef(parseDeclaration());
+            break;
+        case "enum":
+            definition = parseEnum(nextIdentifier());
+            break;
+        case "struct":
+            definition = parseStruct(nextIdentifier());
+            break;
+        case "union":
+            definition = parseUnion(nextIdentifier());
+            break;
+        case "program":
+            definition = parseProgram(nextIdentifier());
+            break;
+        default:
+            throw error("unexpected " + keyword);
+        }
+        expect(";");
+        return definition;
+    }
+
+    /**
+     * @param name
+     * @return The enum, after its name.
+     */
+    private Enum parseEnum(String name) {
+        Enum definition = new Enum(name);
+        expect("{");
+        do {
+            String valueName = nextIdentifier();
+            expect("=");
+            definition._values.add(new Const(valueName, nextValue()));
+        } while (accept(","));
+        expect("}");
+        return definition;
+    }
+
+    /**
+     * @param name
+     * @return The struct, after its name.
+     */
+    private Struct parseStruct(String name) {
+        Struct definition = new Struct(name);
+        expect("{");
+        do {
+            definition._fields.add(parseDeclaration());
+            expect(";");
+        } while (!accept("}"));
+        return definition;
+    }
+
+    /**
+     * @param name
+     * @return The union, after its name.
+     */
+    private Union parseUnion(String name) {
+        expect("switch");
+        expect("(");
+        Union definition = new Union(name, parseDeclaration());
+        expect(")");
+        expect("{");
+        while (!accept("}")) {
+            Arm arm = new Arm();
+            if (accept("default")) {
+                expect(":");
+                definition._defaultArm = arm;
+            } else {
+                do {
+                    expect("case");
+                    arm._cases.add(nextValue());
+                    expect(":");
+                } while (peek("case"));
+                definition._arms.add(arm);
+            }
+            arm._declaration = parseDeclaration();
+            expect(";");
+        }
+        return definition;
+    }
+
+    /**
+     * @param name
+     * @return The program, after its name.
+     */
+    private Program parseProgram(String name) {
+        Program program = new Program(name);
+        expect("{");
+        do {
+            expect("version");
+            Version version = new Version(nextIdentifier());
+            expect("{");
+            do {
+                String result = parseProcedureType();
+                Procedure procedure = new Procedure(nextIdentifier(), result);
+                expect("(");
+                procedure._argument = parseProcedureType();
+                expect(")");
+                expect("=");
+                procedure._number = nextValue();
+                expect(";");
+                version._procedures.add(procedure);
+            } while (!accept("}"));
+            expect("=");
+            version._number = nextValue();
+            expect(";");
+            program._versions.add(version);
+        } while (!accept("}"));
+        expect("=");
+        program._number = nextValue();
+        return program;
+    }
+
+    /**
+     * @return The result or argument type of a procedure.
+     */
+    private String parseProcedureType() {
+        if (accept("void")) {
+            return "void";
+        }
+        return parseTypeSpecifier();
+    }
+
+    /**
+     * @return The next declaration.
+     */
+    private Declaration parseDeclaration() {
+        if (accept("void")) {
+            return new Declaration("void", null, Shape.VOID, null);
+        }
+
+        String type = parseTypeSpecifier();
+        if (accept("*")) {
+            return new Declaration(type, nextIdentifier(), Shape.OPTIONAL, null);
+        }
+
+        String name = nextIdentifier();
+        if (accept("[")) {
+            String size = nextValue();
+            expect("]");
+            return new Declaration(type, name, Shape.FIXED, size);
+        }
+        if (accept("<")) {
+            String size = accept(">") ? null : nextValue();
+            if (size != null) {
+                expect(">");
+            }
+            return new Declaration(type, name, Shape.VARIABLE, size);
+        }
+        if (type.equals("opaque") || type.equals("string")) {
+            throw error(type + " " + name + " needs a size");
+        }
+        return new Declaration(type, name, Shape.SCALAR, null);
+    }
+
+    /**
+     * @return The type, with <code>unsigned</code> types named
+     *         <code>"unsigned int"</code> and <code>"unsigned hyper"</code>.
+     */
+    private String parseTypeSpecifier() {
+        String type = nextIdentifier();
+        if (type.equals("unsigned")) {
+            if (accept("hyper")) {
+                return "unsigned hyper";
+            }
+            accept("int");
+            return "unsigned int";
+        }
+        if (type.equals("enum") || type.equals("struct") || type.equals("union")) {
+            throw error("inline " + type + " types are not supported, name them instead");
+        }
+        return type;
+    }
+
+    /**
+     * @return The next token, which must be an identifier.
+     */
+    private String nextIdentifier() {
+        Token token = next();
+        if (!token.isIdentifier()) {
+            throw error("expected an identifier, found " + token._text);
+        }
+        return token._text;
+    }
+
+    /**
+     * @return The next token, which must be a number or a constant name.
+     */
+    private String nextValue() {
+        Token token = next();
+        if (!token.isIdentifier() && !token.isNumber()) {
+            throw error("expected a value, found " + token._text);
+        }
+        return token._text;
+    }
+
+    /**
+     * @param text
+     *            The expected token.
+     */
+    private void expect(String text) {
+        Token token = next();
+        if (!token._text.equals(text)) {
+            throw error("expected " + text + ", found " + token._text);
+        }
+    }
+
+    /**
+     * @param text
+     * @return <code>true</code> if the next token is the text, which is then
+     *         consumed.
+     */
+    private boolean accept(String text) {
+        if (peek(text)) {
+            ++_next;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param text
+     * @return <code>true</code> if the next token is the text.
+     */
+    private boolean peek(String text) {
+        return _next < _tokens.size() && _tokens.get(_next)._text.equals(text);
+    }
+
+    /**
+     * @return The next token.
+     */
+    private Token next() {
+        if (_next >= _tokens.size()) {
+            throw new IllegalArgumentException(_sourceName + ": unexpected end of file");
+        }
+        return _tokens.get(_next++);
+    }
+
+    /**
+     * @param message
+     * @return An exception with the message and the line of the last token.
+     */
+    private IllegalArgumentException error(String message) {
+        int line = _tokens.get(Math.max(_next - 1, 0))._line;
+        return new IllegalArgumentException(_sourceName + ":" + line + ": " + message);
+    }
+
+    /**
+     * @param source
+     * @return The tokens, without comments and <code>%</code> lines.
+     */
+    private static List<Token> tokenize(String source) {
+        List<Token> tokens = new ArrayList<Token>();
+        int line = 1;
+        int i = 0;
+        boolean lineStart = true;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                ++line;
+                ++i;
+                lineStart = true;
+            } else if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (lineStart && c == '%') {
+                while (i < source.length() && source.charAt(i) != '\n') {
+                    ++i;
+                }
+            } else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("line " + line + ": unterminated comment");
+                }
+                for (int j = i; j < end; ++j) {
+                    if (source.charAt(j) == '\n') {
+                        ++line;
+                    }
+                }
+                i = end + 2;
+            } else if (source.startsWith("//", i)) {
+                while (i < source.length() && source.charAt(i) != '\n') {
+                    ++i;
+                }
+            } else {
+                lineStart = false;
+                int start = i;
+                if (Character.isJavaIdentifierStart(c)) {
+                    while (i < source.length() && Character.isJavaIdentifierPart(source.charAt(i))) {
+                        ++i;
+                    }
+                } else if (Character.isDigit(c) || (c == '-' && i + 1 < source.length()
+                        && Character.isDigit(source.charAt(i + 1)))) {
+                    ++i;
+                    while (i < source.length() && Character.isLetterOrDigit(source.charAt(i))) {
+                        ++i;
+                    }
+                } else {
+                    ++i;
+                }
+                tokens.add(new Token(source.substring(start, i), line));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A token of the source.
+     */
+    private static class Token {
+
+        /**
+         * The text of the token.
+         */
+        private final String _text;
+
+        /**
+         * The line of the token, for error messages.
+         */
+        private final int _line;
+
+        Token(String text, int line) {
+            _text = text;
+            _line = line;
+        }
+
+        boolean isIdentifier() {
+            return Character.isJavaIdentifierStart(_text.charAt(0));
+        }
+
+        boolean isNumber() {
+            return Character.isDigit(_text.charAt(0)) || _text.charAt(0) == '-';
+        }
+
+    }
+
+    /**
+     * The shape of a declaration.
+     */
+    enum Shape {
+        SCALAR, FIXED, VARIABLE, OPTIONAL, VOID
+    }
+
+    /**
+     * A top level definition.
+     */
+    static abstract class Definition {
+    }
+
+    /**
+     * A constant, or a value of an enum.
+     */
+    static class Const extends Definition {
+
+        final String _name;
+
+        final String _value;
+
+        Const(String name, String value) {
+            _name = name;
+            _value = value;
+        }
+
+    }
+
+    /**
+     * A typedef, naming a declaration.
+     */
+    static class Typedef extends Definition {
+
+        final Declaration _declaration;
+
+        Typedef(Declaration declaration) {
+            _declaration = declaration;
+        }
+
+    }
+
+    /**
+     * An enum, which is encoded as an int.
+     */
+    static class Enum extends Definition {
+
+        final String _name;
+
+        final List<Const> _values = new ArrayList<Const>();
+
+        Enum(String name) {
+            _name = name;
+        }
+
+    }
+
+    /**
+     * A struct.
+     */
+    static class Struct extends Definition {
+
+        final String _name;
+
+        final List<Declaration> _fields = new ArrayList<Declaration>();
+
+        Struct(String name) {
+            _name = name;
+        }
+
+    }
+
+    /**
+     * A discriminated union.
+     */
+    static class Union extends Definition {
+
+        final String _name;
+
+        final Declaration _discriminant;
+
+        final List<Arm> _arms = new ArrayList<Arm>();
+
+        Arm _defaultArm;
+
+        Union(String name, Declaration discriminant) {
+            _name = name;
+            _discriminant = discriminant;
+        }
+
+    }
+
+    /**
+     * An arm of a union, for one or more discriminant values.
+     */
+    static class Arm {
+
+        final List<String> _cases = new ArrayList<String>();
+
+        Declaration _declaration;
+
+    }
+
+    /**
+     * An RPC program.
+     */
+    static class Program extends Definition {
+
+        final String _name;
+
+        final List<Version> _versions = new ArrayList<Version>();
+
+        String _number;
+
+        Program(String name) {
+            _name = name;
+        }
+
+    }
+
+    /**
+     * A version of an RPC program.
+     */
+    static class Version {
+
+        final String _name;
+
+        final List<Procedure> _procedures = new ArrayList<Procedure>();
+
+        String _number;
+
+        Version(String name) {
+            _name = name;
+        }
+
+    }
+
+    /**
+     * A procedure of a program version.
+     */
+    static class Procedure {
+
+        final String _name;
+
+        final String _result;
+
+        String _argument;
+
+        String _number;
+
+        Procedure(String name, String result) {
+            _name = name;
+            _result = result;
+        }
+
+    }
+
+    /**
+     * A declaration of a field, a union arm or a typedef.
+     */
+    static class Declaration {
+
+        /**
+         * The type, such as <code>int</code>, <code>opaque</code> or the name
+         * of a definition.
+         */
+        final String _type;
+
+        /**
+         * The name, or <code>null</code> for <code>void</code>.
+         */
+        final String _name;
+
+        final Shape _shape;
+
+        /**
+         * The size of a fixed array, the maximum size of a variable one, or
+         * <code>null</code> if unbounded.
+         */
+        final String _size;
+
+        Declaration(String type, String name, Shape shape, String size) {
+            _type = type;
+            _name = name;
+            _shape = shape;
+            _size = size;
+        }
+
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2016-2018 Dell Inc. or its subsidiaries. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.nfsclient.nfs.io;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.emc.ecs.nfsclient.nfs.NfsGetAttrRequest;
+import com.emc.ecs.nfsclient.nfs.nfs3.Nfs3;
+import com.emc.ecs.nfsclient.rpc.CredentialUnix;
+
+/**
+ * Compares the throughput of the blocking call path with platform threads
+ * and with virtual threads. Each caller sends GETATTR on the root of the
+ * export in a loop, blocking on each call, for the given duration.
+ *
+ * <p>
+ * Usage: <code>ThreadingBenchmark export [callers] [seconds]</code>, e.g.
+ * <code>ThreadingBenchmark 10.32.172.64:/store 10000 30</code>. The virtual
+ * thread run needs Java 21 or later, and is skipped on older runtimes.
+ * </p>
+ */
+public class ThreadingBenchmark {
+
+    /**
+     * The default number of concurrent callers.
+     */
+    private static final int DEFAULT_CALLERS = 10000;
+
+    /**
+     * The default duration of each run in seconds.
+     */
+    private static final int DEFAULT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        String export = args[0];
+        int callers = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_CALLERS;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+
+        Nfs3 nfs3 = new Nfs3(export, new CredentialUnix(0, 0, null), 3);
+
+        run("platform threads", Executors.newFixedThreadPool(callers), nfs3, callers, seconds);
+
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        if (virtualThreads == null) {
+            System.out.println("virtual threads: skipped, they need Java 21 or later");
+        } else {
+            run("virtual threads", virtualThreads, nfs3, callers, seconds);
+        }
+    }
+
+    /**
+     * Run the callers on the executor for the duration, and print the
+     * throughput.
+     *
+     * @param label
+     * @param executor
+     * @param nfs3
+     * @param callers
+     * @param seconds
+     * @throws InterruptedException
+     */
+    private static void run(String label, ExecutorService executor, final Nfs3 nfs3, int callers, int seconds)
+            throws InterruptedException {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < callers; ++i) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        NfsGetAttrRequest request = nfs3.makeGetAttrRequest(nfs3.getRootFileHandle());
+                        while (System.nanoTime() < end) {
+                            try {
+                                nfs3.wrapped_getAttr(request);
+                                calls.incrementAndGet();
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+
+            });
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println(String.format("%s: %d callers, %d calls in %.1f s, %.0f calls/s, %d errors", label,
+                callers, calls.get(), elapsed, calls.get() / elapsed, errors.get()));
+    }
+
+    /**
+     * The tools are built for Java 8, so the virtual thread executor is
+     * looked up by reflection.
+     *
+     * @return An executor starting a virtual thread per task, or
+     *         <code>null</code> if the runtime has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+}